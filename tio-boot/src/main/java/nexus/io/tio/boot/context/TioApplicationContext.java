@@ -6,6 +6,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,7 @@ import nexus.io.tio.utils.json.MapJsonUtils;
 import nexus.io.tio.utils.notification.NotifactionWarmModel;
 import nexus.io.tio.utils.notification.NotificationSender;
 import nexus.io.tio.utils.thread.TioThreadUtils;
+import nexus.io.tio.websocket.common.PerMessageDeflateConfig;
 import nexus.io.tio.websocket.common.WebSocketSnowflakeId;
 import nexus.io.tio.websocket.server.WebsocketServerConfig;
 import nexus.io.tio.websocket.server.handler.IWebSocketHandler;
@@ -187,6 +189,17 @@ public class TioApplicationContext implements Context {
 
     WebsocketServerConfig wsServerConfig = new WebsocketServerConfig(port);
 
+    // Negotiate permessage-deflate with clients that offer it
+    if (EnvUtils.getBoolean("websocket.permessage-deflate.enable", false)) {
+      PerMessageDeflateConfig deflateConfig = new PerMessageDeflateConfig();
+      deflateConfig.setThreshold(EnvUtils.getInt("websocket.permessage-deflate.threshold", PerMessageDeflateConfig.DEFAULT_THRESHOLD));
+      deflateConfig.setCompressionLevel(EnvUtils.getInt("websocket.permessage-deflate.level", Deflater.DEFAULT_COMPRESSION));
+      deflateConfig.setServerNoContextTakeover(EnvUtils.getBoolean("websocket.permessage-deflate.server-no-context-takeover", false));
+      deflateConfig.setClientNoContextTakeover(EnvUtils.getBoolean("websocket.permessage-deflate.client-no-context-takeover", false));
+      deflateConfig.setClientMaxWindowBits(EnvUtils.getInt("websocket.permessage-deflate.client-max-window-bits", 15));
+      wsServerConfig.setPerMessageDeflateConfig(deflateConfig);
+    }
+
     // Configure TCP
     ServerAioHandler serverAioHandler = tioBootServer.getServerAioHandler();
     TioDecodeExceptionHandler decodeExceptionHandler = tioBootServer.getDecodeExceptionHandler();
@@ -585,6 +598,13 @@ public class TioApplicationContext implements Context {
       httpConfig.setMaxLengthOfMultiBody(multipartMaxFileSize);
     }
 
+    // Stream large request bodies to temp files instead of buffering them in memory
+    httpConfig.setStreamingBody(EnvUtils.getBoolean("http.request.body.streaming", false));
+    Integer bodySpillThreshold = EnvUtils.getInteger("http.request.body.spill-threshold");
+    if (bodySpillThreshold != null && bodySpillThreshold > 0) {
+      httpConfig.setBodySpillThreshold(bodySpillThreshold);
+    }
+
     // Enable request rate limiting if configured
     if (EnvUtils.getBoolean(ServerConfigKeys.HTTP_ENABLE_REQUEST_LIMIT, true)) {
       httpConfig.setSessionRateLimiter(new TioServerSessionRateLimiter());
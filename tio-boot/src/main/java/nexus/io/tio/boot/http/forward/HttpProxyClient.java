@@ -0,0 +1,218 @@
+package nexus.io.tio.boot.http.forward;
+
+import java.net.URI;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.tio.client.ClientChannelContext;
+import nexus.io.tio.client.ClientTioConfig;
+import nexus.io.tio.client.TioClient;
+import nexus.io.tio.core.Node;
+import nexus.io.tio.core.PipelineQueue;
+import nexus.io.tio.core.Tio;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.utils.SystemTimer;
+import nexus.io.tio.utils.environment.EnvUtils;
+import nexus.io.tio.utils.thread.TioThreadUtils;
+
+/**
+ * 基于TioClient的异步反向代理：请求线程只负责把请求交出去，上游的响应由上游连接的读线程边收边发给下游。<br>
+ * 到每个上游(scheme://host:port)的keep-alive连接放在连接池中复用；池中没有空闲连接时，在线程池中新建连接(TioClient只提供同步等待的connect)，
+ * 建好后再转发，请求线程不等待。<br>
+ * 请求发给上游后超过readTimeout没有收到上游的数据时结束转发：还没给下游发响应头时返回504，否则关闭下游连接
+ */
+public class HttpProxyClient {
+  private static final Logger log = LoggerFactory.getLogger(HttpProxyClient.class);
+
+  public static final HttpProxyClient INSTANCE = new HttpProxyClient();
+
+  /**
+   * 检查转发是否超时
+   */
+  static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+  /**
+   * 每个上游最多保留多少个空闲连接
+   */
+  private final int maxIdlePerHost = EnvUtils.getInt("http.proxy.max.idle.per.host", 16);
+  /**
+   * 空闲连接保留多久，单位：毫秒
+   */
+  private final long idleTimeout = EnvUtils.getLong("http.proxy.idle.timeout", 60000L);
+  /**
+   * 连接上游的超时时间，单位：秒
+   */
+  private final int connectTimeout = EnvUtils.getInt("http.proxy.connect.timeout", 5);
+  /**
+   * 请求发给上游后、以及每次收到上游的数据后，超过这么久没有再收到数据算超时，单位：毫秒，<=0时不检查
+   */
+  final long readTimeout = EnvUtils.getLong("http.proxy.read.timeout", 60000L);
+  /**
+   * 下游排队的字节数超过此值时暂停读上游，降到一半以下再恢复
+   */
+  final long highWaterBytes = EnvUtils.getLong("http.proxy.high.water.bytes", 256 * 1024L);
+  /**
+   * 回调saveResponse时最多带多少字节的响应体，超过时body传null
+   */
+  final int callbackMaxBodyLength = EnvUtils.getInt("http.proxy.callback.max.body.length", 1024 * 1024);
+
+  private final ConcurrentHashMap<String, Deque<HttpProxyConnection>> idleConnections = new ConcurrentHashMap<>();
+  private volatile TioClient tioClient;
+  private volatile TioClient sslTioClient;
+
+  /**
+   * 转发请求，返回时响应还没有发出(httpResponse.isSend()为false)，上游的响应到达后直接发给下游
+   *
+   * @param targetUrl    上游地址，如http://127.0.0.1:8080，请求的path和query接在后面
+   * @param httpRequest
+   * @param httpResponse
+   * @param callback     可以为null
+   * @return httpResponse
+   */
+  public HttpResponse reverseProxy(String targetUrl, HttpRequest httpRequest, HttpResponse httpResponse,
+      RequestProxyCallback callback) {
+    URI uri = URI.create(targetUrl);
+    boolean ssl = "https".equalsIgnoreCase(uri.getScheme());
+    int port = uri.getPort() > 0 ? uri.getPort() : (ssl ? 443 : 80);
+    HttpProxyExchange exchange = new HttpProxyExchange(this, uri, ssl, port, httpRequest, callback);
+    if (!exchange.prepare()) {
+      // 请求体已经按表单边收边解析，没有原始数据可转发
+      TioHttpProxy.reverseProxy(targetUrl, httpRequest, httpResponse, callback);
+      return httpResponse;
+    }
+    httpResponse.setSend(false);
+    // 上游的响应分多个packet异步发给下游，pipelining时排在前面请求的响应后面
+    PipelineQueue.startStream(httpRequest.channelContext, httpRequest.getId());
+    exchange.start();
+    return httpResponse;
+  }
+
+  /**
+   * 给exchange分配一个到上游的连接，分配好后调用exchange.onConnected
+   *
+   * @param exchange
+   * @param fresh    true: 不用连接池中的连接
+   */
+  void acquire(HttpProxyExchange exchange, boolean fresh) {
+    if (!fresh) {
+      HttpProxyConnection connection = pollIdle(exchange.key);
+      if (connection != null) {
+        exchange.onConnected(connection);
+        return;
+      }
+    }
+    TioThreadUtils.execute(() -> connect(exchange));
+  }
+
+  private void connect(HttpProxyExchange exchange) {
+    ClientChannelContext channelContext = null;
+    try {
+      channelContext = getTioClient(exchange.ssl).connect(new Node(exchange.host, exchange.port), connectTimeout);
+    } catch (Throwable e) {
+      log.error("connect to {} error: {}", exchange.key, e.toString());
+    }
+    if (channelContext == null || channelContext.isClosed) {
+      if (channelContext != null) {
+        Tio.remove(channelContext, "connect failed");
+      }
+      exchange.onConnectFailed();
+      return;
+    }
+    HttpProxyConnection connection = new HttpProxyConnection(this, exchange.key, channelContext);
+    channelContext.setAttribute(HttpProxyConnection.ATTRIBUTE_KEY, connection);
+    exchange.onConnected(connection);
+  }
+
+  /**
+   * 响应结束后把连接放回连接池
+   */
+  void release(HttpProxyConnection connection) {
+    connection.exchange = null;
+    connection.reused = true;
+    connection.idleSince = SystemTimer.currTime;
+    if (!connection.isOpen()) {
+      return;
+    }
+    Deque<HttpProxyConnection> deque = idleConnections.computeIfAbsent(connection.key,
+        k -> new ConcurrentLinkedDeque<>());
+    if (deque.size() >= maxIdlePerHost) {
+      connection.close("too many idle connections");
+      return;
+    }
+    deque.offerLast(connection);
+  }
+
+  /**
+   * 后放回的先用，先放回的空闲太久时关闭
+   */
+  private HttpProxyConnection pollIdle(String key) {
+    Deque<HttpProxyConnection> deque = idleConnections.get(key);
+    if (deque == null) {
+      return null;
+    }
+    long now = SystemTimer.currTime;
+    HttpProxyConnection connection;
+    while ((connection = deque.peekFirst()) != null && now - connection.idleSince > idleTimeout) {
+      if (deque.remove(connection)) {
+        connection.close("idle timeout");
+      }
+    }
+    while ((connection = deque.pollLast()) != null) {
+      if (connection.isOpen()) {
+        return connection;
+      }
+    }
+    return null;
+  }
+
+  void onClosed(HttpProxyConnection connection) {
+    Deque<HttpProxyConnection> deque = idleConnections.get(connection.key);
+    if (deque != null) {
+      deque.remove(connection);
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor newTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "tio-http-proxy-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // 大多数转发在超时前就结束了，取消的任务马上移除
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  private TioClient getTioClient(boolean ssl) throws Exception {
+    TioClient client = ssl ? sslTioClient : tioClient;
+    if (client != null) {
+      return client;
+    }
+    synchronized (this) {
+      client = ssl ? sslTioClient : tioClient;
+      if (client == null) {
+        ClientTioConfig clientTioConfig = new ClientTioConfig(new HttpProxyClientAioHandler(),
+            new HttpProxyClientAioListener());
+        clientTioConfig.setName(ssl ? "tio-http-proxy-ssl" : "tio-http-proxy");
+        // 空闲连接由连接池管理，不发心跳；转发中的连接由HttpProxyExchange按readTimeout检查
+        clientTioConfig.setHeartbeatTimeout(0);
+        if (ssl) {
+          clientTioConfig.useSsl();
+        }
+        client = new TioClient(clientTioConfig);
+        if (ssl) {
+          sslTioClient = client;
+        } else {
+          tioClient = client;
+        }
+      }
+      return client;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package nexus.io.tio.boot.http.forward;
+
+import java.nio.ByteBuffer;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.client.intf.ClientAioHandler;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.Tio;
+import nexus.io.tio.core.TioConfig;
+
+/**
+ * 转发用的上游连接的编解码：请求在HttpProxyExchange中已经编好码(preEncodedByteBuffer)；
+ * 响应交给连接上正在转发的HttpProxyExchange，边解析边发给下游，不生成packet
+ */
+public class HttpProxyClientAioHandler implements ClientAioHandler {
+
+  @Override
+  public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext channelContext)
+      throws Exception {
+    HttpProxyConnection connection = HttpProxyConnection.of(channelContext);
+    HttpProxyExchange exchange = connection == null ? null : connection.exchange;
+    if (exchange == null) {
+      // 空闲的连接上不应该收到数据
+      Tio.remove(channelContext, "unexpected data from upstream");
+      channelContext.consumedLength = readableLength;
+      return null;
+    }
+    exchange.onUpstreamData(connection, buffer);
+    return null;
+  }
+
+  @Override
+  public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext channelContext) {
+    return packet.getPreEncodedByteBuffer();
+  }
+
+  @Override
+  public void handler(Packet packet, ChannelContext channelContext) throws Exception {
+  }
+
+  @Override
+  public Packet heartbeatPacket(ChannelContext channelContext) {
+    return null;
+  }
+}
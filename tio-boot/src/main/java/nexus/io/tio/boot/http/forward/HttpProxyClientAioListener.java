@@ -0,0 +1,18 @@
+package nexus.io.tio.boot.http.forward;
+
+import nexus.io.tio.client.DefaultClientAioListener;
+import nexus.io.tio.core.ChannelContext;
+
+/**
+ * 上游连接关闭时从连接池中去掉，正在转发的请求按上游关闭处理
+ */
+public class HttpProxyClientAioListener extends DefaultClientAioListener {
+
+  @Override
+  public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) {
+    HttpProxyConnection connection = HttpProxyConnection.of(channelContext);
+    if (connection != null) {
+      connection.onClosed();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package nexus.io.tio.boot.http.forward;
+
+import nexus.io.tio.client.ClientChannelContext;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.Tio;
+
+/**
+ * 到上游的一个keep-alive连接，同一时间只转发一个请求，空闲时放在HttpProxyClient的连接池中
+ */
+public class HttpProxyConnection {
+  /**
+   * 上游连接的ChannelContext中保存HttpProxyConnection的属性名
+   */
+  static final String ATTRIBUTE_KEY = "tio-http-proxy-connection";
+
+  final HttpProxyClient client;
+  /**
+   * 连接池的key，scheme://host:port
+   */
+  final String key;
+  final ClientChannelContext channelContext;
+  /**
+   * 正在转发的请求，空闲时为null
+   */
+  volatile HttpProxyExchange exchange;
+  /**
+   * 已经转发过请求。复用的连接可能刚好被上游关闭，这时还没收到响应的请求可以换个连接重发
+   */
+  volatile boolean reused = false;
+  /**
+   * 放回连接池的时间
+   */
+  volatile long idleSince;
+
+  HttpProxyConnection(HttpProxyClient client, String key, ClientChannelContext channelContext) {
+    this.client = client;
+    this.key = key;
+    this.channelContext = channelContext;
+  }
+
+  static HttpProxyConnection of(ChannelContext channelContext) {
+    return (HttpProxyConnection) channelContext.getAttribute(ATTRIBUTE_KEY);
+  }
+
+  boolean isOpen() {
+    return !channelContext.isClosed && !channelContext.isRemoved && !channelContext.isWaitingClose;
+  }
+
+  void close(String remark) {
+    Tio.remove(channelContext, remark);
+  }
+
+  /**
+   * 连接关闭时由HttpProxyClientAioListener调用
+   */
+  void onClosed() {
+    client.onClosed(this);
+    HttpProxyExchange exchange = this.exchange;
+    if (exchange != null) {
+      exchange.onUpstreamClosed(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return key + ", " + channelContext;
+  }
+}
@@ -0,0 +1,954 @@
+package nexus.io.tio.boot.http.forward;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.aio.Packet;
+import nexus.io.enhance.channel.EnhanceAsynchronousSocketChannel;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
+import nexus.io.tio.core.Tio;
+import nexus.io.tio.http.common.Cookie;
+import nexus.io.tio.http.common.HeaderName;
+import nexus.io.tio.http.common.HeaderValue;
+import nexus.io.tio.http.common.HttpConst;
+import nexus.io.tio.http.common.HttpMethod;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.RequestHeaderKey;
+import nexus.io.tio.http.common.body.HttpRequestBody;
+import nexus.io.tio.http.common.utils.HttpIpUtils;
+import nexus.io.tio.utils.SystemTimer;
+import nexus.io.tio.utils.snowflake.SnowflakeIdUtils;
+import nexus.io.tio.utils.thread.TioThreadUtils;
+
+/**
+ * 一次转发：把下游的请求写给上游，上游的响应边解析边发给下游，不在内存中攒整个响应体。<br>
+ * 1、响应头收齐后先发给下游；响应体有Content-Length或是chunked时原样转发；上游靠关闭连接结束响应体时，下游是HTTP/1.1的改成chunked，
+ * HTTP/1.0的发完后关闭连接；下游是HTTP/1.0而上游是chunked时，去掉chunked的格式再发<br>
+ * 2、反压：下游排队的字节数超过高水位时暂停读上游，降到一半以下再恢复；请求交给上游的socket之前暂停读下游<br>
+ * 3、响应结束后上游连接放回连接池；复用的连接还没收到响应就被上游关闭时，幂等的请求换一个新连接重发一次，
+ * 其它请求可能已经被上游处理过，不重发，直接返回502<br>
+ * 4、结束转发的情况(正常结束、出错、上下游连接关闭、超时)都经过finish()，在那里删除请求体的临时文件等<br>
+ * 上游连接的读线程、上下游连接的关闭、下游的反压回调、超时检查都会改变转发的状态，这些入口都持有本对象的锁。<br>
+ * 下游开启了pipelining时，转发的响应与其它异步响应一样不参与排序
+ */
+public class HttpProxyExchange {
+  private static final Logger log = LoggerFactory.getLogger(HttpProxyExchange.class);
+
+  /**
+   * 逐跳的头，不转发
+   */
+  private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList("connection", "keep-alive",
+      "proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", "trailers",
+      "transfer-encoding", "upgrade"));
+
+  private static final byte[] CRLF = { '\r', '\n' };
+  private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * 响应头最多多少字节
+   */
+  private static final int MAX_HEAD_LENGTH = 64 * 1024;
+  /**
+   * chunk-size行、trailer行最多多少字节
+   */
+  private static final int MAX_LINE_LENGTH = 8 * 1024;
+  /**
+   * 上游连接不支持零拷贝时，请求体的临时文件每次读多少字节发出去
+   */
+  private static final int REQUEST_BODY_CHUNK = 64 * 1024;
+
+  private static final int HEAD = 0;
+  private static final int BODY_LENGTH = 1;
+  private static final int CHUNK_SIZE = 2;
+  private static final int CHUNK_DATA = 3;
+  private static final int CHUNK_DATA_END = 4;
+  private static final int CHUNK_TRAILER = 5;
+  private static final int BODY_UNTIL_CLOSE = 6;
+  private static final int DONE = 7;
+
+  private final HttpProxyClient client;
+  private final URI uri;
+  final boolean ssl;
+  final String host;
+  final int port;
+  final String key;
+  private final HttpRequest request;
+  private final ChannelContext downstream;
+  private final RequestProxyCallback callback;
+  private final long id = SnowflakeIdUtils.id();
+
+  private byte[] requestHead;
+  /**
+   * 请求体较大、已经落盘时，用零拷贝发给上游，finish()时删除
+   */
+  private File requestBodyFile;
+  /**
+   * 不能零拷贝时已经发出的请求体字节数
+   */
+  private long requestBodySent;
+  private long startTime;
+
+  private volatile HttpProxyConnection connection;
+  private boolean retried = false;
+  private final AtomicBoolean finished = new AtomicBoolean(false);
+  private final Runnable downstreamCloseHook = this::onDownstreamClosed;
+  /**
+   * 最后一次收到上游数据的时间，请求发给上游时也更新
+   */
+  private volatile long lastReadTime;
+  private ScheduledFuture<?> timeoutFuture;
+
+  private int state = HEAD;
+  private long remaining;
+  /**
+   * 收到过上游响应的数据
+   */
+  private volatile boolean responseStarted = false;
+  private volatile boolean headSent = false;
+  /**
+   * chunked原样转发
+   */
+  private boolean chunkedPassthrough;
+  /**
+   * 上游靠关闭连接结束响应体，转给下游时改成chunked
+   */
+  private boolean rechunk;
+  /**
+   * 下游是HTTP/1.0，最后一个packet要等到响应结束时才知道，先留着，发的时候关闭连接
+   */
+  private boolean holdLast;
+  private Packet held;
+  private boolean upstreamKeepAlive;
+  private boolean downstreamKeepAlive;
+  private volatile boolean readPaused = false;
+
+  private ByteBuffer out;
+
+  private HttpResponse head;
+  private int statusCode;
+  private long elapsed;
+  private ByteArrayOutputStream capturedBody;
+
+  HttpProxyExchange(HttpProxyClient client, URI uri, boolean ssl, int port, HttpRequest request,
+      RequestProxyCallback callback) {
+    this.client = client;
+    this.uri = uri;
+    this.ssl = ssl;
+    this.host = uri.getHost();
+    this.port = port;
+    this.key = (ssl ? "https://" : "http://") + host + ":" + port;
+    this.request = request;
+    this.downstream = request.channelContext;
+    this.callback = callback;
+  }
+
+  /**
+   * 在请求线程中准备好发给上游的请求(业务方法返回后请求体的临时文件会被删除)
+   *
+   * @return false: 请求体已经按表单边收边解析，没有原始数据，不能异步转发
+   */
+  boolean prepare() {
+    byte[] body = request.getBody();
+    HttpRequestBody requestBody = request.getRequestBody();
+    File file = null;
+    long bodyLength = 0;
+    if (body != null) {
+      bodyLength = body.length;
+    } else if (requestBody != null) {
+      if (requestBody.isInMemory()) {
+        body = requestBody.getBytes();
+        bodyLength = body.length;
+      } else {
+        file = requestBody.getFile();
+        bodyLength = requestBody.getLength();
+      }
+    } else if (request.getContentLength() > 0) {
+      return false;
+    }
+
+    String realIp = HttpIpUtils.getRealIp(request);
+    byte[] headBytes = buildRequestHead(realIp, bodyLength, body != null || file != null);
+    if (body != null && body.length > 0) {
+      requestHead = Arrays.copyOf(headBytes, headBytes.length + body.length);
+      System.arraycopy(body, 0, requestHead, headBytes.length, body.length);
+    } else {
+      requestHead = headBytes;
+    }
+    if (file != null) {
+      // 放在最后，改名后转发一定会走到finish()
+      File moved = new File(file.getPath() + ".proxy");
+      if (!file.renameTo(moved)) {
+        return false;
+      }
+      requestBodyFile = moved;
+    }
+
+    if (callback != null) {
+      TioThreadUtils.submit(() -> {
+        try {
+          callback.saveRequest(id, realIp, request);
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+        }
+      });
+    }
+    startTime = SystemTimer.currTime;
+    return true;
+  }
+
+  private byte[] buildRequestHead(String realIp, long bodyLength, boolean hasBody) {
+    StringBuilder sb = new StringBuilder(512);
+    String path = uri.getRawPath();
+    sb.append(request.getRequestLine().getMethod().name()).append(' ');
+    if (path != null && path.length() > 1) {
+      sb.append(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+    }
+    sb.append(request.getRequestLine().getPathAndQuery()).append(" HTTP/1.1\r\n");
+    sb.append(RequestHeaderKey.Host).append(": ").append(host);
+    if (port != (ssl ? 443 : 80)) {
+      sb.append(':').append(port);
+    }
+    sb.append("\r\n");
+
+    Map<String, String> headers = request.getHeaders();
+    Set<String> connectionTokens = tokens(headers.get(RequestHeaderKey.Connection));
+    for (Map.Entry<String, String> entry : headers.entrySet()) {
+      String name = entry.getKey();
+      if (HOP_BY_HOP_HEADERS.contains(name) || connectionTokens.contains(name) || RequestHeaderKey.Host.equals(name)
+          || RequestHeaderKey.Content_Length.equals(name) || RequestHeaderKey.X_forwarded_For.equals(name)
+          || "expect".equals(name)) {
+        continue;
+      }
+      sb.append(name).append(": ").append(entry.getValue()).append("\r\n");
+    }
+    sb.append(RequestHeaderKey.X_forwarded_For).append(": ").append(realIp).append("\r\n");
+    if (hasBody || bodyLength > 0) {
+      sb.append(RequestHeaderKey.Content_Length).append(": ").append(bodyLength).append("\r\n");
+    }
+    sb.append("\r\n");
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 开始转发：先挂上下游连接的关闭回调，再分配上游连接
+   */
+  void start() {
+    downstream.addCloseHook(downstreamCloseHook);
+    if (finished.get()) {
+      return;
+    }
+    try {
+      client.acquire(this, false);
+    } catch (Throwable e) {
+      log.error("proxy to {} error", key, e);
+      synchronized (this) {
+        if (finish()) {
+          sendBadGateway();
+        }
+      }
+    }
+  }
+
+  /**
+   * 拿到上游连接后发送请求
+   */
+  synchronized void onConnected(HttpProxyConnection connection) {
+    if (finished.get() || isDownstreamClosed()) {
+      // 下游已经走了，连接还没用过，放回连接池
+      if (finish()) {
+        endResponse();
+      }
+      client.release(connection);
+      return;
+    }
+    this.connection = connection;
+    connection.exchange = this;
+
+    ChannelContext upstream = connection.channelContext;
+    Packet packet = new Packet();
+    packet.setPreEncodedByteBuffer(ByteBuffer.wrap(requestHead));
+    // 只有EnhanceAsynchronousSocketChannel支持发送fileBody，TioClient的连接要自己分块发
+    boolean pump = requestBodyFile != null
+        && !(upstream.asynchronousSocketChannel instanceof EnhanceAsynchronousSocketChannel);
+    if (requestBodyFile != null && !pump) {
+      packet.setFileBody(requestBodyFile, 0, requestBodyFile.length());
+    }
+    // 请求交给上游的socket之前不再读下游的数据
+    downstream.pauseRead();
+    if (!Tio.send(upstream, packet)) {
+      downstream.resumeRead();
+      connection.close("send request failed");
+      return;
+    }
+    lastReadTime = SystemTimer.currTime;
+    if (pump) {
+      requestBodySent = 0;
+      pumpRequestBody(connection);
+    } else {
+      upstream.sendQueue.onDrained(0, downstream::resumeRead);
+    }
+    if (client.readTimeout > 0) {
+      scheduleTimeout(client.readTimeout);
+    }
+  }
+
+  /**
+   * 把请求体的临时文件分块发给上游，上游排队的数据超过一块时等发出去再读下一块
+   */
+  private synchronized void pumpRequestBody(HttpProxyConnection connection) {
+    if (finished.get() || this.connection != connection) {
+      return;
+    }
+    // 上游在收请求体，不算超时
+    lastReadTime = SystemTimer.currTime;
+    ChannelContext upstream = connection.channelContext;
+    long length = requestBodyFile.length();
+    try (FileChannel fileChannel = FileChannel.open(requestBodyFile.toPath(), StandardOpenOption.READ)) {
+      while (requestBodySent < length && upstream.sendQueue.bytes() <= REQUEST_BODY_CHUNK) {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(REQUEST_BODY_CHUNK, length - requestBodySent));
+        while (chunk.hasRemaining()) {
+          if (fileChannel.read(chunk, requestBodySent + chunk.position()) < 0) {
+            throw new IOException("request body file truncated");
+          }
+        }
+        chunk.flip();
+        requestBodySent += chunk.remaining();
+        Packet packet = new Packet();
+        packet.setPreEncodedByteBuffer(chunk);
+        if (!Tio.send(upstream, packet)) {
+          return;
+        }
+      }
+    } catch (IOException e) {
+      log.error("read request body {} error: {}", requestBodyFile, e.toString());
+      fail(connection, "read request body error");
+      return;
+    }
+    if (requestBodySent < length) {
+      upstream.sendQueue.onDrained(REQUEST_BODY_CHUNK, () -> pumpRequestBody(connection));
+    } else {
+      upstream.sendQueue.onDrained(0, downstream::resumeRead);
+    }
+  }
+
+  synchronized void onConnectFailed() {
+    if (finished.get()) {
+      return;
+    }
+    log.error("can not connect to {}", key);
+    if (finish()) {
+      sendBadGateway();
+    }
+  }
+
+  /**
+   * 上游连接收到数据，由上游连接的读线程调用，处理掉的字节数放在consumedLength中
+   */
+  synchronized void onUpstreamData(HttpProxyConnection connection, ByteBuffer buffer) {
+    lastReadTime = SystemTimer.currTime;
+    ChannelContext upstream = connection.channelContext;
+    int start = buffer.position();
+    int limit = buffer.limit();
+    int pos = start;
+    if (finished.get()) {
+      upstream.consumedLength = limit - start;
+      return;
+    }
+    responseStarted = true;
+    try {
+      loop: while (pos < limit && state != DONE) {
+        switch (state) {
+        case HEAD: {
+          int end = indexOf(buffer, pos, limit, true);
+          if (end < 0) {
+            if (limit - pos > MAX_HEAD_LENGTH) {
+              throw new IllegalStateException("response head too large");
+            }
+            break loop;
+          }
+          parseHead(buffer, pos, end);
+          pos = end + 4;
+          break;
+        }
+        case BODY_LENGTH: {
+          int n = (int) Math.min(remaining, limit - pos);
+          write(buffer, pos, n);
+          capture(buffer, pos, n);
+          pos += n;
+          remaining -= n;
+          if (remaining == 0) {
+            state = DONE;
+          }
+          break;
+        }
+        case CHUNK_SIZE: {
+          int end = indexOf(buffer, pos, limit, false);
+          if (end < 0) {
+            if (limit - pos > MAX_LINE_LENGTH) {
+              throw new IllegalStateException("chunk size line too long");
+            }
+            break loop;
+          }
+          long size = parseChunkSize(buffer, pos, end);
+          if (chunkedPassthrough) {
+            write(buffer, pos, end + 2 - pos);
+          }
+          pos = end + 2;
+          if (size == 0) {
+            state = CHUNK_TRAILER;
+          } else {
+            remaining = size;
+            state = CHUNK_DATA;
+          }
+          break;
+        }
+        case CHUNK_DATA: {
+          int n = (int) Math.min(remaining, limit - pos);
+          write(buffer, pos, n);
+          capture(buffer, pos, n);
+          pos += n;
+          remaining -= n;
+          if (remaining == 0) {
+            state = CHUNK_DATA_END;
+          }
+          break;
+        }
+        case CHUNK_DATA_END: {
+          if (limit - pos < 2) {
+            break loop;
+          }
+          if (buffer.get(pos) != '\r' || buffer.get(pos + 1) != '\n') {
+            throw new IllegalStateException("chunk data not followed by CRLF");
+          }
+          if (chunkedPassthrough) {
+            write(buffer, pos, 2);
+          }
+          pos += 2;
+          state = CHUNK_SIZE;
+          break;
+        }
+        case CHUNK_TRAILER: {
+          int end = indexOf(buffer, pos, limit, false);
+          if (end < 0) {
+            if (limit - pos > MAX_LINE_LENGTH) {
+              throw new IllegalStateException("trailer line too long");
+            }
+            break loop;
+          }
+          if (chunkedPassthrough) {
+            write(buffer, pos, end + 2 - pos);
+          }
+          if (end == pos) {
+            state = DONE;
+          }
+          pos = end + 2;
+          break;
+        }
+        case BODY_UNTIL_CLOSE: {
+          int n = limit - pos;
+          if (rechunk) {
+            ensureOut(n + 16);
+            out.put(Integer.toHexString(n).getBytes(StandardCharsets.US_ASCII)).put(CRLF);
+            write(buffer, pos, n);
+            out.put(CRLF);
+          } else {
+            write(buffer, pos, n);
+          }
+          capture(buffer, pos, n);
+          pos = limit;
+          break;
+        }
+        default:
+          break loop;
+        }
+      }
+    } catch (Throwable e) {
+      log.error("{}, bad response from {}: {}", upstream, key, e.toString());
+      upstream.consumedLength = limit - start;
+      fail(connection, "bad response from upstream");
+      return;
+    }
+    upstream.consumedLength = pos - start;
+
+    if (state == DONE) {
+      flush(true);
+      complete(connection, upstreamKeepAlive && pos == limit);
+    } else {
+      flush(false);
+    }
+  }
+
+  /**
+   * 解析响应头，把状态行和端到端的头转给下游，并确定响应体的格式
+   */
+  private void parseHead(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(start);
+    dup.limit(end);
+    dup.get(bytes);
+    String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\r\n");
+    String statusLine = lines[0];
+    if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+      throw new IllegalStateException("bad status line: " + statusLine);
+    }
+    int code = Integer.parseInt(statusLine.substring(9, 12));
+    if (code == 101) {
+      throw new IllegalStateException("upgrade is not supported");
+    }
+    if (code >= 100 && code < 200) {
+      // 100 Continue、103 Early Hints等中间响应，丢掉，接着等最终的响应
+      return;
+    }
+    String reason = statusLine.length() > 13 ? statusLine.substring(13) : "";
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    HttpResponse head = new HttpResponse(request);
+    for (int i = 1; i < lines.length; i++) {
+      String line = lines[i];
+      int colon = line.indexOf(':');
+      if (colon <= 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      String value = line.substring(colon + 1).trim();
+      if ("set-cookie".equals(name)) {
+        Cookie cookie = new Cookie(null, null, null, null);
+        cookie.setBytes(value.getBytes(StandardCharsets.UTF_8));
+        head.addCookie(cookie);
+        continue;
+      }
+      String old = headers.get(name);
+      headers.put(name, old == null ? value : old + ", " + value);
+    }
+
+    boolean upstream11 = statusLine.startsWith("HTTP/1.1");
+    Set<String> connectionTokens = tokens(headers.get("connection"));
+    upstreamKeepAlive = upstream11 && !connectionTokens.contains("close");
+    boolean downstreamChunked = HttpConst.HttpVersion.V1_1.equals(request.getRequestLine().getVersion());
+    String transferEncoding = headers.get("transfer-encoding");
+    String contentLength = headers.get("content-length");
+
+    head.setStatus(code, reason);
+    head.setSkipAddContentLength(true);
+    for (Map.Entry<String, String> entry : headers.entrySet()) {
+      String name = entry.getKey();
+      if (HOP_BY_HOP_HEADERS.contains(name) || connectionTokens.contains(name) || "content-length".equals(name)
+          || "server".equals(name) || "date".equals(name)) {
+        continue;
+      }
+      head.addHeader(name, entry.getValue());
+    }
+
+    boolean noBody = HttpMethod.HEAD.equals(request.getRequestLine().getMethod()) || code == 204 || code == 304;
+    boolean forceClose = false;
+    if (noBody) {
+      if (contentLength != null) {
+        head.addHeader(HeaderName.Content_Length, HeaderValue.from(contentLength));
+      }
+      state = DONE;
+    } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).endsWith("chunked")) {
+      if (downstreamChunked) {
+        chunkedPassthrough = true;
+        head.addHeader(HeaderName.Transfer_Encoding, HeaderValue.from("chunked"));
+      } else {
+        holdLast = true;
+        forceClose = true;
+      }
+      state = CHUNK_SIZE;
+    } else if (contentLength != null) {
+      remaining = Long.parseLong(contentLength);
+      head.addHeader(HeaderName.Content_Length, HeaderValue.from(contentLength));
+      state = remaining == 0 ? DONE : BODY_LENGTH;
+    } else {
+      upstreamKeepAlive = false;
+      if (downstreamChunked) {
+        rechunk = true;
+        head.addHeader(HeaderName.Transfer_Encoding, HeaderValue.from("chunked"));
+      } else {
+        holdLast = true;
+        forceClose = true;
+      }
+      state = BODY_UNTIL_CLOSE;
+    }
+    downstreamKeepAlive = head.isKeepConnection() && !forceClose;
+    if (forceClose) {
+      head.addHeader(HeaderName.Connection, HeaderValue.Connection.close);
+    }
+
+    this.head = head;
+    this.statusCode = code;
+    this.elapsed = SystemTimer.currTime - startTime;
+    if (callback != null && !noBody) {
+      capturedBody = new ByteArrayOutputStream();
+    }
+    head.setKeepConnection(state != DONE || downstreamKeepAlive);
+    headSent = true;
+    send(head);
+  }
+
+  /**
+   * 本次收到的数据处理完后，把要转发的数据作为一个packet发给下游；下游排队太多时暂停读上游
+   */
+  private void flush(boolean last) {
+    if (out != null && out.position() > 0) {
+      out.flip();
+      Packet packet = new Packet();
+      packet.setPreEncodedByteBuffer(out);
+      out = null;
+      send(packet);
+    }
+    if (last) {
+      if (rechunk) {
+        Packet packet = new Packet();
+        packet.setPreEncodedByteBuffer(ByteBuffer.wrap(LAST_CHUNK));
+        send(packet);
+      }
+      sendHeld(downstreamKeepAlive);
+      return;
+    }
+    if (isDownstreamClosed()) {
+      fail(connection, "downstream closed");
+      return;
+    }
+    if (!readPaused && downstream.sendQueue.bytes() > client.highWaterBytes) {
+      HttpProxyConnection connection = this.connection;
+      readPaused = true;
+      connection.channelContext.pauseRead();
+      downstream.sendQueue.onDrained(client.highWaterBytes / 2, () -> onDownstreamDrained(connection));
+    }
+  }
+
+  private synchronized void onDownstreamDrained(HttpProxyConnection connection) {
+    readPaused = false;
+    // 暂停期间没读上游，不算超时
+    lastReadTime = SystemTimer.currTime;
+    if (isDownstreamClosed()) {
+      fail(connection, "downstream closed");
+    } else {
+      connection.channelContext.resumeRead();
+    }
+  }
+
+  private void send(Packet packet) {
+    if (holdLast) {
+      Packet last = held;
+      held = packet;
+      if (last == null) {
+        return;
+      }
+      packet = last;
+      packet.setKeepConnection(true);
+    }
+    packet.setRespId(request.getId());
+    Tio.send(downstream, packet);
+  }
+
+  private void sendHeld(boolean keepConnection) {
+    Packet last = held;
+    held = null;
+    if (last != null) {
+      last.setKeepConnection(keepConnection);
+      last.setRespId(request.getId());
+      Tio.send(downstream, last);
+    } else if (!keepConnection) {
+      Tio.close(downstream, "proxy response end");
+    }
+  }
+
+  /**
+   * 上游连接关闭
+   */
+  synchronized void onUpstreamClosed(HttpProxyConnection connection) {
+    if (finished.get() || this.connection != connection) {
+      return;
+    }
+    if (state == BODY_UNTIL_CLOSE) {
+      // 响应体到此结束
+      state = DONE;
+      flush(true);
+      complete(connection, false);
+      return;
+    }
+    if (!responseStarted && connection.reused && !retried && isIdempotent(request.getRequestLine().getMethod())) {
+      retried = true;
+      connection.exchange = null;
+      this.connection = null;
+      client.acquire(this, true);
+      return;
+    }
+    if (!headSent) {
+      log.error("{} closed before response", key);
+      if (finish()) {
+        sendBadGateway();
+      }
+    } else {
+      // 响应体不完整，只能关闭下游连接
+      finish();
+      Tio.close(downstream, "upstream closed before response end");
+      endResponse();
+    }
+  }
+
+  /**
+   * 上游可能已经处理过请求，只有幂等的请求可以重发
+   */
+  private static boolean isIdempotent(HttpMethod method) {
+    if (method == null) {
+      return false;
+    }
+    switch (method) {
+    case GET:
+    case HEAD:
+    case OPTIONS:
+    case TRACE:
+    case PUT:
+    case DELETE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * 下游连接关闭：结束转发，响应还没收完的上游连接不能再用
+   */
+  private synchronized void onDownstreamClosed() {
+    // 整个响应已经交给下游，由onUpstreamData/onUpstreamClosed接着把上游连接放回连接池
+    if (state == DONE || !finish()) {
+      return;
+    }
+    endResponse();
+    HttpProxyConnection connection = this.connection;
+    if (connection != null) {
+      connection.exchange = null;
+      connection.close("downstream closed");
+    }
+  }
+
+  private void scheduleTimeout(long delay) {
+    if (timeoutFuture != null) {
+      timeoutFuture.cancel(false);
+    }
+    timeoutFuture = HttpProxyClient.TIMER.schedule(this::onTimeout, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void onTimeout() {
+    timeoutFuture = null;
+    if (finished.get()) {
+      return;
+    }
+    long idle = SystemTimer.currTime - lastReadTime;
+    // 下游反压暂停读上游、重发前正在连接(有连接超时)时不算
+    if (readPaused || connection == null || idle < client.readTimeout) {
+      scheduleTimeout(Math.max(client.readTimeout - idle, 1));
+      return;
+    }
+    log.error("{} no response data for {}ms", key, idle);
+    HttpProxyConnection connection = this.connection;
+    finish();
+    if (headSent) {
+      Tio.close(downstream, "upstream read timeout");
+      endResponse();
+    } else {
+      sendError(504, "Gateway Timeout");
+    }
+    connection.exchange = null;
+    connection.close("read timeout");
+  }
+
+  private void sendBadGateway() {
+    sendError(502, "Bad Gateway");
+  }
+
+  private void sendError(int status, String reason) {
+    HttpResponse response = new HttpResponse(request);
+    response.setStatus(status, reason);
+    response.setBody(reason.getBytes(StandardCharsets.UTF_8));
+    Tio.send(downstream, response);
+    endResponse();
+  }
+
+  /**
+   * 给下游的响应已经全部发出(或下游连接已经关闭)，pipelining时后面请求的响应可以发了
+   */
+  private void endResponse() {
+    PipelineQueue.endStream(downstream, request.getId());
+  }
+
+  /**
+   * 响应已经完整地发给了下游
+   */
+  private void complete(HttpProxyConnection connection, boolean reusable) {
+    if (!finish()) {
+      return;
+    }
+    endResponse();
+    if (reusable) {
+      client.release(connection);
+    } else {
+      connection.exchange = null;
+      connection.close("not reusable");
+    }
+    if (callback != null) {
+      byte[] body = capturedBody == null ? null : capturedBody.toByteArray();
+      HttpResponse head = this.head;
+      TioThreadUtils.submit(() -> {
+        try {
+          Map<HeaderName, HeaderValue> headers = head.getHeaders();
+          callback.saveResponse(id, elapsed, statusCode, headers, headers.get(HeaderName.Content_Encoding), body);
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+        }
+      });
+    }
+  }
+
+  /**
+   * 出错，上游连接不再复用
+   */
+  private void fail(HttpProxyConnection connection, String remark) {
+    if (!finish()) {
+      return;
+    }
+    if (connection != null) {
+      connection.exchange = null;
+      connection.close(remark);
+    }
+    if (headSent) {
+      Tio.close(downstream, remark);
+      endResponse();
+    } else {
+      sendBadGateway();
+    }
+  }
+
+  /**
+   * 所有结束转发的路径都经过这里，清理只做一次
+   *
+   * @return false: 已经结束过
+   */
+  private boolean finish() {
+    if (!finished.compareAndSet(false, true)) {
+      return false;
+    }
+    downstream.removeCloseHook(downstreamCloseHook);
+    if (timeoutFuture != null) {
+      timeoutFuture.cancel(false);
+      timeoutFuture = null;
+    }
+    if (requestBodyFile != null) {
+      requestBodyFile.delete();
+    }
+    return true;
+  }
+
+  private boolean isDownstreamClosed() {
+    return downstream.isClosed || downstream.isRemoved || downstream.isWaitingClose;
+  }
+
+  private void write(ByteBuffer buffer, int pos, int n) {
+    ensureOut(n);
+    ByteBuffer dup = buffer.duplicate();
+    dup.limit(pos + n);
+    dup.position(pos);
+    out.put(dup);
+  }
+
+  private void ensureOut(int n) {
+    if (out == null) {
+      out = ByteBuffer.allocate(Math.max(n + 16, 1024));
+    } else if (out.remaining() < n) {
+      ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + n + 16));
+      out.flip();
+      bigger.put(out);
+      out = bigger;
+    }
+  }
+
+  private void capture(ByteBuffer buffer, int pos, int n) {
+    if (capturedBody == null) {
+      return;
+    }
+    if (capturedBody.size() + n > client.callbackMaxBodyLength) {
+      capturedBody = null;
+      return;
+    }
+    byte[] bytes = new byte[n];
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(pos);
+    dup.get(bytes);
+    capturedBody.write(bytes, 0, n);
+  }
+
+  /**
+   * @param headEnd true: 找\r\n\r\n，false: 找\r\n
+   * @return 位置，没找到时返回-1
+   */
+  private static int indexOf(ByteBuffer buffer, int from, int limit, boolean headEnd) {
+    int need = headEnd ? 4 : 2;
+    for (int i = from; i + need <= limit; i++) {
+      if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+          && (!headEnd || (buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n'))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static long parseChunkSize(ByteBuffer buffer, int from, int end) {
+    long size = 0;
+    int digits = 0;
+    for (int i = from; i < end; i++) {
+      int c = buffer.get(i);
+      int d = Character.digit(c, 16);
+      if (d < 0) {
+        if (c == ';' || c == ' ' || c == '\t') {
+          break;
+        }
+        throw new IllegalStateException("bad chunk size");
+      }
+      if (++digits > 15) {
+        throw new IllegalStateException("chunk size too large");
+      }
+      size = (size << 4) + d;
+    }
+    if (digits == 0) {
+      throw new IllegalStateException("bad chunk size");
+    }
+    return size;
+  }
+
+  private static Set<String> tokens(String value) {
+    Set<String> set = new HashSet<>();
+    if (value != null) {
+      for (String token : value.split(",")) {
+        token = token.trim().toLowerCase(Locale.ROOT);
+        if (!token.isEmpty()) {
+          set.add(token);
+        }
+      }
+    }
+    return set;
+  }
+}
@@ -25,6 +25,18 @@ public class TioHttpProxy {
     reverseProxy(targetUrl, httpRequest, httpResponse, null);
   }
 
+  /**
+   * 不占用请求线程的转发，上游的响应边收边发给下游，见HttpProxyClient
+   */
+  public static HttpResponse reverseProxyAsync(String targetUrl, HttpRequest httpRequest, HttpResponse httpResponse) {
+    return HttpProxyClient.INSTANCE.reverseProxy(targetUrl, httpRequest, httpResponse, null);
+  }
+
+  public static HttpResponse reverseProxyAsync(String targetUrl, HttpRequest httpRequest, HttpResponse httpResponse,
+      RequestProxyCallback callback) {
+    return HttpProxyClient.INSTANCE.reverseProxy(targetUrl, httpRequest, httpResponse, callback);
+  }
+
   public static void reverseProxy(String targetUrl, HttpRequest httpRequest, HttpResponse httpResponse, RequestProxyCallback callback) {
     // id
 
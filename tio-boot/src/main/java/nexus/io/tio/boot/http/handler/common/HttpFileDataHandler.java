@@ -62,9 +62,9 @@ public class HttpFileDataHandler implements HttpRequestHandler {
       return response;
     }
 
-    // 检查是否存在 Range 头信息
+    // 检查是否存在 Range 头信息，If-Range 不匹配时文件已变化，返回全量
     String range = request.getHeader("range");
-    if (range != null && range.startsWith("bytes=")) {
+    if (range != null && range.startsWith("bytes=") && HttpFileDataUtils.isIfRangeValid(request, lastModified, etag)) {
       return HttpFileDataUtils.handleRangeRequest(response, file, range, fileLength, contentType);
     } else {
       return HttpFileDataUtils.handleFullFileRequest(response, file, fileLength, contentType);
@@ -0,0 +1,160 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+
+import nexus.io.annotation.EnableCORS;
+import nexus.io.annotation.GatewayCheck;
+import nexus.io.annotation.RequiresAuthentication;
+import nexus.io.annotation.RequiresPermissions;
+import nexus.io.tio.http.server.model.HttpCors;
+
+/**
+ * 一个controller方法编译后的调用器，路由扫描完成后由TioBootHttpControllerRouter生成，生成后只读。<br>
+ * 请求处理时不再按method查bean、参数名、参数类型和MethodAccess，也不再扫描注解，ReflectASM按下标调用而不是按方法名
+ */
+public class ActionInvoker {
+  private final Object bean;
+  private final Method method;
+  /**
+   * 为null时用原生反射(Android或ReflectASM不支持)
+   */
+  private final MethodAccess methodAccess;
+  private final int methodIndex;
+  private final String[] paramNames;
+  private final Class<?>[] paramTypes;
+  private final Type[] genericParamTypes;
+  /**
+   * 每个参数的赋值策略，没有参数时为null
+   */
+  private final ParamBinder[] paramBinders;
+
+  private final GatewayCheck gatewayCheck;
+  private final boolean requiresAuthentication;
+  private final RequiresPermissions requiresPermissions;
+  /**
+   * 方法或controller上有@EnableCORS时才有值
+   */
+  private final HttpCors cors;
+
+  public ActionInvoker(Object bean, Method method, MethodAccess methodAccess, String[] paramNames,
+      Class<?>[] paramTypes) {
+    this.bean = bean;
+    this.method = method;
+    this.paramNames = paramNames;
+    this.paramTypes = paramTypes;
+    this.genericParamTypes = method.getGenericParameterTypes();
+    if (paramTypes != null && paramTypes.length > 0) {
+      this.paramBinders = ParamBinders.compile(paramNames, paramTypes, genericParamTypes);
+    } else {
+      this.paramBinders = null;
+    }
+
+    int methodIndex = -1;
+    if (methodAccess != null && Modifier.isPublic(method.getModifiers())) {
+      try {
+        methodIndex = methodAccess.getIndex(method.getName(), method.getParameterTypes());
+      } catch (IllegalArgumentException e) {
+        methodAccess = null;
+      }
+    } else {
+      methodAccess = null;
+    }
+    if (methodAccess == null) {
+      // ReflectASM生成的类访问不到非public方法，用原生反射
+      try {
+        method.setAccessible(true);
+      } catch (RuntimeException e) {
+        // 访问不到时调用会抛IllegalAccessException，与原来一样
+      }
+    }
+    this.methodAccess = methodAccess;
+    this.methodIndex = methodIndex;
+
+    this.gatewayCheck = method.getAnnotation(GatewayCheck.class);
+    this.requiresAuthentication = method.isAnnotationPresent(RequiresAuthentication.class);
+    this.requiresPermissions = method.getAnnotation(RequiresPermissions.class);
+
+    EnableCORS enableCORS = method.getAnnotation(EnableCORS.class);
+    if (enableCORS == null) {
+      enableCORS = bean.getClass().getAnnotation(EnableCORS.class);
+    }
+    this.cors = enableCORS == null ? null : new HttpCors(enableCORS);
+  }
+
+  /**
+   * 调用controller方法
+   *
+   * @param paramValues 没有参数时为null
+   * @return 方法的返回值
+   */
+  public Object invoke(Object[] paramValues) {
+    if (methodAccess != null) {
+      // 非 Android 平台，并且有 MethodAccess，就用它（ReflectASM）
+      if (paramValues == null) {
+        return methodAccess.invoke(bean, methodIndex);
+      } else {
+        return methodAccess.invoke(bean, methodIndex, paramValues);
+      }
+    }
+    // Android 平台或没有拿到 MethodAccess，用原生反射
+    try {
+      if (paramValues == null) {
+        return method.invoke(bean);
+      } else {
+        return method.invoke(bean, paramValues);
+      }
+    } catch (IllegalAccessException e) {
+      e.printStackTrace();
+    } catch (IllegalArgumentException e) {
+      e.printStackTrace();
+    } catch (InvocationTargetException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  public Object getBean() {
+    return bean;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public String[] getParamNames() {
+    return paramNames;
+  }
+
+  public Class<?>[] getParamTypes() {
+    return paramTypes;
+  }
+
+  public Type[] getGenericParamTypes() {
+    return genericParamTypes;
+  }
+
+  public ParamBinder[] getParamBinders() {
+    return paramBinders;
+  }
+
+  public GatewayCheck getGatewayCheck() {
+    return gatewayCheck;
+  }
+
+  public boolean isRequiresAuthentication() {
+    return requiresAuthentication;
+  }
+
+  public RequiresPermissions getRequiresPermissions() {
+    return requiresPermissions;
+  }
+
+  public HttpCors getCors() {
+    return cors;
+  }
+}
@@ -1,13 +1,8 @@
 package nexus.io.tio.boot.http.handler.controller;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
-
-import nexus.io.annotation.EnableCORS;
 import nexus.io.annotation.GatewayCheck;
-import nexus.io.annotation.RequiresAuthentication;
 import nexus.io.annotation.RequiresPermissions;
 import nexus.io.tio.boot.aspect.IGateWayCheckAspect;
 import nexus.io.tio.boot.aspect.IRequiresAuthenticationAspect;
@@ -46,62 +41,71 @@ public class DynamicRequestController {
    * @return The HTTP response after processing.
    */
   public HttpResponse process(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment, TioBootHttpControllerRouter routes, Method actionMethod) {
+    return process(request, httpConfig, compatibilityAssignment, routes.getInvoker(actionMethod));
+  }
+
+  /**
+   * Processes the incoming HTTP request with the invoker compiled for the matched route.
+   *
+   * @param request                  The incoming HTTP request.
+   * @param httpConfig               The HTTP configuration.
+   * @param compatibilityAssignment Flag indicating compatibility assignment.
+   * @param invoker                  The compiled invoker of the controller method.
+   * @return The HTTP response after processing.
+   */
+  public HttpResponse process(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment, ActionInvoker invoker) {
 
     // Execute pre-action checks
-    HttpResponse response = performPreActionChecks(request, routes, actionMethod);
+    HttpResponse response = performPreActionChecks(request, invoker);
     if (response != null) {
       return response;
     }
 
     ControllerInterceptor controllerInterceptor = TioBootServer.me().getControllerInterceptor();
     if (controllerInterceptor != null) {
-      response = controllerInterceptor.before(request, actionMethod);
+      response = controllerInterceptor.before(request, invoker.getMethod());
       if (response != null) {
         return response;
       }
-      Object actionReturnValue = executeAction(request, httpConfig, compatibilityAssignment, routes, actionMethod);
+      Object actionReturnValue = executeAction(request, httpConfig, compatibilityAssignment, invoker);
       // Process post-action response
-      Object targetController = routes.METHOD_BEAN_MAP.get(actionMethod);
-      actionReturnValue = controllerInterceptor.after(request, targetController, actionMethod, actionReturnValue);
-      response = processPostAction(targetController, actionMethod, actionReturnValue);
+      actionReturnValue = controllerInterceptor.after(request, invoker.getBean(), invoker.getMethod(), actionReturnValue);
+      response = processPostAction(invoker, actionReturnValue);
 
     } else {
       // Execute the controller action
-      Object actionReturnValue = executeAction(request, httpConfig, compatibilityAssignment, routes, actionMethod);
+      Object actionReturnValue = executeAction(request, httpConfig, compatibilityAssignment, invoker);
       // Process post-action response
-      Object targetController = routes.METHOD_BEAN_MAP.get(actionMethod);
-      response = processPostAction(targetController, actionMethod, actionReturnValue);
+      response = processPostAction(invoker, actionReturnValue);
     }
 
     return response;
   }
 
   /**
-   * Performs pre-action checks based on annotations present on the controller method.
+   * Performs pre-action checks based on the annotations resolved when the invoker was compiled.
    *
-   * @param request      The incoming HTTP request.
-   * @param routes       The HTTP controller router.
-   * @param actionMethod The controller method to check.
+   * @param request The incoming HTTP request.
+   * @param invoker The compiled invoker of the controller method.
    * @return An HTTP response if any pre-action check fails; otherwise, null.
    */
-  private HttpResponse performPreActionChecks(HttpRequest request, TioBootHttpControllerRouter routes, Method actionMethod) {
-    Object targetController = routes.METHOD_BEAN_MAP.get(actionMethod);
+  private HttpResponse performPreActionChecks(HttpRequest request, ActionInvoker invoker) {
+    Object targetController = invoker.getBean();
+    Method actionMethod = invoker.getMethod();
 
     // GatewayCheck Annotation
-    if (actionMethod.isAnnotationPresent(GatewayCheck.class)) {
-      GatewayCheck gatewayCheckAnnotation = actionMethod.getAnnotation(GatewayCheck.class);
-      if (gatewayCheckAnnotation != null) {
-        if (gatewayCheckAspect == null) {
-          gatewayCheckAspect = TioBootServer.me().getGateWayCheckAspect();
-        }
-        if (gatewayCheckAspect != null) {
-          return gatewayCheckAspect.check(request, targetController, actionMethod, gatewayCheckAnnotation);
-        }
+    GatewayCheck gatewayCheckAnnotation = invoker.getGatewayCheck();
+    if (gatewayCheckAnnotation != null) {
+      if (gatewayCheckAspect == null) {
+        gatewayCheckAspect = TioBootServer.me().getGateWayCheckAspect();
+      }
+      if (gatewayCheckAspect != null) {
+        return gatewayCheckAspect.check(request, targetController, actionMethod, gatewayCheckAnnotation);
       }
     }
 
     // RequiresAuthentication Annotation
-    if (actionMethod.isAnnotationPresent(RequiresAuthentication.class)) {
+    if (invoker.isRequiresAuthentication()) {
       if (requiresAuthenticationAspect == null) {
         requiresAuthenticationAspect = TioBootServer.me().getRequiresAuthenticationAspect();
       }
@@ -111,16 +115,14 @@ public class DynamicRequestController {
     }
 
     // RequiresPermissions Annotation
-    if (actionMethod.isAnnotationPresent(RequiresPermissions.class)) {
-      RequiresPermissions requiresPermissionsAnnotation = actionMethod.getAnnotation(RequiresPermissions.class);
-      if (requiresPermissionsAnnotation != null) {
-        if (requiresPermissionsAspect == null) {
-          requiresPermissionsAspect = TioBootServer.me().getRequiresPermissionsAspect();
-        }
-
-        if (requiresPermissionsAspect != null) {
-          return requiresPermissionsAspect.check(request, targetController, actionMethod, requiresPermissionsAnnotation);
-        }
+    RequiresPermissions requiresPermissionsAnnotation = invoker.getRequiresPermissions();
+    if (requiresPermissionsAnnotation != null) {
+      if (requiresPermissionsAspect == null) {
+        requiresPermissionsAspect = TioBootServer.me().getRequiresPermissionsAspect();
+      }
+
+      if (requiresPermissionsAspect != null) {
+        return requiresPermissionsAspect.check(request, targetController, actionMethod, requiresPermissionsAnnotation);
       }
     }
 
@@ -133,27 +135,17 @@ public class DynamicRequestController {
    * @param request                  The incoming HTTP request.
    * @param httpConfig               The HTTP configuration.
    * @param compatibilityAssignment Flag indicating compatibility assignment.
-   * @param routes                   The HTTP controller router.
-   * @param actionMethod             The controller method to execute.
+   * @param invoker                  The compiled invoker of the controller method.
    * @return The return value from the controller method.
    */
-  private Object executeAction(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment,
-      //
-      TioBootHttpControllerRouter routes, Method actionMethod) {
-
-    String[] paramNames = routes.METHOD_PARAM_NAME_MAP.get(actionMethod);
-    Class<?>[] parameterTypes = routes.METHOD_PARAM_TYPE_MAP.get(actionMethod);
-
-    Object actionReturnValue = null;
-    Object targetController = routes.METHOD_BEAN_MAP.get(actionMethod);
-    MethodAccess methodAccess = TioBootHttpControllerRouter.BEAN_METHODACCESS_MAP.get(targetController);
-    boolean runOnAndroid = TioBootServer.me().getServerTioConfig().runOnAndroid;
+  private Object executeAction(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment, ActionInvoker invoker) {
+    ParamBinder[] paramBinders = invoker.getParamBinders();
+    Object targetController = invoker.getBean();
+    Method actionMethod = invoker.getMethod();
 
     Object[] paramValues = null;
-    if (parameterTypes != null && parameterTypes.length > 0) {
-      paramValues = TioActionResponseProcessor.buildFunctionParamValues(request, httpConfig,
-          //
-          compatibilityAssignment, paramNames, parameterTypes, actionMethod.getGenericParameterTypes());
+    if (paramBinders != null) {
+      paramValues = ParamBinders.bind(paramBinders, request, httpConfig, compatibilityAssignment);
     }
 
     LoggingInterceptor loggingInterceptor = TioBootServer.me().getLoggingInterceptor();
@@ -161,38 +153,8 @@ public class DynamicRequestController {
       loggingInterceptor.before(request, targetController, actionMethod, paramValues);
     }
 
-    if (!runOnAndroid && methodAccess != null) {
-      // 非 Android 平台，并且有 MethodAccess，就用它（ReflectASM）
-      String name = actionMethod.getName();
-      if (paramValues == null) {
-        actionReturnValue = methodAccess.invoke(targetController, name);
-      } else {
-        actionReturnValue = methodAccess.invoke(targetController, name, paramValues);
-      }
-    } else {
-      // Android 平台或没有拿到 MethodAccess，用原生反射
-      if (paramValues == null) {
-        try {
-          actionReturnValue = actionMethod.invoke(targetController);
-        } catch (IllegalAccessException e) {
-          e.printStackTrace();
-        } catch (IllegalArgumentException e) {
-          e.printStackTrace();
-        } catch (InvocationTargetException e) {
-          e.printStackTrace();
-        }
-      } else {
-        try {
-          actionReturnValue = actionMethod.invoke(targetController, paramValues);
-        } catch (IllegalAccessException e) {
-          e.printStackTrace();
-        } catch (IllegalArgumentException e) {
-          e.printStackTrace();
-        } catch (InvocationTargetException e) {
-          e.printStackTrace();
-        }
-      }
-    }
+    Object actionReturnValue = invoker.invoke(paramValues);
+
     if (loggingInterceptor != null) {
       actionReturnValue = loggingInterceptor.after(request, targetController, actionMethod, paramValues, actionReturnValue);
     }
@@ -203,23 +165,19 @@ public class DynamicRequestController {
   /**
    * Processes the return value from the controller method to generate an HTTP response.
    *
-   * @param targetController The controller instance.
-   * @param actionMethod     The controller method executed.
+   * @param invoker           The compiled invoker of the controller method.
    * @param actionReturnValue The return value from the controller method.
    * @return The HTTP response after processing.
    */
-  private HttpResponse processPostAction(Object targetController, Method actionMethod, Object actionReturnValue) {
+  private HttpResponse processPostAction(ActionInvoker invoker, Object actionReturnValue) {
     // Generate HTTP response from the action's return value
     HttpResponse response = TioActionResponseProcessor.afterExecuteAction(actionReturnValue);
 
-    // Enable CORS if @EnableCORS annotation is present
-    EnableCORS enableCORS = actionMethod.getAnnotation(EnableCORS.class);
-    if (enableCORS == null) {
-      enableCORS = targetController.getClass().getAnnotation(EnableCORS.class);
-    }
-    if (enableCORS != null) {
-      CORSUtils.enableCORS(response, new HttpCors(enableCORS));
+    // Enable CORS if @EnableCORS annotation is present on the method or the controller
+    HttpCors cors = invoker.getCors();
+    if (cors != null) {
+      CORSUtils.enableCORS(response, cors);
     }
     return response;
   }
-}
\ No newline at end of file
+}
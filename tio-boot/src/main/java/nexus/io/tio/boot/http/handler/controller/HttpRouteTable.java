@@ -0,0 +1,349 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import nexus.io.controller.PathUnitVo;
+import nexus.io.controller.VariablePathVo;
+import nexus.io.tio.http.common.HttpRequest;
+
+/**
+ * 编译后的controller路由表，由TioBootHttpControllerRouter在路由扫描完成后生成，生成后只读，匹配的结果直接是ActionInvoker。<br>
+ * 固定路径按HTTP方法分到各自的HashMap中；含变量的路径按HTTP方法各建一棵以路径单元为节点的前缀树，
+ * 匹配时对请求路径做一次遍历，不拆分字符串、不创建对象，只给最终选中的路由绑定路径变量。<br>
+ * 选择规则与原来的逐个比较一致：路径单元数相同，固定单元最多的胜出，一样多时后注册的胜出
+ */
+public class HttpRouteTable {
+
+  /**
+   * 不限HTTP方法的固定路径
+   */
+  private final Map<String, ActionInvoker> anyMethodStaticRoutes = new HashMap<>();
+  /**
+   * key: GET、POST等，value: 该方法的固定路径
+   */
+  private final Map<String, Map<String, ActionInvoker>> staticRoutes = new HashMap<>();
+  /**
+   * 不限HTTP方法的变量路径
+   */
+  private final Node anyMethodRoot = new Node();
+  /**
+   * key: GET、POST等，value: 该方法的变量路径加上不限方法的变量路径
+   */
+  private final Map<String, Node> roots = new HashMap<>();
+  private final Map<Method, ActionInvoker> invokers;
+  private int order = 0;
+
+  /**
+   *
+   * @param pathMethodMap    key: /user/update 或 GET /user/update
+   * @param variablePathMap  key: 路径单元数 或 GET 路径单元数
+   * @param invokers         每个controller方法的调用器
+   */
+  public HttpRouteTable(Map<String, Method> pathMethodMap, Map<String, VariablePathVo[]> variablePathMap,
+      Map<Method, ActionInvoker> invokers) {
+    this.invokers = invokers;
+    for (Entry<String, Method> entry : pathMethodMap.entrySet()) {
+      ActionInvoker invoker = invokers.get(entry.getValue());
+      if (invoker == null) {
+        continue;
+      }
+      String key = entry.getKey();
+      int spaceIndex = key.indexOf(' ');
+      if (spaceIndex == -1) {
+        anyMethodStaticRoutes.put(key, invoker);
+      } else {
+        String httpMethod = key.substring(0, spaceIndex);
+        Map<String, ActionInvoker> routes = staticRoutes.get(httpMethod);
+        if (routes == null) {
+          routes = new HashMap<>();
+          staticRoutes.put(httpMethod, routes);
+        }
+        routes.put(key.substring(spaceIndex + 1), invoker);
+      }
+    }
+
+    // 原来先比较指定方法的路由，再比较不限方法的路由，固定单元一样多时后比较的胜出，这里按同样的顺序编号
+    Map<String, VariablePathVo[]> methodVariablePaths = new HashMap<>();
+    for (Entry<String, VariablePathVo[]> entry : variablePathMap.entrySet()) {
+      String key = entry.getKey();
+      int spaceIndex = key.indexOf(' ');
+      if (spaceIndex != -1) {
+        String httpMethod = key.substring(0, spaceIndex);
+        VariablePathVo[] exist = methodVariablePaths.get(httpMethod);
+        VariablePathVo[] value = entry.getValue();
+        if (exist != null) {
+          VariablePathVo[] merged = Arrays.copyOf(exist, exist.length + value.length);
+          System.arraycopy(value, 0, merged, exist.length, value.length);
+          value = merged;
+        }
+        methodVariablePaths.put(httpMethod, value);
+      }
+    }
+    for (Entry<String, VariablePathVo[]> entry : methodVariablePaths.entrySet()) {
+      Node root = new Node();
+      for (VariablePathVo variablePathVo : entry.getValue()) {
+        add(root, variablePathVo);
+      }
+      roots.put(entry.getKey(), root);
+    }
+    for (Entry<String, VariablePathVo[]> entry : variablePathMap.entrySet()) {
+      if (entry.getKey().indexOf(' ') == -1) {
+        for (VariablePathVo variablePathVo : entry.getValue()) {
+          add(anyMethodRoot, variablePathVo);
+          for (Node root : roots.values()) {
+            add(root, variablePathVo);
+          }
+        }
+      }
+    }
+  }
+
+  private void add(Node root, VariablePathVo variablePathVo) {
+    ActionInvoker invoker = invokers.get(variablePathVo.getMethod());
+    if (invoker == null) {
+      return;
+    }
+    PathUnitVo[] pathUnitVos = variablePathVo.getPathUnits();
+    Node node = root;
+    int fixedSegments = 0;
+    for (PathUnitVo pathUnitVo : pathUnitVos) {
+      if (pathUnitVo.isVar()) {
+        if (node.varChild == null) {
+          node.varChild = new Node();
+        }
+        node = node.varChild;
+      } else {
+        String path = pathUnitVo.getPath();
+        if (path == null) {
+          // 变量名在方法参数中不存在的路径单元，原来永远匹配不上
+          return;
+        }
+        node = node.getOrAddChild(path);
+        fixedSegments++;
+      }
+    }
+    node.route = new VariableRoute(variablePathVo, invoker);
+    node.fixedSegments = fixedSegments;
+    node.order = order++;
+  }
+
+  /**
+   *
+   * @param path       请求路径
+   * @param httpMethod 大写的HTTP方法
+   * @return 固定路径对应的调用器，没有时返回null
+   */
+  public ActionInvoker matchStatic(String path, String httpMethod) {
+    ActionInvoker invoker = anyMethodStaticRoutes.get(path);
+    if (invoker != null) {
+      return invoker;
+    }
+    Map<String, ActionInvoker> routes = staticRoutes.get(httpMethod);
+    if (routes != null) {
+      return routes.get(path);
+    }
+    return null;
+  }
+
+  /**
+   * 匹配变量路径，匹配成功时把路径变量放到request的参数中
+   *
+   * @param path       请求路径
+   * @param httpMethod 大写的HTTP方法
+   * @param request
+   * @return 匹配到的变量路径，没有时返回null
+   */
+  public VariableRoute matchVariable(String path, String httpMethod, HttpRequest request) {
+    int end = pathEnd(path);
+    Node matched = match(path, httpMethod, end);
+    if (matched == null) {
+      return null;
+    }
+
+    VariablePathVo variablePathVo = matched.route.getPathVo();
+    int start = 0;
+    for (PathUnitVo pathUnitVo : variablePathVo.getPathUnits()) {
+      int segmentEnd = segmentEnd(path, start, end);
+      if (pathUnitVo.isVar()) {
+        request.addParam(pathUnitVo.getPath(), path.substring(start, segmentEnd));
+      }
+      start = segmentEnd + 1;
+    }
+    return matched.route;
+  }
+
+  /**
+   * 请求路径会命中的路由的路径模板，不绑定路径变量
+   *
+   * @param path       请求路径
+   * @param httpMethod 大写的HTTP方法
+   * @return 固定路径返回path本身，变量路径返回配置的路径如/user/{id}，没有匹配的路由时返回null
+   */
+  public String matchTemplate(String path, String httpMethod) {
+    if (matchStatic(path, httpMethod) != null) {
+      return path;
+    }
+    Node matched = match(path, httpMethod, pathEnd(path));
+    return matched == null ? null : matched.route.getPathVo().getPath();
+  }
+
+  /**
+   * 与String.split("/")一致：末尾的空单元不算
+   */
+  private static int pathEnd(String path) {
+    int end = path.length();
+    while (end > 0 && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    return end;
+  }
+
+  private Node match(String path, String httpMethod, int end) {
+    if (end == 0 && path.length() > 0) {
+      return null;
+    }
+    Node root = roots.get(httpMethod);
+    if (root == null) {
+      root = anyMethodRoot;
+    }
+    return match(root, path, 0, end);
+  }
+
+  /**
+   *
+   * @param node  已匹配到的节点
+   * @param path
+   * @param start 下一个路径单元的起始位置，大于end表示路径单元已经用完
+   * @param end
+   * @return 最优的路由节点
+   */
+  private static Node match(Node node, String path, int start, int end) {
+    if (start > end) {
+      return node.route == null ? null : node;
+    }
+    int segmentEnd = segmentEnd(path, start, end);
+    Node best = null;
+    Node child = node.getChild(path, start, segmentEnd);
+    if (child != null) {
+      best = match(child, path, segmentEnd + 1, end);
+    }
+    if (node.varChild != null) {
+      Node candidate = match(node.varChild, path, segmentEnd + 1, end);
+      if (candidate != null && (best == null || candidate.isBetterThan(best))) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private static int segmentEnd(String path, int start, int end) {
+    int index = path.indexOf('/', start);
+    return index == -1 || index > end ? end : index;
+  }
+
+  /**
+   * 变量路径和它的调用器
+   */
+  public static class VariableRoute {
+    private final VariablePathVo pathVo;
+    private final ActionInvoker invoker;
+
+    private VariableRoute(VariablePathVo pathVo, ActionInvoker invoker) {
+      this.pathVo = pathVo;
+      this.invoker = invoker;
+    }
+
+    public VariablePathVo getPathVo() {
+      return pathVo;
+    }
+
+    public ActionInvoker getInvoker() {
+      return invoker;
+    }
+  }
+
+  private static class Node {
+    /**
+     * 固定路径单元的子节点，按hash排序，查找时二分
+     */
+    private int[] hashes = new int[0];
+    private String[] keys = new String[0];
+    private Node[] children = new Node[0];
+    private Node varChild;
+
+    /**
+     * 在这个节点结束的路由
+     */
+    private VariableRoute route;
+    private int fixedSegments;
+    private int order;
+
+    private boolean isBetterThan(Node other) {
+      if (fixedSegments != other.fixedSegments) {
+        return fixedSegments > other.fixedSegments;
+      }
+      return order > other.order;
+    }
+
+    private Node getChild(String path, int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + path.charAt(i);
+      }
+      int index = Arrays.binarySearch(hashes, hash);
+      if (index < 0) {
+        return null;
+      }
+      while (index > 0 && hashes[index - 1] == hash) {
+        index--;
+      }
+      int length = end - start;
+      for (; index < hashes.length && hashes[index] == hash; index++) {
+        String key = keys[index];
+        if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+          return children[index];
+        }
+      }
+      return null;
+    }
+
+    private Node getOrAddChild(String key) {
+      int hash = key.hashCode();
+      int index = Arrays.binarySearch(hashes, hash);
+      if (index >= 0) {
+        while (index > 0 && hashes[index - 1] == hash) {
+          index--;
+        }
+        for (; index < hashes.length && hashes[index] == hash; index++) {
+          if (keys[index].equals(key)) {
+            return children[index];
+          }
+        }
+      } else {
+        index = -index - 1;
+      }
+      Node child = new Node();
+      int length = hashes.length;
+      int[] newHashes = new int[length + 1];
+      String[] newKeys = new String[length + 1];
+      Node[] newChildren = new Node[length + 1];
+      System.arraycopy(hashes, 0, newHashes, 0, index);
+      System.arraycopy(keys, 0, newKeys, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      newHashes[index] = hash;
+      newKeys[index] = key;
+      newChildren[index] = child;
+      System.arraycopy(hashes, index, newHashes, index + 1, length - index);
+      System.arraycopy(keys, index, newKeys, index + 1, length - index);
+      System.arraycopy(children, index, newChildren, index + 1, length - index);
+      hashes = newHashes;
+      keys = newKeys;
+      children = newChildren;
+      return child;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import java.util.Map;
+
+import nexus.io.tio.http.common.HttpConfig;
+import nexus.io.tio.http.common.HttpRequest;
+
+/**
+ * controller方法一个参数的赋值策略，由ParamBinders在生成ActionInvoker时按参数类型编译好，请求时只执行
+ */
+public interface ParamBinder {
+
+  /**
+   *
+   * @param request
+   * @param httpConfig
+   * @param compatibilityAssignment
+   * @param params                  请求参数，没有参数时为null(此时从JSON请求体中取值)
+   * @return 参数值
+   */
+  Object bind(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment, Map<String, Object[]> params);
+}
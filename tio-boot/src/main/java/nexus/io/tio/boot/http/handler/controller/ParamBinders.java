@@ -0,0 +1,399 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.reflectasm.MethodAccess;
+
+import nexus.io.tio.boot.http.TioRequestContext;
+import nexus.io.tio.http.common.HttpConfig;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.session.HttpSession;
+import nexus.io.tio.http.server.util.ClassUtils;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.utils.hutool.BeanUtil;
+import nexus.io.tio.utils.hutool.StrUtil;
+import nexus.io.tio.utils.json.JsonUtils;
+
+/**
+ * 按参数类型编译ParamBinder，赋值规则与TioActionResponseProcessor.buildFunctionParamValues一致：<br>
+ * HttpRequest、HttpResponse(以及compatibilityAssignment时的HttpSession、HttpConfig、ServerChannelContext)直接赋值；
+ * 有请求参数时，简单类型、数组和UploadFile按参数名取值并转换，其它类型当作bean，按属性名赋值；
+ * 没有请求参数时，把JSON请求体转换为参数类型。<br>
+ * 类型判断、转换器、bean的构造方法和setter都在编译时确定，请求时不再检查类型
+ */
+public class ParamBinders {
+  private static final Logger log = LoggerFactory.getLogger(ParamBinders.class);
+
+  private static final ParamBinder REQUEST_BINDER = (request, httpConfig, compatibilityAssignment, params) -> request;
+  private static final ParamBinder RESPONSE_BINDER = (request, httpConfig, compatibilityAssignment, params) -> TioRequestContext
+      .getResponse();
+
+  /**
+   * 编译一个方法所有参数的ParamBinder
+   *
+   * @param paramNames
+   * @param paramTypes
+   * @param genericParamTypes
+   * @return
+   */
+  public static ParamBinder[] compile(String[] paramNames, Class<?>[] paramTypes, Type[] genericParamTypes) {
+    ParamBinder[] binders = new ParamBinder[paramTypes.length];
+    for (int i = 0; i < paramTypes.length; i++) {
+      binders[i] = compile(paramNames[i], paramTypes[i], genericParamTypes[i]);
+    }
+    return binders;
+  }
+
+  /**
+   * 执行编译好的ParamBinder
+   *
+   * @param binders
+   * @param request
+   * @param httpConfig
+   * @param compatibilityAssignment
+   * @return 参数值
+   */
+  public static Object[] bind(ParamBinder[] binders, HttpRequest request, HttpConfig httpConfig,
+      boolean compatibilityAssignment) {
+    Map<String, Object[]> params = request.getParams();
+    if (params != null && params.size() == 0) {
+      params = null;
+    }
+    Object[] paramValues = new Object[binders.length];
+    for (int i = 0; i < binders.length; i++) {
+      paramValues[i] = binders[i].bind(request, httpConfig, compatibilityAssignment, params);
+    }
+    return paramValues;
+  }
+
+  private static ParamBinder compile(String paramName, Class<?> paramType, Type genericParamType) {
+    if (paramType == HttpRequest.class) {
+      return REQUEST_BINDER;
+    } else if (paramType == HttpResponse.class) {
+      return RESPONSE_BINDER;
+    }
+
+    ParamBinder binder;
+    if (ClassUtils.isSimpleTypeOrArray(paramType)) {
+      binder = new ValueBinder(paramName, paramType);
+    } else {
+      binder = new BeanBinder(paramType, genericParamType);
+    }
+
+    if (paramType == HttpSession.class) {
+      return new CompatibleBinder(binder) {
+        @Override
+        Object get(HttpRequest request, HttpConfig httpConfig) {
+          return request.getHttpSession();
+        }
+      };
+    } else if (paramType == HttpConfig.class) {
+      return new CompatibleBinder(binder) {
+        @Override
+        Object get(HttpRequest request, HttpConfig httpConfig) {
+          return httpConfig;
+        }
+      };
+    } else if (paramType == ServerChannelContext.class) {
+      return new CompatibleBinder(binder) {
+        @Override
+        Object get(HttpRequest request, HttpConfig httpConfig) {
+          return request.channelContext;
+        }
+      };
+    }
+    return binder;
+  }
+
+  /**
+   * compatibilityAssignment时直接赋值，否则按普通参数处理
+   */
+  private static abstract class CompatibleBinder implements ParamBinder {
+    private final ParamBinder binder;
+
+    CompatibleBinder(ParamBinder binder) {
+      this.binder = binder;
+    }
+
+    abstract Object get(HttpRequest request, HttpConfig httpConfig);
+
+    @Override
+    public Object bind(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment,
+        Map<String, Object[]> params) {
+      if (compatibilityAssignment) {
+        return get(request, httpConfig);
+      }
+      return binder.bind(request, httpConfig, compatibilityAssignment, params);
+    }
+  }
+
+  /**
+   * 简单类型、数组和UploadFile
+   */
+  private static class ValueBinder implements ParamBinder {
+    private final String name;
+    private final Class<?> type;
+    private final Converter converter;
+
+    ValueBinder(String name, Class<?> type) {
+      this.name = name;
+      this.type = type;
+      this.converter = converterOf(type);
+    }
+
+    @Override
+    public Object bind(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment,
+        Map<String, Object[]> params) {
+      if (params == null) {
+        String bodyString = request.getBodyString();
+        if (StrUtil.isNotBlank(bodyString)) {
+          log.error("{}:Attempting to deserialize JSON into a simple type or array, which is not supported directly.",
+              type);
+        }
+        return null;
+      }
+      try {
+        return convert(converter, type, params.get(name));
+      } catch (Exception e) {
+        log.error("error while inject request parameters:{},{}", type, name, e);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * 其它类型：有请求参数时按属性赋值，没有时解析JSON请求体
+   */
+  private static class BeanBinder implements ParamBinder {
+    private final Class<?> type;
+    private final Constructor<?> constructor;
+    private final Map<String, Setter> setters;
+    /**
+     * 参数是List<T>时的T
+     */
+    private final Class<?> elementType;
+
+    BeanBinder(Class<?> type, Type genericType) {
+      this.type = type;
+      Constructor<?> constructor = null;
+      try {
+        constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+      } catch (Exception e) {
+        // 没有无参构造方法，与原来一样实例化时报错
+      }
+      this.constructor = constructor;
+      this.setters = compileSetters(type);
+
+      Class<?> elementType = null;
+      if (List.class.isAssignableFrom(type) && genericType instanceof ParameterizedType) {
+        Type[] actualTypeArguments = ((ParameterizedType) genericType).getActualTypeArguments();
+        if (actualTypeArguments.length > 0 && actualTypeArguments[0] instanceof Class) {
+          elementType = (Class<?>) actualTypeArguments[0];
+        }
+      }
+      this.elementType = elementType;
+    }
+
+    @Override
+    public Object bind(HttpRequest request, HttpConfig httpConfig, boolean compatibilityAssignment,
+        Map<String, Object[]> params) {
+      if (params == null) {
+        String bodyString = request.getBodyString();
+        if (StrUtil.isBlank(bodyString)) {
+          return null;
+        }
+        try {
+          if (elementType != null && bodyString.startsWith("[") && bodyString.endsWith("]")) {
+            return JsonUtils.parseArray(bodyString, elementType);
+          }
+          return JsonUtils.parse(bodyString, type);
+        } catch (Exception e) {
+          e.printStackTrace();
+          return null;
+        }
+      }
+
+      Object bean = null;
+      if (constructor == null) {
+        log.error("{} has no default constructor", type.getName());
+        return null;
+      }
+      try {
+        bean = constructor.newInstance();
+      } catch (Exception e) {
+        e.printStackTrace();
+        return null;
+      }
+      for (Map.Entry<String, Object[]> entry : params.entrySet()) {
+        Setter setter = setters.get(entry.getKey());
+        if (setter == null) {
+          continue;
+        }
+        Object[] fieldValue = entry.getValue();
+        if (fieldValue == null || fieldValue.length == 0) {
+          continue;
+        }
+        try {
+          setter.set(bean, convert(setter.converter, setter.type, fieldValue));
+        } catch (Throwable e) {
+          log.error(e.toString(), e);
+        }
+      }
+      return bean;
+    }
+  }
+
+  /**
+   * bean的一个简单类型属性的setter
+   */
+  private static class Setter {
+    private final Class<?> type;
+    private final Converter converter;
+    private final Method method;
+    /**
+     * 为null时用原生反射
+     */
+    private final MethodAccess methodAccess;
+    private final int index;
+
+    Setter(Method method, Class<?> type, MethodAccess methodAccess) {
+      this.type = type;
+      this.converter = converterOf(type);
+      this.method = method;
+      int index = -1;
+      // 非public类的setter，生成的MethodAccess调用时会IllegalAccessError
+      if (methodAccess != null && Modifier.isPublic(method.getModifiers())
+          && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+        try {
+          index = methodAccess.getIndex(method.getName(), type);
+        } catch (IllegalArgumentException e) {
+          methodAccess = null;
+        }
+      } else {
+        methodAccess = null;
+      }
+      if (methodAccess == null) {
+        method.setAccessible(true);
+      }
+      this.methodAccess = methodAccess;
+      this.index = index;
+    }
+
+    void set(Object bean, Object value) throws Exception {
+      if (methodAccess != null) {
+        methodAccess.invoke(bean, index, value);
+      } else {
+        method.invoke(bean, value);
+      }
+    }
+  }
+
+  private static Map<String, Setter> compileSetters(Class<?> type) {
+    Map<String, Setter> setters = new HashMap<>();
+    Map<String, PropertyDescriptor> propertyDescriptors;
+    try {
+      propertyDescriptors = BeanUtil.getPropertyDescriptorMap(type, false);
+    } catch (Exception e) {
+      log.error(e.toString(), e);
+      return setters;
+    }
+    if (propertyDescriptors == null) {
+      return setters;
+    }
+
+    MethodAccess methodAccess = null;
+    try {
+      methodAccess = MethodAccess.get(type);
+    } catch (Throwable e) {
+      // 用原生反射
+    }
+
+    for (Map.Entry<String, PropertyDescriptor> entry : propertyDescriptors.entrySet()) {
+      PropertyDescriptor propertyDescriptor = entry.getValue();
+      Method writeMethod = propertyDescriptor.getWriteMethod();
+      if (writeMethod == null) {
+        for (Method method : type.getMethods()) {
+          if (method.getName().equals(propertyDescriptor.getName())
+              || method.getName().equals("set" + StrUtil.upperFirst(propertyDescriptor.getName()))) {
+            if (method.getParameterCount() == 1) {
+              writeMethod = method;
+              break;
+            }
+          }
+        }
+        if (writeMethod == null) {
+          continue;
+        }
+      }
+      Class<?>[] clazzes = writeMethod.getParameterTypes();
+      if (clazzes.length != 1) {
+        log.info("The length of the method parameters is not 1:{}.{}", type.getName(), writeMethod.getName());
+        continue;
+      }
+      // 只给简单类型的属性赋值
+      if (ClassUtils.isSimpleTypeOrArray(clazzes[0])) {
+        try {
+          setters.put(entry.getKey(), new Setter(writeMethod, clazzes[0], methodAccess));
+        } catch (RuntimeException e) {
+          log.error(e.toString(), e);
+        }
+      }
+    }
+    return setters;
+  }
+
+  /**
+   * 字符串到参数类型的转换
+   */
+  private interface Converter {
+    Object convert(String value) throws Exception;
+  }
+
+  private static Converter converterOf(Class<?> type) {
+    if (type.isArray()) {
+      return null;
+    } else if (type == String.class) {
+      return value -> value;
+    } else if (type == Integer.class || type == int.class) {
+      return value -> StrUtil.isBlank(value) ? null : Integer.parseInt(value);
+    } else if (type == Long.class || type == long.class) {
+      return value -> StrUtil.isBlank(value) ? null : Long.parseLong(value);
+    } else if (type == Boolean.class || type == boolean.class) {
+      return value -> StrUtil.isBlank(value) ? null
+          : "1".equalsIgnoreCase(value) || "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+    return value -> StrUtil.convert(type, value);
+  }
+
+  /**
+   * 与TioAsmUtils.injectParametersIntoObject中的转换一致
+   */
+  private static Object convert(Converter converter, Class<?> type, Object[] value) throws Exception {
+    if (value == null || value.length == 0) {
+      return null;
+    }
+    if (type.isArray()) {
+      if (value.getClass() == String[].class) {
+        return StrUtil.convert(type, (String[]) value);
+      }
+      return value;
+    }
+    if (value[0] != null && value[0].getClass() == String.class) {
+      return converter.convert((String) value[0]);
+    }
+    return value[0];
+  }
+}
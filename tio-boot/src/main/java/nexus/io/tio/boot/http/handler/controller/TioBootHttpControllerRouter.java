@@ -25,6 +25,7 @@ import nexus.io.controller.ControllerFactory;
 import nexus.io.controller.DefaultControllerFactory;
 import nexus.io.controller.PathUnitVo;
 import nexus.io.controller.VariablePathVo;
+import nexus.io.tio.boot.http.handler.controller.HttpRouteTable.VariableRoute;
 import nexus.io.tio.boot.server.TioBootServer;
 import nexus.io.tio.boot.utils.ParameterNameUtil;
 import nexus.io.tio.http.common.HttpRequest;
@@ -138,6 +139,15 @@ public class TioBootHttpControllerRouter {
    */
   private final Map<String, String> VARIABLE_PATH_METHOD_STR_MAP = new TreeMap<>();
 
+  /**
+   * 编译后的路由表，每次扫描完路由后重新生成
+   */
+  private volatile HttpRouteTable routeTable;
+  /**
+   * 每个方法的调用器，与routeTable一起生成
+   */
+  private volatile Map<Method, ActionInvoker> invokers;
+
   private final StringBuilder errorStr = new StringBuilder();
 
   private List<Class<?>> scannedClasses = new ArrayList<>();
@@ -506,81 +516,79 @@ public class TioBootHttpControllerRouter {
   }
 
   public Method getActionByPath(String path, String httpMethod, HttpRequest request) {
+    ActionInvoker invoker = getInvokerByPath(path, httpMethod, request);
+    return invoker == null ? null : invoker.getMethod();
+  }
 
-    Method method = PATH_METHOD_MAP.get(path);
-    if (method != null) {
-      return method;
+  public ActionInvoker getInvokerByPath(String path, String httpMethod, HttpRequest request) {
+    HttpRouteTable routeTable = this.routeTable;
+    if (routeTable == null) {
+      routeTable = compileRoutes();
     }
 
-    String key = httpMethod.toUpperCase() + " " + path;
-    method = PATH_METHOD_MAP.get(key);
-    if (method != null) {
-      return method;
+    httpMethod = httpMethod.toUpperCase();
+    ActionInvoker invoker = routeTable.matchStatic(path, httpMethod);
+    if (invoker != null) {
+      return invoker;
     }
 
-    String[] pathUnitsOfRequest = StrUtil.split(path, "/"); // e.g., ["", "users", "1"]
-    String varPathKey = httpMethod.toUpperCase() + " " + pathUnitsOfRequest.length;
-    VariablePathVo[] methodVariablePathVos = VARIABLE_PATH_MAP.get(varPathKey);
-    VariablePathVo[] uriVariablePathVos = VARIABLE_PATH_MAP.get(pathUnitsOfRequest.length + "");
-
-    VariablePathVo[] merged = null;
-    if (methodVariablePathVos != null && uriVariablePathVos != null) {
-      // 创建新数组
-      merged = new VariablePathVo[methodVariablePathVos.length + uriVariablePathVos.length];
-      // 拷贝
-      System.arraycopy(methodVariablePathVos, 0, merged, 0, methodVariablePathVos.length);
-      System.arraycopy(uriVariablePathVos, 0, merged, methodVariablePathVos.length, uriVariablePathVos.length);
-
-    } else if (methodVariablePathVos != null) {
-      merged = methodVariablePathVos;
-    } else if (uriVariablePathVos != null) {
-      merged = uriVariablePathVos;
+    VariableRoute variableRoute = routeTable.matchVariable(path, httpMethod, request);
+    if (variableRoute != null) {
+      String metapath = variableRoute.getPathVo().getPath();
+      String forward = PATH_FORWARD_MAP.get(httpMethod + " " + metapath);
+      if (StrUtil.isNotBlank(forward)) {
+        request.requestLine.path = forward;
+      }
+      return variableRoute.getInvoker();
     }
 
-    TreeMap<Integer, VariablePathVo> matched = new TreeMap<>();
-    if (merged != null) {
-      for (VariablePathVo variablePathVo : merged) {
-        PathUnitVo[] pathUnitVos = variablePathVo.getPathUnits();
-
-        boolean isMatch = true;
-        Integer fixedSegments = 0;
-        for (int i = 0; i < pathUnitVos.length; i++) {
-          PathUnitVo pathUnitVo = pathUnitVos[i];
-          String pathOfVo = pathUnitVo.getPath();
-          String pathUnitOfRequest = pathUnitsOfRequest[i];
-
-          if (pathUnitVo.isVar()) {
-            request.addParam(pathOfVo, pathUnitOfRequest);
-          } else {
-            if (!StrUtil.equals(pathOfVo, pathUnitOfRequest)) {
-              isMatch = false;
-              break;
-            } else {
-              fixedSegments++;
-            }
-          }
-        }
-
-        if (isMatch) {
-          matched.put(fixedSegments, variablePathVo);
-        }
-      }
+    return null;
+  }
 
+  /**
+   * 请求路径会命中的路由的路径模板，拦截器链按它缓存
+   *
+   * @param path
+   * @param httpMethod
+   * @return 固定路径返回path本身，变量路径返回配置的路径如/user/{id}，没有匹配的路由时返回null
+   */
+  public String getRouteTemplate(String path, String httpMethod) {
+    HttpRouteTable routeTable = this.routeTable;
+    if (routeTable == null) {
+      routeTable = compileRoutes();
     }
+    return routeTable.matchTemplate(path, httpMethod.toUpperCase());
+  }
 
-    if (matched.size() > 0) {
-      Integer maxKey = matched.lastKey();
-      VariablePathVo variablePathVo = matched.get(maxKey);
-      String metapath = variablePathVo.getPath();
-      String forward = PATH_FORWARD_MAP.get(httpMethod.toUpperCase() + " " + metapath);
-      if (StrUtil.isNotBlank(forward)) {
-        request.requestLine.path = forward;
-      }
-      method = variablePathVo.getMethod();
-      return method;
+  /**
+   * 根据method获取调用器
+   *
+   * @param method
+   * @return
+   */
+  public ActionInvoker getInvoker(Method method) {
+    HttpRouteTable routeTable = this.routeTable;
+    if (routeTable == null) {
+      compileRoutes();
     }
+    return invokers.get(method);
+  }
 
-    return null;
+  /**
+   * 根据当前的路由生成每个方法的调用器和只读的路由表，之后的请求都用它们匹配和调用
+   */
+  private HttpRouteTable compileRoutes() {
+    Map<Method, ActionInvoker> invokers = new HashMap<>();
+    for (Entry<Method, Object> entry : METHOD_BEAN_MAP.entrySet()) {
+      Method method = entry.getKey();
+      Object bean = entry.getValue();
+      invokers.put(method, new ActionInvoker(bean, method, BEAN_METHODACCESS_MAP.get(bean),
+          METHOD_PARAM_NAME_MAP.get(method), METHOD_PARAM_TYPE_MAP.get(method)));
+    }
+    HttpRouteTable routeTable = new HttpRouteTable(PATH_METHOD_MAP, VARIABLE_PATH_MAP, invokers);
+    this.invokers = invokers;
+    this.routeTable = routeTable;
+    return routeTable;
   }
 
   /**
@@ -647,6 +655,7 @@ public class TioBootHttpControllerRouter {
   }
 
   private void afterProcessClazz() {
+    compileRoutes();
     printMapping();
   }
 
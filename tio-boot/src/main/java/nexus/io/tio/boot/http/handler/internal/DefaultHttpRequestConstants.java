@@ -16,4 +16,9 @@ public class DefaultHttpRequestConstants {
    */
   public static final String SESSION_COOKIE_KEY = "TIO_HTTP_SESSION_COOKIE";
 
+  /**
+   * 本次请求新建了session(没有cookie或cookie对应的session已超时)，存在request的localAttribute中
+   */
+  public static final String SESSION_CREATED_KEY = "TIO_HTTP_SESSION_CREATED";
+
 }
@@ -4,12 +4,14 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.Locale;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import freemarker.template.Configuration;
 import nexus.io.constants.ServerConfigKeys;
+import nexus.io.tio.boot.utils.HttpFileDataUtils;
 import nexus.io.tio.http.common.HeaderName;
 import nexus.io.tio.http.common.HeaderValue;
 import nexus.io.tio.http.common.HttpConfig;
@@ -17,6 +19,9 @@ import nexus.io.tio.http.common.HttpRequest;
 import nexus.io.tio.http.common.HttpResource;
 import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.HttpResponseStatus;
+import nexus.io.tio.http.common.MimeType;
+import nexus.io.tio.http.common.RequestHeaderKey;
+import nexus.io.tio.http.common.utils.HttpGzipUtils;
 import nexus.io.tio.http.common.view.freemarker.FreemarkerConfig;
 import nexus.io.tio.http.server.handler.FileCache;
 import nexus.io.tio.http.server.util.Resps;
@@ -25,65 +30,61 @@ import nexus.io.tio.utils.environment.EnvUtils;
 import nexus.io.tio.utils.freemarker.FreemarkerUtils;
 import nexus.io.tio.utils.hutool.ArrayUtil;
 import nexus.io.tio.utils.hutool.FileUtil;
+import nexus.io.tio.utils.hutool.StrUtil;
+import nexus.io.tio.utils.hutool.ZipUtil;
 import nexus.io.tio.utils.url.UrlUtils;
 
+/**
+ * 静态文件处理<br>
+ * 1、先按ETag(If-None-Match)、Last-Modified(If-Modified-Since)判断是否返回304，不读文件<br>
+ * 2、开启缓存时，不超过MAX_CACHE_FILE_SIZE的文件连同gzip、br版本一起放入缓存，br只来自同目录下预压缩的.br文件，gzip优先用预压缩的.gz文件<br>
+ * 3、不缓存的大文件通过fileBody零拷贝发送，不读进内存<br>
+ * 4、同一个文件的原始内容、gzip、br版本的ETag不同，压缩版本的ETag带上编码后缀<br>
+ * 缓存由DirectoryWatcher在文件变化时清除
+ */
 public class DefaultStaticResourceHandler implements StaticResourceHandler {
   private static final Logger log = LoggerFactory.getLogger(DefaultStaticResourceHandler.class);
   
   private static final long MAX_CACHE_FILE_SIZE = 5 * 1024 * 1024; // 最大缓存大小5MB
+  /**
+   * 小于此值的内容不压缩，与HttpGzipUtils一致
+   */
+  private static final int MIN_GZIP_LENGTH = 300;
+
+  public static final String GZIP_SUFFIX = ".gz";
+  public static final String BR_SUFFIX = ".br";
 
   public HttpResponse handle(String path, HttpRequest request, HttpConfig httpConfig, AbsCache staticResCache) {
     path = UrlUtils.decode(path);
     boolean enable = EnvUtils.getBoolean(ServerConfigKeys.SERVER_RESOURCES_STATIC_FILE_CACHE_ENABLE, false);
-    HttpResponse response = null;
-    FileCache fileCache = null;
 
     // 从缓存中获取FileCache
     if (enable && staticResCache != null) {
-      fileCache = (FileCache) staticResCache.get(path);
-    }
-
-    if (enable && fileCache != null) {
-      long lastModified = fileCache.getLastModified();
-      // 检查是否需要返回304
-      response = Resps.try304(request, lastModified);
-      if (response != null) {
-        response.addHeader(HeaderName.tio_from_cache, HeaderValue.Tio_From_Cache.TRUE);
-        return response;
+      FileCache fileCache = (FileCache) staticResCache.get(path);
+      if (fileCache != null) {
+        HttpResponse response = notModified(request, fileCache.getEtag(), fileCache.getLastModified());
+        if (response != null) {
+          response.addHeader(HeaderName.tio_from_cache, HeaderValue.Tio_From_Cache.TRUE);
+          return response;
+        }
+        return fromCache(request, fileCache);
       }
+    }
 
-      // 构建HttpResponse
-      response = new HttpResponse(request);
-      response.setBody(fileCache.getContent());
-
-      response.setLastModified(HeaderValue.from(String.valueOf(lastModified)));
-      response.setSkipGzipped(fileCache.isHasGzipped());
-
-      // 设置必要的响应头
-      if (fileCache.getContentType() != null) {
-        response.addHeader(HeaderName.Content_Type, fileCache.getContentType());
-      }
-      if (fileCache.getContentEncoding() != null) {
-        response.addHeader(HeaderName.Content_Encoding, fileCache.getContentEncoding());
+    String pageRoot = httpConfig.getPageRoot(request);
+    if (pageRoot != null) {
+      HttpResource httpResource;
+      try {
+        httpResource = httpConfig.getResource(request, path);
+      } catch (Exception e) {
+        e.printStackTrace();
+        return null;
       }
-      return response;
-    } else {
-      String pageRoot = httpConfig.getPageRoot(request);
-      if (pageRoot != null) {
-        HttpResource httpResource;
-        try {
-          httpResource = httpConfig.getResource(request, path);
-        } catch (Exception e) {
-          e.printStackTrace();
-          return null;
-        }
-        if (httpResource != null) {
-          response = readFile(request, httpConfig, httpResource, staticResCache, enable);
-          return response;
-        }
+      if (httpResource != null) {
+        return readFile(request, httpConfig, httpResource, staticResCache, enable);
       }
     }
-    return response;
+    return null;
   }
 
   private HttpResponse readFile(HttpRequest request, HttpConfig httpConfig, HttpResource httpResource,
@@ -133,21 +134,35 @@ public class DefaultStaticResourceHandler implements StaticResourceHandler {
       }
     }
 
+    boolean cacheable = cacheFile && staticResCache != null;
+
     // 读取文件内容
     byte[] content = null;
-    HeaderValue lastModified = null;
     long fileLastModified = 0;
+    HeaderValue etag = null;
     if (file != null) {
       fileLastModified = file.lastModified();
+      long fileLength = file.length();
+      etag = etag(fileLength, fileLastModified);
+      // 先判断304，不用读文件
+      response = notModified(request, etag, fileLastModified);
+      if (response != null) {
+        return response;
+      }
+
+      if (!cacheable || fileLength > MAX_CACHE_FILE_SIZE) {
+        if (cacheable) {
+          log.info("File size exceeds cache limit, not cached: [{}], {}(B)", path, fileLength);
+        }
+        return fromFile(request, file, fileLength, extension, etag, fileLastModified);
+      }
       content = FileUtil.readBytes(file);
-      lastModified = HeaderValue.from(String.valueOf(fileLastModified));
     } else {
       URL url = httpResource.getUrl();
       if (url == null) {
         return null;
       }
       fileLastModified = ManagementFactory.getRuntimeMXBean().getStartTime();
-      lastModified = HeaderValue.from(String.valueOf(fileLastModified));
 
       try {
         content = FileUtil.readBytes(url);
@@ -155,27 +170,250 @@ public class DefaultStaticResourceHandler implements StaticResourceHandler {
         e.printStackTrace();
         return null;
       }
+      etag = etag(content.length, fileLastModified);
+      response = notModified(request, etag, fileLastModified);
+      if (response != null) {
+        return response;
+      }
     }
+
     response = Resps.bytes(request, content, extension);
     response.setStaticRes(true);
-    response.setLastModified(lastModified);
+    response.setLastModified(HeaderValue.from(String.valueOf(fileLastModified)));
 
     // 缓存文件内容，如果文件大小小于最大缓存大小
-    if (cacheFile && response.isStaticRes() && staticResCache != null) {
-      if (response.getBody() != null && response.getStatus() == HttpResponseStatus.C200) {
-        if (content.length <= MAX_CACHE_FILE_SIZE) {
-          HeaderValue contentType = response.getHeader(HeaderName.Content_Type);
-          HeaderValue contentEncoding = response.getHeader(HeaderName.Content_Encoding);
-          FileCache newFileCache = new FileCache(content, fileLastModified, contentType, contentEncoding, response.isSkipGzipped());
-          staticResCache.put(path, newFileCache);
-          if (log.isInfoEnabled()) {
-            log.info("add to cache:[{}], {}(B)", path, content.length);
-          }
-        } else {
-          log.info("File size exceeds cache limit, not cached: [{}], {}(B)", path, content.length);
+    if (cacheable && content.length <= MAX_CACHE_FILE_SIZE && response.getStatus() == HttpResponseStatus.C200) {
+      HeaderValue contentType = response.getHeader(HeaderName.Content_Type);
+      HeaderValue contentEncoding = response.getHeader(HeaderName.Content_Encoding);
+      FileCache newFileCache = new FileCache(content, fileLastModified, contentType, contentEncoding, true);
+      newFileCache.setEtag(etag);
+      if (contentEncoding == null) {
+        // 压缩版本只在放入缓存时算一次
+        byte[] gzipContent = file == null ? null : readPrecompressed(file, GZIP_SUFFIX, fileLastModified);
+        if (gzipContent == null && isCompressible(contentType) && content.length >= MIN_GZIP_LENGTH) {
+          gzipContent = ZipUtil.gzip(content);
         }
+        if (gzipContent != null && gzipContent.length < content.length) {
+          newFileCache.setGzipContent(gzipContent);
+        }
+        if (file != null) {
+          newFileCache.setBrContent(readPrecompressed(file, BR_SUFFIX, fileLastModified));
+        }
+      }
+      staticResCache.put(path, newFileCache);
+      if (log.isInfoEnabled()) {
+        log.info("add to cache:[{}], {}(B)", path, content.length);
       }
+      return fromCache(request, newFileCache);
     }
+    gzip(request, response);
+    setEtag(response, etag);
     return response;
   }
+
+  /**
+   * 用缓存的内容构建响应，按Accept-Encoding选用br、gzip或原始内容
+   */
+  private HttpResponse fromCache(HttpRequest request, FileCache fileCache) {
+    HttpResponse response = new HttpResponse(request);
+    byte[] body = fileCache.getContent();
+    HeaderValue contentEncoding = fileCache.getContentEncoding();
+    if (contentEncoding == null && (fileCache.getBrContent() != null || fileCache.getGzipContent() != null)) {
+      String acceptEncoding = request.getHeader(RequestHeaderKey.Accept_Encoding);
+      if (fileCache.getBrContent() != null && HttpGzipUtils.accepts(acceptEncoding, "br")) {
+        body = fileCache.getBrContent();
+        contentEncoding = HeaderValue.Content_Encoding.br;
+      } else if (fileCache.getGzipContent() != null && HttpGzipUtils.accepts(acceptEncoding, "gzip")) {
+        body = fileCache.getGzipContent();
+        contentEncoding = HeaderValue.Content_Encoding.gzip;
+      }
+      response.addHeader(HeaderName.Vary, HeaderValue.Vary.Accept_Encoding);
+    }
+    response.setBody(body);
+    response.setStaticRes(true);
+    response.setLastModified(HeaderValue.from(String.valueOf(fileCache.getLastModified())));
+    // 压缩版本已经算好，编码时不再gzip
+    response.setSkipGzipped(true);
+
+    // 设置必要的响应头
+    if (fileCache.getContentType() != null) {
+      response.addHeader(HeaderName.Content_Type, fileCache.getContentType());
+    }
+    if (contentEncoding != null) {
+      response.addHeader(HeaderName.Content_Encoding, contentEncoding);
+    }
+    if (fileCache.getEtag() != null) {
+      setEtag(response, fileCache.getEtag());
+    }
+    return response;
+  }
+
+  /**
+   * 不缓存时直接发文件：有预压缩的.br、.gz文件且客户端支持时发压缩文件；不小于ZERO_COPY_THRESHOLD的走fileBody零拷贝
+   */
+  private HttpResponse fromFile(HttpRequest request, File file, long fileLength, String extension, HeaderValue etag,
+      long fileLastModified) {
+    File bodyFile = file;
+    long bodyLength = fileLength;
+    HeaderValue contentEncoding = null;
+    boolean precompressed = false;
+    String acceptEncoding = request.getHeader(RequestHeaderKey.Accept_Encoding);
+    File br = precompressed(file, BR_SUFFIX, fileLastModified);
+    File gzip = precompressed(file, GZIP_SUFFIX, fileLastModified);
+    if (br != null || gzip != null) {
+      precompressed = true;
+      if (br != null && HttpGzipUtils.accepts(acceptEncoding, "br")) {
+        bodyFile = br;
+        contentEncoding = HeaderValue.Content_Encoding.br;
+      } else if (gzip != null && HttpGzipUtils.accepts(acceptEncoding, "gzip")) {
+        bodyFile = gzip;
+        contentEncoding = HeaderValue.Content_Encoding.gzip;
+      }
+      if (bodyFile != file) {
+        bodyLength = bodyFile.length();
+      }
+    }
+
+    HttpResponse response;
+    if (bodyLength >= HttpFileDataUtils.ZERO_COPY_THRESHOLD) {
+      response = new HttpResponse(request);
+      response.setFileBody(bodyFile, 0, bodyLength);
+      response.addHeader(HeaderName.Content_Type, contentType(extension));
+      response.setSkipGzipped(true);
+    } else {
+      response = Resps.bytes(request, FileUtil.readBytes(bodyFile), extension);
+      if (contentEncoding == null) {
+        gzip(request, response);
+      } else {
+        response.setSkipGzipped(true);
+      }
+    }
+    response.setStaticRes(true);
+    response.setLastModified(HeaderValue.from(String.valueOf(fileLastModified)));
+    if (precompressed) {
+      response.addHeader(HeaderName.Vary, HeaderValue.Vary.Accept_Encoding);
+    }
+    if (contentEncoding != null) {
+      response.addHeader(HeaderName.Content_Encoding, contentEncoding);
+    }
+    setEtag(response, etag);
+    return response;
+  }
+
+  /**
+   * If-None-Match优先，没有If-None-Match时再按If-Modified-Since判断
+   *
+   * @return 304响应，不满足条件时返回null
+   */
+  private static HttpResponse notModified(HttpRequest request, HeaderValue etag, long lastModified) {
+    String ifNoneMatch = request.getHeader(RequestHeaderKey.If_None_Match);
+    HttpResponse response;
+    if (ifNoneMatch != null) {
+      String matched = etag == null ? null : matchEtag(ifNoneMatch, etag.value);
+      if (matched == null) {
+        return null;
+      }
+      response = new HttpResponse(request);
+      response.setStatus(HttpResponseStatus.C304);
+      response.addHeader(HeaderName.ETag, HeaderValue.from(matched));
+      return response;
+    }
+    response = Resps.try304(request, lastModified);
+    if (response != null && etag != null) {
+      response.addHeader(HeaderName.ETag, etag);
+    }
+    return response;
+  }
+
+  /**
+   * If-None-Match的弱比较：忽略W/前缀，*匹配任意；原始内容和各压缩版本的ETag都算匹配
+   *
+   * @return 匹配到的ETag，304响应中带上它；没有匹配时返回null
+   */
+  private static String matchEtag(String ifNoneMatch, String etag) {
+    String prefix = etag.substring(0, etag.length() - 1) + "-";
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if ("*".equals(candidate) || candidate.equals(etag)) {
+        return etag;
+      }
+      if (candidate.startsWith(prefix) && candidate.endsWith("\"")) {
+        String coding = candidate.substring(prefix.length(), candidate.length() - 1);
+        if (HeaderValue.Content_Encoding.gzip.value.equals(coding) || HeaderValue.Content_Encoding.br.value.equals(coding)) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 响应体的编码确定后设置ETag，压缩版本的ETag带上编码后缀，与原始内容的区分开
+   */
+  private static void setEtag(HttpResponse response, HeaderValue etag) {
+    HeaderValue contentEncoding = response.getHeader(HeaderName.Content_Encoding);
+    if (contentEncoding != null) {
+      String value = etag.value;
+      etag = HeaderValue.from(value.substring(0, value.length() - 1) + "-" + contentEncoding.value + "\"");
+    }
+    response.addHeader(HeaderName.ETag, etag);
+  }
+
+  /**
+   * 编码器会对没有压缩过的响应体做gzip，这里按Accept-Encoding提前做，ETag才能与实际发出的内容对应
+   */
+  private static void gzip(HttpRequest request, HttpResponse response) {
+    if (HttpGzipUtils.accepts(request.getHeader(RequestHeaderKey.Accept_Encoding), "gzip")) {
+      HttpGzipUtils.gzip(request, response);
+    }
+    if (response.getHeader(HeaderName.Content_Encoding) != null) {
+      response.addHeader(HeaderName.Vary, HeaderValue.Vary.Accept_Encoding);
+    }
+    response.setSkipGzipped(true);
+  }
+
+  /**
+   * ETag由文件长度和修改时间组成，不用读文件内容
+   */
+  private static HeaderValue etag(long length, long lastModified) {
+    return HeaderValue.from("\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"");
+  }
+
+  /**
+   * 同目录下的预压缩文件，比原文件旧时不用
+   */
+  private static File precompressed(File file, String suffix, long fileLastModified) {
+    File compressed = new File(file.getPath() + suffix);
+    if (compressed.isFile() && compressed.lastModified() >= fileLastModified) {
+      return compressed;
+    }
+    return null;
+  }
+
+  private static byte[] readPrecompressed(File file, String suffix, long fileLastModified) {
+    File compressed = precompressed(file, suffix, fileLastModified);
+    return compressed == null ? null : FileUtil.readBytes(compressed);
+  }
+
+  private static boolean isCompressible(HeaderValue contentType) {
+    if (contentType == null) {
+      return true;
+    }
+    String mime = contentType.value.toLowerCase(Locale.ROOT);
+    return !(mime.startsWith("image/") || mime.startsWith("video/") || mime.startsWith("audio/"));
+  }
+
+  private static HeaderValue contentType(String extension) {
+    if (StrUtil.isNotBlank(extension)) {
+      MimeType mimeType = MimeType.fromExtension(extension);
+      if (mimeType != null) {
+        return HeaderValue.Content_Type.from(mimeType.getType());
+      }
+      return HeaderValue.Content_Type.from("application/octet-stream");
+    }
+    return HeaderValue.Content_Type.DEFAULT_TYPE;
+  }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ import nexus.io.model.sys.SysConst;
 import nexus.io.tio.boot.cache.StaticResourcesCache;
 import nexus.io.tio.boot.exception.TioBootExceptionHandler;
 import nexus.io.tio.boot.http.TioRequestContext;
+import nexus.io.tio.boot.http.handler.controller.ActionInvoker;
 import nexus.io.tio.boot.http.handler.controller.DynamicRequestController;
 import nexus.io.tio.boot.http.handler.controller.TioBootHttpControllerRouter;
 import nexus.io.tio.boot.http.session.SessionLimit;
@@ -32,6 +33,7 @@ import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.RequestLine;
 import nexus.io.tio.http.common.handler.ITioHttpRequestHandler;
 import nexus.io.tio.http.common.session.HttpSession;
+import nexus.io.tio.http.common.session.HttpSessionManager;
 import nexus.io.tio.http.common.utils.HttpIpUtils;
 import nexus.io.tio.http.server.handler.HttpRequestHandler;
 import nexus.io.tio.http.server.handler.RouteEntry;
@@ -208,6 +210,8 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
     if (httpSessionListener != null) {
       httpSessionListener.doAfterCreated(request, httpSession, httpConfig);
     }
+    // Stored right away, changes made while handling the request are written back by processCookieAfterHandler
+    httpConfig.getHttpSessionManager().update(httpSession);
     return httpSession;
   }
 
@@ -315,6 +319,11 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
     HttpResponse httpResponse = new HttpResponse(request);
     try {
       TioRequestContext.hold(request, httpResponse);
+      // Attribute changes are written back once by processCookieAfterHandler, which also turns this off again
+      HttpSession httpSession = request.getHttpSession();
+      if (httpSession != null) {
+        httpSession.setDeferWrite(httpConfig.getHttpSessionManager().isDeferWrite());
+      }
 
       if (httpRequestValidationInterceptor != null) {
         httpResponse = httpRequestValidationInterceptor.doBeforeHandler(request, requestLine, httpResponse);
@@ -367,13 +376,13 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
 
       // Execute dynamic request controller if no response yet
       if (httpResponse == null) {
-        Method method = TioHttpControllerUtils.getActionMethod(request, requestLine, httpConfig, httpControllerRouter);
-        if (method != null) {
+        ActionInvoker invoker = TioHttpControllerUtils.getActionInvoker(request, requestLine, httpConfig,
+            httpControllerRouter);
+        if (invoker != null) {
           if (printReport) {
-            logActionReport(requestLine, method);
+            logActionReport(requestLine, invoker.getMethod());
           }
-          httpResponse = dynamicRequestController.process(request, httpConfig, compatibilityAssignment,
-              httpControllerRouter, method);
+          httpResponse = dynamicRequestController.process(request, httpConfig, compatibilityAssignment, invoker);
         } else {
           // Forward request if no handler found
           if (forwardHandler != null) {
@@ -500,19 +509,25 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
    * @param httpResponse The HTTP response.
    */
   private void processCookieAfterHandler(HttpRequest request, RequestLine requestLine, HttpResponse httpResponse) {
-    if (httpResponse == null || !httpConfig.isUseSession()) {
+    if (!httpConfig.isUseSession()) {
       return;
     }
 
     HttpSession httpSession = request.getHttpSession();
-    String sessionId = HttpSessionUtils.getSessionId(request);
-    if (StrUtil.isBlank(sessionId)) {
+    if (httpSession == null) {
+      return;
+    }
+    // No cookie, or the session behind the cookie has timed out: a new session was created before the handler
+    if (httpResponse != null && request.getLocalAttribute(DefaultHttpRequestConstants.SESSION_CREATED_KEY) != null) {
       createSessionCookie(request, httpSession, httpResponse, false);
-    } else {
-      HttpSession httpSessionFromStore = (HttpSession) httpConfig.getSessionStore().get(sessionId);
-      if (httpSessionFromStore == null) { // Cookie exists but session has timed out
-        createSessionCookie(request, httpSession, httpResponse, false);
-      }
+    }
+    // Write the session back once if it was changed during the request
+    try {
+      httpConfig.getHttpSessionManager().save(httpSession);
+    } finally {
+      // The instance may be shared (near cache, pending writes, local store), changes made after the request are
+      // written immediately
+      httpSession.setDeferWrite(false);
     }
   }
 
@@ -547,8 +562,6 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
       sessionCookieDecorator.decorate(sessionCookie, request, request.getDomain());
     }
     httpResponse.addCookie(sessionCookie);
-
-    httpConfig.getSessionStore().put(sessionId, httpSession);
     request.channelContext.setAttribute(DefaultHttpRequestConstants.SESSION_COOKIE_KEY, sessionCookie);
   }
 
@@ -568,7 +581,7 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
     if (httpSessionListener != null) {
       httpSessionListener.doAfterCreated(request, httpSession, httpConfig);
     }
-    httpConfig.getSessionStore().remove(oldId);
+    httpConfig.getHttpSessionManager().remove(oldId);
     createSessionCookie(request, httpSession, httpResponse, true);
     httpSession.update(httpConfig); // Update session changes
     return httpSession;
@@ -587,17 +600,20 @@ public class TioBootHttpRequestDispatcher implements ITioHttpRequestHandler {
       return;
     }
 
+    HttpSessionManager httpSessionManager = httpConfig.getHttpSessionManager();
     String sessionId = HttpSessionUtils.getSessionId(request);
     HttpSession httpSession = null;
     if (StrUtil.isBlank(sessionId)) {
       httpSession = createSession(request);
+      request.setLocalAttribute(DefaultHttpRequestConstants.SESSION_CREATED_KEY, Boolean.TRUE);
     } else {
-      httpSession = (HttpSession) httpConfig.getSessionStore().get(sessionId);
+      httpSession = httpSessionManager.get(sessionId);
       if (httpSession == null) {
         if (log.isDebugEnabled()) {
           log.info("Session ID '{}' has timed out for channel: {}", sessionId, request.channelContext);
         }
         httpSession = createSession(request);
+        request.setLocalAttribute(DefaultHttpRequestConstants.SESSION_CREATED_KEY, Boolean.TRUE);
       }
     }
     request.setHttpSession(httpSession);
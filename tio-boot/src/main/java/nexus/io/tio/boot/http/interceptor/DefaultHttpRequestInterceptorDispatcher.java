@@ -1,14 +1,17 @@
 package nexus.io.tio.boot.http.interceptor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import nexus.io.tio.boot.http.handler.controller.TioBootHttpControllerRouter;
 import nexus.io.tio.boot.server.TioBootServer;
 import nexus.io.tio.http.common.HttpRequest;
 import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.RequestLine;
 import nexus.io.tio.http.server.intf.HttpRequestInterceptor;
+import nexus.io.tio.utils.environment.EnvUtils;
 
 /**
  * DefaultHttpServerInterceptor
@@ -17,9 +20,25 @@ import nexus.io.tio.http.server.intf.HttpRequestInterceptor;
  *
  */
 public class DefaultHttpRequestInterceptorDispatcher implements HttpRequestInterceptor {
-  private HttpInteceptorConfigure configure = null;
+  /**
+   * 与isStaticFile(path)等价，保留给外部使用
+   */
   public static final String static_file_reges = ".*\\.[a-zA-Z0-9]+$";
+  private static final HttpRequestInterceptor[] EMPTY_CHAIN = new HttpRequestInterceptor[0];
+  /**
+   * 路由模板下不同路径的拦截器链可能不同，这些请求改按原始路径缓存
+   */
+  private static final HttpRequestInterceptor[] NOT_UNIFORM = new HttpRequestInterceptor[0];
+
+  /**
+   * 没有匹配到路由的请求按原始路径缓存拦截器链，最多保存多少个路径，满了之后新路径不再缓存，每次重新计算
+   */
+  private final int chainCacheSize = EnvUtils.getInt("server.http.interceptor.chain.cache.size", 4096);
   private final Map<String, PathPattern> cache = new ConcurrentHashMap<>();
+  /**
+   * 当前的拦截器链缓存，HttpInteceptorConfigure被替换或修改后整体换掉
+   */
+  private volatile ChainCache chainCache;
 
   /**
    * /* 表示匹配任何以特定路径开始的路径，/** 表示匹配该路径及其下的任何子路径
@@ -30,52 +49,166 @@ public class DefaultHttpRequestInterceptorDispatcher implements HttpRequestInter
   @Override
   public HttpResponse doBeforeHandler(HttpRequest request, RequestLine requestLine, HttpResponse responseFromCache)
       throws Exception {
-    if (configure == null) {
-      configure = TioBootServer.me().getHttpInteceptorConfigure();
-      if (configure == null) {
-        return null;
+    HttpRequestInterceptor[] chain = chain(requestLine);
+    for (HttpRequestInterceptor interceptor : chain) {
+      HttpResponse response = interceptor.doBeforeHandler(request, requestLine, responseFromCache);
+      if (response != null) {
+        return response; // 如果拦截器返回响应，直接返回
       }
     }
+    return null; // 没有拦截器处理，继续后续流程
+  }
 
-    Map<String, HttpInterceptorModel> inteceptors = configure.getInteceptors();
+  @Override
+  public void doAfterHandler(HttpRequest request, RequestLine requestLine, HttpResponse response, long cost)
+      throws Exception {
+    HttpRequestInterceptor[] chain = chain(requestLine);
+    for (HttpRequestInterceptor interceptor : chain) {
+      interceptor.doAfterHandler(request, requestLine, response, cost);
+    }
+  }
+
+  /**
+   * 获取一个请求需要经过的拦截器，按配置顺序排列。命中controller路由的请求按路由的路径模板缓存，
+   * 所以/user/1、/user/2等共用一条拦截器链
+   * 
+   * @param requestLine
+   * @return 不会为null，返回的数组不要修改
+   */
+  public HttpRequestInterceptor[] chain(RequestLine requestLine) {
     String path = requestLine.getPath();
-    for (HttpInterceptorModel model : inteceptors.values()) {
-      boolean isBlock = isMatched(path, model);
-      if (isBlock) {
-        HttpRequestInterceptor interceptor = model.getInterceptor();
-        if (interceptor != null) {
-          HttpResponse response = interceptor.doBeforeHandler(request, requestLine, responseFromCache);
-          if (response != null) {
-            return response; // 如果拦截器返回响应，直接返回
-          }
+    String template = null;
+    TioBootHttpControllerRouter router = TioBootServer.me().getControllerRouter();
+    if (router != null && path != null && requestLine.getMethod() != null && hasNoEmptySegment(path)) {
+      template = router.getRouteTemplate(path, requestLine.getMethod().toString());
+    }
+    return chain(path, template);
+  }
+
+  /**
+   * 获取一个路径需要经过的拦截器，按配置顺序排列。每个路径只计算一次，之后从缓存中取
+   * 
+   * @param path
+   * @return 不会为null，返回的数组不要修改
+   */
+  public HttpRequestInterceptor[] chain(String path) {
+    return chain(path, null);
+  }
+
+  /**
+   * 
+   * @param path
+   * @param template path命中的路由的路径模板，没有时为null
+   * @return
+   */
+  HttpRequestInterceptor[] chain(String path, String template) {
+    HttpInteceptorConfigure configure = TioBootServer.me().getHttpInteceptorConfigure();
+    if (configure == null || path == null) {
+      return EMPTY_CHAIN;
+    }
+
+    int version = configure.getVersion();
+    ChainCache chainCache = this.chainCache;
+    if (chainCache == null || chainCache.configure != configure || chainCache.version != version) {
+      chainCache = new ChainCache(configure, version);
+      this.chainCache = chainCache;
+    }
+
+    if (template != null) {
+      // 模板变量单元的取值可能让是否静态文件的判断不同，分开缓存
+      Map<String, HttpRequestInterceptor[]> templateChains = isStaticFile(path) ? chainCache.staticFileTemplateChains
+          : chainCache.templateChains;
+      HttpRequestInterceptor[] chain = templateChains.get(template);
+      if (chain == null) {
+        chain = isUniformOver(configure, template) ? resolve(configure, path) : NOT_UNIFORM;
+        templateChains.put(template, chain);
+      }
+      if (chain != NOT_UNIFORM) {
+        return chain;
+      }
+    }
+
+    HttpRequestInterceptor[] chain = chainCache.chains.get(path);
+    if (chain == null) {
+      chain = resolve(configure, path);
+      if (chainCache.chains.size() < chainCacheSize) {
+        chainCache.chains.put(path, chain);
+      }
+    }
+    return chain;
+  }
+
+  /**
+   * 路径单元与路由模板的路径单元一一对应时才能按模板缓存，末尾的/和连续的/都会产生空的路径单元
+   */
+  private static boolean hasNoEmptySegment(String path) {
+    int length = path.length();
+    return (length <= 1 || path.charAt(length - 1) != '/') && path.indexOf("//") == -1;
+  }
+
+  /**
+   * 所有拦截器的放行和拦截规则，对能匹配template的路径是否都给出相同结果
+   */
+  private boolean isUniformOver(HttpInteceptorConfigure configure, String template) {
+    Map<String, HttpInterceptorModel> inteceptors = configure.getInteceptors();
+    synchronized (inteceptors) {
+      for (HttpInterceptorModel model : inteceptors.values()) {
+        if (!isUniformOver(model.getAllowedUrls(), template) || !isUniformOver(model.getBlockedUrls(), template)) {
+          return false;
         }
       }
     }
-    return null; // 没有拦截器处理，继续后续流程
+    return true;
   }
 
-  @Override
-  public void doAfterHandler(HttpRequest request, RequestLine requestLine, HttpResponse response, long cost)
-      throws Exception {
-    if (configure == null) {
-      configure = TioBootServer.me().getHttpInteceptorConfigure();
-      if (configure == null) {
-        return;
+  private boolean isUniformOver(List<String> urlPatterns, String template) {
+    if (urlPatterns == null) {
+      return true;
+    }
+    for (String urlPattern : urlPatterns) {
+      if (urlPattern != null && !urlPattern.isEmpty()
+          && !cache.computeIfAbsent(urlPattern, PathPattern::compile).isUniformOver(template)) {
+        return false;
       }
     }
+    return true;
+  }
 
+  private HttpRequestInterceptor[] resolve(HttpInteceptorConfigure configure, String path) {
     Map<String, HttpInterceptorModel> inteceptors = configure.getInteceptors();
-    String path = requestLine.getPath();
-    for (HttpInterceptorModel model : inteceptors.values()) {
-      boolean isBlock = isMatched(path, model);
-      if (isBlock) {
+    List<HttpRequestInterceptor> list = null;
+    synchronized (inteceptors) {
+      for (HttpInterceptorModel model : inteceptors.values()) {
         HttpRequestInterceptor interceptor = model.getInterceptor();
-        if (interceptor != null) {
-          interceptor.doAfterHandler(request, requestLine, response, cost);
+        if (interceptor != null && isMatched(path, model)) {
+          if (list == null) {
+            list = new ArrayList<>();
+          }
+          list.add(interceptor);
         }
       }
     }
+    return list == null ? EMPTY_CHAIN : list.toArray(new HttpRequestInterceptor[list.size()]);
+  }
 
+  /**
+   * 路径是否以".扩展名"结尾，扩展名由字母和数字组成，与static_file_reges的结果相同
+   * 
+   * @param path
+   * @return
+   */
+  public static boolean isStaticFile(String path) {
+    int i = path.length() - 1;
+    int end = i;
+    while (i >= 0) {
+      char c = path.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+        i--;
+      } else {
+        return c == '.' && i < end;
+      }
+    }
+    return false;
   }
 
   private boolean isMatched(String path, HttpInterceptorModel model) {
@@ -89,7 +222,7 @@ public class DefaultHttpRequestInterceptorDispatcher implements HttpRequestInter
     // 静态文件放行
     boolean alloweStaticFile = model.isAlloweStaticFile();
     // 1) 静态文件（如 .js/.  css/.png 等）直接放行
-    if (alloweStaticFile && path.matches(static_file_reges)) {
+    if (alloweStaticFile && isStaticFile(path)) {
       return false;
     }
 
@@ -136,4 +269,22 @@ public class DefaultHttpRequestInterceptorDispatcher implements HttpRequestInter
     return compiled.matches(path);
   }
 
-}
\ No newline at end of file
+  private static class ChainCache {
+    private final HttpInteceptorConfigure configure;
+    private final int version;
+    /**
+     * key: 原始路径
+     */
+    private final Map<String, HttpRequestInterceptor[]> chains = new ConcurrentHashMap<>();
+    /**
+     * key: 路由的路径模板，数量不超过路由数
+     */
+    private final Map<String, HttpRequestInterceptor[]> templateChains = new ConcurrentHashMap<>();
+    private final Map<String, HttpRequestInterceptor[]> staticFileTemplateChains = new ConcurrentHashMap<>();
+
+    private ChainCache(HttpInteceptorConfigure configure, int version) {
+      this.configure = configure;
+      this.version = version;
+    }
+  }
+}
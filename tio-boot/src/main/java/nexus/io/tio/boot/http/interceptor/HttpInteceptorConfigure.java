@@ -3,6 +3,7 @@ package nexus.io.tio.boot.http.interceptor;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 拦击器配置类
@@ -11,13 +12,31 @@ import java.util.Map;
  */
 public class HttpInteceptorConfigure {
   Map<String, HttpInterceptorModel> inteceptors = Collections.synchronizedMap(new LinkedHashMap<>());
+  /**
+   * 每次add、remove后加1，DefaultHttpRequestInterceptorDispatcher据此丢弃按路径缓存的拦截器链
+   */
+  private final AtomicInteger version = new AtomicInteger();
 
   public void add(HttpInterceptorModel model) {
     inteceptors.put(model.getName(), model);
+    version.incrementAndGet();
   }
 
   public HttpInterceptorModel remove(String key) {
-    return inteceptors.remove(key);
+    HttpInterceptorModel model = inteceptors.remove(key);
+    version.incrementAndGet();
+    return model;
+  }
+
+  /**
+   * 直接修改getInteceptors()返回的map或已添加的HttpInterceptorModel后，需调用本方法使缓存的拦截器链失效
+   */
+  public void changed() {
+    version.incrementAndGet();
+  }
+
+  public int getVersion() {
+    return version.get();
   }
 
   public Map<String, HttpInterceptorModel> getInteceptors() {
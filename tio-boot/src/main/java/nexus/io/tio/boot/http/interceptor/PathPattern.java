@@ -166,6 +166,36 @@ public final class PathPattern {
     return true;
   }
 
+  /**
+   * 能被路由模板template(如/user/{id})匹配的所有路径，matches的结果是否都相同。<br>
+   * 路径中不能有空的路径单元，即路径单元与模板的路径单元一一对应
+   *
+   * @param template 路由模板，变量单元为整个{name}
+   * @return true表示可以用模板代替具体路径计算和缓存匹配结果
+   */
+  public boolean isUniformOver(String template) {
+    int varIndex = template.indexOf('{');
+    if (isDoubleStar || isSingleStar) {
+      // 第一个变量之前的固定部分已能决定前缀是否匹配
+      return varIndex == -1 || starBase.length() <= varIndex || !starBase.startsWith(template.substring(0, varIndex));
+    }
+    if (varIndex == -1) {
+      return true;
+    }
+    String[] templateSegs = fastSplit(template);
+    int m = templateSegs.length;
+    if (m < requiredSegments || m > segmentsCount) {
+      return true;
+    }
+    for (int i = 0; i < m; i++) {
+      // 模板的变量单元上，只有不带正则的变量能对所有取值给出相同结果
+      if (isVarSegment(templateSegs[i]) && (segLiterals[i] != null || varPatterns[i] != null)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static boolean isVarSegment(String seg) {
     return seg.length() >= 2 && seg.charAt(0) == '{' && seg.charAt(seg.length() - 1) == '}';
   }
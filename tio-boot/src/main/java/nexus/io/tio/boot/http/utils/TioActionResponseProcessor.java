@@ -104,7 +104,9 @@ public class TioActionResponseProcessor {
       byte[] bytes = Json.getJson().toJsonBytes(actionRetrunValue);
       bytes = tioEncryptor.encrypt(bytes);
       response.setBody(bytes);
-    }else {
+    } else if (HttpResponse.isUtf8(response.getCharset())) {
+      response.setJsonBody(actionRetrunValue);
+    } else {
       response.setBody(Json.getJson().toJson(actionRetrunValue));
     }
     String mimeTypeStr = MimeTypeUtils.getJson(charset);
@@ -2,6 +2,7 @@ package nexus.io.tio.boot.http.utils;
 
 import java.lang.reflect.Method;
 
+import nexus.io.tio.boot.http.handler.controller.ActionInvoker;
 import nexus.io.tio.boot.http.handler.controller.TioBootHttpControllerRouter;
 import nexus.io.tio.http.common.HttpConfig;
 import nexus.io.tio.http.common.HttpRequest;
@@ -18,31 +19,38 @@ public class TioHttpControllerUtils {
   public static Method getActionMethod(HttpRequest request, RequestLine requestLine, HttpConfig httpConfig,
       //
       TioBootHttpControllerRouter router) {
-    Method method = null;
+    ActionInvoker invoker = getActionInvoker(request, requestLine, httpConfig, router);
+    return invoker == null ? null : invoker.getMethod();
+  }
+
+  public static ActionInvoker getActionInvoker(HttpRequest request, RequestLine requestLine, HttpConfig httpConfig,
+      //
+      TioBootHttpControllerRouter router) {
+    ActionInvoker invoker = null;
 
     String path = requestLine.path;
     if (router != null) {
-      method = router.getActionByPath(path, request.getMethod().toString(), request);
-      if (method == null) {
+      invoker = router.getInvokerByPath(path, request.getMethod().toString(), request);
+      if (invoker == null) {
         if ("/".equals(path)) {
-          method = router.getActionByPath("", request.getMethod().toString(), request);
+          invoker = router.getInvokerByPath("", request.getMethod().toString(), request);
         }
       }
     }
-    if (method == null) {
+    if (invoker == null) {
       if (StrUtil.isNotBlank(httpConfig.getWelcomeFile())) {
         if (StrUtil.endWith(path, "/")) {
           path = path + httpConfig.getWelcomeFile();
           requestLine.setPath(path);
           if (router != null) {
-            method = router.getActionByPath(path, request.getMethod().toString(), request);
+            invoker = router.getInvokerByPath(path, request.getMethod().toString(), request);
             path = requestLine.path;
           }
         }
       }
     }
 
-    return method;
+    return invoker;
   }
 
   public static String getDomain(HttpRequest request) {
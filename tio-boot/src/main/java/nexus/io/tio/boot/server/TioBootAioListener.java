@@ -3,6 +3,7 @@ package nexus.io.tio.boot.server;
 import nexus.io.aio.Packet;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.server.intf.ServerAioListener;
+import nexus.io.tio.websocket.common.PerMessageDeflate;
 import nexus.io.tio.websocket.common.WebSocketSessionContext;
 
 public class TioBootAioListener implements ServerAioListener {
@@ -63,6 +64,10 @@ public class TioBootAioListener implements ServerAioListener {
    */
 
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) throws Exception {
+    PerMessageDeflate perMessageDeflate = PerMessageDeflate.from(channelContext);
+    if (perMessageDeflate != null) {
+      perMessageDeflate.end();
+    }
     if (tcpListener != null) {
       tcpListener.onBeforeClose(channelContext, throwable, remark, isRemove);
     }
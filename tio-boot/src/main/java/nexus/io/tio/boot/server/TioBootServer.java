@@ -159,6 +159,10 @@ public class TioBootServer {
    */
   public boolean stop() {
     boolean stop = tioServer.stop();
+    if (httpConfig != null && httpConfig.getHttpSessionManager() != null) {
+      // 还没写回的session
+      httpConfig.getHttpSessionManager().flush();
+    }
     HookCan.me().stop();
     TioAppCan.me().clean();
     me = new TioBootServer();
@@ -23,6 +23,7 @@ import nexus.io.tio.http.common.HeaderName;
 import nexus.io.tio.http.common.HeaderValue;
 import nexus.io.tio.http.common.HttpConfig;
 import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpRequestDecodeState;
 import nexus.io.tio.http.common.HttpRequestDecoder;
 import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.HttpResponseStatus;
@@ -130,7 +131,7 @@ public class TioBootServerHandler implements ServerAioHandler {
     if (wsSessionContext.isHandshaked()) { // WebSocket handshake completed
       return defaultServerAioHandler.decode(buffer, limit, position, readableLength, channelContext);
     } else {
-      if (readableLength < MINIMUM_HTTP_HEADER_LENGTH) {
+      if (tooShortForNewRequest(readableLength, channelContext)) {
         // Data might be insufficient to parse as HTTP protocol
         if (serverAioHandler != null) {
           return serverAioHandler.decode(buffer, limit, position, readableLength, channelContext);
@@ -145,6 +146,10 @@ public class TioBootServerHandler implements ServerAioHandler {
         handleUnsupportedHttpMethod(channelContext, e);
         return null;
       } catch (TioDecodeException e) {
+        if (isClosing(channelContext)) {
+          // the decoder already closed the connection, the buffer must not be parsed by anything else
+          return null;
+        }
         if (serverAioHandler != null) {
           return serverAioHandler.decode(buffer, limit, position, readableLength, channelContext);
         }
@@ -161,7 +166,8 @@ public class TioBootServerHandler implements ServerAioHandler {
       }
       String upgradeHeader = request.getHeader("upgrade");
       if (RequestHeaderUpgrade.WEBSOCKET.equalsIgnoreCase(upgradeHeader)) {
-        HttpResponse httpResponse = WebsocketServerAioHandler.upgradeWebSocketProtocol(request, channelContext);
+        HttpResponse httpResponse = WebsocketServerAioHandler.upgradeWebSocketProtocol(request, channelContext,
+            defaultServerConfig.getPerMessageDeflateConfig());
         if (httpResponse == null) {
           throw new TioDecodeException("Failed to upgrade HTTP protocol to WebSocket protocol.");
         }
@@ -178,10 +184,26 @@ public class TioBootServerHandler implements ServerAioHandler {
     }
   }
 
+  /**
+   * Whether the connection is being closed, e.g. by HttpRequestDecoder after a failure in the middle of a request.
+   */
+  private static boolean isClosing(ChannelContext channelContext) {
+    return channelContext.isWaitingClose || channelContext.isRemoved;
+  }
+
+  /**
+   * Whether the data is too short to be the start of a new request. The guard only applies before a request has
+   * started: once HttpRequestDecoder keeps a decode state the remaining bytes (e.g. the tail of a body) may be shorter.
+   */
+  private static boolean tooShortForNewRequest(int readableLength, ChannelContext channelContext) {
+    return readableLength < MINIMUM_HTTP_HEADER_LENGTH
+        && !(channelContext.getDecodeState() instanceof HttpRequestDecodeState);
+  }
+
   private Packet httpDecode(ByteBuffer buffer, int limit, int position, int readableLength,
       ChannelContext channelContext) throws Exception {
 
-    if (readableLength < MINIMUM_HTTP_HEADER_LENGTH) {
+    if (tooShortForNewRequest(readableLength, channelContext)) {
       return null;
     }
 
@@ -192,7 +214,9 @@ public class TioBootServerHandler implements ServerAioHandler {
       handleUnsupportedHttpMethod(channelContext, e);
       return null;
     } catch (TioDecodeException e) {
-
+      if (isClosing(channelContext)) {
+        return null;
+      }
       if (tioDecodeExceptionHandler != null) {
         tioDecodeExceptionHandler.handle(buffer, channelContext, httpConfig, e);
       } else {
@@ -215,7 +239,7 @@ public class TioBootServerHandler implements ServerAioHandler {
     if (wsSessionContext.isHandshaked()) { // WebSocket handshake completed
       return defaultServerAioHandler.decode(buffer, limit, position, readableLength, channelContext);
     } else {
-      if (readableLength < MINIMUM_HTTP_HEADER_LENGTH) {
+      if (tooShortForNewRequest(readableLength, channelContext)) {
         return null;
       }
 
@@ -226,6 +250,9 @@ public class TioBootServerHandler implements ServerAioHandler {
         handleUnsupportedHttpMethod(channelContext, e);
         return null;
       } catch (TioDecodeException e) {
+        if (isClosing(channelContext)) {
+          return null;
+        }
         if (tioDecodeExceptionHandler != null) {
           tioDecodeExceptionHandler.handle(buffer, channelContext, httpConfig, e);
         } else {
@@ -239,7 +266,8 @@ public class TioBootServerHandler implements ServerAioHandler {
       }
       String upgradeHeader = request.getHeader("upgrade");
       if (RequestHeaderUpgrade.WEBSOCKET.equalsIgnoreCase(upgradeHeader)) {
-        HttpResponse httpResponse = WebsocketServerAioHandler.upgradeWebSocketProtocol(request, channelContext);
+        HttpResponse httpResponse = WebsocketServerAioHandler.upgradeWebSocketProtocol(request, channelContext,
+            defaultServerConfig.getPerMessageDeflateConfig());
         if (httpResponse == null) {
           throw new TioDecodeException("Failed to upgrade HTTP protocol to WebSocket protocol.");
         }
@@ -5,18 +5,24 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.core.vo.FileSegment;
 import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.RequestHeaderKey;
 import nexus.io.tio.http.common.ResponseHeaderKey;
 import nexus.io.tio.http.server.util.Resps;
 
@@ -26,6 +32,9 @@ public class HttpFileDataUtils {
   /** 1MB 阈值：大于等于该值走零拷贝 */
   public static final long ZERO_COPY_THRESHOLD = 1024 * 1024;
 
+  /** 一个请求最多多少段，超过时返回 200 全量 */
+  public static final int MAX_RANGES = 64;
+
   /** GMT/RFC1123 时间格式 */
   public static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME.withLocale(Locale.US)
       .withZone(ZoneId.of("GMT"));
@@ -138,7 +147,29 @@ public class HttpFileDataUtils {
   }
 
   /**
-   * 处理 Range 请求（单段）。对 m3u8 将忽略 Range，返回 200 全量。
+   * If-Range 是否仍然有效：值为 ETag 时做强比较，为日期时须与 Last-Modified 相同；无效时应忽略 Range 返回 200 全量
+   */
+  public static boolean isIfRangeValid(HttpRequest request, long lastModified, String etag) {
+    String ifRange = request.getHeader(RequestHeaderKey.If_Range);
+    if (ifRange == null) {
+      return true;
+    }
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // 弱 ETag 不能用于 If-Range
+      return !ifRange.startsWith("W/") && ifRange.equals(etag);
+    }
+    try {
+      ZonedDateTime date = ZonedDateTime.parse(ifRange, HTTP_DATE_FORMAT);
+      return date.toInstant().getEpochSecond() == lastModified / 1000;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * 处理 Range 请求。单段返回 206；多段返回 multipart/byteranges，
+   * 数据不小于 ZERO_COPY_THRESHOLD 时各段都走零拷贝；对 m3u8 将忽略 Range，返回 200 全量。
    */
   public static HttpResponse handleRangeRequest(HttpResponse response, File file, String range, long fileLength,
       String contentType) {
@@ -160,107 +191,219 @@ public class HttpFileDataUtils {
       return handleFullFileRequest(response, file, fileLength, contentType);
     }
 
-    // 不支持多重范围：发现逗号则退回 200 全量（或可改成 416）
-    String rangeValue = lower.substring("bytes=".length());
-    if (rangeValue.contains(",")) {
-      log.info("Multi-range not supported, fallback to full response: {}", raw);
+    List<long[]> ranges;
+    try {
+      ranges = parseRanges(lower.substring("bytes=".length()), fileLength);
+    } catch (NumberFormatException ex) {
+      ranges = null;
+    }
+    if (ranges == null) {
+      // 语法错误的 Range 按没有 Range 处理，返回 200 全量
+      log.info("Invalid range, fallback to full response: {}", range);
+      return handleFullFileRequest(response, file, fileLength, contentType);
+    }
+    if (ranges.isEmpty()) {
+      // 语法正确但没有一段可以满足
+      response.setStatus(416);
+      response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
+      return response;
+    }
+    if (ranges.size() > MAX_RANGES) {
+      log.info("Too many ranges, fallback to full response: {}", ranges.size());
       return handleFullFileRequest(response, file, fileLength, contentType);
     }
 
-    String[] parts = rangeValue.split("-", -1); // 保留空串
     try {
-      if (parts.length != 2) {
-        response.setStatus(416);
-        response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-        return response;
+      if (ranges.size() == 1) {
+        return handleSingleRange(response, file, ranges.get(0)[0], ranges.get(0)[1], fileLength, contentType);
       }
+      return handleMultiRange(response, file, ranges, fileLength, contentType);
+    } catch (Exception e2) {
+      log.error("Error handling range request", e2);
+      response.setStatus(500);
+      response.setBody("Internal Server Error".getBytes());
+      return response;
+    }
+  }
 
-      String s = parts[0];
-      String e = parts[1];
-
+  /**
+   * 解析 bytes= 之后的部分，结束位置超过文件长度时截到文件末尾，不可满足的段丢弃；有重叠的段时排序后合并
+   *
+   * @return 各段的[start, end]，语法错误时返回 null，没有一段可以满足时返回空列表
+   * @throws NumberFormatException 数字不合法
+   */
+  static List<long[]> parseRanges(String rangeValue, long fileLength) {
+    List<long[]> ranges = new ArrayList<>();
+    boolean hasSpec = false;
+    for (String spec : rangeValue.split(",")) {
+      spec = spec.trim();
+      if (spec.isEmpty()) {
+        continue;
+      }
+      hasSpec = true;
+      String[] parts = spec.split("-", -1); // 保留空串
+      if (parts.length != 2) {
+        return null;
+      }
+      String s = parts[0].trim();
+      String e = parts[1].trim();
       long start, end;
-
       if (!s.isEmpty()) {
         // bytes=START- 或 bytes=START-END
         start = Long.parseLong(s);
-        if (start < 0 || start >= fileLength) {
-          response.setStatus(416);
-          response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-          return response;
+        end = e.isEmpty() ? Long.MAX_VALUE : Long.parseLong(e);
+        if (start < 0 || end < start) {
+          return null;
         }
-        if (!e.isEmpty()) {
-          end = Long.parseLong(e);
-          if (end < start || end >= fileLength) {
-            response.setStatus(416);
-            response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-            return response;
-          }
-        } else {
-          end = fileLength - 1;
+        if (start >= fileLength) {
+          continue;
         }
+        end = Math.min(end, fileLength - 1);
       } else {
         // 后缀范围：bytes=-N 取最后 N 个字节
         if (e.isEmpty()) {
-          response.setStatus(416);
-          response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-          return response;
+          return null;
         }
         long suffixLen = Long.parseLong(e);
-        if (suffixLen <= 0) {
-          response.setStatus(416);
-          response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-          return response;
-        }
-        if (suffixLen >= fileLength) {
-          start = 0;
-        } else {
-          start = fileLength - suffixLen;
+        if (suffixLen <= 0 || fileLength == 0) {
+          continue;
         }
+        start = Math.max(fileLength - suffixLen, 0);
         end = fileLength - 1;
       }
+      ranges.add(new long[] { start, end });
+    }
+    if (!hasSpec) {
+      return null;
+    }
 
-      long contentLength = end - start + 1;
-
-      // 决定零拷贝或小块内存返回
-      if (contentLength >= ZERO_COPY_THRESHOLD) {
-        return buildZeroCopyResponse(response, file, start, end, contentType, true, fileLength);
-      } else {
-        byte[] data = readFileRange(file, start, contentLength);
-        if (data == null) {
-          log.error("Failed to read file range: {}", file.getPath());
-          response.setStatus(500);
-          response.setBody("Internal Server Error".getBytes());
-          return response;
+    if (ranges.size() > 1) {
+      List<long[]> sorted = new ArrayList<>(ranges);
+      sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+      boolean overlapped = false;
+      for (int i = 1; i < sorted.size(); i++) {
+        if (sorted.get(i)[0] <= sorted.get(i - 1)[1] + 1) {
+          overlapped = true;
+          break;
         }
-
-        response.setStatus(206);
-        response.setHeader(ResponseHeaderKey.Content_Range, "bytes " + start + "-" + end + "/" + fileLength);
-        response.setHeader(ResponseHeaderKey.Accept_Ranges, "bytes");
-        response.setHeader(ResponseHeaderKey.Content_Length, String.valueOf(contentLength));
-        response.setSkipAddContentLength(true);
-        Resps.bytesWithContentType(response, data, contentType);
-
-        // 媒体与 HLS 不压缩
-        if (shouldSkipGzipFor(contentType)) {
-          response.setSkipGzipped(true);
-        } else {
-          response.setSkipGzipped(false);
+      }
+      // 没有重叠时保持请求中的顺序
+      if (overlapped) {
+        ranges = new ArrayList<>();
+        long[] current = sorted.get(0).clone();
+        for (int i = 1; i < sorted.size(); i++) {
+          long[] next = sorted.get(i);
+          if (next[0] <= current[1] + 1) {
+            current[1] = Math.max(current[1], next[1]);
+          } else {
+            ranges.add(current);
+            current = next.clone();
+          }
         }
-
-        return response;
+        ranges.add(current);
       }
+    }
+    return ranges;
+  }
 
-    } catch (NumberFormatException ex) {
-      log.error("Failed to parse range: {}", range, ex);
-      response.setStatus(416);
-      response.setHeader(ResponseHeaderKey.Content_Range, "bytes */" + fileLength);
-      return response;
-    } catch (Exception e2) {
-      log.error("Error handling range request", e2);
+  private static HttpResponse handleSingleRange(HttpResponse response, File file, long start, long end,
+      long fileLength, String contentType) {
+    long contentLength = end - start + 1;
+
+    // 决定零拷贝或小块内存返回
+    if (contentLength >= ZERO_COPY_THRESHOLD) {
+      return buildZeroCopyResponse(response, file, start, end, contentType, true, fileLength);
+    }
+
+    byte[] data = readFileRange(file, start, contentLength);
+    if (data == null) {
+      log.error("Failed to read file range: {}", file.getPath());
       response.setStatus(500);
       response.setBody("Internal Server Error".getBytes());
       return response;
     }
+
+    response.setStatus(206);
+    response.setHeader(ResponseHeaderKey.Content_Range, "bytes " + start + "-" + end + "/" + fileLength);
+    response.setHeader(ResponseHeaderKey.Accept_Ranges, "bytes");
+    response.setHeader(ResponseHeaderKey.Content_Length, String.valueOf(contentLength));
+    response.setSkipAddContentLength(true);
+    Resps.bytesWithContentType(response, data, contentType);
+
+    // 媒体与 HLS 不压缩
+    if (shouldSkipGzipFor(contentType)) {
+      response.setSkipGzipped(true);
+    } else {
+      response.setSkipGzipped(false);
+    }
+
+    return response;
+  }
+
+  /**
+   * multipart/byteranges：每段前是分隔符和 Content-Type、Content-Range，最后是结束分隔符。
+   * 文件数据不小于 ZERO_COPY_THRESHOLD 时按 FileSegment 逐段零拷贝，否则在内存中拼好
+   */
+  private static HttpResponse handleMultiRange(HttpResponse response, File file, List<long[]> ranges,
+      long fileLength, String contentType) {
+    String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+        + Long.toHexString(System.nanoTime());
+    List<FileSegment> segments = new ArrayList<>(ranges.size() + 1);
+    long dataLength = 0;
+    for (int i = 0; i < ranges.size(); i++) {
+      long start = ranges.get(i)[0];
+      long end = ranges.get(i)[1];
+      StringBuilder head = new StringBuilder();
+      if (i > 0) {
+        head.append("\r\n");
+      }
+      head.append("--").append(boundary).append("\r\n");
+      if (contentType != null) {
+        head.append("Content-Type: ").append(contentType).append("\r\n");
+      }
+      head.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(fileLength)
+          .append("\r\n\r\n");
+      segments.add(new FileSegment(head.toString().getBytes(StandardCharsets.ISO_8859_1), start, end - start + 1));
+      dataLength += end - start + 1;
+    }
+    segments.add(new FileSegment(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1), 0, 0));
+
+    response.setStatus(206);
+    response.setHeader(ResponseHeaderKey.Accept_Ranges, "bytes");
+    response.setContentType("multipart/byteranges; boundary=" + boundary);
+    response.setSkipGzipped(true);
+
+    if (dataLength >= ZERO_COPY_THRESHOLD) {
+      response.setFileSegments(file, segments);
+      response.setHeader(ResponseHeaderKey.Content_Length, String.valueOf(response.getFileBodyLength()));
+      response.setSkipAddContentLength(true);
+      log.info("Zero copy multipart: {} {} ranges len={}", file.getPath(), ranges.size(), dataLength);
+      return response;
+    }
+
+    long total = 0;
+    for (FileSegment segment : segments) {
+      total += segment.byteCount();
+    }
+    byte[] body = new byte[(int) total];
+    int pos = 0;
+    for (FileSegment segment : segments) {
+      System.arraycopy(segment.getHead(), 0, body, pos, segment.getHead().length);
+      pos += segment.getHead().length;
+      if (segment.getLength() > 0) {
+        byte[] data = readFileRange(file, segment.getStart(), segment.getLength());
+        if (data == null || data.length != segment.getLength()) {
+          log.error("Failed to read file range: {}", file.getPath());
+          response.setStatus(500);
+          response.setBody("Internal Server Error".getBytes());
+          return response;
+        }
+        System.arraycopy(data, 0, body, pos, data.length);
+        pos += data.length;
+      }
+    }
+    response.setBody(body);
+    return response;
   }
 
   /**
@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nexus.io.tio.boot.cache.StaticResourcesCache;
+import nexus.io.tio.boot.http.handler.internal.DefaultStaticResourceHandler;
 import nexus.io.tio.utils.cache.AbsCache;
 
 /**
@@ -182,6 +183,10 @@ public class DirectoryWatcher {
             if (staticResCache != null) {
               String path = StaticResourcesCache.getHttpConfig().getPath(changedFile);
               staticResCache.remove(path);
+              // 预压缩文件变化时，原文件缓存中的压缩版本也要更新
+              if (path.endsWith(DefaultStaticResourceHandler.GZIP_SUFFIX) || path.endsWith(DefaultStaticResourceHandler.BR_SUFFIX)) {
+                staticResCache.remove(path.substring(0, path.lastIndexOf('.')));
+              }
             }
           } catch (IOException e) {
             log.error(e.toString(), e);
@@ -1,5 +1,7 @@
 package nexus.io.tio.boot.websocket;
 
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,11 +81,26 @@ public class TioBootWebSocketDispatcher implements IWebSocketHandler {
     }
   }
 
+  /**
+   * 字节消息由框架以ByteBuffer的形式传进来，交给对应路径的handler，handler没有覆盖ByteBuffer版本时会转成byte[]
+   */
+  @Override
+  public Object onBytes(WebSocketRequest wsRequest, ByteBuffer buffer, ChannelContext channelContext) throws Exception {
+    return dispatchBytes(wsRequest, buffer, null, channelContext);
+  }
+
   /**
    * 字节消息（binaryType = arraybuffer）过来后会走这个方法
    */
   @Override
   public Object onBytes(WebSocketRequest wsRequest, byte[] bytes, ChannelContext channelContext) throws Exception {
+    return dispatchBytes(wsRequest, null, bytes, channelContext);
+  }
+
+  /**
+   * buffer和bytes只有一个不为null，按调用方传进来的类型交给handler
+   */
+  private Object dispatchBytes(WebSocketRequest wsRequest, ByteBuffer buffer, byte[] bytes, ChannelContext channelContext) throws Exception {
     WebSocketSessionContext wsSessionContext = (WebSocketSessionContext) channelContext.get();
     HttpRequest httpRequest = wsSessionContext.getHandshakeRequest();
     String path = httpRequest.getRequestLine().path;
@@ -95,7 +112,11 @@ public class TioBootWebSocketDispatcher implements IWebSocketHandler {
     IWebSocketHandler handler = webSocketRouter.find(path);
     Object result = null;
     try {
-      result = handler.onBytes(wsRequest, bytes, channelContext);
+      if (buffer != null) {
+        result = handler.onBytes(wsRequest, buffer, channelContext);
+      } else {
+        result = handler.onBytes(wsRequest, bytes, channelContext);
+      }
     } catch (Exception e) {
       StringBuilder sb = new StringBuilder();
       sb.append(SysConst.CRLF).append("Remote Address: ").append(httpRequest.getClientIp());
@@ -105,7 +126,7 @@ public class TioBootWebSocketDispatcher implements IWebSocketHandler {
       TioBootExceptionHandler exceptionHandler = TioBootServer.me().getExceptionHandler();
 
       if (exceptionHandler != null) {
-        exceptionHandler.wsBytesHandler(wsRequest, bytes, channelContext, httpRequest, e);
+        exceptionHandler.wsBytesHandler(wsRequest, bytes != null ? bytes : wsRequest.getBody(), channelContext, httpRequest, e);
       }
     }
 
@@ -0,0 +1,193 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.controller.PathUnitVo;
+import nexus.io.controller.VariablePathVo;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.utils.hutool.StrUtil;
+
+/**
+ * 路由表按TioBootHttpControllerRouter的方式组装：固定路径放pathMethodMap，变量路径按"[方法 ]路径单元数"分组
+ */
+public class HttpRouteTableTest {
+
+  private final Map<String, Method> pathMethodMap = new HashMap<>();
+  private final Map<String, VariablePathVo[]> variablePathMap = new TreeMap<>();
+  private final Map<Method, ActionInvoker> invokers = new HashMap<>();
+  private final UserController controller = new UserController();
+  private Method list;
+  private Method admin;
+  private Method handle;
+  private HttpRouteTable table;
+
+  @Before
+  public void setUp() throws Exception {
+    list = UserController.class.getMethod("list");
+    admin = UserController.class.getMethod("admin");
+    handle = UserController.class.getMethod("handle", String.class);
+    for (Method method : new Method[] { list, admin, handle }) {
+      invokers.put(method, new ActionInvoker(controller, method, null, names(method), method.getParameterTypes()));
+    }
+
+    route("/user/list", list);
+    route("GET /user/admin", admin);
+    route("/user/{id}", handle);
+    route("/user/{id}/orders/{status}", handle);
+    route("/user/{id}/orders/paid", handle);
+    route("GET /user/{id}/profile", handle);
+    // 固定单元一样多，不限方法的排在指定方法的后面，后注册的胜出
+    route("GET /tie/{a}/c", handle);
+    route("/tie/b/{d}", handle);
+    // "Aa"和"BB"的hash相同，落在同一个节点的相邻位置
+    route("/hash/Aa/{x}", handle);
+    route("/hash/BB/{x}", handle);
+    table = new HttpRouteTable(pathMethodMap, variablePathMap, invokers);
+  }
+
+  @Test
+  public void testStaticRoutes() {
+    assertSame(invokers.get(list), table.matchStatic("/user/list", "GET"));
+    assertSame(invokers.get(list), table.matchStatic("/user/list", "DELETE"));
+    assertSame(invokers.get(admin), table.matchStatic("/user/admin", "GET"));
+    assertNull(table.matchStatic("/user/admin", "POST"));
+    assertNull(table.matchStatic("/user/list/", "GET"));
+  }
+
+  @Test
+  public void testVariableBinding() {
+    HttpRequest request = new HttpRequest();
+    assertEquals("/user/{id}", match("/user/42", "GET", request));
+    assertEquals("42", request.getParam("id"));
+
+    // 指定方法的固定路径不匹配时，落到变量路径上
+    request = new HttpRequest();
+    assertEquals("/user/{id}", match("/user/admin", "POST", request));
+    assertEquals("admin", request.getParam("id"));
+
+    request = new HttpRequest();
+    assertEquals("/user/{id}/orders/{status}", match("/user/7/orders/new", "PUT", request));
+    assertEquals("7", request.getParam("id"));
+    assertEquals("new", request.getParam("status"));
+  }
+
+  @Test
+  public void testMoreFixedSegmentsWin() {
+    HttpRequest request = new HttpRequest();
+    assertEquals("/user/{id}/orders/paid", match("/user/7/orders/paid", "GET", request));
+    assertEquals("7", request.getParam("id"));
+    assertNull(request.getParam("status"));
+  }
+
+  @Test
+  public void testLaterRouteWinsTie() {
+    assertEquals("/tie/b/{d}", match("/tie/b/c", "GET", new HttpRequest()));
+    assertEquals("/tie/{a}/c", match("/tie/x/c", "GET", new HttpRequest()));
+    assertNull(match("/tie/x/c", "POST", new HttpRequest()));
+  }
+
+  @Test
+  public void testSegmentCountAndMethod() {
+    assertEquals("/user/{id}/profile", match("/user/1/profile", "GET", new HttpRequest()));
+    assertNull(match("/user/1/profile", "POST", new HttpRequest()));
+    assertNull(match("/user/1/orders", "GET", new HttpRequest()));
+    assertNull(match("/user", "GET", new HttpRequest()));
+    assertNull(match("/", "GET", new HttpRequest()));
+    assertNull(match("/other/1", "GET", new HttpRequest()));
+  }
+
+  @Test
+  public void testTrailingSlashIgnoredLikeSplit() {
+    HttpRequest request = new HttpRequest();
+    assertEquals("/user/{id}", match("/user/42/", "GET", request));
+    assertEquals("42", request.getParam("id"));
+    assertEquals("/user/{id}/orders/paid", match("/user/42/orders/paid//", "GET", new HttpRequest()));
+  }
+
+  @Test
+  public void testCollidingSegmentHashes() {
+    HttpRequest request = new HttpRequest();
+    assertEquals("/hash/Aa/{x}", match("/hash/Aa/1", "GET", request));
+    assertEquals("1", request.getParam("x"));
+    assertEquals("/hash/BB/{x}", match("/hash/BB/2", "GET", new HttpRequest()));
+    assertNull(match("/hash/Ab/3", "GET", new HttpRequest()));
+  }
+
+  @Test
+  public void testMatchTemplate() {
+    assertEquals("/user/list", table.matchTemplate("/user/list", "POST"));
+    assertEquals("/user/admin", table.matchTemplate("/user/admin", "GET"));
+    assertEquals("/user/{id}", table.matchTemplate("/user/admin", "POST"));
+    assertEquals("/user/{id}/orders/paid", table.matchTemplate("/user/9/orders/paid", "GET"));
+    assertEquals("/user/{id}/profile", table.matchTemplate("/user/9/profile", "GET"));
+    assertNull(table.matchTemplate("/user/9/profile", "POST"));
+    assertNull(table.matchTemplate("/nothing", "GET"));
+  }
+
+  private String match(String path, String httpMethod, HttpRequest request) {
+    HttpRouteTable.VariableRoute route = table.matchVariable(path, httpMethod, request);
+    if (route == null) {
+      return null;
+    }
+    assertSame(invokers.get(route.getPathVo().getMethod()), route.getInvoker());
+    return route.getPathVo().getPath();
+  }
+
+  private void route(String key, Method method) {
+    if (key.indexOf('{') == -1) {
+      pathMethodMap.put(key, method);
+      return;
+    }
+    String httpMethod = null;
+    String path = key;
+    int spaceIndex = key.indexOf(' ');
+    if (spaceIndex != -1) {
+      httpMethod = key.substring(0, spaceIndex);
+      path = key.substring(spaceIndex + 1);
+    }
+    String[] pathUnits = StrUtil.split(path, "/");
+    PathUnitVo[] pathUnitVos = new PathUnitVo[pathUnits.length];
+    for (int i = 0; i < pathUnits.length; i++) {
+      String pathUnit = pathUnits[i];
+      if (pathUnit.startsWith("{") && pathUnit.endsWith("}")) {
+        pathUnitVos[i] = new PathUnitVo(true, pathUnit.substring(1, pathUnit.length() - 1));
+      } else {
+        pathUnitVos[i] = new PathUnitVo(false, pathUnit);
+      }
+    }
+    String groupKey = httpMethod == null ? String.valueOf(pathUnits.length) : httpMethod + " " + pathUnits.length;
+    VariablePathVo[] exist = variablePathMap.get(groupKey);
+    VariablePathVo[] value = exist == null ? new VariablePathVo[1] : Arrays.copyOf(exist, exist.length + 1);
+    value[value.length - 1] = new VariablePathVo(path, method, pathUnitVos);
+    variablePathMap.put(groupKey, value);
+  }
+
+  private static String[] names(Method method) {
+    return method.getParameterCount() == 0 ? new String[0] : new String[] { "id" };
+  }
+
+  public static class UserController {
+    public String list() {
+      return "list";
+    }
+
+    public String admin() {
+      return "admin";
+    }
+
+    public String handle(String id) {
+      return id;
+    }
+  }
+}
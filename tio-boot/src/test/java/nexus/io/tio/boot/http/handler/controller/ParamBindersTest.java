@@ -0,0 +1,279 @@
+package nexus.io.tio.boot.http.handler.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nexus.io.tio.boot.http.TioRequestContext;
+import nexus.io.tio.http.common.HttpConfig;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+
+/**
+ * 按controller方法的真实签名编译binder，再用不同的请求执行
+ */
+public class ParamBindersTest {
+
+  /**
+   * 参数名在生成ActionInvoker时从字节码中读出，这里直接给出
+   */
+  private static final Map<String, String[]> PARAM_NAMES = new HashMap<>();
+  static {
+    PARAM_NAMES.put("simple", new String[] { "id", "total", "enabled", "name", "score" });
+    PARAM_NAMES.put("arrays", new String[] { "ids", "tags" });
+    PARAM_NAMES.put("beans", new String[] { "user", "hidden", "noDefault" });
+    PARAM_NAMES.put("user", new String[] { "user" });
+    PARAM_NAMES.put("list", new String[] { "users" });
+    PARAM_NAMES.put("framework", new String[] { "request", "response", "config" });
+  }
+
+  private final HttpConfig httpConfig = new HttpConfig(80, false);
+
+  @After
+  public void tearDown() {
+    TioRequestContext.release();
+  }
+
+  @Test
+  public void testSimpleTypesConvertedFromParams() throws Exception {
+    HttpRequest request = new HttpRequest();
+    request.addParam("id", "42");
+    request.addParam("total", "9000000000");
+    request.addParam("enabled", "YES");
+    request.addParam("name", "tio");
+    request.addParam("score", "1.5");
+
+    Object[] values = bind("simple", request, false);
+    assertEquals(42, values[0]);
+    assertEquals(9000000000L, values[1]);
+    assertEquals(Boolean.TRUE, values[2]);
+    assertEquals("tio", values[3]);
+    assertEquals(1.5D, values[4]);
+  }
+
+  @Test
+  public void testBlankAndMissingValues() throws Exception {
+    HttpRequest request = new HttpRequest();
+    request.addParam("id", "");
+    request.addParam("enabled", " ");
+    // 只要有一个参数就按参数名取值，其它参数都是null
+    Object[] values = bind("simple", request, false);
+    assertArrayEquals(new Object[5], values);
+
+    // 转换失败只影响这一个参数
+    request = new HttpRequest();
+    request.addParam("id", "abc");
+    request.addParam("name", "tio");
+    values = bind("simple", request, false);
+    assertNull(values[0]);
+    assertEquals("tio", values[3]);
+  }
+
+  @Test
+  public void testArrayParam() throws Exception {
+    HttpRequest request = new HttpRequest();
+    request.addParam("ids", "1");
+    request.addParam("ids", "2");
+    request.addParam("ids", "3");
+    request.addParam("tags", "a");
+    request.addParam("tags", "b");
+
+    Object[] values = bind("arrays", request, false);
+    assertArrayEquals(new Integer[] { 1, 2, 3 }, (Integer[]) values[0]);
+    assertArrayEquals(new String[] { "a", "b" }, (String[]) values[1]);
+  }
+
+  @Test
+  public void testBeanFromParams() throws Exception {
+    HttpRequest request = new HttpRequest();
+    request.addParam("name", "tio");
+    request.addParam("age", "18");
+    request.addParam("vip", "1");
+    request.addParam("nick", "t");
+    request.addParam("unknown", "x");
+
+    Object[] values = bind("beans", request, false);
+    User user = (User) values[0];
+    assertEquals("tio", user.getName());
+    assertEquals(18, user.getAge());
+    assertTrue(user.isVip());
+    // 没有标准setter时按属性名找到的public方法
+    assertEquals("t", user.getNick());
+
+    // 非public类用原生反射调用setter
+    HiddenBean hidden = (HiddenBean) values[1];
+    assertEquals("tio", hidden.getName());
+
+    // 没有无参构造方法
+    assertNull(values[2]);
+  }
+
+  @Test
+  public void testBeanAndListFromJsonBody() throws Exception {
+    HttpRequest request = new HttpRequest();
+    request.setBodyString("{\"name\":\"tio\",\"age\":3}");
+    User user = (User) bind("user", request, false)[0];
+    assertEquals("tio", user.getName());
+    assertEquals(3, user.getAge());
+
+    request = new HttpRequest();
+    request.setBodyString("[{\"name\":\"a\"},{\"name\":\"b\"}]");
+    Object list = bind("list", request, false)[0];
+    assertEquals(2, ((List<?>) list).size());
+    // 元素类型取自List<User>的泛型参数
+    assertEquals("b", ((User) ((List<?>) list).get(1)).getName());
+
+    // 简单类型不从请求体取值
+    request = new HttpRequest();
+    request.setBodyString("{\"id\":1}");
+    assertArrayEquals(new Object[5], bind("simple", request, false));
+  }
+
+  @Test
+  public void testFrameworkObjects() throws Exception {
+    HttpRequest request = new HttpRequest();
+    HttpResponse response = new HttpResponse();
+    TioRequestContext.hold(request, response);
+
+    Object[] values = bind("framework", request, true);
+    assertSame(request, values[0]);
+    assertSame(response, values[1]);
+    assertSame(httpConfig, values[2]);
+
+    // 关闭compatibilityAssignment后HttpConfig当作普通bean，没有参数也没有请求体时为null
+    values = bind("framework", request, false);
+    assertSame(request, values[0]);
+    assertSame(response, values[1]);
+    assertNull(values[2]);
+  }
+
+  @Test
+  public void testBinderCompiledOncePerSignature() throws Exception {
+    Method method = method("simple");
+    ParamBinder[] binders = compile(method);
+    for (int i = 0; i < 3; i++) {
+      HttpRequest request = new HttpRequest();
+      request.addParam("id", String.valueOf(i));
+      assertEquals(i, ParamBinders.bind(binders, request, httpConfig, false)[0]);
+    }
+  }
+
+  private Object[] bind(String methodName, HttpRequest request, boolean compatibilityAssignment) throws Exception {
+    return ParamBinders.bind(compile(method(methodName)), request, httpConfig, compatibilityAssignment);
+  }
+
+  private static ParamBinder[] compile(Method method) {
+    return ParamBinders.compile(PARAM_NAMES.get(method.getName()), method.getParameterTypes(),
+        method.getGenericParameterTypes());
+  }
+
+  private static Method method(String name) {
+    for (Method method : Actions.class.getMethods()) {
+      if (method.getName().equals(name)) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException(name);
+  }
+
+  public static class Actions {
+    public void simple(int id, Long total, boolean enabled, String name, Double score) {
+    }
+
+    public void arrays(Integer[] ids, String[] tags) {
+    }
+
+    public void beans(User user, HiddenBean hidden, NoDefault noDefault) {
+    }
+
+    public void user(User user) {
+    }
+
+    public void list(List<User> users) {
+    }
+
+    public void framework(HttpRequest request, HttpResponse response, HttpConfig config) {
+    }
+  }
+
+  public static class User {
+    private String name;
+    private int age;
+    private boolean vip;
+    private String nick;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+
+    public boolean isVip() {
+      return vip;
+    }
+
+    public void setVip(boolean vip) {
+      this.vip = vip;
+    }
+
+    public String getNick() {
+      return nick;
+    }
+
+    /**
+     * 链式setter，Introspector不认作写方法
+     */
+    public User setNick(String nick) {
+      this.nick = nick;
+      return this;
+    }
+  }
+
+  static class HiddenBean {
+    private String name;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  public static class NoDefault {
+    private String name;
+
+    public NoDefault(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+  }
+}
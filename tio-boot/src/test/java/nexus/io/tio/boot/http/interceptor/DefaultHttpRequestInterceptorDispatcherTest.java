@@ -0,0 +1,134 @@
+package nexus.io.tio.boot.http.interceptor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.tio.boot.server.TioBootServer;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.RequestLine;
+import nexus.io.tio.http.server.intf.HttpRequestInterceptor;
+
+public class DefaultHttpRequestInterceptorDispatcherTest {
+
+  private final HttpInteceptorConfigure configure = new HttpInteceptorConfigure();
+  private final DefaultHttpRequestInterceptorDispatcher dispatcher = new DefaultHttpRequestInterceptorDispatcher();
+  private HttpInteceptorConfigure previous;
+
+  @Before
+  public void setUp() {
+    previous = TioBootServer.me().getHttpInteceptorConfigure();
+    TioBootServer.me().setHttpInteceptorConfigure(configure);
+  }
+
+  @After
+  public void tearDown() {
+    TioBootServer.me().setHttpInteceptorConfigure(previous);
+  }
+
+  @Test
+  public void testChainRebuiltAfterAddAndRemove() {
+    NamedInterceptor auth = new NamedInterceptor("auth");
+    configure.add(model("auth", auth, "/api/**"));
+    assertArrayEquals(new HttpRequestInterceptor[] { auth }, dispatcher.chain("/api/user"));
+
+    NamedInterceptor log = new NamedInterceptor("log");
+    configure.add(model("log", log, "/api/user"));
+    assertArrayEquals(new HttpRequestInterceptor[] { auth, log }, dispatcher.chain("/api/user"));
+
+    configure.remove("auth");
+    assertArrayEquals(new HttpRequestInterceptor[] { log }, dispatcher.chain("/api/user"));
+    assertEquals(0, dispatcher.chain("/api/other").length);
+  }
+
+  @Test
+  public void testTemplateChainRebuiltAfterAdd() {
+    NamedInterceptor auth = new NamedInterceptor("auth");
+    configure.add(model("auth", auth, "/user/*"));
+    assertArrayEquals(new HttpRequestInterceptor[] { auth }, dispatcher.chain("/user/1", "/user/{id}"));
+
+    NamedInterceptor audit = new NamedInterceptor("audit");
+    configure.add(model("audit", audit, "/user/{id}"));
+    assertArrayEquals(new HttpRequestInterceptor[] { auth, audit }, dispatcher.chain("/user/2", "/user/{id}"));
+  }
+
+  @Test
+  public void testTemplateSharedOnlyWhenPatternsCannotTellPathsApart() {
+    NamedInterceptor admin = new NamedInterceptor("admin");
+    configure.add(model("admin", admin, "/user/admin"));
+
+    // /user/admin与/user/1命中同一个路由，但拦截规则不同，不能共用一条链
+    assertArrayEquals(new HttpRequestInterceptor[] { admin }, dispatcher.chain("/user/admin", "/user/{id}"));
+    assertEquals(0, dispatcher.chain("/user/1", "/user/{id}").length);
+    assertArrayEquals(new HttpRequestInterceptor[] { admin }, dispatcher.chain("/user/admin", "/user/{id}"));
+  }
+
+  @Test
+  public void testStaticFileUnderTemplate() {
+    NamedInterceptor auth = new NamedInterceptor("auth");
+    HttpInterceptorModel model = model("auth", auth, "/file/*");
+    model.setAlloweStaticFile(true);
+    configure.add(model);
+
+    assertArrayEquals(new HttpRequestInterceptor[] { auth }, dispatcher.chain("/file/report", "/file/{name}"));
+    assertEquals(0, dispatcher.chain("/file/report.pdf", "/file/{name}").length);
+  }
+
+  @Test
+  public void testUnroutedRequestUsesRawPath() {
+    NamedInterceptor auth = new NamedInterceptor("auth");
+    configure.add(model("auth", auth, "/api/**"));
+    RequestLine requestLine = new RequestLine();
+    requestLine.setPath("/api/not/routed");
+    assertArrayEquals(new HttpRequestInterceptor[] { auth }, dispatcher.chain(requestLine));
+  }
+
+  @Test
+  public void testPathPatternUniformOverTemplate() {
+    assertTrue(PathPattern.compile("/user/*").isUniformOver("/user/{id}"));
+    assertTrue(PathPattern.compile("/user/**").isUniformOver("/user/{id}/orders"));
+    assertTrue(PathPattern.compile("/order/**").isUniformOver("/user/{id}"));
+    assertFalse(PathPattern.compile("/user/ad/*").isUniformOver("/user/{id}"));
+    assertTrue(PathPattern.compile("/user/{uid}").isUniformOver("/user/{id}"));
+    assertFalse(PathPattern.compile("/user/{uid:\\d+}").isUniformOver("/user/{id}"));
+    assertFalse(PathPattern.compile("/user/admin").isUniformOver("/user/{id}"));
+    assertTrue(PathPattern.compile("/user/admin/info").isUniformOver("/user/{id}"));
+    assertTrue(PathPattern.compile("/user/admin").isUniformOver("/user/list"));
+  }
+
+  private static HttpInterceptorModel model(String name, HttpRequestInterceptor interceptor, String blockedUrl) {
+    HttpInterceptorModel model = new HttpInterceptorModel();
+    model.setName(name);
+    model.setInterceptor(interceptor);
+    model.addBlockUrl(blockedUrl);
+    return model;
+  }
+
+  private static class NamedInterceptor implements HttpRequestInterceptor {
+    private final String name;
+
+    private NamedInterceptor(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public HttpResponse doBeforeHandler(HttpRequest request, RequestLine requestLine, HttpResponse httpResponse) {
+      return null;
+    }
+
+    @Override
+    public void doAfterHandler(HttpRequest request, RequestLine requestLine, HttpResponse response, long cost) {
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+}
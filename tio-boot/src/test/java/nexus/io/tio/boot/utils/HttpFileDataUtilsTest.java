@@ -0,0 +1,142 @@
+package nexus.io.tio.boot.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import nexus.io.tio.http.common.HeaderName;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.RequestHeaderKey;
+import nexus.io.tio.http.common.ResponseHeaderKey;
+
+public class HttpFileDataUtilsTest {
+
+  @Test
+  public void testParseSingleRanges() {
+    assertRanges(HttpFileDataUtils.parseRanges("0-9", 100), 0, 9);
+    assertRanges(HttpFileDataUtils.parseRanges("90-", 100), 90, 99);
+    assertRanges(HttpFileDataUtils.parseRanges("-10", 100), 90, 99);
+    // 结束位置超过文件长度时截到文件末尾
+    assertRanges(HttpFileDataUtils.parseRanges("95-200", 100), 95, 99);
+    assertRanges(HttpFileDataUtils.parseRanges("-200", 100), 0, 99);
+  }
+
+  @Test
+  public void testParseMultipleRanges() {
+    // 没有重叠时保持请求中的顺序
+    assertRanges(HttpFileDataUtils.parseRanges("50-59, 0-9", 100), 50, 59, 0, 9);
+    // 重叠或相邻的段排序后合并
+    assertRanges(HttpFileDataUtils.parseRanges("20-29,0-9,10-15,25-40", 100), 0, 15, 20, 40);
+    // 不可满足的段丢弃
+    assertRanges(HttpFileDataUtils.parseRanges("0-9,200-300", 100), 0, 9);
+  }
+
+  @Test
+  public void testParseUnsatisfiableRanges() {
+    assertTrue(HttpFileDataUtils.parseRanges("100-", 100).isEmpty());
+    assertTrue(HttpFileDataUtils.parseRanges("-0", 100).isEmpty());
+    assertTrue(HttpFileDataUtils.parseRanges("0-", 0).isEmpty());
+  }
+
+  @Test
+  public void testParseInvalidRanges() {
+    assertNull(HttpFileDataUtils.parseRanges("", 100));
+    assertNull(HttpFileDataUtils.parseRanges("-", 100));
+    assertNull(HttpFileDataUtils.parseRanges("9-0", 100));
+    assertNull(HttpFileDataUtils.parseRanges("1-2-3", 100));
+    assertNull(HttpFileDataUtils.parseRanges("0-9,5", 100));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseRangesNotNumber() {
+    HttpFileDataUtils.parseRanges("a-9", 100);
+  }
+
+  @Test
+  public void testInvalidRangeReturnsFullBody() throws Exception {
+    File file = tempFile(100);
+    HttpResponse response = HttpFileDataUtils.handleRangeRequest(new HttpResponse(), file, "bytes=9-0", 100,
+        "text/plain");
+    assertEquals(200, response.getStatus().status);
+    assertEquals(100, response.getBody().length);
+
+    response = HttpFileDataUtils.handleRangeRequest(new HttpResponse(), file, "bytes=x-1", 100, "text/plain");
+    assertEquals(200, response.getStatus().status);
+  }
+
+  @Test
+  public void testUnsatisfiableRangeReturns416() throws Exception {
+    File file = tempFile(100);
+    HttpResponse response = HttpFileDataUtils.handleRangeRequest(new HttpResponse(), file, "bytes=100-", 100,
+        "text/plain");
+    assertEquals(416, response.getStatus().status);
+    assertEquals("bytes */100", response.getHeader(HeaderName.from(ResponseHeaderKey.Content_Range)).value);
+  }
+
+  @Test
+  public void testSingleRange() throws Exception {
+    File file = tempFile(100);
+    HttpResponse response = HttpFileDataUtils.handleRangeRequest(new HttpResponse(), file, "bytes=10-19", 100,
+        "text/plain");
+    assertEquals(206, response.getStatus().status);
+    byte[] expected = new byte[10];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = (byte) (10 + i);
+    }
+    assertArrayEquals(expected, response.getBody());
+  }
+
+  @Test
+  public void testIfRange() {
+    long lastModified = 1445412480000L;
+    String etag = "\"abc\"";
+    assertTrue(HttpFileDataUtils.isIfRangeValid(request(null), lastModified, etag));
+    assertTrue(HttpFileDataUtils.isIfRangeValid(request("\"abc\""), lastModified, etag));
+    assertFalse(HttpFileDataUtils.isIfRangeValid(request("\"abd\""), lastModified, etag));
+    // 弱ETag不能用于If-Range
+    assertFalse(HttpFileDataUtils.isIfRangeValid(request("W/\"abc\""), lastModified, etag));
+    assertTrue(HttpFileDataUtils.isIfRangeValid(request("Wed, 21 Oct 2015 07:28:00 GMT"), lastModified, etag));
+    assertFalse(HttpFileDataUtils.isIfRangeValid(request("Wed, 21 Oct 2015 07:28:01 GMT"), lastModified, etag));
+    assertFalse(HttpFileDataUtils.isIfRangeValid(request("not a date"), lastModified, etag));
+  }
+
+  private static HttpRequest request(String ifRange) {
+    HttpRequest request = new HttpRequest();
+    Map<String, String> headers = new HashMap<>();
+    if (ifRange != null) {
+      headers.put(RequestHeaderKey.If_Range, ifRange);
+    }
+    request.setHeaders(headers);
+    return request;
+  }
+
+  private static File tempFile(int length) throws Exception {
+    File file = File.createTempFile("range", ".txt");
+    file.deleteOnExit();
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private static void assertRanges(List<long[]> ranges, long... expected) {
+    assertEquals(expected.length / 2, ranges.size());
+    for (int i = 0; i < ranges.size(); i++) {
+      assertEquals(expected[i * 2], ranges.get(i)[0]);
+      assertEquals(expected[i * 2 + 1], ranges.get(i)[1]);
+    }
+  }
+}
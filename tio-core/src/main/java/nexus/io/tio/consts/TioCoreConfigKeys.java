@@ -9,5 +9,15 @@ public interface TioCoreConfigKeys {
   String TIO_CORE_DIAGNOSTIC = "tio.core.diagnostic";
   String TIO_CORE_THREADS = "tio.core.threads";
   String TIO_CORE_HOTSWAP_RELOAD = "tio.core.hotswap.reload";
+  String TIO_CORE_PIPELINE_MAX_INFLIGHT = "tio.core.pipeline.max.inflight";
+  String TIO_CORE_SEND_BATCH_PACKETS = "tio.core.send.batch.packets";
+  String TIO_CORE_SEND_BATCH_BYTES = "tio.core.send.batch.bytes";
+  String TIO_CORE_BROADCAST_ENCODE_ONCE = "tio.core.broadcast.encode.once";
+  String TIO_CORE_SEND_QUEUE_HIGH_WATER_PACKETS = "tio.core.send.queue.high.water.packets";
+  String TIO_CORE_SEND_QUEUE_LOW_WATER_PACKETS = "tio.core.send.queue.low.water.packets";
+  String TIO_CORE_SEND_QUEUE_HIGH_WATER_BYTES = "tio.core.send.queue.high.water.bytes";
+  String TIO_CORE_SEND_QUEUE_LOW_WATER_BYTES = "tio.core.send.queue.low.water.bytes";
+  String TIO_CORE_SEND_QUEUE_OVERFLOW_POLICY = "tio.core.send.queue.overflow.policy";
+  String TIO_CORE_HEARTBEAT_TICK = "tio.core.heartbeat.tick";
   String REQEUST_PROCESSING = "reqeust_processing";
 }
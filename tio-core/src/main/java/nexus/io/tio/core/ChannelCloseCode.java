@@ -50,6 +50,10 @@ public enum ChannelCloseCode {
    * 心跳超时
    */
   HEARTBEAT_TIMEOUT((byte) 10),
+  /**
+   * 发送队列超过高水位(慢消费者)
+   */
+  SEND_QUEUE_OVERFLOW((byte) 11),
   /**
    * 连接失败
    */
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -16,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import nexus.io.aio.Packet;
 import nexus.io.aio.PacketMeta;
+import nexus.io.enhance.buffer.VirtualBuffer;
 import nexus.io.tio.core.ssl.SslFacadeContext;
 import nexus.io.tio.core.stat.ChannelStat;
 import nexus.io.tio.core.stat.IpStat;
@@ -44,10 +44,30 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
    * 当然这个值如果小于TioConfig.heartbeatTimeout，定时检查的时间间隔还是以TioConfig.heartbeatTimeout为准，只是在判断时用此值
    */
   public Long heartbeatTimeout = null;
+  /**
+   * 在心跳检查时间轮中的位置，由心跳检查自己维护，没有开启心跳检查时为null
+   */
+  public volatile Object heartbeatEntry = null;
   /**
    * 一个packet所需要的字节数（用于应用告诉框架，下一次解码所需要的字节长度，省去冗余解码带来的性能损耗）
    */
   public Integer packetNeededLength = null;
+  /**
+   * 解码器的中间状态（半包时由解码器保存，下一次解码从上次停下的位置继续，省去重复扫描已解析过的数据），packet解码成功或解码出错时清空
+   */
+  private Object decodeState = null;
+  /**
+   * 解码器返回null时，告诉框架已经处理掉、不需要再保留的字节数(从本次解码的起始位置算起，如流式接收的请求体)，DecodeTask保留半包时跳过这些字节并清零
+   */
+  public int consumedLength = 0;
+  /**
+   * 开启pipelining时(TioConfig.pipelineMaxInFlight大于1)由DecodeTask创建，保证响应按请求的顺序发送
+   */
+  public volatile PipelineQueue pipeline = null;
+  /**
+   * 编码结果与连接自身的状态有关(如websocket的permessage-deflate)，群发时不与其它连接共用编码结果
+   */
+  public volatile boolean encodePerConnection = false;
   public TioConfig tioConfig = null;
   public final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
 
@@ -78,9 +98,21 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
   private ChannelCloseCode closeCode = ChannelCloseCode.INIT_STATUS; // 连接关闭的原因码
 
   // 添加发送队列和控制变量
-  public final Queue<Packet> sendQueue = new ConcurrentLinkedQueue<>();
+  public final SendQueue sendQueue = new SendQueue(this);
   public final AtomicBoolean isSending = new AtomicBoolean(false);
 
+  /**
+   * 暂停读取(反压)，读循环停下时把读缓冲区和ReadCompletionHandler暂存在这里，恢复时接着读
+   */
+  private final Object readPauseLock = new Object();
+  private boolean readPaused = false;
+  private VirtualBuffer pausedReadBuffer = null;
+  private ReadCompletionHandler pausedReadHandler = null;
+  /**
+   * 连接关闭时执行一次的回调，见addCloseHook
+   */
+  private final ConcurrentLinkedQueue<Runnable> closeHooks = new ConcurrentLinkedQueue<>();
+
   /**
    *
    * @param tioConfig
@@ -282,7 +314,10 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     if (meta != null) {
       CountDownLatch countDownLatch = meta.getCountDownLatch();
       // traceBlockPacket(SynPacketAction.BEFORE_DOWN, packet, countDownLatch, null);
-      countDownLatch.countDown();
+      // 群发共用编码结果的packet带有meta，但不一定是同步发送
+      if (countDownLatch != null) {
+        countDownLatch.countDown();
+      }
     }
 
     try {
@@ -420,6 +455,30 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     this.packetNeededLength = packetNeededLength;
   }
 
+  public Object getDecodeState() {
+    return decodeState;
+  }
+
+  public void setDecodeState(Object decodeState) {
+    this.decodeState = decodeState;
+  }
+
+  /**
+   * 清空解码状态，解码状态如果持有资源(譬如临时文件)，一并释放。解码出错或连接关闭时调用
+   */
+  public void clearDecodeState() {
+    Object decodeState = this.decodeState;
+    this.decodeState = null;
+    this.consumedLength = 0;
+    if (decodeState instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) decodeState).close();
+      } catch (Exception e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
   public void setReconnect(boolean isReconnect) {
     this.isReconnect = isReconnect;
   }
@@ -589,6 +648,98 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     this.closeCode = closeCode;
   }
 
+  /**
+   * @return false: 发送队列超过了高水位(TioConfig.sendQueueHighWaterPackets、sendQueueHighWaterBytes)，还没有回落到低水位
+   */
+  public boolean isWritable() {
+    return sendQueue.isWritable();
+  }
+
+  /**
+   * 暂停从socket读数据，已经读到的数据照常解码。用于反压，譬如转发时下游发不出去，先不读上游的数据
+   */
+  public void pauseRead() {
+    synchronized (readPauseLock) {
+      readPaused = true;
+    }
+  }
+
+  /**
+   * 恢复读数据，读循环已经停下时在当前线程发起下一次读。连接关闭时也会调用，用来归还暂存的读缓冲区
+   */
+  public void resumeRead() {
+    VirtualBuffer buffer;
+    ReadCompletionHandler handler;
+    synchronized (readPauseLock) {
+      readPaused = false;
+      buffer = pausedReadBuffer;
+      handler = pausedReadHandler;
+      pausedReadBuffer = null;
+      pausedReadHandler = null;
+    }
+    if (buffer != null) {
+      handler.continueRead(buffer);
+    }
+  }
+
+  /**
+   * 连接关闭时在关闭连接的线程中执行一次hook，连接已经在关闭时马上在当前线程执行。<br>
+   * 用于挂在连接上的异步任务(如反向代理)在连接关闭时及时结束，任务先结束时用removeCloseHook去掉
+   *
+   * @param hook
+   */
+  public void addCloseHook(Runnable hook) {
+    closeHooks.add(hook);
+    // 谁从队列中移除了hook谁执行，与CloseTask同时进行时也只执行一次
+    if ((isWaitingClose || isClosed || isRemoved) && closeHooks.remove(hook)) {
+      runCloseHook(hook);
+    }
+  }
+
+  public void removeCloseHook(Runnable hook) {
+    closeHooks.remove(hook);
+  }
+
+  /**
+   * 由CloseTask调用
+   */
+  public void fireCloseHooks() {
+    Runnable hook;
+    while ((hook = closeHooks.poll()) != null) {
+      runCloseHook(hook);
+    }
+  }
+
+  private void runCloseHook(Runnable hook) {
+    try {
+      hook.run();
+    } catch (Throwable e) {
+      log.error(e.toString(), e);
+    }
+  }
+
+  public boolean isReadPaused() {
+    synchronized (readPauseLock) {
+      return readPaused;
+    }
+  }
+
+  /**
+   * ReadCompletionHandler发起下一次读之前调用
+   *
+   * @return true: 读已暂停，读缓冲区暂存起来，等resumeRead()时再读
+   */
+  boolean parkRead(ReadCompletionHandler handler, VirtualBuffer buffer) {
+    synchronized (readPauseLock) {
+      if (!readPaused) {
+        return false;
+      }
+      pausedReadBuffer = buffer;
+      pausedReadHandler = handler;
+      return true;
+    }
+  }
+
   /**
    * @author tanyaowu
    */
@@ -0,0 +1,17 @@
+package nexus.io.tio.core;
+
+import nexus.io.aio.Packet;
+
+/**
+ * 发送队列超过高水位且策略为SendQueueOverflowPolicy.COALESCE时，用来判断哪些排队的packet可以被新的packet覆盖，
+ * 譬如同一个行情代码只需要发送最新的一条
+ */
+public interface PacketCoalescer {
+  /**
+   * 
+   * @param packet
+   * @param channelContext 要发往的channelContext
+   * @return 合并key，key相同的packet只保留最新的；null表示不能合并
+   */
+  public Object coalesceKey(Packet packet, ChannelContext channelContext);
+}
@@ -0,0 +1,315 @@
+package nexus.io.tio.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.core.task.DecodeTask;
+import nexus.io.tio.core.task.SendPacketTask;
+
+/**
+ * HTTP/1.1 pipelining：同一连接上的多个请求可以同时交给业务线程处理，处理完成的顺序不定，但响应必须按请求的顺序发送。<br>
+ * 每个请求解码后按顺序占一个位置，响应(respId为请求的id)先放在这里，轮到它时才进入sendQueue；
+ * 同时处理的请求达到maxInFlight时，后面的请求先排队，等前面的响应放进sendQueue后再交给业务线程。<br>
+ * 业务方法返回时还没有发出响应的请求：调用过startStream()的(chunked流、反向代理等)，respId为请求id的packet都算它的响应，
+ * 位置一直保留到endStream()；调用过defer()的，位置保留到respId为请求id的响应发出；其它的不再占位
+ */
+public class PipelineQueue {
+  private static final Logger log = LoggerFactory.getLogger(PipelineQueue.class);
+
+  /**
+   * 业务方法返回时没有响应的请求占的位置
+   */
+  private static final Packet SKIPPED = new Packet();
+
+  private final ChannelContext channelContext;
+  private final int maxInFlight;
+
+  /**
+   * 已经交给业务线程、响应还没有进入sendQueue的请求，按请求的顺序
+   */
+  private final ArrayDeque<Slot> inFlight = new ArrayDeque<>();
+  /**
+   * key: 请求的id, value: 还在等响应的位置
+   */
+  private final Map<Long, Slot> slots = new HashMap<>();
+  /**
+   * 超过maxInFlight，还没交给业务线程的请求
+   */
+  private final ArrayDeque<Packet> waiting = new ArrayDeque<>();
+  /**
+   * 已经轮到、等着放进sendQueue的响应。放进sendQueue不持有本类的锁，同一时间只有一个线程在放，保证顺序
+   */
+  private final ArrayDeque<Packet> outbox = new ArrayDeque<>();
+  private boolean flushing = false;
+
+  public PipelineQueue(ChannelContext channelContext, int maxInFlight) {
+    this.channelContext = channelContext;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * 请求的响应在业务方法返回后分多个packet发出(chunked流、反向代理等)，这些packet的respId要设为请求的id，
+   * 发完最后一个后调用endStream()
+   *
+   * @param channelContext
+   * @param requestId
+   */
+  public static void startStream(ChannelContext channelContext, Long requestId) {
+    PipelineQueue pipeline = channelContext.pipeline;
+    if (pipeline != null) {
+      pipeline.mark(requestId, true);
+    }
+  }
+
+  /**
+   * startStream()的响应已经全部发出(或不再发送)，后面请求的响应可以发送了
+   *
+   * @param channelContext
+   * @param requestId
+   */
+  public static void endStream(ChannelContext channelContext, Long requestId) {
+    PipelineQueue pipeline = channelContext.pipeline;
+    if (pipeline != null) {
+      pipeline.end(requestId);
+    }
+  }
+
+  /**
+   * 业务方法返回时响应还没有发出，之后会异步发出respId为请求id的响应
+   *
+   * @param channelContext
+   * @param requestId
+   */
+  public static void defer(ChannelContext channelContext, Long requestId) {
+    PipelineQueue pipeline = channelContext.pipeline;
+    if (pipeline != null) {
+      pipeline.mark(requestId, false);
+    }
+  }
+
+  /**
+   * 解码出一个请求时调用
+   *
+   * @param request
+   * @return true: 可以马上处理; false: 同时处理的请求太多，已经排队，轮到它时由本类交给业务线程
+   */
+  public synchronized boolean register(Packet request) {
+    if (!waiting.isEmpty() || inFlight.size() >= maxInFlight) {
+      waiting.add(request);
+      return false;
+    }
+    add(request);
+    return true;
+  }
+
+  /**
+   * 发送响应时调用，轮到它的响应(以及后面已经就绪的响应)按顺序放进sendQueue
+   *
+   * @param response
+   * @return false: 不是pipelining中的响应，由调用方直接放进sendQueue
+   */
+  public boolean offer(Packet response) {
+    Long respId = response.getRespId();
+    if (respId == null) {
+      return false;
+    }
+    List<Packet> released = null;
+    boolean flush;
+    synchronized (this) {
+      Slot slot = slots.get(respId);
+      if (slot == null) {
+        return false;
+      }
+      if (slot.stream) {
+        if (slot == inFlight.peekFirst()) {
+          outbox.add(response);
+        } else {
+          slot.parts.add(response);
+        }
+      } else {
+        slots.remove(respId);
+        slot.response = response;
+        released = drain();
+      }
+      flush = claimFlush();
+    }
+    if (flush) {
+      flush();
+    }
+    dispatch(released);
+    return true;
+  }
+
+  /**
+   * 业务方法处理完请求后调用(HandlePacketTask)，没有发出响应、也没有startStream()或defer()的请求不再占位
+   *
+   * @param request
+   */
+  public void afterHandled(Packet request) {
+    List<Packet> released;
+    boolean flush;
+    synchronized (this) {
+      Slot slot = slots.get(request.getId());
+      if (slot == null || slot.stream || slot.deferred) {
+        return;
+      }
+      slots.remove(request.getId());
+      slot.response = SKIPPED;
+      released = drain();
+      flush = claimFlush();
+    }
+    release(flush, released);
+  }
+
+  private void mark(Long requestId, boolean stream) {
+    synchronized (this) {
+      Slot slot = slots.get(requestId);
+      if (slot == null || slot.stream) {
+        return;
+      }
+      if (stream) {
+        slot.stream = true;
+        slot.parts = new ArrayDeque<>();
+      } else {
+        slot.deferred = true;
+      }
+    }
+  }
+
+  private void end(Long requestId) {
+    List<Packet> released;
+    boolean flush;
+    synchronized (this) {
+      Slot slot = slots.get(requestId);
+      if (slot == null || !slot.stream) {
+        return;
+      }
+      slots.remove(requestId);
+      slot.ended = true;
+      released = drain();
+      flush = claimFlush();
+    }
+    release(flush, released);
+  }
+
+  private void release(boolean flush, List<Packet> released) {
+    if (flush) {
+      flush();
+    }
+    // 后面已经就绪的响应可能被放进了sendQueue
+    new SendPacketTask(channelContext).processSendQueue();
+    dispatch(released);
+  }
+
+  /**
+   * 需持有锁
+   */
+  private void add(Packet request) {
+    Slot slot = new Slot();
+    inFlight.add(slot);
+    slots.put(request.getId(), slot);
+  }
+
+  /**
+   * 需持有锁。把轮到的响应移到outbox
+   *
+   * @return 可以交给业务线程的排队请求
+   */
+  private List<Packet> drain() {
+    Slot slot;
+    while ((slot = inFlight.peekFirst()) != null) {
+      if (slot.stream) {
+        // 轮到它了，已经发出的部分按顺序放进去，之后的直接放进去
+        outbox.addAll(slot.parts);
+        slot.parts.clear();
+        if (!slot.ended) {
+          break;
+        }
+      } else if (slot.response == null) {
+        break;
+      } else if (slot.response != SKIPPED) {
+        outbox.add(slot.response);
+      }
+      inFlight.pollFirst();
+    }
+
+    List<Packet> released = null;
+    while (!waiting.isEmpty() && inFlight.size() < maxInFlight) {
+      Packet request = waiting.poll();
+      add(request);
+      if (released == null) {
+        released = new ArrayList<>();
+      }
+      released.add(request);
+    }
+    return released;
+  }
+
+  /**
+   * 需持有锁
+   *
+   * @return true: 由当前线程把outbox放进sendQueue
+   */
+  private boolean claimFlush() {
+    if (flushing || outbox.isEmpty()) {
+      return false;
+    }
+    flushing = true;
+    return true;
+  }
+
+  private void flush() {
+    while (true) {
+      Packet packet;
+      synchronized (this) {
+        packet = outbox.poll();
+        if (packet == null) {
+          flushing = false;
+          return;
+        }
+      }
+      channelContext.sendQueue.offer(packet);
+    }
+  }
+
+  private void dispatch(List<Packet> released) {
+    if (released == null) {
+      return;
+    }
+    for (Packet request : released) {
+      try {
+        DecodeTask.dispatch(channelContext, request);
+      } catch (Throwable e) {
+        log.error("HandlePacketTask error, {}", channelContext, e);
+      }
+    }
+  }
+
+  /**
+   * @return 还没发送响应的请求数(含排队的请求)
+   */
+  public synchronized int size() {
+    return inFlight.size() + waiting.size();
+  }
+
+  private static class Slot {
+    /**
+     * 已经就绪的响应，SKIPPED表示没有响应
+     */
+    private Packet response;
+    private boolean stream;
+    private boolean deferred;
+    /**
+     * 还没轮到时已经发出的流的packet
+     */
+    private ArrayDeque<Packet> parts;
+    private boolean ended;
+  }
+}
@@ -109,7 +109,9 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
       }
 
       if (TioUtils.checkBeforeIO(channelContext)) {
-        read(byteBuffer, virtualBuffer);
+        if (!channelContext.parkRead(this, virtualBuffer)) {
+          read(byteBuffer, virtualBuffer);
+        }
       } else {
         virtualBuffer.clean();
       }
@@ -148,6 +150,17 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
     }
   }
 
+  /**
+   * 暂停读之后恢复时由ChannelContext.resumeRead()调用
+   */
+  void continueRead(VirtualBuffer virtualBuffer) {
+    if (TioUtils.checkBeforeIO(channelContext)) {
+      read(virtualBuffer.buffer(), virtualBuffer);
+    } else {
+      virtualBuffer.clean();
+    }
+  }
+
   private void read(ByteBuffer readByteBuffer, VirtualBuffer virtualBuffer) {
     if (readByteBuffer.capacity() == channelContext.getReadBufferSize()) {
       readByteBuffer.position(0);
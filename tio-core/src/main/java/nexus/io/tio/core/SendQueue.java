@@ -0,0 +1,568 @@
+package nexus.io.tio.core;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.aio.Packet;
+import nexus.io.aio.PacketMeta;
+import nexus.io.tio.core.intf.AioListener;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
+import nexus.io.tio.core.stat.ChannelStat;
+
+/**
+ * 连接的发送队列，记录排队的packet数和字节数。<br>
+ * 配置了高水位(TioConfig.sendQueueHighWaterPackets、sendQueueHighWaterBytes)时：排队的数据达到高水位后连接变为不可写，
+ * 再放入packet时按TioConfig.sendQueueOverflowPolicy处理；回落到低水位后恢复可写。可写状态变化时回调AioListener.onWritabilityChanged。
+ * 没有配置高水位时放入和取出都不加锁。<br>
+ * 字节数 = 排队的packet的字节数 + 已经编码、正在写的字节数。排队时只知道预编码的buffer的大小，没有时取packet.getByteCount()，
+ * 都没有时(普通的Tio.send)按这个连接最近编码出来的packet的平均大小估算，还没有发送过数据时按0计；
+ * 取出编码后由SendPacketTask按实际写的字节数计入(charge)，写完后减去(discharge)
+ */
+public class SendQueue extends AbstractQueue<Packet> {
+  private static final Logger log = LoggerFactory.getLogger(SendQueue.class);
+
+  private final ChannelContext channelContext;
+  private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong bytes = new AtomicLong();
+  private volatile boolean writable = true;
+  /**
+   * 最近编码出来的packet的平均字节数，用于估算没有编码的packet的大小
+   */
+  private volatile int averagePacketBytes = 0;
+  /**
+   * 等着排队的字节数降下来的listener，见onDrained。修改时持有锁
+   */
+  private volatile List<DrainListener> drainListeners = null;
+
+  public SendQueue(ChannelContext channelContext) {
+    this.channelContext = channelContext;
+  }
+
+  /**
+   * 放入一个packet，超过高水位时按TioConfig.sendQueueOverflowPolicy处理
+   *
+   * @return false: packet被丢弃
+   */
+  @Override
+  public boolean offer(Packet packet) {
+    Objects.requireNonNull(packet);
+    TioConfig tioConfig = channelContext.tioConfig;
+    int packetBytes = bytesOf(packet);
+    if (!isBounded(tioConfig)) {
+      addEntry(new Entry(packet, packetBytes));
+      updateStat();
+      return true;
+    }
+    boolean accepted = true;
+    boolean overflow = false;
+    List<Packet> dropped = null;
+    boolean writableChanged;
+    synchronized (this) {
+      if (isFull(tioConfig, packetBytes)) {
+        switch (tioConfig.sendQueueOverflowPolicy) {
+        case DROP_NEWEST:
+          accepted = false;
+          break;
+        case COALESCE:
+          dropped = coalesce(tioConfig, packet);
+          dropped = dropOldest(tioConfig, packetBytes, dropped);
+          break;
+        case DROP_OLDEST:
+          dropped = dropOldest(tioConfig, packetBytes, null);
+          break;
+        default:
+          accepted = false;
+          overflow = true;
+          break;
+        }
+      }
+      if (accepted) {
+        addEntry(new Entry(packet, packetBytes));
+      }
+      updateStat();
+      writableChanged = updateWritable(tioConfig);
+    }
+
+    if (dropped != null) {
+      for (Packet p : dropped) {
+        drop(p);
+      }
+    }
+    if (!accepted) {
+      drop(packet);
+    }
+    if (overflow) {
+      Tio.close(channelContext, null, "send queue overflow, size:" + size(), ChannelCloseCode.SEND_QUEUE_OVERFLOW);
+    }
+    if (writableChanged) {
+      fireWritabilityChanged();
+    }
+    return accepted;
+  }
+
+  @Override
+  public Packet poll() {
+    TioConfig tioConfig = channelContext.tioConfig;
+    Entry entry;
+    boolean writableChanged = false;
+    if (isBounded(tioConfig)) {
+      synchronized (this) {
+        entry = pollEntry();
+        if (entry == null) {
+          return null;
+        }
+        writableChanged = updateWritable(tioConfig);
+      }
+    } else {
+      entry = pollEntry();
+      if (entry == null) {
+        return null;
+      }
+    }
+    updateStat();
+    afterRemoved(writableChanged);
+    return entry.packet;
+  }
+
+  /**
+   * SendPacketTask编码好一个(或合并的多个)packet、开始写之前调用，计入正在写的字节数
+   */
+  public void charge(int n) {
+    charge(n, 0);
+  }
+
+  /**
+   *
+   * @param n           编码后的字节数
+   * @param packetCount 合并了多少个packet，大于0时据此更新packet的平均大小
+   */
+  public void charge(int n, int packetCount) {
+    if (packetCount > 0) {
+      int sample = n / packetCount;
+      int average = averagePacketBytes;
+      // 只有发送线程更新，按1/8的权重跟踪最近的大小
+      averagePacketBytes = average == 0 ? sample : average + (sample - average) / 8;
+    }
+    bytes.addAndGet(n);
+    TioConfig tioConfig = channelContext.tioConfig;
+    if (isBounded(tioConfig)) {
+      boolean writableChanged;
+      synchronized (this) {
+        writableChanged = updateWritable(tioConfig);
+      }
+      if (writableChanged) {
+        fireWritabilityChanged();
+      }
+    }
+    updateStat();
+  }
+
+  /**
+   * 写完(或写失败)后调用，n与charge时的相同
+   */
+  public void discharge(int n) {
+    bytes.addAndGet(-n);
+    TioConfig tioConfig = channelContext.tioConfig;
+    boolean writableChanged = false;
+    if (isBounded(tioConfig)) {
+      synchronized (this) {
+        writableChanged = updateWritable(tioConfig);
+      }
+    }
+    updateStat();
+    afterRemoved(writableChanged);
+  }
+
+  /**
+   * 字节数减少后：通知可写状态的变化，执行已经满足的drain listener
+   */
+  private void afterRemoved(boolean writableChanged) {
+    if (writableChanged) {
+      fireWritabilityChanged();
+    }
+    if (drainListeners != null) {
+      List<DrainListener> drained;
+      synchronized (this) {
+        drained = drainListeners == null ? null : takeDrainListeners(bytes.get());
+      }
+      if (drained != null) {
+        runDrainListeners(drained);
+      }
+    }
+  }
+
+  /**
+   * 批量发送时使用：队首不是文件packet时取出，否则返回null。peek后再poll可能取到被丢弃后补上来的另一个packet，所以放在一起
+   */
+  public Packet pollIfNoFileBody() {
+    if (!isBounded(channelContext.tioConfig)) {
+      // 不丢弃packet时只有发送线程会取，peek到的就是poll到的
+      Entry entry = entries.peek();
+      if (entry == null || entry.packet.getFileBody() != null) {
+        return null;
+      }
+      return poll();
+    }
+    synchronized (this) {
+      Entry entry = entries.peek();
+      if (entry == null || entry.packet.getFileBody() != null) {
+        return null;
+      }
+      return poll();
+    }
+  }
+
+  @Override
+  public Packet peek() {
+    Entry entry = entries.peek();
+    return entry == null ? null : entry.packet;
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * @return 排队的字节数加上正在写的字节数
+   */
+  public long bytes() {
+    return bytes.get();
+  }
+
+  /**
+   * 排队的字节数降到bytes及以下时执行一次listener(在取走packet的线程中执行)，现在就不超过时马上在当前线程执行。
+   * 连接关闭时也会执行，listener要自己判断连接是否已经关闭。<br>
+   * 与高水位不同，不需要配置，由调用方决定阈值，用于转发等场景：下游排队太多时暂停读上游，降下来后再恢复
+   *
+   * @param bytes
+   * @param listener
+   */
+  public void onDrained(long bytes, Runnable listener) {
+    boolean waiting = false;
+    synchronized (this) {
+      if (this.bytes.get() > bytes) {
+        List<DrainListener> listeners = drainListeners;
+        if (listeners == null) {
+          listeners = new ArrayList<>(2);
+        }
+        listeners.add(new DrainListener(bytes, listener));
+        drainListeners = listeners;
+        waiting = true;
+      }
+    }
+    if (waiting) {
+      // 不加锁取走packet的线程可能在放入listener之前已经看过drainListeners，放入后再检查一次
+      afterRemoved(false);
+    } else {
+      listener.run();
+    }
+  }
+
+  /**
+   * 连接关闭时调用，还在排队的packet按发送失败丢弃，释放群发共用的buffer
+   */
+  public void dropOnClose() {
+    TioConfig tioConfig = channelContext.tioConfig;
+    List<Packet> dropped = null;
+    boolean writableChanged = false;
+    Entry entry;
+    if (isBounded(tioConfig)) {
+      synchronized (this) {
+        while ((entry = pollEntry()) != null) {
+          if (dropped == null) {
+            dropped = new ArrayList<>();
+          }
+          dropped.add(entry.packet);
+        }
+        writableChanged = updateWritable(tioConfig);
+      }
+    } else {
+      while ((entry = pollEntry()) != null) {
+        if (dropped == null) {
+          dropped = new ArrayList<>();
+        }
+        dropped.add(entry.packet);
+      }
+    }
+    if (dropped == null) {
+      return;
+    }
+    updateStat();
+    for (Packet packet : dropped) {
+      drop(packet);
+    }
+    if (writableChanged) {
+      fireWritabilityChanged();
+    }
+  }
+
+  /**
+   * 连接关闭时调用，执行还在等待的drain listener
+   */
+  public void fireDrainListenersOnClose() {
+    List<DrainListener> listeners;
+    synchronized (this) {
+      listeners = drainListeners;
+      drainListeners = null;
+    }
+    if (listeners != null) {
+      runDrainListeners(listeners);
+    }
+  }
+
+  /**
+   * 需持有锁
+   */
+  private List<DrainListener> takeDrainListeners(long bytes) {
+    List<DrainListener> ret = null;
+    Iterator<DrainListener> it = drainListeners.iterator();
+    while (it.hasNext()) {
+      DrainListener drainListener = it.next();
+      if (bytes <= drainListener.bytes) {
+        it.remove();
+        if (ret == null) {
+          ret = new ArrayList<>(2);
+        }
+        ret.add(drainListener);
+      }
+    }
+    if (drainListeners.isEmpty()) {
+      drainListeners = null;
+    }
+    return ret;
+  }
+
+  private void runDrainListeners(List<DrainListener> listeners) {
+    for (DrainListener drainListener : listeners) {
+      try {
+        drainListener.listener.run();
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * @return false: 排队的数据超过了高水位，还没有回落到低水位
+   */
+  public boolean isWritable() {
+    return writable;
+  }
+
+  /**
+   * 返回的是快照，对它的修改不影响队列
+   */
+  @Override
+  public Iterator<Packet> iterator() {
+    List<Packet> list = new ArrayList<>();
+    for (Entry entry : entries) {
+      list.add(entry.packet);
+    }
+    return list.iterator();
+  }
+
+  /**
+   * 需持有锁
+   *
+   * @return 放入packetBytes后是否超过高水位
+   */
+  private boolean isFull(TioConfig tioConfig, int packetBytes) {
+    int highPackets = tioConfig.sendQueueHighWaterPackets;
+    if (highPackets > 0 && size.get() + 1 > highPackets) {
+      return true;
+    }
+    long highBytes = tioConfig.sendQueueHighWaterBytes;
+    return highBytes > 0 && !entries.isEmpty() && bytes.get() + packetBytes > highBytes;
+  }
+
+  private static boolean isBounded(TioConfig tioConfig) {
+    return tioConfig.sendQueueHighWaterPackets > 0 || tioConfig.sendQueueHighWaterBytes > 0;
+  }
+
+  private void addEntry(Entry entry) {
+    entries.add(entry);
+    size.incrementAndGet();
+    bytes.addAndGet(entry.bytes);
+  }
+
+  private Entry pollEntry() {
+    Entry entry = entries.poll();
+    if (entry != null) {
+      size.decrementAndGet();
+      bytes.addAndGet(-entry.bytes);
+    }
+    return entry;
+  }
+
+  /**
+   * 需持有锁，丢弃最早的packet直到放得下新的packet
+   */
+  private List<Packet> dropOldest(TioConfig tioConfig, int packetBytes, List<Packet> dropped) {
+    Entry entry;
+    while (isFull(tioConfig, packetBytes) && (entry = pollEntry()) != null) {
+      if (dropped == null) {
+        dropped = new ArrayList<>();
+      }
+      dropped.add(entry.packet);
+    }
+    return dropped;
+  }
+
+  /**
+   * 需持有锁，移除合并key与packet相同的packet
+   */
+  private List<Packet> coalesce(TioConfig tioConfig, Packet packet) {
+    PacketCoalescer packetCoalescer = tioConfig.packetCoalescer;
+    if (packetCoalescer == null) {
+      return null;
+    }
+    Object key = packetCoalescer.coalesceKey(packet, channelContext);
+    if (key == null) {
+      return null;
+    }
+    List<Packet> dropped = null;
+    Iterator<Entry> it = entries.iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (key.equals(packetCoalescer.coalesceKey(entry.packet, channelContext)) && entries.remove(entry)) {
+        size.decrementAndGet();
+        bytes.addAndGet(-entry.bytes);
+        if (dropped == null) {
+          dropped = new ArrayList<>();
+        }
+        dropped.add(entry.packet);
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * 更新ChannelStat中的队列指标
+   */
+  private void updateStat() {
+    int size = this.size.get();
+    ChannelStat stat = channelContext.stat;
+    stat.sendQueueSize = size;
+    stat.sendQueueBytes = bytes.get();
+    if (size > stat.sendQueuePeakSize) {
+      stat.sendQueuePeakSize = size;
+    }
+  }
+
+  /**
+   * 需持有锁，更新可写状态
+   *
+   * @return 可写状态是否有变化
+   */
+  private boolean updateWritable(TioConfig tioConfig) {
+    int size = this.size.get();
+    long bytes = this.bytes.get();
+    int highPackets = tioConfig.sendQueueHighWaterPackets;
+    long highBytes = tioConfig.sendQueueHighWaterBytes;
+    if (writable) {
+      if ((highPackets > 0 && size >= highPackets) || (highBytes > 0 && bytes >= highBytes)) {
+        writable = false;
+        return true;
+      }
+    } else {
+      int lowPackets = tioConfig.sendQueueLowWaterPackets < 0 ? highPackets / 2 : tioConfig.sendQueueLowWaterPackets;
+      long lowBytes = tioConfig.sendQueueLowWaterBytes < 0 ? highBytes / 2 : tioConfig.sendQueueLowWaterBytes;
+      if ((highPackets <= 0 || size <= lowPackets) && (highBytes <= 0 || bytes <= lowBytes)) {
+        writable = true;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 被丢弃的packet按发送失败处理
+   */
+  private void drop(Packet packet) {
+    channelContext.stat.droppedPackets.incrementAndGet();
+    PacketMeta meta = packet.getMeta();
+    if (meta != null) {
+      meta.setIsSentSuccess(false);
+      if (meta.getCountDownLatch() != null) {
+        meta.getCountDownLatch().countDown();
+      }
+      if (meta instanceof SharedBufferPacketMeta) {
+        ((SharedBufferPacketMeta) meta).release();
+      }
+    }
+    AioListener aioListener = channelContext.tioConfig.getAioListener();
+    if (aioListener != null) {
+      try {
+        aioListener.onAfterSent(channelContext, packet, false);
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
+  private void fireWritabilityChanged() {
+    AioListener aioListener = channelContext.tioConfig.getAioListener();
+    if (aioListener != null) {
+      boolean writable = isWritable();
+      try {
+        aioListener.onWritabilityChanged(channelContext, writable);
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
+  private int bytesOf(Packet packet) {
+    ByteBuffer byteBuffer = packet.getPreEncodedByteBuffer();
+    if (byteBuffer != null) {
+      // 未flip的buffer发送前会被flip
+      return byteBuffer.hasRemaining() ? byteBuffer.remaining() : byteBuffer.position();
+    }
+    int byteCount = packet.getByteCount();
+    return byteCount > 0 ? byteCount : averagePacketBytes;
+  }
+
+  /**
+   * @return 估算没有编码的packet时使用的平均字节数
+   */
+  public int getAveragePacketBytes() {
+    return averagePacketBytes;
+  }
+
+  private static final class Entry {
+    private final Packet packet;
+    private final int bytes;
+
+    private Entry(Packet packet, int bytes) {
+      this.packet = packet;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class DrainListener {
+    private final long bytes;
+    private final Runnable listener;
+
+    private DrainListener(long bytes, Runnable listener) {
+      this.bytes = bytes;
+      this.listener = listener;
+    }
+  }
+}
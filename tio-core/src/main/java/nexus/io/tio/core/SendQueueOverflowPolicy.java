@@ -0,0 +1,36 @@
+package nexus.io.tio.core;
+
+/**
+ * 发送队列超过高水位(TioConfig.sendQueueHighWaterPackets、sendQueueHighWaterBytes)后再发送时的处理方式，
+ * 被丢弃的packet按发送失败处理(onAfterSent的isSentSuccess为false)
+ */
+public enum SendQueueOverflowPolicy {
+  /**
+   * 丢弃队列中最早的packet，直到放得下新的packet
+   */
+  DROP_OLDEST,
+  /**
+   * 丢弃新的packet
+   */
+  DROP_NEWEST,
+  /**
+   * 用新的packet覆盖队列中合并key(TioConfig.packetCoalescer)相同的packet，覆盖后仍超过高水位时按DROP_OLDEST处理
+   */
+  COALESCE,
+  /**
+   * 丢弃新的packet并关闭连接，关闭码为ChannelCloseCode.SEND_QUEUE_OVERFLOW
+   */
+  CLOSE;
+
+  public static SendQueueOverflowPolicy from(String name, SendQueueOverflowPolicy defaultValue) {
+    if (name == null) {
+      return defaultValue;
+    }
+    for (SendQueueOverflowPolicy v : SendQueueOverflowPolicy.values()) {
+      if (v.name().equalsIgnoreCase(name.trim())) {
+        return v;
+      }
+    }
+    return defaultValue;
+  }
+}
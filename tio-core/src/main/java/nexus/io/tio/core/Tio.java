@@ -1,10 +1,11 @@
 package nexus.io.tio.core;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
@@ -18,6 +19,9 @@ import nexus.io.tio.client.ClientChannelContext;
 import nexus.io.tio.client.ClientTioConfig;
 import nexus.io.tio.client.ReconnConf;
 import nexus.io.tio.consts.TioCoreConfigKeys;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
+import nexus.io.tio.core.pool.SharedByteBuffer;
+import nexus.io.tio.core.ssl.SslUtils;
 import nexus.io.tio.core.task.CloseTask;
 import nexus.io.tio.core.task.SendPacketTask;
 import nexus.io.tio.server.ServerTioConfig;
@@ -1053,9 +1057,13 @@ public class Tio {
     boolean isSingleBlock = countDownLatch != null && packetSendMode == PacketSendMode.SINGLE_BLOCK;
 
     if (countDownLatch != null) {
-      PacketMeta meta = new PacketMeta();
+      PacketMeta meta = packet.getMeta();
+      // 群发时每个连接的packet已带有自己的meta
+      if (!(meta instanceof SharedBufferPacketMeta)) {
+        meta = new PacketMeta();
+        packet.setMeta(meta);
+      }
       meta.setCountDownLatch(countDownLatch);
-      packet.setMeta(meta);
     }
 
     boolean sendInitiated = new SendPacketTask(channelContext).sendPacket(packet);
@@ -1333,11 +1341,9 @@ public class Tio {
    * @author tanyaowu
    */
   private static Boolean sendToSet(TioConfig tioConfig, SetWithLock<ChannelContext> setWithLock, Packet packet, ChannelContextFilter channelContextFilter, boolean isBlock) {
-    boolean releasedLock = false;
-    Lock lock = setWithLock.readLock();
-    lock.lock();
     try {
-      Set<ChannelContext> set = setWithLock.getObj();
+      // 成员集合是ConcurrentHashMap的keySet，遍历时不加锁，群发期间的绑定、解绑不会被阻塞
+      Collection<ChannelContext> set = setWithLock.getObj();
       if (set.size() == 0) {
         log.debug("{}, 集合为空", tioConfig.getName());
         return false;
@@ -1345,29 +1351,32 @@ public class Tio {
 
       CountDownLatch countDownLatch = null;
       if (isBlock) {
+        // 同步群发要按人数countDown，用快照保证人数与遍历的一致
+        set = new ArrayList<>(set);
         countDownLatch = new CountDownLatch(set.size());
       }
+      SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, set, packet);
       int sendCount = 0;
-      for (ChannelContext channelContext : set) {
-        if (channelContextFilter != null) {
-          boolean isfilter = channelContextFilter.filter(channelContext);
-          if (!isfilter) {
-            if (isBlock) {
-              countDownLatch.countDown();
+      try {
+        for (ChannelContext channelContext : set) {
+          if (channelContextFilter != null) {
+            boolean isfilter = channelContextFilter.filter(channelContext);
+            if (!isfilter) {
+              if (isBlock) {
+                countDownLatch.countDown();
+              }
+              continue;
             }
-            continue;
           }
-        }
 
-        sendCount++;
-        if (isBlock) {
-          send(channelContext, packet, countDownLatch, PacketSendMode.GROUP_BLOCK);
-        } else {
-          send(channelContext, packet, null, null);
+          sendCount++;
+          sendShared(channelContext, packet, sharedByteBuffer, countDownLatch, isBlock ? PacketSendMode.GROUP_BLOCK : null);
+        }
+      } finally {
+        if (sharedByteBuffer != null) {
+          sharedByteBuffer.release();
         }
       }
-      lock.unlock();
-      releasedLock = true;
 
       if (sendCount == 0) {
         return false;
@@ -1379,7 +1388,7 @@ public class Tio {
           timeout = Math.max(timeout, 10);// timeout < 10 ? 10 : timeout;
           boolean awaitFlag = countDownLatch.await(timeout, TimeUnit.SECONDS);
           if (!awaitFlag) {
-            log.error("{}, 同步群发超时, size:{}, timeout:{}, packet:{}", tioConfig.getName(), setWithLock.getObj().size(), timeout, packet.logstr());
+            log.error("{}, 同步群发超时, size:{}, timeout:{}, packet:{}", tioConfig.getName(), set.size(), timeout, packet.logstr());
             return false;
           } else {
             return true;
@@ -1396,11 +1405,64 @@ public class Tio {
     } catch (Throwable e) {
       log.error(e.toString(), e);
       return false;
-    } finally {
-      if (!releasedLock) {
-        lock.unlock();
+    }
+  }
+
+  /**
+   * 群发时只编码一次，所有连接共用编码结果，由各连接的write完成后释放。<br>
+   * SSL的数据需要每个连接各自加密，packetConverter会按连接转换packet，这两种情况以及只有一个连接、文件packet时不共用；
+   * ChannelContext.encodePerConnection为true的连接各自编码，不参与共用
+   * @param tioConfig
+   * @param set
+   * @param packet
+   * @return null: 不共用，每个连接各自编码
+   */
+  private static SharedByteBuffer encodeOnce(TioConfig tioConfig, Collection<ChannelContext> set, Packet packet) {
+    if (!tioConfig.broadcastEncodeOnce || set.size() <= 1 || packet.getPreEncodedByteBuffer() != null
+        || packet.getFileBody() != null || tioConfig.packetConverter != null || SslUtils.isSsl(tioConfig)) {
+      return null;
+    }
+    for (ChannelContext channelContext : set) {
+      if (channelContext.isVirtual || channelContext.isClosed || channelContext.isRemoved || channelContext.encodePerConnection) {
+        continue;
+      }
+      try {
+        ByteBuffer byteBuffer = tioConfig.getAioHandler().encode(packet, tioConfig, channelContext);
+        return byteBuffer == null ? null : new SharedByteBuffer(byteBuffer);
+      } catch (Throwable e) {
+        log.error("{}, encode once error, fallback to encode per connection, packet:{}", tioConfig.getName(), packet.logstr(), e);
+        return null;
       }
     }
+    return null;
+  }
+
+  /**
+   * 群发中给一个连接发送，有共用的编码结果时发送packet的副本，副本的preEncodedByteBuffer是共用结果的只读视图
+   * @param channelContext
+   * @param packet
+   * @param sharedByteBuffer 为null时直接发送packet
+   * @param countDownLatch
+   * @param packetSendMode
+   * @return
+   */
+  private static Boolean sendShared(ChannelContext channelContext, Packet packet, SharedByteBuffer sharedByteBuffer, CountDownLatch countDownLatch,
+      PacketSendMode packetSendMode) {
+    if (sharedByteBuffer == null || channelContext.isVirtual || channelContext.isClosed || channelContext.isRemoved
+        || channelContext.encodePerConnection) {
+      return send(channelContext, packet, countDownLatch, packetSendMode);
+    }
+    Packet copy = packet.clone();
+    SharedBufferPacketMeta meta = new SharedBufferPacketMeta(sharedByteBuffer);
+    copy.setPreEncodedByteBuffer(sharedByteBuffer.retain());
+    copy.setMeta(meta);
+    Boolean ret = send(channelContext, copy, countDownLatch, packetSendMode);
+    if (Boolean.FALSE.equals(ret)) {
+      // 没有进入发送队列，或者已经写失败(WriteCompletionHandler释放过，再释放无影响)。
+      // 同步发送等待超时时返回null，数据可能还在写，由WriteCompletionHandler释放
+      meta.release();
+    }
+    return ret;
   }
 
   /**
@@ -1430,28 +1492,31 @@ public class Tio {
         return false;
       }
 
-      ReadLock readLock = setWithLock.readLock();
-      readLock.lock();
       try {
         Set<ChannelContext> set = setWithLock.getObj();
         boolean ret = false;
-        for (ChannelContext channelContext : set) {
-          boolean singleRet = false;
-          // 不要用 a = a || b()，容易漏执行后面的函数
-          if (isBlock) {
-            singleRet = bSend(channelContext, packet);
-          } else {
-            singleRet = send(channelContext, packet);
+        SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, set, packet);
+        try {
+          for (ChannelContext channelContext : set) {
+            boolean singleRet = false;
+            // 不要用 a = a || b()，容易漏执行后面的函数
+            if (isBlock) {
+              singleRet = sendShared(channelContext, packet, sharedByteBuffer, new CountDownLatch(1), PacketSendMode.SINGLE_BLOCK);
+            } else {
+              singleRet = sendShared(channelContext, packet, sharedByteBuffer, null, null);
+            }
+            if (singleRet) {
+              ret = true;
+            }
           }
-          if (singleRet) {
-            ret = true;
+        } finally {
+          if (sharedByteBuffer != null) {
+            sharedByteBuffer.release();
           }
         }
         return ret;
       } catch (Throwable e) {
         log.error(e.getMessage(), e);
-      } finally {
-        readLock.unlock();
       }
       return false;
     } finally {
@@ -1484,28 +1549,31 @@ public class Tio {
         return false;
       }
 
-      ReadLock readLock = setWithLock.readLock();
-      readLock.lock();
       try {
         Set<ChannelContext> set = setWithLock.getObj();
         boolean ret = false;
-        for (ChannelContext channelContext : set) {
-          boolean singleRet = false;
-          // 不要用 a = a || b()，容易漏执行后面的函数
-          if (isBlock) {
-            singleRet = bSend(channelContext, packet);
-          } else {
-            singleRet = send(channelContext, packet);
+        SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, set, packet);
+        try {
+          for (ChannelContext channelContext : set) {
+            boolean singleRet = false;
+            // 不要用 a = a || b()，容易漏执行后面的函数
+            if (isBlock) {
+              singleRet = sendShared(channelContext, packet, sharedByteBuffer, new CountDownLatch(1), PacketSendMode.SINGLE_BLOCK);
+            } else {
+              singleRet = sendShared(channelContext, packet, sharedByteBuffer, null, null);
+            }
+            if (singleRet) {
+              ret = true;
+            }
           }
-          if (singleRet) {
-            ret = true;
+        } finally {
+          if (sharedByteBuffer != null) {
+            sharedByteBuffer.release();
           }
         }
         return ret;
       } catch (Throwable e) {
         log.error(e.getMessage(), e);
-      } finally {
-        readLock.unlock();
       }
       return false;
     } finally {
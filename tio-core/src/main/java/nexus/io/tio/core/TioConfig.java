@@ -85,6 +85,48 @@ public abstract class TioConfig extends MapWithLockPropSupport {
   private final static AtomicInteger ID_ATOMIC = new AtomicInteger();
   private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
   public boolean isShortConnection = false;
+  /**
+   * 同一连接上最多同时处理多少个请求(HTTP/1.1 pipelining)，响应按请求的顺序发送，多出来的请求排队等待；小于等于1时不开启
+   */
+  public int pipelineMaxInFlight = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_PIPELINE_MAX_INFLIGHT, 0);
+  /**
+   * 批量发送：一次write最多合并sendQueue中的多少个packet，小于等于1时一个packet一次write
+   */
+  public int sendBatchPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_BATCH_PACKETS, 1);
+  /**
+   * 批量发送：合并的数据达到多少字节后不再从sendQueue中取packet
+   */
+  public int sendBatchBytes = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_BATCH_BYTES, 64 * 1024);
+  /**
+   * 群发(sendToGroup、sendToUser、sendToAll等)时只编码一次，所有连接共用编码结果；
+   * encode依赖具体连接的状态时需关闭。SSL连接每个连接各自加密，不受影响
+   */
+  public boolean broadcastEncodeOnce = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_BROADCAST_ENCODE_ONCE, true);
+  /**
+   * 每个连接发送队列的高水位(packet数)，达到后连接变为不可写，再发送时按sendQueueOverflowPolicy处理；小于等于0时不限制
+   */
+  public int sendQueueHighWaterPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_HIGH_WATER_PACKETS, 0);
+  /**
+   * 发送队列的低水位(packet数)，不可写的连接回落到该值后恢复可写；小于0时取高水位的一半
+   */
+  public int sendQueueLowWaterPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_LOW_WATER_PACKETS, -1);
+  /**
+   * 每个连接发送队列的高水位(字节)，小于等于0时不限制
+   */
+  public long sendQueueHighWaterBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_HIGH_WATER_BYTES, 0L);
+  /**
+   * 发送队列的低水位(字节)，小于0时取高水位的一半
+   */
+  public long sendQueueLowWaterBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_LOW_WATER_BYTES, -1L);
+  /**
+   * 发送队列超过高水位后再发送时的处理方式，默认关闭连接
+   */
+  public SendQueueOverflowPolicy sendQueueOverflowPolicy = SendQueueOverflowPolicy
+      .from(EnvUtils.get(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_OVERFLOW_POLICY), SendQueueOverflowPolicy.CLOSE);
+  /**
+   * sendQueueOverflowPolicy为COALESCE时使用
+   */
+  public PacketCoalescer packetCoalescer = null;
   public SslConfig sslConfig = null;
 
   public GroupStat groupStat = null;
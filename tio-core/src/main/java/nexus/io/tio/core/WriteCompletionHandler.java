@@ -10,6 +10,7 @@ import nexus.io.aio.Packet;
 import nexus.io.aio.PacketMeta;
 import nexus.io.tio.consts.TioCoreConfigKeys;
 import nexus.io.tio.core.pool.BufferPoolUtils;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
 import nexus.io.tio.core.stat.IpStat;
 import nexus.io.tio.core.task.SendPacketTask;
 import nexus.io.tio.core.vo.WriteCompletionVo;
@@ -66,7 +67,8 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
       channelContext.asynchronousSocketChannel.write(writeCompletionVo.getByteBuffer(), writeCompletionVo, this);
     } else {
       handle(writeCompletionVo.getTotalWritten(), null, writeCompletionVo);
-      BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+      returnToPool(writeCompletionVo);
+      channelContext.sendQueue.discharge(writeCompletionVo.getChargedBytes());
       processNextPacket(channelContext);
     }
   }
@@ -76,10 +78,17 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
     // When write fails, always report throwable to handle() so we can close with
     // real cause.
     handle(0, throwable, writeCompletionVo);
-    BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+    returnToPool(writeCompletionVo);
+    channelContext.sendQueue.discharge(writeCompletionVo.getChargedBytes());
     processNextPacket(channelContext);
   }
 
+  private void returnToPool(WriteCompletionVo writeCompletionVo) {
+    if (writeCompletionVo.isReturnToPool()) {
+      BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+    }
+  }
+
   private void processNextPacket(ChannelContext channelContext) {
     channelContext.isSending.set(false);
     new SendPacketTask(channelContext).processSendQueue();
@@ -101,7 +110,9 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
     if (isSentSuccess) {
       if (tioConfig.statOn) {
         tioConfig.groupStat.sentBytes.addAndGet(bytesWritten);
+        tioConfig.groupStat.sentTcps.incrementAndGet();
         channelContext.stat.sentBytes.addAndGet(bytesWritten);
+        channelContext.stat.sentTcps.incrementAndGet();
       }
 
       if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
@@ -156,6 +167,10 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
       if (meta.getCountDownLatch() != null) {
         meta.getCountDownLatch().countDown();
       }
+      // 群发共用的编码结果，最后一个连接写完后归还
+      if (meta instanceof SharedBufferPacketMeta) {
+        ((SharedBufferPacketMeta) meta).release();
+      }
     }
     try {
       channelContext.processAfterSent(packet, isSentSuccess);
@@ -71,6 +71,16 @@ public interface AioListener {
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove)
       throws Exception;
 
+  /**
+   * 发送队列的可写状态变化时触发本方法：排队的数据达到高水位时writable为false，回落到低水位时为true，
+   * 生产者可以据此暂停、恢复向该连接发送。没有配置高水位时不会触发
+   * @param channelContext
+   * @param writable
+   * @throws Exception
+   */
+  public default void onWritabilityChanged(ChannelContext channelContext, boolean writable) throws Exception {
+  }
+
   /**
    * 连接关闭前后触发本方法
    * 警告：走到这个里面时，很多绑定的业务都已经解绑了，所以这个方法一般是空着不实现的
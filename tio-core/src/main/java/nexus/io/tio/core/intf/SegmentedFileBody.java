@@ -0,0 +1,16 @@
+package nexus.io.tio.core.intf;
+
+import java.util.List;
+
+import nexus.io.tio.core.vo.FileSegment;
+
+/**
+ * 有fileBody的packet实现此接口并返回非null时，SendPacketTask不再发整个fileBody区间，而是按顺序发每一段的head和文件数据，
+ * 例如HTTP的multipart/byteranges响应
+ */
+public interface SegmentedFileBody {
+  /**
+   * @return 要发送的段，为null时按fileBody整体发送
+   */
+  List<FileSegment> getFileSegments();
+}
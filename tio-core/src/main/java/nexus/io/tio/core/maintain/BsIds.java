@@ -92,7 +92,8 @@ public class BsIds {
       return;
     }
     try {
-      map.remove(bsId);
+      // bsId可能已被绑定到别的连接上，只删除绑定的是自己的
+      map.getObj().remove(bsId, channelContext);
       channelContext.setBsId(null);
     } catch (Exception e) {
       log.error(e.toString(), e);
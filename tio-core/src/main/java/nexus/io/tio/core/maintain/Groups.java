@@ -2,8 +2,6 @@ package nexus.io.tio.core.maintain;
 
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,7 +10,6 @@ import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.intf.GroupListener;
 import nexus.io.tio.utils.hutool.StrUtil;
-import nexus.io.tio.utils.lock.LockUtils;
 import nexus.io.tio.utils.lock.MapWithLock;
 import nexus.io.tio.utils.lock.SetWithLock;
 
@@ -36,7 +33,6 @@ public class Groups {
    */
   private MapWithLock<String, SetWithLock<ChannelContext>> groupmap = new MapWithLock<>(
       new HashMap<String, SetWithLock<ChannelContext>>());
-  private String rwKey = "_tio_groups_bind__";
 
   /**
    * 和组绑定
@@ -62,29 +58,7 @@ public class Groups {
       return;
     }
 
-    SetWithLock<ChannelContext> channelSet = groupmap.get(groupid);
-    if (channelSet == null) {
-      try {
-        LockUtils.runWriteOrWaitRead(rwKey + groupid, this, () -> {
-//					@Override
-//					public void read() {
-//					}
-//
-//					@Override
-//					public void write() {
-//						SetWithLock<ChannelContext> channelSet1 = groupmap.get(groupid);
-          if (groupmap.get(groupid) == null) {
-//							channelSet1 = new SetWithLock<>(MaintainUtils.createSet(channelContextComparator));
-            groupmap.put(groupid, new SetWithLock<>(MaintainUtils.createSet(channelContextComparator)));
-          }
-//					}
-        });
-      } catch (Exception e) {
-        log.error(e.toString(), e);
-      }
-      channelSet = groupmap.get(groupid);
-    }
-    channelSet.add(channelContext);
+    MaintainUtils.addToSet(groupmap.getObj(), groupid, channelContext);
     channelContext.getGroups().add(groupid);
 
     if (callbackListener) {
@@ -158,28 +132,15 @@ public class Groups {
     }
 
     try {
+      // groups是ConcurrentHashMap的keySet，边遍历边删除是安全的
       SetWithLock<String> setWithLock = channelContext.getGroups();
-      WriteLock writeLock = setWithLock.writeLock();
-      writeLock.lock();
-      try {
-        Set<String> groups = setWithLock.getObj();
-        if (groups != null && groups.size() > 0) {
-          for (String groupid : groups) {
-            try {
-              unbind(groupid, channelContext, false, callbackListener);
-            } catch (Exception e) {
-              log.error(e.toString(), e);
-            }
-          }
-          groups.clear();
-          channelContext.getGroups().clear();
+      for (String groupid : setWithLock.getObj()) {
+        try {
+          unbind(groupid, channelContext, true, callbackListener);
+        } catch (Exception e) {
+          log.error(e.toString(), e);
         }
-      } catch (Exception e) {
-        log.error(e.toString(), e);
-      } finally {
-        writeLock.unlock();
       }
-
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
@@ -222,32 +183,28 @@ public class Groups {
     }
 
     try {
+      if (deleteFromChannelContext) {
+        channelContext.getGroups().remove(groupid);
+      }
       SetWithLock<ChannelContext> channelSet = groupmap.get(groupid);
-      if (channelSet != null) {
-        boolean ss = channelSet.remove(channelContext);
-        if (!ss) {
-          log.warn("{}, 移除失败,group:{} cid:{}", channelContext, groupid, channelContext.getId());
-        }
-
-        if (deleteFromChannelContext) {
-          channelContext.getGroups().remove(groupid);
-        }
+      if (channelSet == null) {
+        // 组不存在
+        return;
+      }
+      // 如果该群组没有任何连接，就把这个群组从map中删除，以释放空间
+      if (!MaintainUtils.removeFromSet(groupmap.getObj(), groupid, channelSet, channelContext)) {
+        log.warn("{}, 移除失败,group:{} cid:{}", channelContext, groupid, channelContext.getId());
+      }
 
-        if (callbackListener) {
-          GroupListener groupListener = channelContext.tioConfig.getGroupListener();
-          if (groupListener != null) {
-            try {
-              groupListener.onAfterUnbind(channelContext, groupid);
-            } catch (Throwable e) {
-              log.error(e.toString(), e);
-            }
+      if (callbackListener) {
+        GroupListener groupListener = channelContext.tioConfig.getGroupListener();
+        if (groupListener != null) {
+          try {
+            groupListener.onAfterUnbind(channelContext, groupid);
+          } catch (Throwable e) {
+            log.error(e.toString(), e);
           }
         }
-
-        // 如果该群组没有任何连接，就把这个群组从map中删除，以释放空间
-        if (channelSet.getObj().size() == 0) {
-          groupmap.remove(groupid);
-        }
       }
     } catch (Exception e) {
       log.error(e.toString(), e);
@@ -1,8 +1,6 @@
 package nexus.io.tio.core.maintain;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +25,6 @@ public class Ips {
    * value: SetWithLock<ChannelContext>
    */
   private final MapWithLock<String, SetWithLock<ChannelContext>> ipmap = new MapWithLock<>(new HashMap<String, SetWithLock<ChannelContext>>());
-  private final ConcurrentHashMap<String, Object> ipLocks = new ConcurrentHashMap<>();
 
   /**
    * 和ip绑定
@@ -51,21 +48,8 @@ public class Ips {
       return;
     }
 
-    SetWithLock<ChannelContext> channelSet = ipmap.get(ip);
     try {
-      if (channelSet == null) {
-        Object lock = ipLocks.computeIfAbsent(ip, k -> new Object());
-
-        synchronized (lock) {
-          // 双重检查锁定
-          channelSet = ipmap.get(ip);
-          if (channelSet == null) {
-            channelSet = new SetWithLock<>(new HashSet<>());
-            ipmap.put(ip, channelSet);
-          }
-        }
-      }
-      channelSet.add(channelContext);
+      MaintainUtils.addToSet(ipmap.getObj(), ip, channelContext);
     } catch (Exception e) {
       log.error("绑定ChannelContext时出错: {}", e.toString(), e);
     }
@@ -118,21 +102,11 @@ public class Ips {
       }
 
       SetWithLock<ChannelContext> channelSet = ipmap.get(ip);
-      if (channelSet != null) {
-        channelSet.remove(channelContext);
-        if (channelSet.size() == 0) {
-          Object lock = ipLocks.computeIfAbsent(ip, k -> new Object());
-          synchronized (lock) {
-            // 再次检查，确保没有新的连接绑定到该 IP
-            if (channelSet.size() == 0) {
-              ipmap.remove(ip);
-              ipLocks.remove(ip); // 移除锁对象，防止内存泄漏
-            }
-          }
-        }
-      } else {
+      if (channelSet == null) {
         log.debug("{}, ip【{}】 找不到对应的SetWithLock", channelContext.tioConfig.getName(), ip);
+        return;
       }
+      MaintainUtils.removeFromSet(ipmap.getObj(), ip, channelSet, channelContext);
     } catch (Exception e) {
       log.error("解除绑定ChannelContext时出错: {}", e.toString(), e);
     }
@@ -3,6 +3,7 @@ package nexus.io.tio.core.maintain;
 import java.io.File;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -12,7 +13,9 @@ import org.slf4j.LoggerFactory;
 import nexus.io.tio.client.ClientTioConfig;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.TioConfig;
+import nexus.io.tio.server.HeartbeatTimingWheel;
 import nexus.io.tio.utils.hutool.FileUtil;
+import nexus.io.tio.utils.lock.SetWithLock;
 
 /**
  * 
@@ -38,6 +41,7 @@ public class MaintainUtils {
     }
 
     tioConfig.connections.remove(channelContext);
+    HeartbeatTimingWheel.remove(channelContext);
     if (channelContext.isBind) {
       tioConfig.ips.unbind(channelContext);
       tioConfig.ids.unbind(channelContext);
@@ -62,6 +66,54 @@ public class MaintainUtils {
     deleteTempDir(channelContext);
   }
 
+  /**
+   * 把channelContext加入key对应的集合，集合不存在时创建。<br>
+   * 不加锁：加入后再看一次map，集合已被removeFromSet当作空集合删除的，换到新的集合中重新加入
+   *
+   * @param map
+   * @param key
+   * @param channelContext
+   */
+  public static <K> void addToSet(Map<K, SetWithLock<ChannelContext>> map, K key, ChannelContext channelContext) {
+    SetWithLock<ChannelContext> channelSet = map.get(key);
+    while (true) {
+      if (channelSet == null) {
+        SetWithLock<ChannelContext> created = new SetWithLock<>(null);
+        channelSet = map.putIfAbsent(key, created);
+        if (channelSet == null) {
+          channelSet = created;
+        }
+      }
+      channelSet.add(channelContext);
+      SetWithLock<ChannelContext> current = map.get(key);
+      if (current == channelSet) {
+        return;
+      }
+      channelSet = current;
+    }
+  }
+
+  /**
+   * 把channelContext从key对应的集合channelSet中删除，集合空了就从map中删除以释放空间。<br>
+   * 删除集合的同时有连接加入时，addToSet和这里至少有一方能看到对方，看到的一方把连接加到新的集合中
+   *
+   * @param map
+   * @param key
+   * @param channelSet     map.get(key)取到的集合
+   * @param channelContext
+   * @return 是否从集合中删除了channelContext
+   */
+  public static <K> boolean removeFromSet(Map<K, SetWithLock<ChannelContext>> map, K key,
+      SetWithLock<ChannelContext> channelSet, ChannelContext channelContext) {
+    boolean removed = channelSet.remove(channelContext);
+    if (channelSet.size() == 0 && map.remove(key, channelSet) && channelSet.size() > 0) {
+      for (ChannelContext other : channelSet.getObj()) {
+        addToSet(map, key, other);
+      }
+    }
+    return removed;
+  }
+
   /**
    * 
    * @param tioConfig
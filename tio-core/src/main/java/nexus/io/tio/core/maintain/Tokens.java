@@ -1,11 +1,7 @@
 package nexus.io.tio.core.maintain;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +9,6 @@ import org.slf4j.LoggerFactory;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.utils.hutool.StrUtil;
-import nexus.io.tio.utils.lock.LockUtils;
 import nexus.io.tio.utils.lock.MapWithLock;
 import nexus.io.tio.utils.lock.SetWithLock;
 
@@ -32,8 +27,6 @@ public class Tokens {
   private MapWithLock<String, SetWithLock<ChannelContext>> mapWithLock = new MapWithLock<>(
       new HashMap<String, SetWithLock<ChannelContext>>());
 
-  private final Object synLockObj1 = new Object();
-
   /**
    * 绑定token.
    *
@@ -51,25 +44,7 @@ public class Tokens {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapWithLock.get(token);
-      if (setWithLock == null) {
-        LockUtils.runWriteOrWaitRead("_tio_tokens_bind__" + token, synLockObj1, () -> {
-//					@Override
-//					public void read() {
-//					}
-
-//					@Override
-//					public void write() {
-//						SetWithLock<ChannelContext> setWithLock  = mapWithLock.get(token);
-          if (mapWithLock.get(token) == null) {
-//							setWithLock = new SetWithLock<>(new HashSet<>());
-            mapWithLock.put(token, new SetWithLock<>(new HashSet<>()));
-          }
-//					}
-        });
-        setWithLock = mapWithLock.get(token);
-      }
-      setWithLock.add(channelContext);
+      MaintainUtils.addToSet(mapWithLock.getObj(), token, channelContext);
 
       channelContext.setToken(token);
     } catch (Throwable e) {
@@ -94,17 +69,7 @@ public class Tokens {
     if (StrUtil.isBlank(token)) {
       return null;
     }
-    String key = token;
-    Lock lock = mapWithLock.readLock();
-    lock.lock();
-    try {
-      Map<String, SetWithLock<ChannelContext>> m = mapWithLock.getObj();
-      return m.get(key);
-    } catch (Throwable e) {
-      throw e;
-    } finally {
-      lock.unlock();
-    }
+    return mapWithLock.get(token);
   }
 
   /**
@@ -137,12 +102,8 @@ public class Tokens {
               channelContext.toString(), token);
           return;
         }
+        MaintainUtils.removeFromSet(mapWithLock.getObj(), token, setWithLock, channelContext);
         channelContext.setToken(null);
-        setWithLock.remove(channelContext);
-
-        if (setWithLock.size() == 0) {
-          mapWithLock.remove(token);
-        }
       } catch (Throwable e) {
         throw e;
       }
@@ -166,30 +127,18 @@ public class Tokens {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapWithLock.get(token);
+      SetWithLock<ChannelContext> setWithLock = mapWithLock.remove(token);
       if (setWithLock == null) {
         return;
       }
 
-      WriteLock writeLock = setWithLock.writeLock();
-      writeLock.lock();
-      try {
-        Set<ChannelContext> set = setWithLock.getObj();
-        if (set.size() > 0) {
-          for (ChannelContext channelContext : set) {
-            channelContext.setToken(null);
-          }
-          set.clear();
-        }
-
-        mapWithLock.remove(token);
-      } catch (Throwable e) {
-        log.error(e.getMessage(), e);
-      } finally {
-        writeLock.unlock();
+      Set<ChannelContext> set = setWithLock.getObj();
+      for (ChannelContext channelContext : set) {
+        channelContext.setToken(null);
       }
+      set.clear();
     } catch (Throwable e) {
-      throw e;
+      log.error(e.getMessage(), e);
     }
   }
 }
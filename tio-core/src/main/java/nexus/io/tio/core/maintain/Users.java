@@ -1,10 +1,6 @@
 package nexus.io.tio.core.maintain;
 
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,7 +8,6 @@ import org.slf4j.LoggerFactory;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.utils.hutool.StrUtil;
-import nexus.io.tio.utils.lock.LockUtils;
 import nexus.io.tio.utils.lock.MapWithLock;
 import nexus.io.tio.utils.lock.SetWithLock;
 
@@ -45,16 +40,7 @@ public class Users {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapStrWithLock.get(userId);
-      if (setWithLock == null) {
-        LockUtils.runWriteOrWaitRead("_tio_users_bind__" + userId, this, () -> {
-          if (mapStrWithLock.get(userId) == null) {
-            mapStrWithLock.put(userId, new SetWithLock<>(new HashSet<ChannelContext>()));
-          }
-        });
-        setWithLock = mapStrWithLock.get(userId);
-      }
-      setWithLock.add(channelContext);
+      MaintainUtils.addToSet(mapStrWithLock.getObj(), userId, channelContext);
       channelContext.setUserId(userId);
     } catch (Throwable e) {
       e.printStackTrace();
@@ -109,12 +95,7 @@ public class Users {
         log.warn("{}, {}, userid:{}, can't find SetWithLock", channelContext.tioConfig.getName(), channelContext.toString(), userid);
         return;
       }
-
-      setWithLock.remove(channelContext);
-
-      if (setWithLock.size() == 0) {
-        mapStrWithLock.remove(userid);
-      }
+      MaintainUtils.removeFromSet(mapStrWithLock.getObj(), userid, setWithLock, channelContext);
 
       channelContext.setUserId(null);
     } catch (Throwable e) {
@@ -137,38 +118,16 @@ public class Users {
     }
 
     try {
-      Lock lock = mapStrWithLock.writeLock();
-      lock.lock();
-      try {
-        Map<String, SetWithLock<ChannelContext>> m = mapStrWithLock.getObj();
-        SetWithLock<ChannelContext> setWithLock = m.get(userid);
-        if (setWithLock == null) {
-          return;
-        }
-
-        WriteLock writeLock = setWithLock.writeLock();
-        writeLock.lock();
-        try {
-          Set<ChannelContext> set = setWithLock.getObj();
-          if (set.size() > 0) {
-            for (ChannelContext channelContext : set) {
-              channelContext.setUserId(null);
-            }
-            set.clear();
-          }
-
-          m.remove(userid);
-        } catch (Throwable e) {
-          log.error(e.getMessage(), e);
-        } finally {
-          writeLock.unlock();
-        }
-
-      } catch (Throwable e) {
-        throw e;
-      } finally {
-        lock.unlock();
+      SetWithLock<ChannelContext> setWithLock = mapStrWithLock.remove(userid);
+      if (setWithLock == null) {
+        return;
+      }
+
+      Set<ChannelContext> set = setWithLock.getObj();
+      for (ChannelContext channelContext : set) {
+        channelContext.setUserId(null);
       }
+      set.clear();
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
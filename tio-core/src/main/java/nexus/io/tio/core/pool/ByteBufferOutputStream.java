@@ -0,0 +1,110 @@
+package nexus.io.tio.core.pool;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import nexus.io.tio.core.TioConfig;
+
+/**
+ * 写到BufferPoolUtils分配的ByteBuffer中的OutputStream，空间不够时换一个更大的池化buffer。<br>
+ * 开头预留headroom字节不写数据，编码时可以把协议头写在数据前面，数据本身不用再复制。<br>
+ * 写完后用toByteBuffer()取走结果，之后由取走方负责归还；中途放弃要调release()。非线程安全
+ */
+public class ByteBufferOutputStream extends OutputStream {
+  private final int headroom;
+  private ByteBuffer buffer;
+
+  /**
+   * @param headroom 开头预留的字节数
+   * @param initialSize 预计的数据长度
+   */
+  public ByteBufferOutputStream(int headroom, int initialSize) {
+    this.headroom = headroom;
+    this.buffer = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, headroom + Math.max(initialSize, 1));
+    this.buffer.position(headroom);
+  }
+
+  @Override
+  public void write(int b) {
+    ensure(1);
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensure(len);
+    buffer.put(b, off, len);
+  }
+
+  /**
+   * 写入src中剩余的数据，src的position会移到limit
+   */
+  public void write(ByteBuffer src) {
+    ensure(src.remaining());
+    buffer.put(src);
+  }
+
+  /**
+   * @return 已写入的数据长度，不含headroom
+   */
+  public int size() {
+    return buffer.position() - headroom;
+  }
+
+  /**
+   * 取走写好的数据：position是headroom，limit是数据结尾。之后这个流不能再用
+   */
+  public ByteBuffer toByteBuffer() {
+    ByteBuffer ret = buffer;
+    if (ret == null) {
+      throw new IllegalStateException("buffer already taken");
+    }
+    buffer = null;
+    ret.limit(ret.position());
+    ret.position(headroom);
+    return ret;
+  }
+
+  /**
+   * 放弃已写的数据，把buffer还给BufferPoolUtils；多次调用无影响
+   */
+  public void release() {
+    ByteBuffer b = buffer;
+    if (b != null) {
+      buffer = null;
+      BufferPoolUtils.clean(b);
+    }
+  }
+
+  /**
+   * 数据由toByteBuffer()取走或release()归还，close不做任何事，方便交给会自动close的序列化器
+   */
+  @Override
+  public void close() {
+  }
+
+  private void ensure(int n) {
+    ByteBuffer old = buffer;
+    if (old == null) {
+      throw new IllegalStateException("buffer already taken");
+    }
+    if (old.remaining() >= n) {
+      return;
+    }
+    long need = (long) old.position() + n;
+    long capacity = Math.max((long) old.capacity() << 1, need);
+    if (capacity > Integer.MAX_VALUE) {
+      if (need > Integer.MAX_VALUE) {
+        throw new IllegalStateException("buffer too large");
+      }
+      capacity = need;
+    }
+    ByteBuffer bigger = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, (int) capacity);
+    old.flip();
+    old.position(headroom);
+    bigger.position(headroom);
+    bigger.put(old);
+    BufferPoolUtils.clean(old);
+    buffer = bigger;
+  }
+}
@@ -0,0 +1,32 @@
+package nexus.io.tio.core.pool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nexus.io.aio.PacketMeta;
+
+/**
+ * 使用SharedByteBuffer的packet的meta，数据写完(或写失败)时由WriteCompletionHandler释放引用
+ */
+public class SharedBufferPacketMeta extends PacketMeta {
+  private static final long serialVersionUID = 1L;
+
+  private final transient SharedByteBuffer sharedByteBuffer;
+  private final AtomicBoolean released = new AtomicBoolean(false);
+
+  public SharedBufferPacketMeta(SharedByteBuffer sharedByteBuffer) {
+    this.sharedByteBuffer = sharedByteBuffer;
+  }
+
+  /**
+   * 释放这个packet持有的引用，多次调用只释放一次
+   */
+  public void release() {
+    if (released.compareAndSet(false, true)) {
+      sharedByteBuffer.release();
+    }
+  }
+
+  public SharedByteBuffer getSharedByteBuffer() {
+    return sharedByteBuffer;
+  }
+}
@@ -0,0 +1,48 @@
+package nexus.io.tio.core.pool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 群发时多个连接共用的编码结果，带引用计数。<br>
+ * 每个连接拿到的是只读的duplicate()，有各自的position；最后一个引用释放后才归还给BufferPoolUtils
+ */
+public class SharedByteBuffer {
+  private final ByteBuffer byteBuffer;
+  /**
+   * 创建时为1，由创建方持有，分发完成后释放
+   */
+  private final AtomicInteger refCnt = new AtomicInteger(1);
+
+  /**
+   *
+   * @param byteBuffer 编码好的数据，position为0时需已flip
+   */
+  public SharedByteBuffer(ByteBuffer byteBuffer) {
+    if (!byteBuffer.hasRemaining()) {
+      byteBuffer.flip();
+    }
+    this.byteBuffer = byteBuffer;
+  }
+
+  /**
+   * 增加一个引用，并返回这个引用使用的只读视图
+   */
+  public ByteBuffer retain() {
+    refCnt.incrementAndGet();
+    return byteBuffer.asReadOnlyBuffer();
+  }
+
+  /**
+   * 释放一个引用，最后一个引用释放时归还给BufferPoolUtils
+   */
+  public void release() {
+    if (refCnt.decrementAndGet() == 0) {
+      BufferPoolUtils.clean(byteBuffer);
+    }
+  }
+
+  public int refCnt() {
+    return refCnt.get();
+  }
+}
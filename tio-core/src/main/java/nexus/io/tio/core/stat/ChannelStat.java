@@ -76,6 +76,10 @@ public class ChannelStat implements java.io.Serializable {
    * 本连接已接收了多少次TCP数据包
    */
   public final AtomicLong receivedTcps = new AtomicLong();
+  /**
+   * 本连接已执行了多少次TCP写(一次write可能包含多个业务包)
+   */
+  public final AtomicLong sentTcps = new AtomicLong();
   /**
    * 本连接已接收的packet数
    */
@@ -84,6 +88,22 @@ public class ChannelStat implements java.io.Serializable {
    * 心跳超时次数
    */
   public AtomicInteger heartbeatTimeoutCount = new AtomicInteger();
+  /**
+   * 发送队列中排队的packet数
+   */
+  public volatile int sendQueueSize = 0;
+  /**
+   * 发送队列中排队的字节数
+   */
+  public volatile long sendQueueBytes = 0;
+  /**
+   * 发送队列曾经达到的最大packet数
+   */
+  public volatile int sendQueuePeakSize = 0;
+  /**
+   * 发送队列超过高水位后丢弃的packet数
+   */
+  public final AtomicLong droppedPackets = new AtomicLong();
 
   /**
    * 平均每次TCP接收到的字节数，这个可以用来监控慢攻击，配置PacketsPerTcpReceive定位慢攻击
@@ -107,6 +127,40 @@ public class ChannelStat implements java.io.Serializable {
     return ret;
   }
 
+  /**
+   * 平均每次TCP写发送的业务包数，开启批量发送(TioConfig.sendBatchPackets)后用来观察合并的效果
+   */
+  public double getPacketsPerTcpSend() {
+    if (sentTcps.get() == 0) {
+      return 0;
+    }
+    double ret = (double) sentPackets.get() / (double) sentTcps.get();
+    return ret;
+  }
+
+  public int getSendQueueSize() {
+    return sendQueueSize;
+  }
+
+  public long getSendQueueBytes() {
+    return sendQueueBytes;
+  }
+
+  public int getSendQueuePeakSize() {
+    return sendQueuePeakSize;
+  }
+
+  public AtomicLong getDroppedPackets() {
+    return droppedPackets;
+  }
+
+  /**
+   * @return the sentTcps
+   */
+  public AtomicLong getSentTcps() {
+    return sentTcps;
+  }
+
   /**
    * @return the decodeFailCount
    */
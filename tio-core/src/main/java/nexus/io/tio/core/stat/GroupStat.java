@@ -44,6 +44,10 @@ public class GroupStat implements java.io.Serializable {
    * 本IP已接收了多少次TCP数据包
    */
   public final AtomicLong receivedTcps = new AtomicLong();
+  /**
+   * 已执行了多少次TCP写(一次write可能包含多个业务包)
+   */
+  public final AtomicLong sentTcps = new AtomicLong();
 
   /**
    * 平均每次TCP接收到的字节数，这个可以用来监控慢攻击，配置PacketsPerTcpReceive定位慢攻击
@@ -67,6 +71,24 @@ public class GroupStat implements java.io.Serializable {
     return ret;
   }
 
+  /**
+   * 平均每次TCP写发送的业务包数，开启批量发送(TioConfig.sendBatchPackets)后用来观察合并的效果
+   */
+  public double getPacketsPerTcpSend() {
+    if (sentTcps.get() == 0) {
+      return 0;
+    }
+    double ret = (double) sentPackets.get() / (double) sentTcps.get();
+    return ret;
+  }
+
+  /**
+   * @return the sentTcps
+   */
+  public AtomicLong getSentTcps() {
+    return sentTcps;
+  }
+
   /**
    * @return the closed
    */
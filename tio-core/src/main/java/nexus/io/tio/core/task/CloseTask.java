@@ -27,6 +27,14 @@ public class CloseTask {
       }
     }
 
+    // 半包的解码状态可能持有临时文件等资源
+    channelContext.clearDecodeState();
+    // 暂停读取时暂存的读缓冲区，还没发出去的packet，以及等着发送队列降下来的反压回调
+    channelContext.resumeRead();
+    channelContext.sendQueue.dropOnClose();
+    channelContext.sendQueue.fireDrainListenersOnClose();
+    channelContext.fireCloseHooks();
+
     if (channelContext.isClosed && !isNeedRemove) {
       return;
     }
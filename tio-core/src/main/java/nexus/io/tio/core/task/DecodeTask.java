@@ -11,13 +11,13 @@ import org.slf4j.LoggerFactory;
 import nexus.io.aio.Packet;
 import nexus.io.tio.core.ChannelCloseCode;
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.exception.AioDecodeException;
 import nexus.io.tio.core.exception.TioDecodeException;
 import nexus.io.tio.core.stat.ChannelStat;
 import nexus.io.tio.core.stat.IpStat;
-import nexus.io.tio.core.utils.ByteBufferUtils;
 import nexus.io.tio.exception.TioHandlePacketException;
 import nexus.io.tio.utils.SystemTimer;
 import nexus.io.tio.utils.hutool.CollUtil;
@@ -42,9 +42,12 @@ public class DecodeTask {
     if (DIAGNOSTIC_LOG_ENABLED) {
       log.info("decode:{}", channelContext.getClientNode());
     }
+    // byteBuffer是否由本类分配(不是读缓冲区)，是的话半包时可以直接保留，不用再复制一次
+    boolean owned = false;
     if (lastByteBuffer != null) {
-      byteBuffer = ByteBufferUtils.composite(lastByteBuffer, byteBuffer);
+      byteBuffer = append(channelContext, lastByteBuffer, byteBuffer);
       lastByteBuffer = null;
+      owned = true;
     }
     label_2: while (true) {
       int initPosition = byteBuffer.position();
@@ -67,7 +70,7 @@ public class DecodeTask {
                     channelContext.packetNeededLength);
               }
             }
-            lastByteBuffer = ByteBufferUtils.copy(byteBuffer, initPosition, limit);
+            lastByteBuffer = retain(channelContext, byteBuffer, initPosition, limit, owned);
             return;
           }
         } else {
@@ -79,8 +82,23 @@ public class DecodeTask {
         }
 
         if (packet == null) {
+          if (channelContext.isWaitingClose || channelContext.isRemoved) {
+            // 解码器已经关闭了连接(如请求体解析到一半出错)，剩下的数据不能再保留给下一次解码
+            lastByteBuffer = null;
+            return;
+          }
+          int consumedLength = channelContext.consumedLength;
+          if (consumedLength > 0) {
+            // 解码器已经处理掉了一部分数据(如流式接收的请求体)，这部分不用再保留，也不算解码失败
+            channelContext.consumedLength = 0;
+            channelContext.stat.decodeFailCount = 0;
+            if (initPosition + consumedLength < limit) {
+              lastByteBuffer = retain(channelContext, byteBuffer, initPosition + consumedLength, limit, owned);
+            }
+            return;
+          }
           // 数据不够，解不了码
-          lastByteBuffer = ByteBufferUtils.copy(byteBuffer, initPosition, limit);
+          lastByteBuffer = retain(channelContext, byteBuffer, initPosition, limit, owned);
           ChannelStat channelStat = channelContext.stat;
           channelStat.decodeFailCount++;
           // 检查慢包攻击
@@ -117,6 +135,7 @@ public class DecodeTask {
         } else {
           // 解码成功
           channelContext.setPacketNeededLength(null);
+          channelContext.setDecodeState(null);
           channelContext.stat.latestTimeOfReceivedPacket = SystemTimer.currTime;
           channelContext.stat.decodeFailCount = 0;
 
@@ -152,22 +171,15 @@ public class DecodeTask {
             log.debug("{}, Unpacking to get a packet:{}", channelContext, packet.logstr());
           }
 
-          ExecutorService biz = tioConfig.getBizExecutor();
-          if (biz != null) {
-            final Packet p = packet;
-            biz.execute(new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  new HandlePacketTask().handle(channelContext, p);
-                } catch (Throwable e) {
-                  log.error("HandlePacketTask error, {}", channelContext, e);
-                }
-              }
-            });
-          } else {
+          PipelineQueue pipeline = channelContext.pipeline;
+          if (pipeline == null && tioConfig.pipelineMaxInFlight > 1 && tioConfig.isServer()) {
+            pipeline = new PipelineQueue(channelContext, tioConfig.pipelineMaxInFlight);
+            channelContext.pipeline = pipeline;
+          }
+          // 同时处理的请求太多时先排队，轮到它时由PipelineQueue交给业务线程
+          if (pipeline == null || pipeline.register(packet)) {
             try {
-              new HandlePacketTask().handle(channelContext, packet);
+              dispatch(channelContext, packet);
             } catch (TioHandlePacketException e) {
               byteBuffer.mark();
               String request = StandardCharsets.UTF_8.decode(byteBuffer).toString();
@@ -197,6 +209,7 @@ public class DecodeTask {
         }
 
         channelContext.setPacketNeededLength(null);
+        channelContext.clearDecodeState();
 
         if (e instanceof AioDecodeException || e instanceof TioDecodeException) {
           List<Long> list = tioConfig.ipStats.durationList;
@@ -219,4 +232,80 @@ public class DecodeTask {
       }
     }
   }
+
+  /**
+   * 保留半包数据[initPosition, limit)，留出余量，使后续数据可以直接追加，避免每次收到数据都整体复制一遍
+   */
+  private static ByteBuffer retain(ChannelContext channelContext, ByteBuffer byteBuffer, int initPosition, int limit,
+      boolean owned) {
+    if (owned) {
+      byteBuffer.position(initPosition);
+      byteBuffer.limit(limit);
+      return byteBuffer;
+    }
+    int size = limit - initPosition;
+    int capacity = size + channelContext.getReadBufferSize();
+    if (channelContext.packetNeededLength != null) {
+      capacity = Math.max(capacity, channelContext.packetNeededLength);
+    }
+    ByteBuffer src = byteBuffer.duplicate();
+    src.position(initPosition);
+    src.limit(limit);
+    ByteBuffer ret = ByteBuffer.allocate(capacity);
+    ret.put(src);
+    ret.flip();
+    return ret;
+  }
+
+  /**
+   * 把新收到的数据追加到上次剩下的数据后面，容量够时原地追加，不够时按倍数扩容
+   */
+  private static ByteBuffer append(ChannelContext channelContext, ByteBuffer last, ByteBuffer byteBuffer) {
+    int position = last.position();
+    int limit = last.limit();
+    int newLimit = limit + byteBuffer.remaining();
+    if (newLimit <= last.capacity()) {
+      last.position(limit);
+      last.limit(newLimit);
+      last.put(byteBuffer);
+      last.position(position);
+      return last;
+    }
+
+    int size = last.remaining() + byteBuffer.remaining();
+    int capacity = (int) Math.min((long) size * 2, Integer.MAX_VALUE);
+    if (channelContext.packetNeededLength != null && channelContext.packetNeededLength >= size) {
+      capacity = channelContext.packetNeededLength;
+    }
+    ByteBuffer ret = ByteBuffer.allocate(capacity);
+    ret.put(last);
+    ret.put(byteBuffer);
+    ret.flip();
+    return ret;
+  }
+
+  /**
+   * 把解码出来的packet交给业务线程池处理，没有业务线程池时在当前线程处理
+   *
+   * @param channelContext
+   * @param packet
+   * @throws Throwable 在当前线程处理时业务方法抛出的异常
+   */
+  public static void dispatch(final ChannelContext channelContext, final Packet packet) throws Throwable {
+    ExecutorService biz = channelContext.tioConfig.getBizExecutor();
+    if (biz != null) {
+      biz.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            new HandlePacketTask().handle(channelContext, packet);
+          } catch (Throwable e) {
+            log.error("HandlePacketTask error, {}", channelContext, e);
+          }
+        }
+      });
+    } else {
+      new HandlePacketTask().handle(channelContext, packet);
+    }
+  }
 }
@@ -10,6 +10,7 @@ import nexus.io.aio.Packet;
 import nexus.io.tio.consts.TioCoreConfigKeys;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.Node;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.stat.IpStat;
 import nexus.io.tio.utils.SystemTimer;
@@ -107,6 +108,10 @@ public class HandlePacketTask {
         }
       }
 
+      PipelineQueue pipeline = channelContext.pipeline;
+      if (pipeline != null) {
+        pipeline.afterHandled(packet);
+      }
     }
   }
 
@@ -8,6 +8,8 @@ import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.LockSupport;
 
 import javax.net.ssl.SSLException;
@@ -19,14 +21,17 @@ import nexus.io.aio.Packet;
 import nexus.io.enhance.channel.EnhanceAsynchronousSocketChannel;
 import nexus.io.tio.core.ChannelCloseCode;
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.WriteCompletionHandler;
 import nexus.io.tio.core.intf.AioHandler;
+import nexus.io.tio.core.intf.SegmentedFileBody;
 import nexus.io.tio.core.pool.BufferPoolUtils;
 import nexus.io.tio.core.ssl.SslUtils;
 import nexus.io.tio.core.ssl.SslVo;
 import nexus.io.tio.core.utils.TioUtils;
+import nexus.io.tio.core.vo.FileSegment;
 import nexus.io.tio.core.vo.WriteCompletionVo;
 
 /**
@@ -70,62 +75,201 @@ public class SendPacketTask {
     if (disgnostic) {
       log.info("send:{},{}", channelContext.getClientNode(), packet);
     }
-    // 将数据包加入队列
-    channelContext.sendQueue.offer(packet);
+    // 将数据包加入队列，pipelining中的响应由PipelineQueue按请求的顺序放入
+    PipelineQueue pipeline = channelContext.pipeline;
+    if (pipeline == null || !pipeline.offer(packet)) {
+      channelContext.sendQueue.offer(packet);
+    }
+    return send();
+  }
+
+  /**
+   * 
+   * @return false: SSL加密出错，连接已关闭
+   */
+  private boolean send() {
     // 如果当前没有发送且队列不为空，则开始发送
-    if (channelContext.isSending.compareAndSet(false, true)) {
+    while (channelContext.isSending.compareAndSet(false, true)) {
       Packet nextPacket = channelContext.sendQueue.poll();
-      if (nextPacket != null) {
-        ByteBuffer byteBuffer = getByteBuffer(nextPacket);
-        if (isSsl) {
-          if (!nextPacket.isSslEncrypted()) {
-            SslVo sslVo = new SslVo(byteBuffer, nextPacket);
-            try {
-              channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
-              byteBuffer = sslVo.getByteBuffer();
-            } catch (SSLException e) {
-              log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
-              Tio.close(channelContext, "An exception occurred during SSL encryption.",
-                  ChannelCloseCode.SSL_ENCRYPTION_ERROR);
-              return false;
-            }
-          }
+      if (nextPacket == null) {
+        channelContext.isSending.set(false);
+        // 释放发送标志前可能又有数据入队
+        if (channelContext.sendQueue.isEmpty()) {
+          return true;
         }
+        continue;
+      }
 
-        AsynchronousSocketChannel asc = channelContext.asynchronousSocketChannel;
-        File fileBody = nextPacket.getFileBody();
-        if (fileBody != null && asc instanceof EnhanceAsynchronousSocketChannel) {
-          SocketChannel sc = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
+      ByteBuffer byteBuffer = encode(nextPacket);
+      if (byteBuffer == null) {
+        return false;
+      }
 
-          try {
-            writeFully(sc, byteBuffer); // 先确保 header 发完
-            transfer(fileBody, nextPacket, asc); // 再发 body
-          } catch (IOException e) {
-            log.error("send file header error, channel: {}", channelContext, e);
-            Tio.close(channelContext, "send file header error");
-            return false;
-          }
+      AsynchronousSocketChannel asc = channelContext.asynchronousSocketChannel;
+      File fileBody = nextPacket.getFileBody();
+      if (fileBody != null && asc instanceof EnhanceAsynchronousSocketChannel) {
+        SocketChannel sc = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
 
-          if (!nextPacket.isKeepConnection()) {
-            Tio.close(channelContext, "Send file finish");
+        try {
+          writeFully(sc, byteBuffer); // 先确保 header 发完
+          List<FileSegment> segments = nextPacket instanceof SegmentedFileBody
+              ? ((SegmentedFileBody) nextPacket).getFileSegments()
+              : null;
+          if (segments == null) {
+            transfer(fileBody, nextPacket.getFileBodyStart(), nextPacket.getFileBodyLength(),
+                nextPacket.getFileBodyTransferred(), nextPacket, asc); // 再发 body
+          } else {
+            transferSegments(fileBody, segments, nextPacket, asc);
           }
-        } else {
-          sendByteBuffer(byteBuffer, nextPacket);
+        } catch (IOException e) {
+          log.error("send file header error, channel: {}", channelContext, e);
+          Tio.close(channelContext, "send file header error");
+          return false;
         }
-      } else {
+
+        if (!nextPacket.isKeepConnection()) {
+          Tio.close(channelContext, "Send file finish");
+          return true;
+        }
+        // 文件是同步发送的，发完后继续发送队列中的数据
         channelContext.isSending.set(false);
+        continue;
       }
-    }
 
+      int maxPackets = maxBatchPackets();
+      if (maxPackets > 1) {
+        sendBatch(nextPacket, byteBuffer, maxPackets);
+      } else {
+        sendByteBuffer(byteBuffer, nextPacket);
+      }
+      return true;
+    }
     return true;
   }
 
-  private void transfer(File fileBody, Packet nextPacket, AsynchronousSocketChannel asc) {
+  /**
+   * 编码，需要的话再做SSL加密
+   * 
+   * @return null: SSL加密出错，连接已关闭
+   */
+  private ByteBuffer encode(Packet packet) {
+    ByteBuffer byteBuffer = getByteBuffer(packet);
+    if (isSsl) {
+      if (!packet.isSslEncrypted()) {
+        SslVo sslVo = new SslVo(byteBuffer, packet);
+        try {
+          channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
+          byteBuffer = sslVo.getByteBuffer();
+        } catch (SSLException e) {
+          log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
+          Tio.close(channelContext, "An exception occurred during SSL encryption.",
+              ChannelCloseCode.SSL_ENCRYPTION_ERROR);
+          return null;
+        }
+      }
+    }
+    return byteBuffer;
+  }
+
+  /**
+   * 一次write最多合并多少个packet：开启批量发送时取sendBatchPackets，pipelining时至少能把同时处理的响应一次发完
+   */
+  private int maxBatchPackets() {
+    int max = tioConfig.sendBatchPackets;
+    if (channelContext.pipeline != null) {
+      max = Math.max(max, tioConfig.pipelineMaxInFlight);
+    }
+    return max;
+  }
+
+  /**
+   * 批量发送：把sendQueue中排在后面的packet和first合并到一个buffer中，一次write发出去，
+   * 最多maxPackets个，合并的数据达到sendBatchBytes后不再取；发送完成后这些packet的回调(PacketSendMode等)一起完成。<br>
+   * EnhanceAsynchronousSocketChannel不支持write(ByteBuffer[])，所以是复制到一个buffer中而不是gathering write
+   */
+  private void sendBatch(Packet first, ByteBuffer firstBuffer, int maxPackets) {
+    List<Packet> packets = null;
+    List<ByteBuffer> buffers = null;
+    int size = firstBuffer.remaining();
+    Packet next;
+    while (size < tioConfig.sendBatchBytes && (packets == null || packets.size() < maxPackets)
+        && (next = channelContext.sendQueue.pollIfNoFileBody()) != null) {
+      if (packets == null) {
+        packets = new ArrayList<>();
+        buffers = new ArrayList<>();
+        packets.add(first);
+        buffers.add(firstBuffer);
+      }
+      ByteBuffer byteBuffer = encode(next);
+      if (byteBuffer == null) {
+        return;
+      }
+      packets.add(next);
+      buffers.add(byteBuffer);
+      size += byteBuffer.remaining();
+    }
+
+    if (packets == null) {
+      sendByteBuffer(firstBuffer, first);
+      return;
+    }
+
+    ByteBuffer merged = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, size);
+    for (int i = 0; i < buffers.size(); i++) {
+      ByteBuffer byteBuffer = buffers.get(i);
+      // 预编码的buffer可能被多个packet共用，不能改它的position，也不能归还
+      if (byteBuffer == packets.get(i).getPreEncodedByteBuffer()) {
+        merged.put(byteBuffer.duplicate());
+      } else {
+        merged.put(byteBuffer);
+        BufferPoolUtils.clean(byteBuffer);
+      }
+    }
+    merged.flip();
+    sendByteBuffer(merged, packets);
+  }
+
+  /**
+   * 按顺序发每一段：head(SSL时先加密)，再零拷贝发文件数据；某一段没发完(连接已断开)时不再发后面的段
+   */
+  private void transferSegments(File fileBody, List<FileSegment> segments, Packet nextPacket,
+      AsynchronousSocketChannel asc) throws IOException {
     SocketChannel sc = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
+    for (FileSegment segment : segments) {
+      if (!TioUtils.checkBeforeIO(channelContext)) {
+        return;
+      }
+      byte[] head = segment.getHead();
+      if (head != null && head.length > 0) {
+        ByteBuffer headBuffer = ByteBuffer.wrap(head);
+        if (isSsl) {
+          SslVo sslVo = new SslVo(headBuffer, nextPacket);
+          try {
+            channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
+          } catch (SSLException e) {
+            log.error("Failed to encrypt data using ssl", e);
+            Tio.close(channelContext, "Failed to encrypt data using ssl", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
+            return;
+          }
+          headBuffer = sslVo.getByteBuffer();
+        }
+        writeFully(sc, headBuffer);
+      }
+      if (segment.getLength() > 0
+          && transfer(fileBody, segment.getStart(), segment.getLength(), 0, nextPacket, asc) < segment.getLength()) {
+        return;
+      }
+    }
+  }
 
-    long start = nextPacket.getFileBodyStart();
-    long length = nextPacket.getFileBodyLength();
-    long transferred = nextPacket.getFileBodyTransferred();
+  /**
+   * 发送文件从start开始的length个字节，transferred是已经发过的字节数
+   *
+   * @return 发完后一共发了多少字节
+   */
+  private long transfer(File fileBody, long start, long length, long transferred, Packet nextPacket,
+      AsynchronousSocketChannel asc) {
+    SocketChannel sc = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
 
     if (!isSsl) {
       try (FileChannel fc = FileChannel.open(fileBody.toPath(), StandardOpenOption.READ)) {
@@ -133,7 +277,7 @@ public class SendPacketTask {
 
         if (start < 0 || start > fileSize) {
           log.error("invalid fileBodyStart: {}, fileSize: {}", start, fileSize);
-          return;
+          return transferred;
         }
 
         if (length < 0) {
@@ -243,6 +387,7 @@ public class SendPacketTask {
         log.error("ssl file transfer error, channel: {}", channelContext, e1);
       }
     }
+    return transferred;
   }
 
   /**
@@ -260,36 +405,24 @@ public class SendPacketTask {
       return;
     }
 
-    // WriteCompletionVo：支持 returnToPool 参数
-    WriteCompletionVo writeCompletionVo = new WriteCompletionVo(byteBuffer, packets);
+    // 预编码的buffer(群发共用、SSL握手数据等)由packet的所有者管理，写完后不归还
+    boolean returnToPool = !(packets instanceof Packet) || byteBuffer != ((Packet) packets).getPreEncodedByteBuffer();
+    WriteCompletionVo writeCompletionVo = new WriteCompletionVo(byteBuffer, packets, returnToPool);
+    // 编码后的实际大小计入发送队列的字节数，写完后由WriteCompletionHandler减去
+    int chargedBytes = byteBuffer.remaining();
+    writeCompletionVo.setChargedBytes(chargedBytes);
+    channelContext.sendQueue.charge(chargedBytes, packets instanceof List ? ((List<?>) packets).size() : 1);
     WriteCompletionHandler writeCompletionHandler = new WriteCompletionHandler(this.channelContext);
-    this.channelContext.asynchronousSocketChannel.write(byteBuffer, writeCompletionVo, writeCompletionHandler);
+    try {
+      this.channelContext.asynchronousSocketChannel.write(byteBuffer, writeCompletionVo, writeCompletionHandler);
+    } catch (RuntimeException e) {
+      channelContext.sendQueue.discharge(chargedBytes);
+      throw e;
+    }
   }
 
   public void processSendQueue() {
-    // 如果当前没有发送且队列不为空，则开始发送
-    if (channelContext.isSending.compareAndSet(false, true)) {
-      Packet nextPacket = channelContext.sendQueue.poll();
-      if (nextPacket != null) {
-        ByteBuffer byteBuffer = getByteBuffer(nextPacket);
-        if (isSsl) {
-          if (!nextPacket.isSslEncrypted()) {
-            SslVo sslVo = new SslVo(byteBuffer, nextPacket);
-            try {
-              channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
-              byteBuffer = sslVo.getByteBuffer();
-            } catch (SSLException e) {
-              log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
-              Tio.close(channelContext, "An exception occurred during SSL encryption.",
-                  ChannelCloseCode.SSL_ENCRYPTION_ERROR);
-            }
-          }
-        }
-        sendByteBuffer(byteBuffer, nextPacket);
-      } else {
-        channelContext.isSending.set(false);
-      }
-    }
+    send();
   }
 
   private void writeFully(SocketChannel sc, ByteBuffer buffer) throws IOException {
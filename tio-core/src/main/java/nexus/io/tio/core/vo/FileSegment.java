@@ -0,0 +1,41 @@
+package nexus.io.tio.core.vo;
+
+/**
+ * 分段发送的文件body中的一段：先发head，再把文件从start开始的length个字节零拷贝发出去
+ */
+public class FileSegment {
+  /**
+   * 这一段文件数据前面要发的字节，可以为null
+   */
+  private final byte[] head;
+  private final long start;
+  /**
+   * 文件数据的长度，为0时只发head
+   */
+  private final long length;
+
+  public FileSegment(byte[] head, long start, long length) {
+    this.head = head;
+    this.start = start;
+    this.length = length;
+  }
+
+  public byte[] getHead() {
+    return head;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * @return 这一段一共要发多少字节
+   */
+  public long byteCount() {
+    return (head == null ? 0 : head.length) + length;
+  }
+}
@@ -6,12 +6,26 @@ public class WriteCompletionVo {
   private ByteBuffer byteBuffer;
   private Object obj;
   private int totalWritten;
+  /**
+   * 写完后是否把byteBuffer归还给BufferPoolUtils，预编码的buffer由packet的所有者管理，不能归还
+   */
+  private boolean returnToPool = true;
+  /**
+   * 开始写时计入SendQueue.bytes()的字节数，写完后减去
+   */
+  private int chargedBytes;
 
   public WriteCompletionVo(ByteBuffer byteBuffer, Object obj) {
     this.byteBuffer = byteBuffer;
     this.obj = obj;
   }
 
+  public WriteCompletionVo(ByteBuffer byteBuffer, Object obj, boolean returnToPool) {
+    this.byteBuffer = byteBuffer;
+    this.obj = obj;
+    this.returnToPool = returnToPool;
+  }
+
   public ByteBuffer getByteBuffer() {
     return byteBuffer;
   }
@@ -36,4 +50,20 @@ public class WriteCompletionVo {
     this.totalWritten = totalWritten;
   }
 
+  public boolean isReturnToPool() {
+    return returnToPool;
+  }
+
+  public void setReturnToPool(boolean returnToPool) {
+    this.returnToPool = returnToPool;
+  }
+
+  public int getChargedBytes() {
+    return chargedBytes;
+  }
+
+  public void setChargedBytes(int chargedBytes) {
+    this.chargedBytes = chargedBytes;
+  }
+
 }
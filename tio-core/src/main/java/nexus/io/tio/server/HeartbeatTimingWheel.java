@@ -0,0 +1,304 @@
+package nexus.io.tio.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.tio.core.ChannelCloseCode;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.Tio;
+import nexus.io.tio.utils.SystemTimer;
+
+/**
+ * 心跳超时检测用的时间轮，代替原来每隔heartbeatTimeout遍历一次所有连接的做法。<br>
+ * 每个连接按"最后收发时间 + 心跳超时时间"放进对应的槽中，收发数据时只更新ChannelStat中的时间，不动时间轮；
+ * 到期时再看一次最后收发时间，没有超时就按新的截止时间重新放入，超时了才回调onHeartbeatTimeout。
+ * 每次tick只处理到期的槽，开销与到期的连接数成正比，与连接总数无关；每个槽单独加锁，连接的加入、移除互不阻塞，也不再持有connections的读锁。<br>
+ * 超时最多晚一个tick被发现
+ */
+public class HeartbeatTimingWheel {
+  private static final Logger log = LoggerFactory.getLogger(HeartbeatTimingWheel.class);
+
+  /**
+   * 执行检查的ServerTioConfig，共享连接时是负责心跳检查的那个
+   */
+  private final ServerTioConfig serverTioConfig;
+  /**
+   * 每个槽的时间跨度，单位：毫秒
+   */
+  private final long tick;
+  private final Bucket[] buckets;
+  private final int mask;
+  /**
+   * 已处理到的tick
+   */
+  private volatile long processedTick;
+  private Thread thread;
+
+  /**
+   *
+   * @param serverTioConfig
+   * @param tick            每个槽的时间跨度，单位：毫秒
+   */
+  public HeartbeatTimingWheel(ServerTioConfig serverTioConfig, long tick) {
+    this.serverTioConfig = serverTioConfig;
+    this.tick = Math.max(tick, 1);
+    // 一圈至少能放下一个心跳超时时间，这样到期的槽中基本都是到期的连接
+    long ticksPerTimeout = serverTioConfig.heartbeatTimeout / this.tick + 2;
+    int size = 64;
+    while (size < ticksPerTimeout && size < (1 << 16)) {
+      size <<= 1;
+    }
+    this.buckets = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.processedTick = System.currentTimeMillis() / this.tick;
+  }
+
+  public synchronized void start() {
+    if (thread != null) {
+      return;
+    }
+    processedTick = System.currentTimeMillis() / tick;
+    thread = new Thread(this::run, "tio-timer-checkheartbeat-" + serverTioConfig.getId() + "-" + serverTioConfig.getName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public boolean isStarted() {
+    return thread != null;
+  }
+
+  /**
+   * 连接建立后加入时间轮
+   *
+   * @param channelContext
+   */
+  public void add(ChannelContext channelContext) {
+    Entry entry = new Entry(this, channelContext);
+    channelContext.heartbeatEntry = entry;
+    schedule(entry, deadline(channelContext));
+  }
+
+  /**
+   * 连接删除后移出时间轮
+   *
+   * @param channelContext
+   */
+  public static void remove(ChannelContext channelContext) {
+    Entry entry = (Entry) channelContext.heartbeatEntry;
+    if (entry == null) {
+      return;
+    }
+    channelContext.heartbeatEntry = null;
+    entry.removed = true;
+    unlink(entry);
+  }
+
+  /**
+   * 心跳超时时间变化后按新的截止时间重新放入
+   *
+   * @param channelContext
+   */
+  public static void reschedule(ChannelContext channelContext) {
+    Entry entry = (Entry) channelContext.heartbeatEntry;
+    if (entry == null || entry.removed) {
+      return;
+    }
+    unlink(entry);
+    entry.wheel.schedule(entry, entry.wheel.deadline(channelContext));
+  }
+
+  private void run() {
+    while (serverTioConfig.isNeedCheckHeartbeat() && !serverTioConfig.isStopped()) {
+      long nowTick = System.currentTimeMillis() / tick;
+      while (processedTick < nowTick) {
+        long t = processedTick + 1;
+        try {
+          process(t);
+        } catch (Throwable e) {
+          log.error(e.getMessage(), e);
+        }
+        processedTick = t;
+      }
+      long sleep = (processedTick + 1) * tick - System.currentTimeMillis();
+      if (sleep > 0) {
+        LockSupport.parkNanos(sleep * 1000_000L);
+      }
+    }
+  }
+
+  /**
+   * 处理一个槽：取出到期的连接，没有超时的重新放入，超时的回调onHeartbeatTimeout
+   */
+  private void process(long t) {
+    Bucket bucket = buckets[(int) (t & mask)];
+    List<Entry> expired = null;
+    synchronized (bucket) {
+      bucket.processedTick = t;
+      Entry entry = bucket.head;
+      while (entry != null) {
+        Entry next = entry.next;
+        if (entry.deadlineTick <= t) {
+          bucket.unlink(entry);
+          if (expired == null) {
+            expired = new ArrayList<>();
+          }
+          expired.add(entry);
+        }
+        entry = next;
+      }
+    }
+    if (expired == null) {
+      return;
+    }
+
+    long heartbeatTimeout = serverTioConfig.heartbeatTimeout;
+    for (Entry entry : expired) {
+      ChannelContext channelContext = entry.channelContext;
+      if (entry.removed || channelContext.isRemoved) {
+        continue;
+      }
+      long timeout = timeout(channelContext);
+      if (heartbeatTimeout <= 0 || timeout <= 0) {
+        // 关闭了心跳检查，过一圈再看
+        schedule(entry, System.currentTimeMillis() + tick * buckets.length);
+        continue;
+      }
+      long compareTime = Math.max(channelContext.stat.latestTimeOfReceivedByte, channelContext.stat.latestTimeOfSentPacket);
+      long interval = SystemTimer.currTime - compareTime;
+      if (interval <= timeout) {
+        schedule(entry, compareTime + timeout + 1);
+        continue;
+      }
+
+      try {
+        if (!serverTioConfig.getServerAioListener().onHeartbeatTimeout(channelContext, interval,
+            channelContext.stat.heartbeatTimeoutCount.incrementAndGet())) {
+          log.info("{}, {} ms or not send and receive message", channelContext, interval);
+          channelContext.setCloseCode(ChannelCloseCode.HEARTBEAT_TIMEOUT);
+          Tio.remove(channelContext, interval + " ms not send and receive message");
+          continue;
+        }
+      } catch (Throwable e) {
+        log.error(e.getMessage(), e);
+      }
+      // 业务决定保留连接，一个心跳周期后再检查
+      schedule(entry, SystemTimer.currTime + timeout);
+    }
+  }
+
+  private long timeout(ChannelContext channelContext) {
+    Long timeout = channelContext.heartbeatTimeout;
+    if (timeout != null && timeout > 0) {
+      return timeout;
+    }
+    return serverTioConfig.heartbeatTimeout;
+  }
+
+  private long deadline(ChannelContext channelContext) {
+    long compareTime = Math.max(channelContext.stat.latestTimeOfReceivedByte, channelContext.stat.latestTimeOfSentPacket);
+    long timeout = timeout(channelContext);
+    return compareTime + (timeout > 0 ? timeout : tick * buckets.length) + 1;
+  }
+
+  /**
+   * @param deadline 截止时间，单位：毫秒
+   */
+  private void schedule(Entry entry, long deadline) {
+    long t = (deadline + tick - 1) / tick;
+    // 先锁entry再锁槽，同一个entry不会同时被放进两个槽；检查线程只锁槽
+    synchronized (entry) {
+      while (true) {
+        long processed = processedTick;
+        if (t <= processed) {
+          t = processed + 1;
+        }
+        Bucket bucket = buckets[(int) (t & mask)];
+        synchronized (bucket) {
+          if (entry.removed || entry.bucket != null) {
+            return;
+          }
+          // 这个槽已经处理过t，放进去要晚一圈才会被处理，改放下一个槽
+          if (bucket.processedTick >= t) {
+            t++;
+            continue;
+          }
+          entry.deadlineTick = t;
+          entry.bucket = bucket;
+          bucket.add(entry);
+          return;
+        }
+      }
+    }
+  }
+
+  private static void unlink(Entry entry) {
+    synchronized (entry) {
+      Bucket bucket = entry.bucket;
+      if (bucket == null) {
+        return;
+      }
+      synchronized (bucket) {
+        // 检查线程可能已把它取出
+        if (entry.bucket == bucket) {
+          bucket.unlink(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * 时间轮中的一个连接，由ChannelContext持有，移除时O(1)
+   */
+  public static class Entry {
+    private final HeartbeatTimingWheel wheel;
+    private final ChannelContext channelContext;
+    private volatile Bucket bucket;
+    private Entry prev;
+    private Entry next;
+    private long deadlineTick;
+    private volatile boolean removed = false;
+
+    private Entry(HeartbeatTimingWheel wheel, ChannelContext channelContext) {
+      this.wheel = wheel;
+      this.channelContext = channelContext;
+    }
+  }
+
+  /**
+   * 槽，双向链表
+   */
+  private static class Bucket {
+    private Entry head;
+    private long processedTick = Long.MIN_VALUE;
+
+    private void add(Entry entry) {
+      entry.prev = null;
+      entry.next = head;
+      if (head != null) {
+        head.prev = entry;
+      }
+      head = entry;
+    }
+
+    private void unlink(Entry entry) {
+      if (entry.prev != null) {
+        entry.prev.next = entry.next;
+      } else {
+        head = entry.next;
+      }
+      if (entry.next != null) {
+        entry.next.prev = entry.prev;
+      }
+      entry.prev = null;
+      entry.next = null;
+      entry.bucket = null;
+    }
+  }
+}
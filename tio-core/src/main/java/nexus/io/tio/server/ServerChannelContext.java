@@ -42,6 +42,25 @@ public class ServerChannelContext extends ChannelContext {
     super(tioConfig, id);
   }
 
+  /**
+   * 加入连接后再放进心跳检查的时间轮
+   */
+  @Override
+  public void setTioConfig(TioConfig tioConfig) {
+    super.setTioConfig(tioConfig);
+    if (tioConfig != null && tioConfig.isServer()) {
+      HeartbeatTimingWheel heartbeatTimingWheel = ((ServerTioConfig) tioConfig).getHeartbeatTimingWheel();
+      if (heartbeatTimingWheel != null) {
+        heartbeatTimingWheel.add(this);
+      }
+    }
+  }
+
+  @Override
+  public void setHeartbeatTimeout(Long heartbeatTimeout) {
+    super.setHeartbeatTimeout(heartbeatTimeout);
+    HeartbeatTimingWheel.reschedule(this);
+  }
 
   /** 
    * @return
@@ -2,9 +2,7 @@ package nexus.io.tio.server;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,9 +12,7 @@ import nexus.io.enhance.buffer.BufferMomeryInfo;
 import nexus.io.enhance.buffer.GlobalScheduler;
 import nexus.io.model.sys.SysConst;
 import nexus.io.tio.consts.TioCoreConfigKeys;
-import nexus.io.tio.core.ChannelCloseCode;
 import nexus.io.tio.core.ChannelContext;
-import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.intf.AioHandler;
 import nexus.io.tio.core.intf.AioListener;
@@ -27,10 +23,10 @@ import nexus.io.tio.server.intf.ServerAioHandler;
 import nexus.io.tio.server.intf.ServerAioListener;
 import nexus.io.tio.utils.AppendJsonConverter;
 import nexus.io.tio.utils.SystemTimer;
+import nexus.io.tio.utils.environment.EnvUtils;
 import nexus.io.tio.utils.executor.TioThreadPoolStats;
 import nexus.io.tio.utils.hutool.CollUtil;
 import nexus.io.tio.utils.hutool.StrUtil;
-import nexus.io.tio.utils.lock.SetWithLock;
 
 /**
  * 
@@ -40,7 +36,11 @@ public class ServerTioConfig extends TioConfig {
   private static final Logger log = LoggerFactory.getLogger(ServerTioConfig.class);
   private ServerAioHandler serverAioHandler = null;
   private ServerAioListener serverAioListener = null;
-  private Thread checkHeartbeatThread = null;
+  private HeartbeatTimingWheel heartbeatTimingWheel = null;
+  /**
+   * 负责心跳检查的ServerTioConfig，共享连接时是其中一个
+   */
+  private ServerTioConfig heartbeatChecker = this;
   private boolean needCheckHeartbeat = true;
   private boolean isShared = false;
   /**
@@ -152,12 +152,15 @@ public class ServerTioConfig extends TioConfig {
 
       if (!tioConfig.isShared && !this.isShared) {
         this.needCheckHeartbeat = false;
+        this.heartbeatChecker = tioConfig.heartbeatChecker;
       }
       if (tioConfig.isShared && !this.isShared) {
         this.needCheckHeartbeat = false;
+        this.heartbeatChecker = tioConfig.heartbeatChecker;
       }
       if (!tioConfig.isShared && this.isShared) {
         tioConfig.needCheckHeartbeat = false;
+        tioConfig.heartbeatChecker = this.heartbeatChecker;
       }
 
       // 下面这两行代码要放到前面if的后面
@@ -192,71 +195,23 @@ public class ServerTioConfig extends TioConfig {
   }
 
   private void startHeartbeatCheck() {
-    Runnable check = new Runnable() {
-      @Override
-      public void run() {
-        // 第一次先休息一下
-        try {
-          Thread.sleep(1000 * 10);
-        } catch (InterruptedException e1) {
-          log.error(e1.toString(), e1);
-        }
+    long tick = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_HEARTBEAT_TICK, 0L);
+    if (tick <= 0) {
+      tick = Math.min(1000, Math.max(10, heartbeatTimeout / 20));
+    }
+    heartbeatTimingWheel = new HeartbeatTimingWheel(this, tick);
+    heartbeatTimingWheel.start();
+  }
 
-        while (needCheckHeartbeat && !isStopped()) {
-          // long sleeptime = heartbeatTimeout;
-          if (heartbeatTimeout <= 0) {
-            break;
-          }
-          try {
-            Thread.sleep(heartbeatTimeout);
-          } catch (InterruptedException e1) {
-            log.error(e1.toString(), e1);
-          }
-          SetWithLock<ChannelContext> setWithLock = connections;
-          Set<ChannelContext> set = null;
-          ReadLock readLock = setWithLock.readLock();
-          readLock.lock();
-          try {
-            set = setWithLock.getObj();
-
-            for (ChannelContext channelContext : set) {
-              long compareTime = Math.max(channelContext.stat.latestTimeOfReceivedByte, channelContext.stat.latestTimeOfSentPacket);
-              long currtime = SystemTimer.currTime;
-              long interval = currtime - compareTime;
-
-              boolean needRemove = false;
-              if (channelContext.heartbeatTimeout != null && channelContext.heartbeatTimeout > 0) {
-                needRemove = interval > channelContext.heartbeatTimeout;
-              } else {
-                needRemove = interval > heartbeatTimeout;
-              }
-
-              if (needRemove) {
-                if (!ServerTioConfig.this.serverAioListener.onHeartbeatTimeout(channelContext, interval,
-                    channelContext.stat.heartbeatTimeoutCount.incrementAndGet())) {
-                  log.info("{}, {} ms or not send and receive message", channelContext, interval);
-                  channelContext.setCloseCode(ChannelCloseCode.HEARTBEAT_TIMEOUT);
-                  Tio.remove(channelContext, interval + " ms not send and receive message");
-                }
-              }
-            }
-          } catch (Throwable e) {
-            log.error(e.getMessage(), e);
-          } finally {
-            try {
-              readLock.unlock();
-            } catch (Throwable e) {
-              log.error(e.getMessage(), e);
-            }
-          }
-        }
-      }
-    };
+  /**
+   * @return 连接要加入的心跳检查时间轮，没有开启心跳检查时为null
+   */
+  public HeartbeatTimingWheel getHeartbeatTimingWheel() {
+    return heartbeatChecker.heartbeatTimingWheel;
+  }
 
-    checkHeartbeatThread = new Thread(check, "tio-timer-checkheartbeat-" + id + "-" + name);
-    checkHeartbeatThread.setDaemon(true);
-    checkHeartbeatThread.setPriority(Thread.MIN_PRIORITY);
-    checkHeartbeatThread.start();
+  public boolean isNeedCheckHeartbeat() {
+    return needCheckHeartbeat;
   }
 
   private void printStats() {
@@ -277,7 +232,8 @@ public class ServerTioConfig extends TioConfig {
     builder.append("\r\n │ \t ├ Sent Messages (packet/byte): ").append(groupStat.sentPackets.get()).append("/")
         .append(groupStat.sentBytes.get()).append("b");
     builder.append("\r\n │ \t ├ Avg Bytes Per TCP Receive: ").append(groupStat.getBytesPerTcpReceive());
-    builder.append("\r\n │ \t └ Avg Packets Per TCP Receive: ").append(groupStat.getPacketsPerTcpReceive());
+    builder.append("\r\n │ \t ├ Avg Packets Per TCP Receive: ").append(groupStat.getPacketsPerTcpReceive());
+    builder.append("\r\n │ \t └ Avg Packets Per TCP Send: ").append(groupStat.getPacketsPerTcpSend());
 
     builder.append("\r\n └ IP Statistics Duration");
     if (CollUtil.isNotEmpty(ipStats.durationList)) {
@@ -0,0 +1,55 @@
+package nexus.io.tio.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+
+public class ChannelContextCloseHookTest {
+
+  private ServerChannelContext channelContext;
+
+  @Before
+  public void setUp() {
+    channelContext = new ServerChannelContext(new ServerTioConfig("close-hook-test"), "close-hook-test");
+    channelContext.isClosed = false;
+  }
+
+  @Test
+  public void testHookRunsOnceOnClose() {
+    AtomicInteger runs = new AtomicInteger();
+    channelContext.addCloseHook(runs::incrementAndGet);
+    assertEquals(0, runs.get());
+
+    channelContext.fireCloseHooks();
+    channelContext.fireCloseHooks();
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testRemovedHookDoesNotRun() {
+    AtomicInteger runs = new AtomicInteger();
+    Runnable hook = runs::incrementAndGet;
+    channelContext.addCloseHook(hook);
+    channelContext.removeCloseHook(hook);
+
+    channelContext.fireCloseHooks();
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  public void testHookAddedWhileClosingRunsImmediately() {
+    AtomicInteger runs = new AtomicInteger();
+    channelContext.isWaitingClose = true;
+    channelContext.addCloseHook(runs::incrementAndGet);
+    assertEquals(1, runs.get());
+
+    channelContext.fireCloseHooks();
+    assertEquals(1, runs.get());
+  }
+}
@@ -0,0 +1,119 @@
+package nexus.io.tio.core;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+
+public class PipelineQueueTest {
+
+  private ServerChannelContext channelContext;
+  private PipelineQueue pipeline;
+
+  @Before
+  public void setUp() {
+    channelContext = new ServerChannelContext(new ServerTioConfig("pipeline-test"), "pipeline-test");
+    // 不真正发送，响应留在sendQueue中检查顺序
+    channelContext.isSending.set(true);
+    pipeline = new PipelineQueue(channelContext, 8);
+    channelContext.pipeline = pipeline;
+  }
+
+  @Test
+  public void testResponsesInRequestOrder() {
+    Packet r1 = request(1L);
+    Packet r2 = request(2L);
+
+    Packet p2 = response(2L);
+    pipeline.offer(p2);
+    pipeline.afterHandled(r2);
+    assertNull(channelContext.sendQueue.poll());
+
+    Packet p1 = response(1L);
+    pipeline.offer(p1);
+    pipeline.afterHandled(r1);
+    assertSame(p1, channelContext.sendQueue.poll());
+    assertSame(p2, channelContext.sendQueue.poll());
+  }
+
+  @Test
+  public void testStreamKeepsItsSlot() {
+    Packet r1 = request(1L);
+    Packet r2 = request(2L);
+    Packet r3 = request(3L);
+
+    // 第2个请求是流，还没轮到它时先发出的部分要等第1个的响应
+    PipelineQueue.startStream(channelContext, 2L);
+    Packet head = response(2L);
+    pipeline.offer(head);
+    pipeline.afterHandled(r2);
+    Packet p3 = response(3L);
+    pipeline.offer(p3);
+    pipeline.afterHandled(r3);
+    assertNull(channelContext.sendQueue.poll());
+
+    Packet p1 = response(1L);
+    pipeline.offer(p1);
+    pipeline.afterHandled(r1);
+    assertSame(p1, channelContext.sendQueue.poll());
+    assertSame(head, channelContext.sendQueue.poll());
+    assertNull(channelContext.sendQueue.poll());
+
+    // 轮到它之后流的数据直接发出，第3个请求的响应等到流结束
+    Packet chunk = response(2L);
+    pipeline.offer(chunk);
+    assertSame(chunk, channelContext.sendQueue.poll());
+    assertNull(channelContext.sendQueue.poll());
+
+    PipelineQueue.endStream(channelContext, 2L);
+    assertSame(p3, channelContext.sendQueue.poll());
+  }
+
+  @Test
+  public void testDeferredResponseKeepsItsSlot() {
+    Packet r1 = request(1L);
+    Packet r2 = request(2L);
+
+    PipelineQueue.defer(channelContext, 1L);
+    pipeline.afterHandled(r1);
+    Packet p2 = response(2L);
+    pipeline.offer(p2);
+    pipeline.afterHandled(r2);
+    assertNull(channelContext.sendQueue.poll());
+
+    Packet p1 = response(1L);
+    pipeline.offer(p1);
+    assertSame(p1, channelContext.sendQueue.poll());
+    assertSame(p2, channelContext.sendQueue.poll());
+  }
+
+  @Test
+  public void testNoResponseReleasesSlot() {
+    Packet r1 = request(1L);
+    Packet r2 = request(2L);
+
+    Packet p2 = response(2L);
+    pipeline.offer(p2);
+    pipeline.afterHandled(r2);
+    pipeline.afterHandled(r1);
+    assertSame(p2, channelContext.sendQueue.poll());
+  }
+
+  private Packet request(Long id) {
+    Packet request = new Packet();
+    request.setId(id);
+    pipeline.register(request);
+    return request;
+  }
+
+  private static Packet response(Long respId) {
+    Packet response = new Packet();
+    response.setRespId(respId);
+    return response;
+  }
+}
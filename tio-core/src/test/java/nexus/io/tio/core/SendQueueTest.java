@@ -0,0 +1,110 @@
+package nexus.io.tio.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
+import nexus.io.tio.core.pool.SharedByteBuffer;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+
+public class SendQueueTest {
+
+  private ServerTioConfig tioConfig;
+  private SendQueue sendQueue;
+
+  @Before
+  public void setUp() {
+    tioConfig = new ServerTioConfig("send-queue-test");
+    ServerChannelContext channelContext = new ServerChannelContext(tioConfig, "send-queue-test");
+    sendQueue = channelContext.sendQueue;
+  }
+
+  @Test
+  public void testBytesIncludeEncodedPacketsBeingWritten() {
+    // 没有预编码的packet排队时按0计，编码后按实际大小计入
+    sendQueue.offer(new Packet());
+    assertEquals(0, sendQueue.bytes());
+    sendQueue.poll();
+    sendQueue.charge(1000);
+    assertEquals(1000, sendQueue.bytes());
+
+    AtomicInteger drained = new AtomicInteger();
+    sendQueue.onDrained(0, drained::incrementAndGet);
+    assertEquals(0, drained.get());
+    sendQueue.discharge(1000);
+    assertEquals(0, sendQueue.bytes());
+    assertEquals(1, drained.get());
+  }
+
+  @Test
+  public void testPreEncodedPacketIsCountedWhileQueued() {
+    Packet packet = new Packet();
+    packet.setPreEncodedByteBuffer(ByteBuffer.allocate(300));
+    sendQueue.offer(packet);
+    assertEquals(300, sendQueue.bytes());
+    sendQueue.poll();
+    assertEquals(0, sendQueue.bytes());
+  }
+
+  @Test
+  public void testChargedBytesAffectWritability() {
+    tioConfig.sendQueueHighWaterBytes = 1000;
+    sendQueue.charge(1000);
+    assertFalse(sendQueue.isWritable());
+    // 低水位默认是高水位的一半
+    sendQueue.discharge(400);
+    assertFalse(sendQueue.isWritable());
+    sendQueue.discharge(100);
+    assertTrue(sendQueue.isWritable());
+  }
+
+  @Test
+  public void testUnencodedPacketsAreEstimatedFromEncodedSize() {
+    // 编码过两个500字节的packet后，没有编码的packet按500估算
+    sendQueue.poll();
+    sendQueue.charge(1000, 2);
+    sendQueue.discharge(1000);
+    assertEquals(500, sendQueue.getAveragePacketBytes());
+
+    tioConfig.sendQueueHighWaterBytes = 2000;
+    tioConfig.sendQueueOverflowPolicy = SendQueueOverflowPolicy.DROP_NEWEST;
+    for (int i = 0; i < 4; i++) {
+      assertTrue(sendQueue.offer(new Packet()));
+    }
+    assertEquals(2000, sendQueue.bytes());
+    assertFalse(sendQueue.isWritable());
+    assertFalse(sendQueue.offer(new Packet()));
+
+    sendQueue.poll();
+    sendQueue.poll();
+    assertEquals(1000, sendQueue.bytes());
+    assertTrue(sendQueue.isWritable());
+  }
+
+  @Test
+  public void testDropOnCloseReleasesSharedBuffers() {
+    SharedByteBuffer sharedByteBuffer = new SharedByteBuffer(ByteBuffer.allocate(100));
+    for (int i = 0; i < 2; i++) {
+      Packet packet = new Packet();
+      packet.setPreEncodedByteBuffer(sharedByteBuffer.retain());
+      packet.setMeta(new SharedBufferPacketMeta(sharedByteBuffer));
+      sendQueue.offer(packet);
+    }
+    assertEquals(3, sharedByteBuffer.refCnt());
+
+    sendQueue.dropOnClose();
+    assertTrue(sendQueue.isEmpty());
+    assertEquals(0, sendQueue.bytes());
+    // 只剩创建方持有的引用
+    assertEquals(1, sharedByteBuffer.refCnt());
+  }
+}
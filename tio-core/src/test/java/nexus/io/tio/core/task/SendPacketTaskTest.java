@@ -0,0 +1,295 @@
+package nexus.io.tio.core.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.DefaultAioListener;
+import nexus.io.tio.core.TioConfig;
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.core.vo.WriteCompletionVo;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+import nexus.io.tio.server.intf.ServerAioHandler;
+
+/**
+ * 发送队列中积压的packet合并成一次write
+ */
+public class SendPacketTaskTest {
+
+  private ServerTioConfig tioConfig;
+  private ServerChannelContext channelContext;
+  private RecordingChannel channel;
+  private final List<String> sent = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    tioConfig = new ServerTioConfig("send-packet-task-test");
+    tioConfig.statOn = false;
+    tioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength,
+          ChannelContext channelContext) throws TioDecodeException {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext channelContext) {
+        return ByteBuffer.wrap(((TextPacket) packet).text.getBytes(StandardCharsets.US_ASCII));
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext channelContext) {
+      }
+    });
+    tioConfig.setServerAioListener(new DefaultAioListener() {
+      @Override
+      public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) {
+        sent.add(((TextPacket) packet).text + (isSentSuccess ? "" : "!"));
+      }
+    });
+    channel = new RecordingChannel();
+    channelContext = new ServerChannelContext(tioConfig, "send-packet-task-test");
+    channelContext.isClosed = false;
+    channelContext.asynchronousSocketChannel = channel;
+  }
+
+  @Test
+  public void testQueuedPacketsMergedIntoOneWrite() {
+    tioConfig.sendBatchPackets = 4;
+    send("a0");
+    // 第一个write还没完成，后面的都在队列中等着
+    for (int i = 1; i <= 5; i++) {
+      send("a" + i);
+    }
+    assertEquals(1, channel.writes.size());
+    assertEquals("a0", channel.writes.get(0));
+
+    channel.complete();
+    assertEquals(2, channel.writes.size());
+    assertEquals("a1a2a3a4", channel.writes.get(1));
+    assertEquals(4, ((List<?>) channel.attachment.getObj()).size());
+
+    channel.complete();
+    assertEquals("a5", channel.writes.get(2));
+    channel.complete();
+    assertEquals("[a0, a1, a2, a3, a4, a5]", sent.toString());
+    assertEquals(0, channelContext.sendQueue.bytes());
+  }
+
+  @Test
+  public void testBatchStopsAtSendBatchBytes() {
+    tioConfig.sendBatchPackets = 16;
+    tioConfig.sendBatchBytes = 10;
+    send("b0");
+    for (int i = 1; i <= 5; i++) {
+      send("bb" + i);
+    }
+    channel.complete();
+    // 3+3=6还不到10，再取一个到9，还不到，再取一个到12后停下
+    assertEquals("bb1bb2bb3bb4", channel.writes.get(1));
+    channel.complete();
+    assertEquals("bb5", channel.writes.get(2));
+  }
+
+  @Test
+  public void testBatchingDisabled() {
+    tioConfig.sendBatchPackets = 1;
+    send("c0");
+    send("c1");
+    send("c2");
+    channel.complete();
+    channel.complete();
+    channel.complete();
+    assertEquals("[c0, c1, c2]", channel.writes.toString());
+    assertSame(TextPacket.class, channel.attachment.getObj().getClass());
+  }
+
+  @Test
+  public void testPreEncodedBufferIsCopiedNotConsumed() {
+    tioConfig.sendBatchPackets = 4;
+    ByteBuffer shared = ByteBuffer.wrap("shared".getBytes(StandardCharsets.US_ASCII));
+    send("d0");
+    TextPacket preEncoded = new TextPacket("shared");
+    preEncoded.setPreEncodedByteBuffer(shared);
+    new SendPacketTask(channelContext).sendPacket(preEncoded);
+    send("d2");
+
+    channel.complete();
+    assertEquals("sharedd2", channel.writes.get(1));
+    // 群发共用的buffer还要给别的连接用
+    assertEquals(0, shared.position());
+    assertEquals(6, shared.remaining());
+  }
+
+  @Test
+  public void testPartialWriteOfMergedBufferCompletesPacketsOnce() {
+    tioConfig.sendBatchPackets = 4;
+    send("e0");
+    send("e1");
+    send("e2");
+    channel.complete();
+
+    // 合并后的buffer只写出去一部分，剩下的接着写，packet在全部写完后才回调
+    channel.complete(2);
+    assertEquals("e2", channel.writes.get(2));
+    assertEquals("[e0]", sent.toString());
+    channel.complete();
+    assertEquals("[e0, e1, e2]", sent.toString());
+    assertTrue(channelContext.sendQueue.isWritable());
+  }
+
+  private void send(String text) {
+    new SendPacketTask(channelContext).sendPacket(new TextPacket(text));
+  }
+
+  private static class TextPacket extends Packet {
+    private static final long serialVersionUID = 1L;
+    private final String text;
+
+    private TextPacket(String text) {
+      this.text = text;
+    }
+  }
+
+  /**
+   * 记下每次write的数据，由测试调用complete()模拟写完成
+   */
+  private static class RecordingChannel extends AsynchronousSocketChannel {
+    private final List<String> writes = new ArrayList<>();
+    private ByteBuffer buffer;
+    private WriteCompletionVo attachment;
+    private CompletionHandler<Integer, Object> handler;
+
+    private RecordingChannel() {
+      super(null);
+    }
+
+    void complete() {
+      complete(buffer.remaining());
+    }
+
+    void complete(int n) {
+      buffer.position(buffer.position() + n);
+      handler.completed(n, attachment);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Integer, ? super A> handler) {
+      ByteBuffer copy = src.duplicate();
+      byte[] bytes = new byte[copy.remaining()];
+      copy.get(bytes);
+      writes.add(new String(bytes, StandardCharsets.US_ASCII));
+      this.buffer = src;
+      this.attachment = (WriteCompletionVo) attachment;
+      this.handler = (CompletionHandler<Integer, Object>) handler;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) {
+      return this;
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) {
+      return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) {
+      return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+      return null;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() {
+      return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() {
+      return this;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+      return null;
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Integer, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package nexus.io.tio.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.DefaultAioListener;
+import nexus.io.tio.server.intf.ServerAioListener;
+
+public class HeartbeatTimingWheelTest {
+
+  private ServerTioConfig serverTioConfig;
+
+  @After
+  public void tearDown() {
+    if (serverTioConfig != null) {
+      serverTioConfig.setStopped(true);
+    }
+  }
+
+  @Test
+  public void testIdleConnectionTimesOut() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerChannelContext channelContext = open(100, listener);
+    assertNotNull(channelContext.heartbeatEntry);
+
+    assertTrue(listener.timedOut.await(2, TimeUnit.SECONDS));
+    assertTrue(listener.lastInterval > 100);
+  }
+
+  @Test
+  public void testActivityPostponesTimeout() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerChannelContext channelContext = open(150, listener);
+
+    // 持续收到数据的连接，到期时按新的最后收发时间重新放入，不回调
+    long end = System.currentTimeMillis() + 600;
+    while (System.currentTimeMillis() < end) {
+      channelContext.stat.latestTimeOfReceivedByte = System.currentTimeMillis();
+      Thread.sleep(20);
+    }
+    assertEquals(0, listener.count.get());
+
+    assertTrue(listener.timedOut.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSetHeartbeatTimeoutReschedules() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerChannelContext channelContext = open(60_000, listener);
+
+    // 不重新放入的话，要等到按60秒算出的截止时间才会检查
+    channelContext.setHeartbeatTimeout(100L);
+    assertTrue(listener.timedOut.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRemovedConnectionIsNotChecked() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerChannelContext channelContext = open(100, listener);
+
+    HeartbeatTimingWheel.remove(channelContext);
+    assertNull(channelContext.heartbeatEntry);
+    Thread.sleep(400);
+    assertEquals(0, listener.count.get());
+  }
+
+  private ServerChannelContext open(long heartbeatTimeout, ServerAioListener listener) {
+    serverTioConfig = new ServerTioConfig("heartbeat-test");
+    serverTioConfig.setHeartbeatTimeout(heartbeatTimeout);
+    serverTioConfig.setServerAioListener(listener);
+    serverTioConfig.init();
+    assertTrue(serverTioConfig.getHeartbeatTimingWheel().isStarted());
+
+    // 虚拟连接不走init，这里补上真实连接建立时的setTioConfig
+    ServerChannelContext channelContext = new ServerChannelContext(serverTioConfig, "heartbeat-test");
+    channelContext.isClosed = false;
+    channelContext.setTioConfig(serverTioConfig);
+    return channelContext;
+  }
+
+  private static class RecordingListener extends DefaultAioListener implements ServerAioListener {
+    private final AtomicInteger count = new AtomicInteger();
+    private final CountDownLatch timedOut = new CountDownLatch(1);
+    private volatile long lastInterval;
+
+    @Override
+    public boolean onHeartbeatTimeout(ChannelContext channelContext, Long interval, int heartbeatTimeoutCount) {
+      lastInterval = interval;
+      count.incrementAndGet();
+      timedOut.countDown();
+      // 保留连接，不走Tio.remove
+      return true;
+    }
+  }
+}
@@ -29,8 +29,10 @@ public class HeaderName implements Serializable {
   public static final HeaderName Date = new HeaderName(ResponseHeaderKey.Date);
   public static final HeaderName Expires = new HeaderName(ResponseHeaderKey.Expires);
   public static final HeaderName Last_Modified = new HeaderName(ResponseHeaderKey.Last_Modified);
+  public static final HeaderName ETag = new HeaderName(ResponseHeaderKey.ETag);
   public static final HeaderName Refresh = new HeaderName(ResponseHeaderKey.Refresh);
   public static final HeaderName Sec_WebSocket_Accept = new HeaderName(ResponseHeaderKey.Sec_WebSocket_Accept);
+  public static final HeaderName Sec_WebSocket_Extensions = new HeaderName(ResponseHeaderKey.Sec_WebSocket_Extensions);
   public static final HeaderName Server = new HeaderName(ResponseHeaderKey.Server);
   public static final HeaderName Upgrade = new HeaderName(ResponseHeaderKey.Upgrade);
   public static final HeaderName Content_Type = new HeaderName(ResponseHeaderKey.Content_Type);
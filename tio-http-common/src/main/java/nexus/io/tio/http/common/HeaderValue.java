@@ -68,6 +68,11 @@ public class HeaderValue implements Serializable {
 
   public static class Content_Encoding extends EnumerableValue {
     public static final HeaderValue gzip = HeaderValue.from("gzip");
+    public static final HeaderValue br = HeaderValue.from("br");
+  }
+
+  public static class Vary extends EnumerableValue {
+    public static final HeaderValue Accept_Encoding = HeaderValue.from("Accept-Encoding");
   }
 
   public static class Tio_From_Cache extends EnumerableValue {
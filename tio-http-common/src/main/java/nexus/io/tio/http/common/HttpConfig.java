@@ -17,8 +17,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nexus.io.model.cache.ICache;
+import nexus.io.tio.http.common.handler.ITioHttpRequestBodyHandler;
 import nexus.io.tio.http.common.handler.ITioHttpRequestHandler;
 import nexus.io.tio.http.common.session.HttpSession;
+import nexus.io.tio.http.common.session.HttpSessionManager;
 import nexus.io.tio.http.common.session.id.ISessionIdGenerator;
 import nexus.io.tio.http.common.session.limiter.SessionRateLimiter;
 import nexus.io.tio.http.common.view.freemarker.FreemarkerConfig;
@@ -78,6 +80,23 @@ public class HttpConfig {
    * POST体的最大长度
    */
   private int maxLengthOfPostBody = MAX_LENGTH_OF_POST_BODY;
+  /**
+   * 流式接收请求体时，内存中最多保留的字节数默认值（256K）
+   */
+  public static final int BODY_SPILL_THRESHOLD = 1024 * 256;
+  /**
+   * 是否流式接收请求体。开启后，超过bodySpillThreshold的请求体不再整个放在内存中：
+   * 收到一段就交给requestBodyHandler或转存到临时文件，multipart边收边解析
+   */
+  private boolean streamingBody = false;
+  /**
+   * 流式接收请求体时，内存中最多保留的字节数，超过后转存到临时文件
+   */
+  private int bodySpillThreshold = BODY_SPILL_THRESHOLD;
+  /**
+   * 流式接收请求体时，由业务自己接收请求体，可以为null
+   */
+  private ITioHttpRequestBodyHandler requestBodyHandler;
   public static final int MAX_FORWARD_COUNT = 10;
   public int maxForwardCount = MAX_FORWARD_COUNT;
   /**
@@ -100,6 +119,7 @@ public class HttpConfig {
   private Integer bindPort = 80;
   private String serverInfo = HttpConst.SERVER_INFO;
   private ICache sessionStore = null;
+  private HttpSessionManager httpSessionManager = null;
   public SessionRateLimiter sessionRateLimiter;
   /**
    * 访问路径前缀，譬如"/api"
@@ -545,7 +565,11 @@ public class HttpConfig {
 
   public void setSessionStore(ICache sessionStore) {
     this.sessionStore = sessionStore;
-    // this.httpSessionManager = HttpSessionManager.getInstance(sessionStore);
+    this.httpSessionManager = sessionStore == null ? null : new HttpSessionManager(sessionStore);
+  }
+
+  public HttpSessionManager getHttpSessionManager() {
+    return httpSessionManager;
   }
 
   /**
@@ -610,8 +634,7 @@ public class HttpConfig {
     if (StrUtil.isBlank(sessionId)) {
       return null;
     }
-    HttpSession httpSession = (HttpSession) getSessionStore().get(sessionId);
-    return httpSession;
+    return httpSessionManager.get(sessionId);
   }
 
   public String getWelcomeFile() {
@@ -710,6 +733,30 @@ public class HttpConfig {
     this.maxLengthOfPostBody = maxLengthOfPostBody;
   }
 
+  public boolean isStreamingBody() {
+    return streamingBody;
+  }
+
+  public void setStreamingBody(boolean streamingBody) {
+    this.streamingBody = streamingBody;
+  }
+
+  public int getBodySpillThreshold() {
+    return bodySpillThreshold;
+  }
+
+  public void setBodySpillThreshold(int bodySpillThreshold) {
+    this.bodySpillThreshold = bodySpillThreshold;
+  }
+
+  public ITioHttpRequestBodyHandler getRequestBodyHandler() {
+    return requestBodyHandler;
+  }
+
+  public void setRequestBodyHandler(ITioHttpRequestBodyHandler requestBodyHandler) {
+    this.requestBodyHandler = requestBodyHandler;
+  }
+
   /**
    * @return the name
    */
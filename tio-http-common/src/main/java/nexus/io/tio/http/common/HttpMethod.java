@@ -1,5 +1,7 @@
 package nexus.io.tio.http.common;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author tanyaowu 2017年6月28日 下午2:23:16
  */
@@ -36,6 +38,33 @@ public enum HttpMethod {
     }
   }
 
+  private static final HttpMethod[] VALUES = values();
+
+  /**
+   * 直接从buffer的字节中识别method，不创建字符串
+   * 
+   * @param buffer
+   * @param start  absolute位置
+   * @param len
+   * @return
+   */
+  public static HttpMethod from(ByteBuffer buffer, int start, int len) {
+    for (HttpMethod method : VALUES) {
+      String value = method.value;
+      if (value.length() != len) {
+        continue;
+      }
+      int i = 0;
+      while (i < len && buffer.get(start + i) == value.charAt(i)) {
+        i++;
+      }
+      if (i == len) {
+        return method;
+      }
+    }
+    return null;
+  }
+
   String value;
 
   private HttpMethod(String value) {
@@ -1,5 +1,8 @@
 package nexus.io.tio.http.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -19,6 +22,8 @@ import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.Node;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.http.common.HttpConst.RequestBodyFormat;
+import nexus.io.tio.http.common.body.FileUploadFile;
+import nexus.io.tio.http.common.body.HttpRequestBody;
 import nexus.io.tio.http.common.session.HttpSession;
 import nexus.io.tio.utils.SystemTimer;
 import nexus.io.tio.utils.hutool.StrUtil;
@@ -60,6 +65,14 @@ public class HttpRequest extends HttpPacket {
   private boolean closed = false;
   protected Map<String, String> headers = new HashMap<>();
   private Integer forwardCount = null;
+  /**
+   * 流式接收的请求体，没开启流式接收或请求体不大时为null，数据在body中
+   */
+  private HttpRequestBody requestBody = null;
+  /**
+   * Transfer-Encoding: chunked时，最后一个chunk之后的trailer
+   */
+  private Map<String, String> trailers = null;
 
   public HttpRequest(Node remote) {
     this.remote = remote;
@@ -290,6 +303,62 @@ public class HttpRequest extends HttpPacket {
     this.body = bodyBytes;
   }
 
+  /**
+   * 流式接收的请求体(内存或临时文件)，没有流式接收时为null，请用getBodyBytes()
+   */
+  public HttpRequestBody getRequestBody() {
+    return requestBody;
+  }
+
+  public void setRequestBody(HttpRequestBody requestBody) {
+    this.requestBody = requestBody;
+  }
+
+  /**
+   * @return chunked请求体的trailer，没有时返回null
+   */
+  public Map<String, String> getTrailers() {
+    return trailers;
+  }
+
+  public void setTrailers(Map<String, String> trailers) {
+    this.trailers = trailers;
+  }
+
+  /**
+   * 以InputStream的方式读取请求体，不论请求体是在内存中还是在临时文件中
+   * 
+   * @return 没有请求体时返回null
+   * @throws IOException
+   */
+  public InputStream getBodyInputStream() throws IOException {
+    if (requestBody != null) {
+      return requestBody.getInputStream();
+    }
+    if (body != null) {
+      return new ByteArrayInputStream(body);
+    }
+    return null;
+  }
+
+  /**
+   * 删除流式接收请求体时产生的临时文件，请求处理完成后由框架调用
+   */
+  public void releaseBody() {
+    if (requestBody != null) {
+      requestBody.delete();
+    }
+    for (Object[] values : params.values()) {
+      if (values instanceof UploadFile[]) {
+        for (Object value : values) {
+          if (value instanceof FileUploadFile) {
+            ((FileUploadFile) value).delete();
+          }
+        }
+      }
+    }
+  }
+
   /**
    * @return the cookies
    */
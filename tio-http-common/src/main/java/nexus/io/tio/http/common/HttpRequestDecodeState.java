@@ -0,0 +1,117 @@
+package nexus.io.tio.http.common;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.http.common.body.HttpBodySink;
+import nexus.io.tio.http.common.consts.HttpRequestDecoderStep;
+import nexus.io.tio.http.common.decoder.ChunkDecoder;
+
+/**
+ * 半包解码时的中间状态，挂在ChannelContext上。<br>
+ * 下一段数据到达后，HttpRequestDecoder从上次停下的位置继续解析，已经解析过的请求行和header不会被重复扫描。<br>
+ * 所有的偏移量都是相对于packet起始位置的，DecodeTask保留的半包数据总是从packet起始位置开始，所以这些偏移量在多次decode之间保持有效；
+ * 只有流式接收请求体时，已经交给bodySink的数据会被DecodeTask丢弃，丢弃的长度记在discardedLength中
+ */
+public class HttpRequestDecodeState implements AutoCloseable {
+
+  /**
+   * 当前解析到哪一步
+   */
+  public HttpRequestDecoderStep step = HttpRequestDecoderStep.firstline;
+
+  /**
+   * 已经扫描过、确认不含行结束符的字节数，下次从这里继续找CRLF
+   */
+  public int scannedLength = 0;
+
+  /**
+   * 已经完整解析的字节数(请求行 + 已解析的header行)
+   */
+  public int parsedLength = 0;
+
+  /**
+   * 请求行的结束位置(LF之后)，-1表示还没找到
+   */
+  public int requestLineEnd = -1;
+
+  public RequestLine requestLine;
+
+  public final Map<String, String> headers = new HashMap<>();
+
+  /**
+   * 已解析的header个数
+   */
+  public int headerCount = 0;
+
+  /**
+   * 请求行 + header + 空行的总长度，header解析完成后才有值
+   */
+  public int headerLength = 0;
+
+  public int contentLength = 0;
+
+  /**
+   * 流式接收请求体时，header解析完成后就创建好的请求
+   */
+  public HttpRequest request;
+
+  /**
+   * 流式接收请求体时，请求体的接收者，为null表示不是流式接收
+   */
+  public HttpBodySink bodySink;
+
+  /**
+   * Transfer-Encoding: chunked时的解码器，为null表示按Content-Length接收
+   */
+  public ChunkDecoder chunkDecoder;
+
+  /**
+   * 已经处理过的请求体字节数(chunked时是解码前的字节数)
+   */
+  public int bodyReceived = 0;
+
+  /**
+   * 已经被DecodeTask丢弃的字节数(从packet起始位置算起)
+   */
+  public int discardedLength = 0;
+
+  /**
+   * 获取channelContext上的解码状态，没有则创建一个
+   *
+   * @param channelContext
+   * @return
+   */
+  public static HttpRequestDecodeState getOrCreate(ChannelContext channelContext) {
+    Object decodeState = channelContext.getDecodeState();
+    if (decodeState instanceof HttpRequestDecodeState) {
+      return (HttpRequestDecodeState) decodeState;
+    }
+    HttpRequestDecodeState state = new HttpRequestDecodeState();
+    channelContext.setDecodeState(state);
+    return state;
+  }
+
+  /**
+   * 请求体没收完就出错或连接断开时，关闭bodySink，删除临时文件
+   */
+  @Override
+  public void close() throws IOException {
+    if (bodySink != null) {
+      HttpBodySink bodySink = this.bodySink;
+      this.bodySink = null;
+      bodySink.close();
+    }
+  }
+
+  /**
+   * 清除channelContext上的解码状态，一个packet解码完成时调用
+   *
+   * @param channelContext
+   */
+  public static void clear(ChannelContext channelContext) {
+    channelContext.setDecodeState(null);
+  }
+}
@@ -1,10 +1,11 @@
 package nexus.io.tio.http.common;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -19,8 +20,16 @@ import nexus.io.tio.core.Node;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.exception.TioDecodeException;
 import nexus.io.tio.core.exception.UnsupportedHttpMethodException;
+import nexus.io.tio.core.maintain.MaintainUtils;
 import nexus.io.tio.core.utils.IpBlacklistUtils;
 import nexus.io.tio.http.common.HttpConst.RequestBodyFormat;
+import nexus.io.tio.http.common.body.HttpBodySink;
+import nexus.io.tio.http.common.body.HttpBodySpooler;
+import nexus.io.tio.http.common.body.HttpRequestBody;
+import nexus.io.tio.http.common.body.MultipartBodySink;
+import nexus.io.tio.http.common.consts.HttpRequestDecoderStep;
+import nexus.io.tio.http.common.decoder.ChunkDecoder;
+import nexus.io.tio.http.common.handler.ITioHttpRequestBodyHandler;
 import nexus.io.tio.http.common.utils.HttpIpUtils;
 import nexus.io.tio.http.common.utils.HttpParseUtils;
 import nexus.io.tio.utils.environment.EnvUtils;
@@ -62,50 +71,129 @@ public class HttpRequestDecoder {
       buffer.reset();
       log.info("request:{}", request);
     }
-    RequestLine firstLine = null;
+    HttpRequestDecodeState state = HttpRequestDecodeState.getOrCreate(channelContext);
+    if (state.parsedLength - state.discardedLength > readableLength) {
+      // 保存的状态和本次的数据对不上，从头开始解析
+      channelContext.clearDecodeState();
+      state = HttpRequestDecodeState.getOrCreate(channelContext);
+    }
+
+    HttpRequest httpRequest = null;
+    try {
+      httpRequest = decode(buffer, limit, position, readableLength, channelContext, httpConfig, state);
+    } catch (TioDecodeException | RuntimeException e) {
+      // 已经消费了请求头或部分请求体，剩下的数据无法确定从哪里开始是下一个请求，接着解析可能造成请求走私，只能关闭连接
+      boolean started = state.step != HttpRequestDecoderStep.firstline || state.discardedLength > 0;
+      channelContext.clearDecodeState();
+      if (started) {
+        Tio.remove(channelContext, e, "http decode error after request head: " + e.getMessage(),
+            ChannelCloseCode.DECODE_ERROR);
+      }
+      throw e;
+    }
+    if (httpRequest != null) {
+      HttpRequestDecodeState.clear(channelContext);
+    }
+    return httpRequest;
+  }
 
+  private static HttpRequest decode(ByteBuffer buffer, int limit, int position, int readableLength,
+      ChannelContext channelContext, HttpConfig httpConfig, HttpRequestDecodeState state) throws TioDecodeException {
     // request line start
-    firstLine = parseRequestLine(buffer, channelContext);
-    if (firstLine == null) {
-      return null;
+    if (state.step == HttpRequestDecoderStep.firstline) {
+      if (state.requestLineEnd < 0) {
+        int lfIndex = indexOf(buffer, position + state.scannedLength, limit, SysConst.LF);
+        if (lfIndex < 0) {
+          state.scannedLength = readableLength;
+          if (readableLength > MAX_LENGTH_OF_REQUESTLINE) {
+            throw new TioDecodeException("request line is too long");
+          }
+          return null;
+        }
+        state.requestLineEnd = lfIndex + 1 - position;
+      }
+
+      // 只把请求行交给parseRequestLine
+      buffer.position(position);
+      buffer.limit(position + state.requestLineEnd);
+      RequestLine firstLine = null;
+      try {
+        firstLine = parseRequestLine(buffer, channelContext);
+      } finally {
+        buffer.limit(limit);
+      }
+      if (firstLine == null) {
+        return null;
+      }
+      state.requestLine = firstLine;
+      state.parsedLength = state.requestLineEnd;
+      state.scannedLength = state.parsedLength;
+      state.step = HttpRequestDecoderStep.header;
     }
-    Map<String, String> headers = new HashMap<>();
-    int contentLength = 0;
-    byte[] bodyBytes = null;
     // request line end
 
     // request header start
-    boolean headerCompleted = parseHeader(buffer, headers, 0, httpConfig);
-    // 不论 GET 还是 POST，都 return null
-    if (!headerCompleted) {
-      return null;
+    if (state.step == HttpRequestDecoderStep.header) {
+      boolean headerCompleted = parseHeader(buffer, position, limit, state);
+      // 不论 GET 还是 POST，都 return null
+      if (!headerCompleted) {
+        return null;
+      }
+      String contentLengthStr = state.headers.get(RequestHeaderKey.Content_Length);
+
+      if (isChunked(state.headers)) {
+        // Transfer-Encoding优先于Content-Length
+        state.contentLength = 0;
+        state.chunkDecoder = new ChunkDecoder(httpConfig.getMaxLengthOfPostBody());
+      } else if (StrUtil.isBlank(contentLengthStr)) {
+        state.contentLength = 0;
+      } else {
+        state.contentLength = Integer.parseInt(contentLengthStr);
+        if (state.contentLength > httpConfig.getMaxLengthOfPostBody()) {
+          long maxLength = httpConfig.getMaxLengthOfPostBody();
+          String message = "Request body is too large. " + "Current size: " + state.contentLength + " bytes ("
+              + formatSize(state.contentLength) + "), " + "max allowed: " + maxLength + " bytes ("
+              + formatSize(maxLength) + ").";
+          log.error(message);
+          HttpResponse httpResponse = new HttpResponse();
+          httpResponse.setStatus(413);
+          httpResponse.body(message);
+          Tio.bSend(channelContext, httpResponse);
+          Tio.close(channelContext, "Payload Too Large");
+        }
+      }
+      state.headerLength = state.parsedLength;
+      state.step = HttpRequestDecoderStep.body;
+
+      boolean streaming = httpConfig.isStreamingBody() && state.contentLength > httpConfig.getBodySpillThreshold();
+      if (streaming || state.chunkDecoder != null) {
+        // 请求体较大或长度未知，先把请求创建好，请求体边收边交给bodySink，不再整个放在buffer中
+        HttpRequest httpRequest = createRequest(channelContext, httpConfig, state);
+        if (httpRequest == null) {
+          HttpRequestDecodeState.clear(channelContext);
+          return null;
+        }
+        state.request = httpRequest;
+        if (httpConfig.isStreamingBody()) {
+          state.bodySink = createBodySink(httpRequest, channelContext, httpConfig, state);
+        } else {
+          // 没开启流式接收的chunked请求体，解码后放在内存中
+          int maxLength = httpConfig.getMaxLengthOfPostBody();
+          state.bodySink = new HttpBodySpooler(null, maxLength, -1, maxLength);
+        }
+      }
     }
-    String contentLengthStr = headers.get(RequestHeaderKey.Content_Length);
 
-    if (StrUtil.isBlank(contentLengthStr)) {
-      contentLength = 0;
-    } else {
-      contentLength = Integer.parseInt(contentLengthStr);
-      if (contentLength > httpConfig.getMaxLengthOfPostBody()) {
-        long maxLength = httpConfig.getMaxLengthOfPostBody();
-        String message = "Request body is too large. " + "Current size: " + contentLength + " bytes ("
-            + formatSize(contentLength) + "), " + "max allowed: " + maxLength + " bytes (" + formatSize(maxLength)
-            + ").";
-        log.error(message);
-        HttpResponse httpResponse = new HttpResponse();
-        httpResponse.setStatus(413);
-        httpResponse.body(message);
-        Tio.bSend(channelContext, httpResponse);
-        Tio.close(channelContext, "Payload Too Large");
-      }
+    if (state.bodySink != null) {
+      return streamBody(buffer, limit, position, channelContext, httpConfig, state);
     }
 
-    int headerLength = (buffer.position() - position);
-    int allNeedLength = headerLength + contentLength; // 这个packet所需要的字节长度(含头部和体部)
+    int contentLength = state.contentLength;
+    int allNeedLength = state.headerLength + contentLength; // 这个packet所需要的字节长度(含头部和体部)
 
     int notReceivedLength = allNeedLength - readableLength; // 尚未接收到的数据长度
     if (notReceivedLength > 0) {
-      // 重置 position，使得下次 decode 时能从头开始读取已接收的数据
+      // 请求行和header已经解析过了，下次 decode 时直接从 body 开始
       if (notReceivedLength > channelContext.getReadBufferSize()) {
         channelContext.setReadBufferSize(notReceivedLength);
       }
@@ -113,9 +201,40 @@ public class HttpRequestDecoder {
       channelContext.setPacketNeededLength(allNeedLength);
       return null;
     }
+    buffer.position(position + state.headerLength);
+    RequestLine firstLine = state.requestLine;
+    byte[] bodyBytes = null;
     // request header end
 
     // request body start
+    HttpRequest httpRequest = createRequest(channelContext, httpConfig, state);
+    if (httpRequest == null) {
+      HttpRequestDecodeState.clear(channelContext);
+      return null;
+    }
+
+    if (contentLength > 0) {
+      bodyBytes = new byte[contentLength];
+      buffer.get(bodyBytes);
+      httpRequest.setBody(bodyBytes);
+      // 解析消息体
+      parseBody(httpRequest, firstLine, bodyBytes, channelContext, httpConfig);
+    } else {
+    }
+    return httpRequest;
+  }
+
+  /**
+   * 请求行和header解析完成后，创建HttpRequest(不含请求体)
+   * 
+   * @return queryString不合法时返回null，此时已经给客户端响应了400
+   * @throws TioDecodeException
+   */
+  private static HttpRequest createRequest(ChannelContext channelContext, HttpConfig httpConfig,
+      HttpRequestDecodeState state) throws TioDecodeException {
+    RequestLine firstLine = state.requestLine;
+    Map<String, String> headers = state.headers;
+
     String realIp = HttpIpUtils.getRealIp(channelContext, httpConfig, headers);
     if (IpBlacklistUtils.isInBlacklist(channelContext.tioConfig, realIp)) {
       String message = "[" + realIp + "] in black list";
@@ -145,7 +264,7 @@ public class HttpRequestDecoder {
     httpRequest.setChannelContext(channelContext);
     httpRequest.setHttpConfig(httpConfig);
     httpRequest.setHeaders(headers);
-    httpRequest.setContentLength(contentLength);
+    httpRequest.setContentLength(state.contentLength);
 
     String connection = headers.get(RequestHeaderKey.Connection);
     if (connection != null) {
@@ -189,14 +308,111 @@ public class HttpRequestDecoder {
         return null;
       }
     }
+    return httpRequest;
+  }
 
-    if (contentLength > 0) {
-      bodyBytes = new byte[contentLength];
-      buffer.get(bodyBytes);
-      httpRequest.setBody(bodyBytes);
-      // 解析消息体
-      parseBody(httpRequest, firstLine, bodyBytes, channelContext, httpConfig);
-    } else {
+  /**
+   * 创建流式接收请求体的bodySink：优先用httpConfig中配置的requestBodyHandler，其次multipart边收边解析，其它的转存到临时文件
+   */
+  private static HttpBodySink createBodySink(HttpRequest httpRequest, ChannelContext channelContext,
+      HttpConfig httpConfig, HttpRequestDecodeState state) throws TioDecodeException {
+    parseBodyFormat(httpRequest, httpRequest.getHeaders());
+    ITioHttpRequestBodyHandler requestBodyHandler = httpConfig.getRequestBodyHandler();
+    if (requestBodyHandler != null) {
+      HttpBodySink bodySink;
+      try {
+        bodySink = requestBodyHandler.onBodyStart(httpRequest);
+      } catch (Exception e) {
+        throw new TioDecodeException(e);
+      }
+      if (bodySink != null) {
+        return bodySink;
+      }
+    }
+
+    File tempDir = MaintainUtils.tempDir(channelContext, true);
+    if (httpRequest.getBodyFormat() == RequestBodyFormat.MULTIPART) {
+      String contentType = httpRequest.getHeader(RequestHeaderKey.Content_Type);
+      String initboundary = HttpParseUtils.getSubAttribute(contentType, "boundary");
+      return new MultipartBodySink(httpRequest, initboundary, channelContext, httpConfig, tempDir,
+          httpConfig.getBodySpillThreshold());
+    }
+    if (state.chunkDecoder != null) {
+      return new HttpBodySpooler(tempDir, httpConfig.getBodySpillThreshold(), -1, httpConfig.getMaxLengthOfPostBody());
+    }
+    return new HttpBodySpooler(tempDir, httpConfig.getBodySpillThreshold(), state.contentLength, state.contentLength);
+  }
+
+  /**
+   * Transfer-Encoding中是否有chunked
+   */
+  private static boolean isChunked(Map<String, String> headers) {
+    String transferEncoding = headers.get(RequestHeaderKey.Transfer_Encoding);
+    return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+  }
+
+  /**
+   * 把buffer中已经收到的请求体交给bodySink(chunked时先解码)，并告诉DecodeTask这些数据不用再保留
+   * 
+   * @return 请求体全部收到时返回请求，否则返回null
+   * @throws TioDecodeException
+   */
+  private static HttpRequest streamBody(ByteBuffer buffer, int limit, int position, ChannelContext channelContext,
+      HttpConfig httpConfig, HttpRequestDecodeState state) throws TioDecodeException {
+    // 请求体中还没处理的第一个字节在buffer中的位置
+    int offset = position + state.headerLength + state.bodyReceived - state.discardedLength;
+    int length = 0;
+    boolean completed = false;
+    try {
+      if (state.chunkDecoder != null) {
+        ByteBuffer src = buffer.duplicate();
+        src.position(offset);
+        src.limit(limit);
+        completed = state.chunkDecoder.decode(src, state.bodySink);
+        length = src.position() - offset;
+      } else {
+        length = Math.min(limit - offset, state.contentLength - state.bodyReceived);
+        if (length > 0) {
+          ByteBuffer src = buffer.duplicate();
+          src.position(offset);
+          src.limit(offset + length);
+          state.bodySink.write(src);
+        }
+        completed = state.bodyReceived + length == state.contentLength;
+      }
+      state.bodyReceived += length;
+      if (!completed) {
+        int consumedLength = offset + length - position;
+        state.discardedLength += consumedLength;
+        channelContext.consumedLength = consumedLength;
+        channelContext.setPacketNeededLength(null);
+        return null;
+      }
+      state.bodySink.complete();
+    } catch (IOException e) {
+      throw new TioDecodeException(e);
+    }
+
+    HttpRequest httpRequest = state.request;
+    HttpBodySink bodySink = state.bodySink;
+    // 请求体已经交给了httpRequest，清除状态时不能再关闭
+    state.bodySink = null;
+    buffer.position(offset + length);
+    if (state.chunkDecoder != null) {
+      httpRequest.setContentLength((int) state.chunkDecoder.getLength());
+      httpRequest.setTrailers(state.chunkDecoder.getTrailers());
+    }
+    if (bodySink instanceof HttpBodySpooler) {
+      HttpRequestBody body = ((HttpBodySpooler) bodySink).getBody();
+      if (body.isInMemory()) {
+        // 请求体不大，和Content-Length的请求一样解析
+        if (body.getLength() > 0) {
+          httpRequest.setBody(body.getBytes());
+          parseBody(httpRequest, state.requestLine, body.getBytes(), channelContext, httpConfig);
+        }
+      } else {
+        httpRequest.setRequestBody(body);
+      }
     }
     return httpRequest;
   }
@@ -403,201 +619,211 @@ public class HttpRequestDecoder {
   }
 
   /**
-   * 读取一行数据
+   * 从buffer的absolute位置start开始(含)，到end(不含)为止，查找字节b
    * 
-   * @param buffer
-   * @return
+   * @return b的absolute位置，没找到返回-1
    */
-  private static String readLine(ByteBuffer buffer) {
-    // 记录当前起始位置
-    int startPosition = buffer.position();
-    // 搜索 CRLF 结束符
-    while (buffer.hasRemaining()) {
-      byte b = buffer.get();
-      if (b == SysConst.CR) {
-        if (buffer.hasRemaining()) {
-          byte next = buffer.get();
-          if (next == SysConst.LF) {
-            // 找到 CRLF，计算这一行的长度
-            int endPosition = buffer.position() - 2;
-            int length = endPosition - startPosition;
-            byte[] lineBytes = new byte[length];
-            // 恢复到起始位置，读取这一行的字节
-            buffer.position(startPosition);
-            buffer.get(lineBytes);
-            // 跳过 CRLF
-            buffer.get(); // CR
-            buffer.get(); // LF
-            return new String(lineBytes, StandardCharsets.UTF_8);
-          } else {
-            // 如果 CR 后面不是 LF，则将指针回退一位
-            buffer.position(buffer.position() - 1);
-          }
-        }
+  private static int indexOf(ByteBuffer buffer, int start, int end, byte b) {
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == b) {
+        return i;
       }
     }
-    // 没有找到完整的行，恢复位置
-    buffer.position(startPosition);
-    return null;
+    return -1;
+  }
+
+  /**
+   * 读取absolute位置start开始的length个字节，不改变buffer的position
+   */
+  private static String readString(ByteBuffer buffer, int start, int length) {
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+    }
+    byte[] lineBytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      lineBytes[i] = buffer.get(start + i);
+    }
+    return new String(lineBytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 跳过[start, end)开头的空白字符
+   */
+  private static int trimStart(ByteBuffer buffer, int start, int end) {
+    while (start < end && (buffer.get(start) & 0xff) <= SysConst.SPACE) {
+      start++;
+    }
+    return start;
+  }
+
+  /**
+   * 跳过[start, end)结尾的空白字符
+   */
+  private static int trimEnd(ByteBuffer buffer, int start, int end) {
+    while (end > start && (buffer.get(end - 1) & 0xff) <= SysConst.SPACE) {
+      end--;
+    }
+    return end;
   }
 
   /**
-   * 解析请求头
+   * 解析请求头，从state.parsedLength开始，每解析完一行就记录到state中，数据不够时下次从上次停下的位置继续
    * 
    * @param buffer
-   * @param headers
-   * @param hasReceivedHeaderLength
-   * @param httpConfig
-   * @return
+   * @param position packet的起始位置
+   * @param limit
+   * @param state
+   * @return header是否已经完整
    * @throws TioDecodeException
    */
-  public static boolean parseHeader(ByteBuffer buffer, Map<String, String> headers, int hasReceivedHeaderLength,
-      HttpConfig httpConfig) throws TioDecodeException {
+  public static boolean parseHeader(ByteBuffer buffer, int position, int limit, HttpRequestDecodeState state)
+      throws TioDecodeException {
     // 循环读取每一行 header
     while (true) {
+      int lineStart = position + state.parsedLength;
+      // 行结束符是CRLF，从上次扫描到的位置继续找LF
+      int lfIndex = -1;
+      for (int i = Math.max(position + state.scannedLength, lineStart + 1); i < limit; i++) {
+        if (buffer.get(i) == SysConst.LF && buffer.get(i - 1) == SysConst.CR) {
+          lfIndex = i;
+          break;
+        }
+      }
+
       // 如果没有足够数据来读取一行，则返回 false
-      String line = readLine(buffer);
-      if (line == null) {
+      if (lfIndex < 0) {
+        state.scannedLength = limit - position;
+        if (limit - lineStart > MAX_LENGTH_OF_HEADERLINE) {
+          throw new TioDecodeException(
+              "header line is too long, max length of header line is " + MAX_LENGTH_OF_HEADERLINE);
+        }
         return false;
       }
+
+      int lineLength = lfIndex - 1 - lineStart;
+      state.parsedLength = lfIndex + 1 - position;
+      state.scannedLength = state.parsedLength;
+
       // 如果读取到空行（即仅包含 CRLF），说明 header 结束
-      if (line.trim().isEmpty()) {
+      boolean blank = true;
+      for (int i = lineStart; i < lineStart + lineLength; i++) {
+        if ((buffer.get(i) & 0xff) > SysConst.SPACE) {
+          blank = false;
+          break;
+        }
+      }
+      if (blank) {
         return true;
       }
       // 检查单行长度是否超出限制
-      if (line.length() > MAX_LENGTH_OF_HEADERLINE) {
+      if (lineLength > MAX_LENGTH_OF_HEADERLINE) {
         throw new TioDecodeException(
             "header line is too long, max length of header line is " + MAX_LENGTH_OF_HEADERLINE);
       }
       // 累计 header 总长度检查
-      hasReceivedHeaderLength += line.getBytes(StandardCharsets.UTF_8).length + 2; // 加上 CRLF
-      if (hasReceivedHeaderLength > MAX_LENGTH_OF_HEADER) {
+      if (state.parsedLength - state.requestLineEnd > MAX_LENGTH_OF_HEADER) {
         throw new TioDecodeException("header is too long, max length of header is " + MAX_LENGTH_OF_HEADER);
       }
+      int lineEnd = lineStart + lineLength;
       // 按照冒号分割 header 名和值
-      int colonIndex = line.indexOf(':');
+      int colonIndex = indexOf(buffer, lineStart, lineEnd, SysConst.COL);
       if (colonIndex == -1) {
         // 如果没有冒号，则认为是无效的 header 行，可以选择抛出异常或跳过
-        throw new TioDecodeException("Invalid header line: " + line);
+        throw new TioDecodeException("Invalid header line: " + readString(buffer, lineStart, lineLength));
+      }
+      int nameStart = trimStart(buffer, lineStart, colonIndex);
+      int nameEnd = trimEnd(buffer, nameStart, colonIndex);
+      // 已知的header名直接取RequestHeaderKey中的常量
+      String name = RequestHeaderKeyTable.get(buffer, nameStart, nameEnd - nameStart);
+      if (name == null) {
+        name = readString(buffer, nameStart, nameEnd - nameStart).toLowerCase();
       }
-      String name = line.substring(0, colonIndex).trim().toLowerCase();
-      String value = line.substring(colonIndex + 1).trim();
-      headers.put(name, value);
+      int valueStart = trimStart(buffer, colonIndex + 1, lineEnd);
+      int valueEnd = trimEnd(buffer, valueStart, lineEnd);
+      String value = readString(buffer, valueStart, valueEnd - valueStart);
+      state.headers.put(name, value);
+      state.headerCount++;
     }
   }
 
   /**
-   * parse request line(the first line)
+   * parse request line(the first line)<br>
+   * 直接用absolute get读取heap或direct的ByteBuffer，不复制整个buffer，解析完成后position指向请求行之后
    * 
    * @param line           GET /tio?value=tanyaowu HTTP/1.1
    * @param channelContext
    */
   public static RequestLine parseRequestLine(ByteBuffer buffer, ChannelContext channelContext)
       throws TioDecodeException {
-    byte[] allbs;
-    int offset; // 用来统一索引偏移
-
-    // 兼容HeapByteBuffer和DirectByteBuffer
-    if (buffer.hasArray()) {
-      allbs = buffer.array();
-      // 通常为0，但为了严谨，使用arrayOffset
-      offset = buffer.arrayOffset();
-    } else {
-      buffer.mark();
-      allbs = new byte[buffer.remaining()];
-      buffer.get(allbs);
-      buffer.reset();
-      // 直接缓冲区时, buffer.position要从0开始计算，所以设offset为 -position
-      offset = -buffer.position();
-    }
-
-    int startPos = buffer.position() + offset;
-
-    String methodStr = null;
-    String pathStr = null;
-    String queryStr = null;
-    String protocol = null;
-    String version = null;
-
     int initPosition = buffer.position();
+    int limit = buffer.limit();
 
-    while (buffer.hasRemaining()) {
-      byte b = buffer.get();
-
-      if (methodStr == null) {
-        if (b == SysConst.SPACE) {
-          int len = buffer.position() + offset - startPos - 1;
-          methodStr = StrCache.get(allbs, startPos, len);
-          startPos = buffer.position() + offset;
-        } else if ((buffer.position() + offset - startPos) > 10) {
-          return null; // method too long
-        }
-        continue;
+    int lfIndex = indexOf(buffer, initPosition, limit, SysConst.LF);
+    if (lfIndex < 0) {
+      if ((limit - initPosition) > MAX_LENGTH_OF_REQUESTLINE) {
+        throw new TioDecodeException("request line is too long");
       }
+      return null;
+    }
+    int lineEnd = lfIndex;
+    if (lineEnd > initPosition && buffer.get(lineEnd - 1) == SysConst.CR) {
+      lineEnd--;
+    }
 
-      if (pathStr == null) {
-        if (b == SysConst.SPACE || b == SysConst.ASTERISK) {
-          int len = buffer.position() + offset - startPos - 1;
-          pathStr = StrCache.get(allbs, startPos, len);
-          startPos = buffer.position() + offset;
-
-          if (b == SysConst.SPACE) {
-            queryStr = SysConst.BLANK;
-          }
-        }
-        continue;
-      }
+    // method
+    int methodEnd = indexOf(buffer, initPosition, Math.min(lineEnd, initPosition + 11), SysConst.SPACE);
+    if (methodEnd < 0) {
+      return null; // method too long
+    }
 
-      if (queryStr == null) {
-        if (b == SysConst.SPACE) {
-          int len = buffer.position() + offset - startPos - 1;
-          queryStr = new String(allbs, startPos, len);
-          startPos = buffer.position() + offset;
-        }
-        continue;
+    // path, 以空格或?结束
+    int pathStart = methodEnd + 1;
+    int pathEnd = pathStart;
+    while (pathEnd < lineEnd) {
+      byte b = buffer.get(pathEnd);
+      if (b == SysConst.SPACE || b == SysConst.ASTERISK) {
+        break;
       }
+      pathEnd++;
+    }
+    if (pathEnd == lineEnd) {
+      return null;
+    }
 
-      if (protocol == null) {
-        if (b == SysConst.BACKSLASH) {
-          int len = buffer.position() + offset - startPos - 1;
-          protocol = StrCache.get(allbs, startPos, len);
-          startPos = buffer.position() + offset;
-        }
-        continue;
+    // queryString
+    String queryStr = SysConst.BLANK;
+    int protocolStart = pathEnd + 1;
+    if (buffer.get(pathEnd) == SysConst.ASTERISK) {
+      int queryEnd = indexOf(buffer, pathEnd + 1, lineEnd, SysConst.SPACE);
+      if (queryEnd < 0) {
+        return null;
       }
+      queryStr = readString(buffer, pathEnd + 1, queryEnd - pathEnd - 1);
+      protocolStart = queryEnd + 1;
+    }
 
-      if (version == null) {
-        if (b == SysConst.LF) {
-          byte lastByte = buffer.get(buffer.position() - 2);
-          int len = buffer.position() + offset - startPos - 1;
-          if (lastByte == SysConst.CR) {
-            len -= 1;
-          }
-
-          version = StrCache.get(allbs, startPos, len);
-
-          RequestLine requestLine = new RequestLine();
-          HttpMethod method = HttpMethod.from(methodStr);
-          if (method == null) {
-            throw new UnsupportedHttpMethodException(methodStr);
-          }
-          requestLine.setMethod(method);
-          requestLine.setPath(pathStr);
-          requestLine.setInitPath(pathStr);
-          requestLine.setQueryString(queryStr);
-          requestLine.setProtocol(protocol);
-          requestLine.setVersion(version);
-
-          return requestLine;
-        }
-        continue;
-      }
+    // protocol/version
+    int protocolEnd = indexOf(buffer, protocolStart, lineEnd, SysConst.BACKSLASH);
+    if (protocolEnd < 0) {
+      return null;
     }
 
-    if ((buffer.position() - initPosition) > MAX_LENGTH_OF_REQUESTLINE) {
-      throw new TioDecodeException("request line is too long");
+    HttpMethod method = HttpMethod.from(buffer, initPosition, methodEnd - initPosition);
+    if (method == null) {
+      throw new UnsupportedHttpMethodException(readString(buffer, initPosition, methodEnd - initPosition));
     }
-    return null;
+    String pathStr = StrCache.get(buffer, pathStart, pathEnd - pathStart);
+
+    RequestLine requestLine = new RequestLine();
+    requestLine.setMethod(method);
+    requestLine.setPath(pathStr);
+    requestLine.setInitPath(pathStr);
+    requestLine.setQueryString(queryStr);
+    requestLine.setProtocol(StrCache.get(buffer, protocolStart, protocolEnd - protocolStart));
+    requestLine.setVersion(StrCache.get(buffer, protocolEnd + 1, lineEnd - protocolEnd - 1));
+
+    buffer.position(lfIndex + 1);
+    return requestLine;
   }
 
   /**
@@ -1,7 +1,9 @@
 package nexus.io.tio.http.common;
 
+import java.io.File;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -18,10 +20,16 @@ import nexus.io.model.sys.SysConst;
 import nexus.io.tio.consts.TioConst;
 import nexus.io.tio.consts.TioCoreConfigKeys;
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.Tio;
+import nexus.io.tio.core.intf.SegmentedFileBody;
+import nexus.io.tio.core.pool.BufferPoolUtils;
+import nexus.io.tio.core.pool.ByteBufferOutputStream;
+import nexus.io.tio.core.vo.FileSegment;
 import nexus.io.tio.http.common.stream.TioOutputStream;
 import nexus.io.tio.http.common.utils.HttpGzipUtils;
 import nexus.io.tio.http.common.utils.MimeTypeUtils;
+import nexus.io.tio.http.common.utils.StreamingGzip;
 import nexus.io.tio.utils.environment.EnvUtils;
 import nexus.io.tio.utils.hutool.ClassUtil;
 import nexus.io.tio.utils.json.Json;
@@ -29,12 +37,16 @@ import nexus.io.tio.utils.json.Json;
 /**
  * @author tanyaowu
  */
-public class HttpResponse extends HttpPacket {
+public class HttpResponse extends HttpPacket implements SegmentedFileBody {
   private final Logger log = LoggerFactory.getLogger(this.getClass());
   private final static boolean DIAGNOSTIC_LOG_ENABLED = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_DIAGNOSTIC,
       false);
   private static final long serialVersionUID = -3512681144230291786L;
   public transient static final HttpResponse NULL_RESPONSE = new HttpResponse();
+  /**
+   * 直接序列化到ByteBuffer的响应体前面预留给响应头的字节数，响应头放不下时编码器再复制一次
+   */
+  public static final int BODY_BUFFER_HEADROOM = EnvUtils.getInt("http.response.body.headroom", 1024);
   /**
    * 服务器端用（因为服务器端可以直接枚举）
    */
@@ -75,6 +87,14 @@ public class HttpResponse extends HttpPacket {
   private transient boolean skipTokenStat = false;
 
   private String version;
+  /**
+   * multipart/byteranges等分段发送的文件body，为null时按fileBody整体发送
+   */
+  private transient List<FileSegment> fileSegments = null;
+  /**
+   * 池化的响应体，数据在position到limit之间，position前面是留给响应头的空间；不为null时body无效
+   */
+  private transient ByteBuffer bodyBuffer = null;
 
   public HttpResponse() {
     this.status = HttpResponseStatus.C200;
@@ -90,6 +110,8 @@ public class HttpResponse extends HttpPacket {
     }
     this.charset = request.getCharset();
     this.request = request;
+    // pipelining时按请求的顺序发送，业务方法返回后再异步发出的响应也能对上请求
+    this.setRespId(request.getId());
 
     String version = request.requestLine.getVersion(); // "1.0" or "1.1"
     this.version = version;
@@ -168,7 +190,7 @@ public class HttpResponse extends HttpPacket {
   public static HttpResponse cloneResponse(HttpRequest request, HttpResponse response) {
     HttpResponse cloneResponse = new HttpResponse(request);
     cloneResponse.setStatus(response.getStatus());
-    cloneResponse.setBody(response.getBody());
+    cloneResponse.setBody(response.materializeBody());
     cloneResponse.setSkipGzipped(response.isSkipGzipped());
     cloneResponse.addHeaders(response.getHeaders());
 
@@ -605,12 +627,107 @@ public class HttpResponse extends HttpPacket {
     } else {
       if (body.getClass() == String.class || ClassUtil.isBasicType(body.getClass())) {
         return setString(body + "", charset, MimeTypeUtils.getJson(charset));
+      } else if (isUtf8(charset)) {
+        setJsonBody(body);
+        this.addHeader(HeaderName.Content_Type, HeaderValue.Content_Type.from(MimeTypeUtils.getJson(charset)));
+        return this;
       } else {
         return setString(Json.getJson().toJson(body), charset, MimeTypeUtils.getJson(charset));
       }
     }
   }
 
+  /**
+   * 用Json.getJson()把对象直接序列化成UTF-8写到池化的ByteBuffer中作为响应体，不经过String和byte[]。<br>
+   * 编码时响应头写在预留的空间里，响应体不再复制；不设置Content-Type
+   */
+  public HttpResponse setJsonBody(Object body) {
+    ByteBufferOutputStream out = new ByteBufferOutputStream(BODY_BUFFER_HEADROOM, 4096);
+    try {
+      Json.getJson().toJson(body, out);
+    } catch (RuntimeException e) {
+      out.release();
+      throw e;
+    }
+    setBodyBuffer(out.toByteBuffer());
+    return this;
+  }
+
+  /**
+   * @return charset是否是utf-8，只有utf-8的响应体可以直接序列化到ByteBuffer
+   */
+  public static boolean isUtf8(String charset) {
+    return TioConst.UTF_8.equalsIgnoreCase(charset) || "utf8".equalsIgnoreCase(charset);
+  }
+
+  /**
+   * 设置池化的响应体，数据在position到limit之间，position前面的空间留给响应头。<br>
+   * 原来的body被清空，原来的bodyBuffer归还给BufferPoolUtils；设置后由HttpResponse负责归还
+   */
+  public void setBodyBuffer(ByteBuffer bodyBuffer) {
+    ByteBuffer old = this.bodyBuffer;
+    if (old != null && old != bodyBuffer) {
+      BufferPoolUtils.clean(old);
+    }
+    this.bodyBuffer = bodyBuffer;
+    this.body = null;
+  }
+
+  public ByteBuffer getBodyBuffer() {
+    return bodyBuffer;
+  }
+
+  /**
+   * 取走池化的响应体，之后由调用方负责归还给BufferPoolUtils
+   */
+  public ByteBuffer takeBodyBuffer() {
+    ByteBuffer ret = bodyBuffer;
+    bodyBuffer = null;
+    return ret;
+  }
+
+  /**
+   * 有池化的响应体时返回它的副本，不改变响应体；需要反复读或修改时先调用materializeBody()
+   */
+  @Override
+  public byte[] getBody() {
+    ByteBuffer buffer = bodyBuffer;
+    if (buffer != null) {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      return bytes;
+    }
+    return body;
+  }
+
+  /**
+   * 有池化的响应体时，复制成byte[]作为响应体并归还buffer，之后getBody()返回的就是这个byte[]
+   *
+   * @return 响应体
+   */
+  public byte[] materializeBody() {
+    ByteBuffer buffer = bodyBuffer;
+    if (buffer != null) {
+      bodyBuffer = null;
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      BufferPoolUtils.clean(buffer);
+      body = bytes;
+    }
+    return body;
+  }
+
+  @Override
+  public void setBody(byte[] body) {
+    setBodyBuffer(null);
+    this.body = body;
+  }
+
+  @Override
+  public void setBody(byte byteOne) {
+    setBody(new byte[] { byteOne });
+  }
+
   public HttpResponse setSkipAddContentLength(boolean b) {
     this.skipAddContentLength = b;
     return this;
@@ -622,6 +739,26 @@ public class HttpResponse extends HttpPacket {
 
   }
 
+  @Override
+  public List<FileSegment> getFileSegments() {
+    return fileSegments;
+  }
+
+  /**
+   * 按顺序发送各段，每段先发head再零拷贝发文件中的一段，Content-Length是所有段的字节数之和
+   *
+   * @param file
+   * @param fileSegments
+   */
+  public void setFileSegments(File file, List<FileSegment> fileSegments) {
+    long length = 0;
+    for (FileSegment segment : fileSegments) {
+      length += segment.byteCount();
+    }
+    this.fileSegments = fileSegments;
+    setFileBody(file, 0, length);
+  }
+
   public boolean isSkipAddContentLength() {
     return skipAddContentLength;
   }
@@ -668,6 +805,11 @@ public class HttpResponse extends HttpPacket {
     } else {
       if (body.getClass() == String.class || ClassUtil.isBasicType(body.getClass())) {
         return string(body + "", charset, MimeTypeUtils.getJson(charset));
+      } else if (isUtf8(charset)) {
+        HttpResponse httpResponse = new HttpResponse();
+        httpResponse.setJsonBody(body);
+        httpResponse.addHeader(HeaderName.Content_Type, HeaderValue.Content_Type.from(MimeTypeUtils.getJson(charset)));
+        return httpResponse;
       } else {
         return string(Json.getJson().toJson(body), charset, MimeTypeUtils.getJson(charset));
       }
@@ -710,11 +852,13 @@ public class HttpResponse extends HttpPacket {
   }
 
   public OutputStream newOutputStream(ChannelContext ctx) {
+    StreamingGzip gzip = HttpGzipUtils.streamGzip(request, this);
     this.addHeader(HeaderName.Transfer_Encoding, HeaderValue.from("chunked"));
     this.setSkipAddContentLength(true);
+    PipelineQueue.startStream(request.channelContext, request.getId());
     Tio.bSend(request.channelContext, this);
     this.setSend(false);
-    return new TioOutputStream(ctx, true);
+    return new TioOutputStream(ctx, true, gzip, request.getId());
   }
 
 }
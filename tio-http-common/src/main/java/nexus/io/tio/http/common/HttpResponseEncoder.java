@@ -54,8 +54,6 @@ public class HttpResponseEncoder {
     }
 
     Charset cs = Charset.forName(httpResponse.getCharset());
-    byte[] body = httpResponse.body;
-    int bodyLength = 0;
 
     // JSONP 包装（如需）
     final HttpRequest httpRequest = httpResponse.getHttpRequest();
@@ -63,6 +61,8 @@ public class HttpResponseEncoder {
       final String jsonp = httpRequest.getParam(httpRequest.httpConfig.getJsonpParamName());
       if (StrUtil.isNotBlank(jsonp)) {
         final byte[] jsonpBytes = jsonp.getBytes(cs);
+        // 池化的响应体也在这里转成 byte[]
+        final byte[] body = httpResponse.materializeBody();
         final byte[] raw = (body != null) ? body : SysConst.NULL;
         final int len = jsonpBytes.length + 1 + raw.length + 1; // callback( + body + )
         final byte[] merged = new byte[len];
@@ -73,19 +73,26 @@ public class HttpResponseEncoder {
         System.arraycopy(raw, 0, merged, p, raw.length);
         p += raw.length;
         merged[p] = SysConst.RIGHT_BRACKET;
-        body = merged;
         httpResponse.setBody(merged);
       }
     }
 
     // gzip（如需）
-    if (body != null) {
+    if (httpResponse.getBodyBuffer() != null || httpResponse.getBody() != null) {
       try {
         HttpGzipUtils.gzip(httpRequest, httpResponse);
-        body = httpResponse.body;
       } catch (Exception e) {
         log.error(e.toString(), e);
       }
+    }
+
+    // 池化的响应体由编码器接管，写出后由发送流程归还；没有时才取byte[]的响应体
+    final ByteBuffer bodyBuffer = httpResponse.takeBodyBuffer();
+    final byte[] body = bodyBuffer == null ? httpResponse.getBody() : null;
+    final int bodyLength;
+    if (bodyBuffer != null) {
+      bodyLength = bodyBuffer.remaining();
+    } else {
       bodyLength = (body != null ? body.length : 0);
     }
 
@@ -99,8 +106,8 @@ public class HttpResponseEncoder {
     final boolean shouldAddContentLength = !httpResponse.isStream() && !httpResponse.isSkipAddContentLength();
     final byte[] contentLengthBytes = shouldAddContentLength ? asciiDigits(bodyLength) : null;
 
-    // 预估 header 长度（不含响应行）
-    int headerLength = httpResponse.getHeaderByteCount(); // 仅已有 headers 的字节数
+    // 预估 header 长度（不含响应行）；写进预留空间时必须是准确长度，否则头和体之间会留下空隙
+    int headerLength = bodyBuffer != null ? exactHeaderByteCount(headers) : httpResponse.getHeaderByteCount(); // 仅已有 headers 的字节数
     // + Server / Date 固定头
     final byte[] httpDateBytes = HttpDateTimer.httpDateValue.bytes;
     int fixed = (showServer ? HEADER_SERVER_LENGTH : 0) + HEADER_DATE_LENGTH_PREFIX + httpDateBytes.length;
@@ -126,9 +133,46 @@ public class HttpResponseEncoder {
     // + 头部结束 CRLF
     headerLength += fixed + 2;
 
+    final int headLength = respLineLength + headerLength;
+    if (bodyBuffer != null && headLength <= bodyBuffer.position()) {
+      // 响应头写进响应体前面预留的空间，响应体不复制
+      final int start = bodyBuffer.position() - headLength;
+      bodyBuffer.position(start);
+      writeHead(bodyBuffer, httpResponse, status, httpDateBytes, contentLengthBytes, headers);
+      bodyBuffer.position(start);
+      return bodyBuffer;
+    }
+
     // 分配最终缓冲区
-    ByteBuffer buf = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, respLineLength + headerLength + bodyLength);
+    ByteBuffer buf = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, headLength + bodyLength);
+    writeHead(buf, httpResponse, status, httpDateBytes, contentLengthBytes, headers);
 
+    // 写 body
+    if (bodyBuffer != null) {
+      // 预留空间放不下响应头，只能复制一次
+      buf.put(bodyBuffer);
+      BufferPoolUtils.clean(bodyBuffer);
+    } else if (bodyLength > 0) {
+      buf.put(body);
+    }
+
+    buf.flip();
+    return buf;
+  }
+
+  private static int exactHeaderByteCount(Map<HeaderName, HeaderValue> headers) {
+    int count = 0;
+    for (Entry<HeaderName, HeaderValue> entry : headers.entrySet()) {
+      count += entry.getKey().bytes.length + 1 + entry.getValue().bytes.length + 2;
+    }
+    return count;
+  }
+
+  /**
+   * 写响应行、固定头、Content-Length、已有 headers、Cookies 和空行
+   */
+  private static void writeHead(ByteBuffer buf, HttpResponse httpResponse, HttpResponseStatus status,
+      byte[] httpDateBytes, byte[] contentLengthBytes, Map<HeaderName, HeaderValue> headers) {
     // 写响应行
     buf.put(status.responseLineBinary);
 
@@ -141,7 +185,7 @@ public class HttpResponseEncoder {
     buf.put(HeaderName.Date.bytes).put(COLON).put(httpDateBytes).put(CRLF);
 
     // Content-Length（如需）
-    if (shouldAddContentLength) {
+    if (contentLengthBytes != null) {
       buf.put(HeaderName.Content_Length.bytes).put(COLON).put(contentLengthBytes).put(CRLF);
     }
 
@@ -160,14 +204,6 @@ public class HttpResponseEncoder {
 
     // 空行
     buf.put(CRLF);
-
-    // 写 body
-    if (bodyLength > 0) {
-      buf.put(body);
-    }
-
-    buf.flip();
-    return buf;
   }
 
   /**
@@ -16,7 +16,9 @@ public interface RequestHeaderKey {
   String Sec_WebSocket_Extensions = "sec-websocket-extensions"; // permessage-deflate; client_max_window_bits
   String Content_Length = "content-length"; // 65
   String Content_Type = "content-type"; // application/x-www-form-urlencoded; charset=UTF-8
+  String Transfer_Encoding = "transfer-encoding"; // chunked
   String If_Modified_Since = "if-modified-since"; // 与Last-Modified配合
+  String If_None_Match = "if-none-match"; // 与ETag配合
   String Referer = "referer";
 
   /**
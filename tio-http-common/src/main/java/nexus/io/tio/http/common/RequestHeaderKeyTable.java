@@ -0,0 +1,109 @@
+package nexus.io.tio.http.common;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RequestHeaderKey中所有常量组成的只读表，启动时构建。<br>
+ * 解析header时直接拿ByteBuffer中的字节(忽略大小写)查表，命中则返回RequestHeaderKey中的常量，不产生任何对象；没命中返回null，由调用方自己创建字符串
+ */
+public class RequestHeaderKeyTable {
+  /**
+   * 表的大小，2的幂，保持装载因子在0.5以下
+   */
+  private static final int SIZE = 256;
+  private static final int MASK = SIZE - 1;
+  private static final String[] KEYS = new String[SIZE];
+  private static final byte[][] KEY_BYTES = new byte[SIZE][];
+
+  static {
+    for (Field field : RequestHeaderKey.class.getFields()) {
+      if (field.getType() != String.class || !Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      try {
+        put((String) field.get(null));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private static void put(String key) {
+    byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+    int index = hash(bytes) & MASK;
+    while (KEY_BYTES[index] != null) {
+      if (equalsIgnoreCase(KEY_BYTES[index], bytes)) {
+        return;
+      }
+      index = (index + 1) & MASK;
+    }
+    KEY_BYTES[index] = bytes;
+    KEYS[index] = key;
+  }
+
+  /**
+   *
+   * @param buffer
+   * @param start  absolute位置
+   * @param len
+   * @return RequestHeaderKey中的常量(小写)，不是已知的header则返回null
+   */
+  public static String get(ByteBuffer buffer, int start, int len) {
+    int hash = 1;
+    for (int i = start, end = start + len; i < end; i++) {
+      hash = 31 * hash + toLowerCase(buffer.get(i));
+    }
+    int index = spread(hash) & MASK;
+    byte[] keyBytes;
+    while ((keyBytes = KEY_BYTES[index]) != null) {
+      if (keyBytes.length == len && equalsIgnoreCase(keyBytes, buffer, start)) {
+        return KEYS[index];
+      }
+      index = (index + 1) & MASK;
+    }
+    return null;
+  }
+
+  private static int hash(byte[] bytes) {
+    int hash = 1;
+    for (byte b : bytes) {
+      hash = 31 * hash + toLowerCase(b);
+    }
+    return spread(hash);
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static byte toLowerCase(byte b) {
+    if (b >= 'A' && b <= 'Z') {
+      return (byte) (b + 32);
+    }
+    return b;
+  }
+
+  private static boolean equalsIgnoreCase(byte[] keyBytes, ByteBuffer buffer, int start) {
+    for (int i = 0; i < keyBytes.length; i++) {
+      if (keyBytes[i] != toLowerCase(buffer.get(start + i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equalsIgnoreCase(byte[] keyBytes, byte[] bytes) {
+    if (keyBytes.length != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < keyBytes.length; i++) {
+      if (keyBytes[i] != toLowerCase(bytes[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -9,6 +9,7 @@ public interface ResponseHeaderKey {
   String Connection = "Connection".toLowerCase(); // Upgrade, keep-alive
   String Keep_Alive = "Keep-Alive".toLowerCase(); // Keep-Alive:timeout=20
   String Sec_WebSocket_Accept = "Sec-WebSocket-Accept".toLowerCase();
+  String Sec_WebSocket_Extensions = "Sec-WebSocket-Extensions".toLowerCase();
   String Upgrade = "Upgrade".toLowerCase();
   String Access_Control_Allow_Credentials = "Access-Control-Allow-Credentials".toLowerCase();
 
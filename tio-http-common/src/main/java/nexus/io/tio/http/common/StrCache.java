@@ -1,74 +1,113 @@
 package nexus.io.tio.http.common;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import nexus.io.tio.utils.HashUtils;
+import nexus.io.tio.utils.environment.EnvUtils;
 import nexus.io.tio.utils.hutool.StrUtil;
-import nexus.io.tio.utils.lock.LockUtils;
 
 /**
- * 本类主要用于可枚举的String，不要滥用
+ * 本类主要用于可枚举的String，不要滥用<br>
+ * 内部是固定大小的开放寻址表，读不加锁，命中时比较的是实际的字节(或字符串)，不会因为hash冲突返回错误的字符串。<br>
+ * 表满后按CLOCK策略淘汰：每个key只会落在从hash位置开始的PROBE个槽位中，被访问过的槽位先摘掉访问标记，再淘汰没被访问过的
  * @author tanyaowu
  */
 public class StrCache {
-  private static Logger log = LoggerFactory.getLogger(StrCache.class);
-  private static final int MAX_SIZE = 5000;
   /**
-   * key: byte[]对应的hashcode
+   * 表的大小，会向上取到2的幂
+   */
+  private static final int SIZE = tableSizeFor(EnvUtils.getInt("tio.http.strcache.size", 8192));
+
+  /**
+   * 每个key最多探测的槽位数
+   */
+  private static final int PROBE = 8;
+
+  /**
+   * key: byte[]
    * value: byte[]对应的字符串
    */
-  private static final Map<Integer, String> BYTES_STRING_MAP = new HashMap<>(100);
+  private static final Table BYTES_STRING_TABLE = new Table(SIZE);
   /**
    * key : 原字符串
    * value: 小写后的字符串
    */
-  private static final Map<Integer, String> INIT_LOWERCASE_MAP = new HashMap<>(100);
+  private static final Table INIT_LOWERCASE_TABLE = new Table(SIZE);
 
   /**
-   * 
+   *
    */
   public StrCache() {
 
   }
 
   /**
-   * 
+   *
    * @param allbs
    * @param start
    * @param len
    * @return
    */
   public static String get(byte[] allbs, int start, int len) {
-    int hashcode = HashUtils.hash31(allbs, start, len);
-    String str = BYTES_STRING_MAP.get(hashcode);
-    if (str == null) {
-      if (BYTES_STRING_MAP.size() > MAX_SIZE) {
-        return new String(allbs, start, len);
+    Table table = BYTES_STRING_TABLE;
+    int hash = HashUtils.hash31(allbs, start, len);
+    int index = (hash ^ (hash >>> 16)) & table.mask;
+    for (int i = 0; i < PROBE; i++) {
+      Entry entry = table.slots.get((index + i) & table.mask);
+      if (entry != null && entry.hash == hash && entry.equalsBytes(allbs, start, len)) {
+        entry.referenced = true;
+        table.hits.increment();
+        return entry.value;
       }
+    }
+    table.misses.increment();
+    String str = new String(allbs, start, len, StandardCharsets.UTF_8);
+    byte[] bytes = new byte[len];
+    System.arraycopy(allbs, start, bytes, 0, len);
+    table.put(index, new Entry(hash, bytes, null, str));
+    return str;
+  }
 
-      try {
-        LockUtils.runWriteOrWaitRead("StrCache:getBytes" + hashcode, BYTES_STRING_MAP, () -> {
-          String str2 = BYTES_STRING_MAP.get(hashcode);
-          if (str2 == null) {
-            str2 = new String(allbs, start, len);
-            BYTES_STRING_MAP.put(hashcode, str2);
-          }
-        });
-      } catch (Exception e) {
-        log.error(e.toString(), e);
+  /**
+   *
+   * @param buffer heap或direct的ByteBuffer，不会改变其position等指针变量
+   * @param start  absolute位置
+   * @param len
+   * @return
+   */
+  public static String get(ByteBuffer buffer, int start, int len) {
+    if (buffer.hasArray()) {
+      return get(buffer.array(), buffer.arrayOffset() + start, len);
+    }
+    Table table = BYTES_STRING_TABLE;
+    int hash = 1;
+    for (int i = start, end = start + len; i < end; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    int index = (hash ^ (hash >>> 16)) & table.mask;
+    for (int i = 0; i < PROBE; i++) {
+      Entry entry = table.slots.get((index + i) & table.mask);
+      if (entry != null && entry.hash == hash && entry.equalsBytes(buffer, start, len)) {
+        entry.referenced = true;
+        table.hits.increment();
+        return entry.value;
       }
-
-      str = BYTES_STRING_MAP.get(hashcode);
     }
+    table.misses.increment();
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) {
+      bytes[i] = buffer.get(start + i);
+    }
+    String str = new String(bytes, StandardCharsets.UTF_8);
+    table.put(index, new Entry(hash, bytes, null, str));
     return str;
   }
 
   /**
-   * 
+   *
    * @param initStr
    * @return
    */
@@ -76,29 +115,143 @@ public class StrCache {
     if (StrUtil.isBlank(initStr)) {
       return initStr;
     }
-    int hashcode = initStr.hashCode();
-    String str = INIT_LOWERCASE_MAP.get(hashcode);
-    if (str == null) {
-      if (INIT_LOWERCASE_MAP.size() > MAX_SIZE) {
-        return initStr.toLowerCase();
+    Table table = INIT_LOWERCASE_TABLE;
+    int hash = initStr.hashCode();
+    int index = (hash ^ (hash >>> 16)) & table.mask;
+    for (int i = 0; i < PROBE; i++) {
+      Entry entry = table.slots.get((index + i) & table.mask);
+      if (entry != null && entry.hash == hash && initStr.equals(entry.key)) {
+        entry.referenced = true;
+        table.hits.increment();
+        return entry.value;
       }
+    }
+    table.misses.increment();
+    String str = initStr.toLowerCase();
+    table.put(index, new Entry(hash, null, initStr, str));
+    return str;
+  }
 
-      try {
-        LockUtils.runWriteOrWaitRead("StrCache:getLowercase" + hashcode, INIT_LOWERCASE_MAP, () -> {
-          String str2 = INIT_LOWERCASE_MAP.get(hashcode);
-          if (str2 == null) {
-            str2 = initStr.toLowerCase();
-            INIT_LOWERCASE_MAP.put(hashcode, str2);
-          }
-        });
-      } catch (Exception e) {
-        log.error(e.toString(), e);
-      }
+  /**
+   * byte[]到字符串的缓存命中次数
+   */
+  public static long getHits() {
+    return BYTES_STRING_TABLE.hits.sum();
+  }
+
+  /**
+   * byte[]到字符串的缓存未命中次数
+   */
+  public static long getMisses() {
+    return BYTES_STRING_TABLE.misses.sum();
+  }
 
-      str = INIT_LOWERCASE_MAP.get(hashcode);
+  /**
+   * byte[]到字符串的缓存淘汰次数，持续增长说明表太小，可以调大tio.http.strcache.size
+   */
+  public static long getEvictions() {
+    return BYTES_STRING_TABLE.evictions.sum();
+  }
+
+  public static long getLowercaseHits() {
+    return INIT_LOWERCASE_TABLE.hits.sum();
+  }
+
+  public static long getLowercaseMisses() {
+    return INIT_LOWERCASE_TABLE.misses.sum();
+  }
+
+  public static long getLowercaseEvictions() {
+    return INIT_LOWERCASE_TABLE.evictions.sum();
+  }
+
+  private static int tableSizeFor(int size) {
+    int n = 16;
+    while (n < size && n < (1 << 30)) {
+      n <<= 1;
+    }
+    return n;
+  }
+
+  private static class Entry {
+    final int hash;
+    final byte[] bytes;
+    final String key;
+    final String value;
+    /**
+     * CLOCK的访问标记，只是个提示，不需要严格的可见性
+     */
+    boolean referenced;
+
+    Entry(int hash, byte[] bytes, String key, String value) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.key = key;
+      this.value = value;
     }
-    return str;
 
+    boolean equalsBytes(byte[] allbs, int start, int len) {
+      if (bytes.length != len) {
+        return false;
+      }
+      for (int i = 0; i < len; i++) {
+        if (bytes[i] != allbs[start + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean equalsBytes(ByteBuffer buffer, int start, int len) {
+      if (bytes.length != len) {
+        return false;
+      }
+      for (int i = 0; i < len; i++) {
+        if (bytes[i] != buffer.get(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
+  private static class Table {
+    final AtomicReferenceArray<Entry> slots;
+    final int mask;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    Table(int size) {
+      this.slots = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+    }
+
+    /**
+     * 先找空槽位，没有空槽位时按CLOCK淘汰。并发写入同一个key时可能会存两份，不影响正确性
+     */
+    void put(int index, Entry entry) {
+      for (int i = 0; i < PROBE; i++) {
+        int slot = (index + i) & mask;
+        if (slots.get(slot) == null && slots.compareAndSet(slot, null, entry)) {
+          return;
+        }
+      }
+      // 转两圈：第一圈摘掉访问标记，第二圈一定能找到没被访问过的
+      for (int i = 0; i < PROBE * 2; i++) {
+        int slot = (index + (i % PROBE)) & mask;
+        Entry old = slots.get(slot);
+        if (old != null && old.referenced) {
+          old.referenced = false;
+          continue;
+        }
+        if (slots.compareAndSet(slot, old, entry)) {
+          if (old != null) {
+            evictions.increment();
+          }
+          return;
+        }
+      }
+    }
+  }
 }
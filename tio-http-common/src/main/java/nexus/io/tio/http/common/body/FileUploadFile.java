@@ -0,0 +1,59 @@
+package nexus.io.tio.http.common.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+
+import nexus.io.model.upload.UploadFile;
+
+/**
+ * 流式接收multipart时，数据转存在临时文件中的上传文件。<br>
+ * 请用getFile()、getInputStream()或getChannel()读取；getData()会把整个文件读进内存，只为兼容旧代码
+ */
+public class FileUploadFile extends UploadFile {
+  private final HttpRequestBody body;
+
+  public FileUploadFile(String name, HttpRequestBody body) {
+    super(name, body.getLength(), null);
+    this.body = body;
+  }
+
+  @Override
+  public byte[] getData() {
+    byte[] data = super.getData();
+    if (data == null && body.getFile() != null) {
+      try {
+        data = Files.readAllBytes(body.getFile().toPath());
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      setData(data);
+    }
+    return data;
+  }
+
+  public HttpRequestBody getBody() {
+    return body;
+  }
+
+  /**
+   * @return 临时文件，请求处理完成后会被删除，需要保留的话请自行复制或移走
+   */
+  public File getFile() {
+    return body.getFile();
+  }
+
+  public InputStream getInputStream() throws IOException {
+    return body.getInputStream();
+  }
+
+  public ReadableByteChannel getChannel() throws IOException {
+    return body.getChannel();
+  }
+
+  public void delete() {
+    body.delete();
+  }
+}
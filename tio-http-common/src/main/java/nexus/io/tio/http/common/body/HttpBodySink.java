@@ -0,0 +1,32 @@
+package nexus.io.tio.http.common.body;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 流式接收请求体时，请求体的接收者。请求体数据到达一段，就交给它一段，服务器自己不再保留
+ */
+public interface HttpBodySink extends Closeable {
+
+  /**
+   * 收到一段请求体
+   *
+   * @param buffer [position, limit)就是这段数据，方法返回后buffer会被复用，不要持有它
+   * @throws IOException
+   */
+  public void write(ByteBuffer buffer) throws IOException;
+
+  /**
+   * 请求体已经全部收到
+   *
+   * @throws IOException
+   */
+  public void complete() throws IOException;
+
+  /**
+   * 请求体没收完就出错或连接断开时调用，释放资源
+   */
+  @Override
+  public void close() throws IOException;
+}
@@ -0,0 +1,127 @@
+package nexus.io.tio.http.common.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 默认的请求体接收者：不超过threshold的数据放在内存中，超过后转存到临时文件
+ */
+public class HttpBodySpooler implements HttpBodySink {
+  private final File tempDir;
+  private final int threshold;
+  private final long maxLength;
+
+  private byte[] bytes;
+  private int count = 0;
+  private File file;
+  private FileChannel fileChannel;
+  private long length = 0;
+  private HttpRequestBody body;
+
+  /**
+   *
+   * @param tempDir        临时文件所在的目录
+   * @param threshold      内存中最多保留的字节数，超过后转存到临时文件
+   * @param expectedLength 预计的长度，不知道时传-1，超过threshold时直接写临时文件
+   * @param maxLength      最大长度，超过时抛IOException
+   */
+  public HttpBodySpooler(File tempDir, int threshold, long expectedLength, long maxLength) {
+    this.tempDir = tempDir;
+    this.threshold = threshold;
+    this.maxLength = maxLength;
+    if (expectedLength < 0 || expectedLength <= threshold) {
+      this.bytes = new byte[(int) Math.min(expectedLength < 0 ? 1024 : expectedLength, threshold)];
+    }
+  }
+
+  @Override
+  public void write(ByteBuffer buffer) throws IOException {
+    int len = buffer.remaining();
+    if (len == 0) {
+      return;
+    }
+    if (length + len > maxLength) {
+      throw new IOException("body is too long, max length is " + maxLength);
+    }
+    length += len;
+    if (fileChannel == null && bytes != null && count + len <= threshold) {
+      if (count + len > bytes.length) {
+        byte[] newBytes = new byte[(int) Math.min(Math.max(bytes.length * 2L, count + len), threshold)];
+        System.arraycopy(bytes, 0, newBytes, 0, count);
+        bytes = newBytes;
+      }
+      buffer.get(bytes, count, len);
+      count += len;
+      return;
+    }
+    if (fileChannel == null) {
+      openFile();
+    }
+    while (buffer.hasRemaining()) {
+      fileChannel.write(buffer);
+    }
+  }
+
+  public void write(byte[] src, int offset, int len) throws IOException {
+    write(ByteBuffer.wrap(src, offset, len));
+  }
+
+  private void openFile() throws IOException {
+    tempDir.mkdirs();
+    file = File.createTempFile("body-", ".tmp", tempDir);
+    fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    if (count > 0) {
+      ByteBuffer src = ByteBuffer.wrap(bytes, 0, count);
+      while (src.hasRemaining()) {
+        fileChannel.write(src);
+      }
+    }
+    bytes = null;
+    count = 0;
+  }
+
+  @Override
+  public void complete() throws IOException {
+    if (fileChannel != null) {
+      fileChannel.close();
+      fileChannel = null;
+      body = new HttpRequestBody(file, length);
+      return;
+    }
+    if (bytes == null) {
+      bytes = new byte[0];
+    } else if (count < bytes.length) {
+      byte[] newBytes = new byte[count];
+      System.arraycopy(bytes, 0, newBytes, 0, count);
+      bytes = newBytes;
+    }
+    body = new HttpRequestBody(bytes);
+  }
+
+  /**
+   * @return complete()之后才有值
+   */
+  public HttpRequestBody getBody() {
+    return body;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    bytes = null;
+    if (fileChannel != null) {
+      try {
+        fileChannel.close();
+      } finally {
+        fileChannel = null;
+        file.delete();
+      }
+    }
+  }
+}
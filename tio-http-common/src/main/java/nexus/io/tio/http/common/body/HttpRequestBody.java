@@ -0,0 +1,86 @@
+package nexus.io.tio.http.common.body;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 接收完成的请求体，数据可能在内存中，也可能在临时文件中
+ */
+public class HttpRequestBody {
+  private final byte[] bytes;
+  private final File file;
+  private final long length;
+
+  public HttpRequestBody(byte[] bytes) {
+    this.bytes = bytes;
+    this.file = null;
+    this.length = bytes.length;
+  }
+
+  public HttpRequestBody(File file, long length) {
+    this.bytes = null;
+    this.file = file;
+    this.length = length;
+  }
+
+  /**
+   * 数据是否在内存中
+   */
+  public boolean isInMemory() {
+    return bytes != null;
+  }
+
+  /**
+   * @return 内存中的数据，数据在临时文件中时返回null
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return 临时文件，数据在内存中时返回null。请求处理完成后临时文件会被删除，需要保留的话请自行复制或移走
+   */
+  public File getFile() {
+    return file;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * 每次调用都返回一个新的InputStream，由调用方关闭
+   */
+  public InputStream getInputStream() throws IOException {
+    if (bytes != null) {
+      return new ByteArrayInputStream(bytes);
+    }
+    return new FileInputStream(file);
+  }
+
+  /**
+   * 每次调用都返回一个新的channel，由调用方关闭。数据在临时文件中时返回的是FileChannel，可以用transferTo直接转存
+   */
+  public ReadableByteChannel getChannel() throws IOException {
+    if (bytes != null) {
+      return Channels.newChannel(new ByteArrayInputStream(bytes));
+    }
+    return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  /**
+   * 删除临时文件
+   */
+  public void delete() {
+    if (file != null) {
+      file.delete();
+    }
+  }
+}
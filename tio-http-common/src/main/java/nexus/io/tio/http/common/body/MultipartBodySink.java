@@ -0,0 +1,254 @@
+package nexus.io.tio.http.common.body;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import nexus.io.model.sys.SysConst;
+import nexus.io.model.upload.UploadFile;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.http.common.HttpConfig;
+import nexus.io.tio.http.common.HttpMultiBodyDecoder;
+import nexus.io.tio.http.common.HttpMultiBodyDecoder.Header;
+import nexus.io.tio.http.common.HttpMultiBodyDecoder.Step;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.utils.hutool.StrUtil;
+
+/**
+ * 边收边解析multipart/form-data。<br>
+ * 每个part的数据直接写到自己的HttpBodySpooler中，文件超过阈值时落到临时文件，以FileUploadFile的形式放到请求参数中；
+ * 内存中只保留还没确认是不是分隔符的少量数据
+ */
+public class MultipartBodySink implements HttpBodySink {
+  /**
+   * 每个part最多有多少行header
+   */
+  private static final int MAX_HEADER_LINES = 32;
+
+  private final HttpRequest request;
+  private final Charset charset;
+  private final ChannelContext channelContext;
+  private final HttpConfig httpConfig;
+  private final File tempDir;
+  private final int threshold;
+
+  /**
+   * --boundary
+   */
+  private final byte[] boundary;
+  /**
+   * \r\n--boundary，part数据的结束标志
+   */
+  private final byte[] delimiter;
+
+  private byte[] buf = new byte[8192];
+  private int start = 0;
+  private int end = 0;
+
+  private Step step = Step.BOUNDARY;
+  /**
+   * 已经读到了delimiter，等待后面的"--"或CRLF
+   */
+  private boolean afterDelimiter = false;
+  private List<String> headerLines = new ArrayList<>(2);
+  private Header header;
+  private HttpBodySpooler part;
+
+  public MultipartBodySink(HttpRequest request, String initboundary, ChannelContext channelContext,
+      HttpConfig httpConfig, File tempDir, int threshold) throws TioDecodeException {
+    if (StrUtil.isBlank(initboundary)) {
+      throw new TioDecodeException("boundary is null");
+    }
+    this.request = request;
+    this.charset = Charset.forName(request.getCharset());
+    this.channelContext = channelContext;
+    this.httpConfig = httpConfig;
+    this.tempDir = tempDir;
+    this.threshold = threshold;
+    this.boundary = ("--" + initboundary).getBytes(StandardCharsets.ISO_8859_1);
+    this.delimiter = ("\r\n--" + initboundary).getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  @Override
+  public void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (start > 0) {
+        System.arraycopy(buf, start, buf, 0, end - start);
+        end -= start;
+        start = 0;
+      }
+      if (end == buf.length) {
+        byte[] newBuf = new byte[buf.length * 2];
+        System.arraycopy(buf, 0, newBuf, 0, end);
+        buf = newBuf;
+      }
+      int len = Math.min(buffer.remaining(), buf.length - end);
+      buffer.get(buf, end, len);
+      end += len;
+      parse();
+    }
+  }
+
+  private void parse() throws IOException {
+    while (true) {
+      if (step == Step.BOUNDARY) {
+        int lineEnd = indexOfCrlf();
+        if (lineEnd < 0) {
+          if (end - start > HttpConfig.MAX_LENGTH_OF_BOUNDARY) {
+            throw new IOException("line need:" + new String(boundary, charset));
+          }
+          return;
+        }
+        if (equals(start, lineEnd, boundary)) {
+          step = Step.HEADER;
+        } else if (lineEnd - start == boundary.length + 2 && equals(start, lineEnd - 2, boundary)
+            && buf[lineEnd - 2] == '-' && buf[lineEnd - 1] == '-') {
+          step = Step.END;
+        } else {
+          throw new IOException("line need:" + new String(boundary, charset) + ", but is: "
+              + new String(buf, start, lineEnd - start, charset));
+        }
+        start = lineEnd + 2;
+      } else if (step == Step.HEADER) {
+        int lineEnd = indexOfCrlf();
+        if (lineEnd < 0) {
+          if (end - start > HttpConfig.MAX_LENGTH_OF_MULTI_HEADER) {
+            throw new IOException("multipart header line is too long");
+          }
+          return;
+        }
+        if (lineEnd == start) {
+          header = new Header();
+          try {
+            HttpMultiBodyDecoder.parseHeader(headerLines, header, channelContext);
+          } catch (TioDecodeException e) {
+            throw new IOException(e);
+          }
+          headerLines.clear();
+          // 普通的key-value放在内存中，文件才可能转存到临时文件
+          int partThreshold = header.getFilename() == null ? Integer.MAX_VALUE : threshold;
+          part = new HttpBodySpooler(tempDir, partThreshold, -1, httpConfig.getMaxLengthOfMultiBody());
+          step = Step.BODY;
+        } else {
+          if (headerLines.size() >= MAX_HEADER_LINES) {
+            throw new IOException("too many multipart header lines");
+          }
+          headerLines.add(new String(buf, start, lineEnd - start, charset));
+        }
+        start = lineEnd + 2;
+      } else if (step == Step.BODY) {
+        if (afterDelimiter) {
+          if (end - start < 2) {
+            return;
+          }
+          if (buf[start] == '-' && buf[start + 1] == '-') {
+            step = Step.END;
+          } else if (buf[start] == SysConst.CR && buf[start + 1] == SysConst.LF) {
+            step = Step.HEADER;
+          } else {
+            throw new IOException("invalid multipart boundary");
+          }
+          start += 2;
+          afterDelimiter = false;
+          finishPart();
+          continue;
+        }
+        int index = indexOfDelimiter();
+        if (index >= 0) {
+          part.write(buf, start, index - start);
+          start = index + delimiter.length;
+          afterDelimiter = true;
+          continue;
+        }
+        // 末尾可能是不完整的分隔符，先留着
+        int safeEnd = end - delimiter.length + 1;
+        if (safeEnd > start) {
+          part.write(buf, start, safeEnd - start);
+          start = safeEnd;
+        }
+        return;
+      } else {
+        // 结束分隔符之后的数据忽略掉
+        start = end;
+        return;
+      }
+    }
+  }
+
+  private void finishPart() throws IOException {
+    HttpBodySpooler part = this.part;
+    this.part = null;
+    part.complete();
+    HttpRequestBody body = part.getBody();
+    String filename = header.getFilename();
+    if (filename != null) { // 该字段类型是file
+      if (StrUtil.isNotBlank(filename)) {
+        filename = filename.replaceAll("%", "");
+        if (body.isInMemory()) {
+          UploadFile uploadFile = new UploadFile();
+          uploadFile.setName(filename);
+          uploadFile.setData(body.getBytes());
+          uploadFile.setSize(body.getLength());
+          request.addParam(header.getName(), uploadFile);
+        } else {
+          request.addParam(header.getName(), new FileUploadFile(filename, body));
+        }
+      } else {
+        body.delete();
+      }
+    } else { // 该字段是普通的key-value
+      request.addParam(header.getName(), new String(body.getBytes(), charset));
+    }
+  }
+
+  private int indexOfCrlf() {
+    for (int i = start; i < end - 1; i++) {
+      if (buf[i] == SysConst.CR && buf[i + 1] == SysConst.LF) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int indexOfDelimiter() {
+    byte first = delimiter[0];
+    for (int i = start, last = end - delimiter.length; i <= last; i++) {
+      if (buf[i] == first && equals(i, i + delimiter.length, delimiter)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean equals(int from, int to, byte[] bytes) {
+    if (to - from != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (buf[from + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void complete() throws IOException {
+    if (step != Step.END) {
+      throw new IOException("multipart body is incomplete");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (part != null) {
+      part.close();
+      part = null;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package nexus.io.tio.http.common.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import nexus.io.model.sys.SysConst;
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.http.common.body.HttpBodySink;
+
+/**
+ * Transfer-Encoding: chunked 请求体的增量解码器，与ChunkEncoder对应。<br>
+ * 每次decode从buffer的position开始，能解多少解多少，解出来的数据直接交给HttpBodySink；
+ * 不完整的chunk-size行或trailer行不会被消费，留到下次数据到达后再解
+ */
+public class ChunkDecoder {
+  /**
+   * chunk-size行(含chunk-ext)的最大长度
+   */
+  public static final int MAX_LENGTH_OF_SIZE_LINE = 1024;
+
+  /**
+   * trailer的最大长度
+   */
+  public static final int MAX_LENGTH_OF_TRAILER = 8192;
+
+  private static enum Step {
+    SIZE, DATA, DATA_END, TRAILER, END
+  }
+
+  private final long maxLength;
+  private Step step = Step.SIZE;
+  /**
+   * 当前chunk还没收到的字节数
+   */
+  private long chunkRemaining = 0;
+  /**
+   * 已经解出来的数据长度
+   */
+  private long length = 0;
+  private int trailerLength = 0;
+  private Map<String, String> trailers = null;
+
+  /**
+   *
+   * @param maxLength 解码后请求体的最大长度，超过时抛TioDecodeException
+   */
+  public ChunkDecoder(long maxLength) {
+    this.maxLength = maxLength;
+  }
+
+  /**
+   *
+   * @param buffer 从position开始解码，解码后position指向已消费数据之后
+   * @param sink   解出来的数据交给它
+   * @return 最后一个chunk和trailer是否已经全部收到
+   * @throws TioDecodeException
+   * @throws IOException
+   */
+  public boolean decode(ByteBuffer buffer, HttpBodySink sink) throws TioDecodeException, IOException {
+    while (step != Step.END) {
+      int position = buffer.position();
+      int limit = buffer.limit();
+      if (step == Step.SIZE) {
+        int lfIndex = indexOf(buffer, position, limit, SysConst.LF);
+        if (lfIndex < 0) {
+          if (limit - position > MAX_LENGTH_OF_SIZE_LINE) {
+            throw new TioDecodeException("chunk size line is too long");
+          }
+          return false;
+        }
+        long size = parseSize(buffer, position, lfIndex);
+        buffer.position(lfIndex + 1);
+        if (size == 0) {
+          step = Step.TRAILER;
+        } else {
+          length += size;
+          if (length > maxLength) {
+            throw new TioDecodeException("Request body is too large, max allowed: " + maxLength + " bytes");
+          }
+          chunkRemaining = size;
+          step = Step.DATA;
+        }
+      } else if (step == Step.DATA) {
+        if (position == limit) {
+          return false;
+        }
+        int n = (int) Math.min(chunkRemaining, limit - position);
+        ByteBuffer src = buffer.duplicate();
+        src.limit(position + n);
+        sink.write(src);
+        buffer.position(position + n);
+        chunkRemaining -= n;
+        if (chunkRemaining == 0) {
+          step = Step.DATA_END;
+        }
+      } else if (step == Step.DATA_END) {
+        if (limit - position < 2) {
+          return false;
+        }
+        if (buffer.get(position) != SysConst.CR || buffer.get(position + 1) != SysConst.LF) {
+          throw new TioDecodeException("invalid chunk ending");
+        }
+        buffer.position(position + 2);
+        step = Step.SIZE;
+      } else if (step == Step.TRAILER) {
+        int lfIndex = indexOf(buffer, position, limit, SysConst.LF);
+        if (lfIndex < 0) {
+          if (trailerLength + limit - position > MAX_LENGTH_OF_TRAILER) {
+            throw new TioDecodeException("chunk trailer is too long");
+          }
+          return false;
+        }
+        trailerLength += lfIndex + 1 - position;
+        if (trailerLength > MAX_LENGTH_OF_TRAILER) {
+          throw new TioDecodeException("chunk trailer is too long");
+        }
+        int lineEnd = lfIndex;
+        if (lineEnd > position && buffer.get(lineEnd - 1) == SysConst.CR) {
+          lineEnd--;
+        }
+        if (lineEnd == position) {
+          step = Step.END;
+        } else {
+          parseTrailer(buffer, position, lineEnd);
+        }
+        buffer.position(lfIndex + 1);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * chunk-size [; chunk-ext]
+   */
+  private long parseSize(ByteBuffer buffer, int start, int end) throws TioDecodeException {
+    long size = 0;
+    int digits = 0;
+    for (int i = start; i < end; i++) {
+      byte b = buffer.get(i);
+      int digit;
+      if (b >= '0' && b <= '9') {
+        digit = b - '0';
+      } else if (b >= 'a' && b <= 'f') {
+        digit = b - 'a' + 10;
+      } else if (b >= 'A' && b <= 'F') {
+        digit = b - 'A' + 10;
+      } else if (b == ';' || b == SysConst.CR || b == SysConst.SPACE || b == '\t') {
+        break;
+      } else {
+        throw new TioDecodeException("invalid chunk size");
+      }
+      if (++digits > 15) {
+        throw new TioDecodeException("chunk size is too large");
+      }
+      size = (size << 4) + digit;
+    }
+    if (digits == 0) {
+      throw new TioDecodeException("invalid chunk size");
+    }
+    return size;
+  }
+
+  private void parseTrailer(ByteBuffer buffer, int start, int end) throws TioDecodeException {
+    int colonIndex = indexOf(buffer, start, end, SysConst.COL);
+    if (colonIndex < 0) {
+      throw new TioDecodeException("Invalid trailer line");
+    }
+    String name = readString(buffer, start, colonIndex).trim().toLowerCase();
+    String value = readString(buffer, colonIndex + 1, end).trim();
+    if (trailers == null) {
+      trailers = new HashMap<>();
+    }
+    trailers.put(name, value);
+  }
+
+  private static int indexOf(ByteBuffer buffer, int start, int end, byte b) {
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String readString(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return 已经解出来的数据长度
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * @return 最后一个chunk之后的trailer，没有时返回null
+   */
+  public Map<String, String> getTrailers() {
+    return trailers;
+  }
+}
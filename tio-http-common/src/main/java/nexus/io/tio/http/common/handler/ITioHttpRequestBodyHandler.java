@@ -0,0 +1,18 @@
+package nexus.io.tio.http.common.handler;
+
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.body.HttpBodySink;
+
+/**
+ * 流式接收请求体时，由业务自己接收请求体(譬如边收边转存到对象存储)
+ */
+public interface ITioHttpRequestBodyHandler {
+  /**
+   * 请求行和header解析完成、请求体还没开始接收时调用
+   *
+   * @param request 此时还没有请求体，请求参数只有queryString中的
+   * @return 请求体的接收者，返回null时使用框架默认的方式接收(内存或临时文件，multipart会边收边解析)
+   * @throws Exception
+   */
+  public HttpBodySink onBodyStart(HttpRequest request) throws Exception;
+}
@@ -27,6 +27,16 @@ public class HttpSession implements java.io.Serializable {
 
   private long createTime = SystemTimer.currTime;
 
+  /**
+   * 有修改还没写回sessionStore
+   */
+  private transient volatile boolean dirty = false;
+
+  /**
+   * 为true时修改属性只标记dirty，由请求结束时的HttpSessionManager.save()写回；为false时每次修改都马上写回
+   */
+  private transient volatile boolean deferWrite = false;
+
   /**
    * 此处空的构造函数必须要有
    * 
@@ -49,7 +59,7 @@ public class HttpSession implements java.io.Serializable {
    */
   public void clear(HttpConfig httpConfig) {
     data.clear();
-    update(httpConfig);
+    changed(httpConfig);
   }
 
   /**
@@ -103,7 +113,7 @@ public class HttpSession implements java.io.Serializable {
    */
   public void removeAttribute(String key, HttpConfig httpConfig) {
     data.remove(key);
-    update(httpConfig);
+    changed(httpConfig);
   }
 
   /**
@@ -116,11 +126,38 @@ public class HttpSession implements java.io.Serializable {
   public void setAttribute(String key, Serializable value, HttpConfig httpConfig) {
     String jsonValue = JsonUtils.toJson(value);
     data.put(key, jsonValue);
-    update(httpConfig);
+    changed(httpConfig);
   }
 
+  private void changed(HttpConfig httpConfig) {
+    dirty = true;
+    if (!deferWrite) {
+      update(httpConfig);
+    }
+  }
+
+  /**
+   * 马上写回sessionStore
+   * @param httpConfig
+   */
   public void update(HttpConfig httpConfig) {
-    httpConfig.getSessionStore().put(id, this);
+    httpConfig.getHttpSessionManager().update(this);
+  }
+
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  public void setDirty(boolean dirty) {
+    this.dirty = dirty;
+  }
+
+  public boolean isDeferWrite() {
+    return deferWrite;
+  }
+
+  public void setDeferWrite(boolean deferWrite) {
+    this.deferWrite = deferWrite;
   }
 
   public void setId(String id) {
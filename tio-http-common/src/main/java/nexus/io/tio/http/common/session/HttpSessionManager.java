@@ -0,0 +1,243 @@
+package nexus.io.tio.http.common.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.model.cache.ICache;
+import nexus.io.tio.utils.SystemTimer;
+import nexus.io.tio.utils.environment.EnvUtils;
+
+/**
+ * HttpSession的读取和写回，由HttpConfig.setSessionStore()创建。<br>
+ * deferWrite为true时，请求期间修改属性只标记dirty，请求结束时save()合并成一次写；flushIntervalMillis>0时再交给后台线程按间隔写(write-behind)，
+ * 同一个session在间隔内多次保存只写一次，写失败的放回队列下一轮再写，停止服务(或JVM退出)时全部写回。<br>
+ * nearCacheMillis>0时读过的session在本机缓存这么久，期间不再访问sessionStore；多实例部署时其它实例的修改最多晚这么久可见
+ * @author tanyaowu
+ */
+public class HttpSessionManager {
+  private static final Logger log = LoggerFactory.getLogger(HttpSessionManager.class);
+
+  private static final ScheduledExecutorService FLUSHER = new ScheduledThreadPoolExecutor(1, runnable -> {
+    Thread thread = new Thread(runnable, "tio-session-flusher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final ICache sessionStore;
+  /**
+   * 修改属性时是否推迟到请求结束再写回sessionStore
+   */
+  private boolean deferWrite = EnvUtils.getBoolean("http.session.defer.write", true);
+  /**
+   * 请求结束后再等多少毫秒批量写回，<=0时请求结束时马上写
+   */
+  private long flushIntervalMillis = EnvUtils.getLong("http.session.flush.interval.millis", 0L);
+  /**
+   * 本机缓存读过的session多少毫秒，<=0时不缓存。sessionStore是本地缓存时没有必要开启
+   */
+  private long nearCacheMillis = EnvUtils.getLong("http.session.near.cache.millis", 0L);
+  private int nearCacheMaxSize = EnvUtils.getInt("http.session.near.cache.max.size", 10000);
+
+  /**
+   * 等待写回的session，key: sessionId
+   */
+  private final Map<String, HttpSession> pending = new ConcurrentHashMap<>();
+  private final Map<String, NearEntry> nearCache = new ConcurrentHashMap<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+  private final AtomicBoolean shutdownHookAdded = new AtomicBoolean(false);
+  private volatile long lastSweepTime = 0;
+
+  public HttpSessionManager(ICache sessionStore) {
+    this.sessionStore = sessionStore;
+  }
+
+  /**
+   * 依次从等待写回的session、本机缓存、sessionStore中找
+   * @param sessionId
+   * @return
+   */
+  public HttpSession get(String sessionId) {
+    HttpSession httpSession = pending.get(sessionId);
+    if (httpSession != null) {
+      return httpSession;
+    }
+    if (nearCacheMillis > 0) {
+      NearEntry entry = nearCache.get(sessionId);
+      if (entry != null) {
+        if (entry.expireTime > SystemTimer.currTime) {
+          return entry.httpSession;
+        }
+        nearCache.remove(sessionId, entry);
+      }
+    }
+    httpSession = (HttpSession) sessionStore.get(sessionId);
+    if (httpSession != null && nearCacheMillis > 0) {
+      putNear(httpSession);
+    }
+    return httpSession;
+  }
+
+  /**
+   * 请求结束时调用：session有修改才写回，flushIntervalMillis>0时放入等待队列由后台线程写
+   * @param httpSession
+   */
+  public void save(HttpSession httpSession) {
+    if (!httpSession.isDirty()) {
+      return;
+    }
+    // 先清标记，写的过程中再有修改会重新标记
+    httpSession.setDirty(false);
+    if (nearCacheMillis > 0) {
+      putNear(httpSession);
+    }
+    if (flushIntervalMillis > 0) {
+      pending.put(httpSession.getId(), httpSession);
+      scheduleFlush();
+    } else {
+      put(httpSession);
+    }
+  }
+
+  /**
+   * 马上写回sessionStore
+   * @param httpSession
+   */
+  public void update(HttpSession httpSession) {
+    httpSession.setDirty(false);
+    pending.remove(httpSession.getId());
+    if (nearCacheMillis > 0) {
+      putNear(httpSession);
+    }
+    put(httpSession);
+  }
+
+  /**
+   * 写失败时重新标记dirty，修改不会丢，下次save()还会再写
+   */
+  private void put(HttpSession httpSession) {
+    try {
+      sessionStore.put(httpSession.getId(), httpSession);
+    } catch (RuntimeException e) {
+      httpSession.setDirty(true);
+      throw e;
+    }
+  }
+
+  public void remove(String sessionId) {
+    pending.remove(sessionId);
+    nearCache.remove(sessionId);
+    sessionStore.remove(sessionId);
+  }
+
+  /**
+   * 把等待写回的session全部写到sessionStore，停止服务时调用
+   */
+  public void flush() {
+    flushScheduled.set(false);
+    boolean failed = false;
+    for (HttpSession httpSession : pending.values()) {
+      // 移除时session没有被替换才写，替换后的由下一轮写
+      if (pending.remove(httpSession.getId(), httpSession)) {
+        try {
+          sessionStore.put(httpSession.getId(), httpSession);
+        } catch (Exception e) {
+          log.error("write session " + httpSession.getId() + " error", e);
+          // 放回去下一轮再写，这期间又保存过的以新的为准
+          pending.putIfAbsent(httpSession.getId(), httpSession);
+          failed = true;
+        }
+      }
+    }
+    if (failed) {
+      scheduleFlush();
+    }
+  }
+
+  private void scheduleFlush() {
+    if (shutdownHookAdded.compareAndSet(false, true)) {
+      // 没有正常停止服务时，退出前也把等待写回的session写掉
+      Runtime.getRuntime().addShutdownHook(new Thread("tio-session-flush-shutdown") {
+        @Override
+        public void run() {
+          flush();
+        }
+      });
+    }
+    if (flushScheduled.compareAndSet(false, true)) {
+      FLUSHER.schedule(this::flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void putNear(HttpSession httpSession) {
+    long now = SystemTimer.currTime;
+    if (nearCache.size() >= nearCacheMaxSize && !nearCache.containsKey(httpSession.getId())) {
+      // 满了先清过期的，每个缓存周期最多清一次
+      if (now - lastSweepTime < nearCacheMillis) {
+        return;
+      }
+      lastSweepTime = now;
+      nearCache.values().removeIf(entry -> entry.expireTime <= now);
+      if (nearCache.size() >= nearCacheMaxSize) {
+        return;
+      }
+    }
+    nearCache.put(httpSession.getId(), new NearEntry(httpSession, now + nearCacheMillis));
+  }
+
+  public boolean isDeferWrite() {
+    return deferWrite;
+  }
+
+  public void setDeferWrite(boolean deferWrite) {
+    this.deferWrite = deferWrite;
+  }
+
+  public long getFlushIntervalMillis() {
+    return flushIntervalMillis;
+  }
+
+  public void setFlushIntervalMillis(long flushIntervalMillis) {
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  public long getNearCacheMillis() {
+    return nearCacheMillis;
+  }
+
+  /**
+   * 要小于session超时时间，否则sessionStore中活跃的session会因为长时间没被读而过期
+   * @param nearCacheMillis
+   */
+  public void setNearCacheMillis(long nearCacheMillis) {
+    this.nearCacheMillis = nearCacheMillis;
+  }
+
+  public int getNearCacheMaxSize() {
+    return nearCacheMaxSize;
+  }
+
+  public void setNearCacheMaxSize(int nearCacheMaxSize) {
+    this.nearCacheMaxSize = nearCacheMaxSize;
+  }
+
+  public ICache getSessionStore() {
+    return sessionStore;
+  }
+
+  private static class NearEntry {
+    private final HttpSession httpSession;
+    private final long expireTime;
+
+    private NearEntry(HttpSession httpSession, long expireTime) {
+      this.httpSession = httpSession;
+      this.expireTime = expireTime;
+    }
+  }
+}
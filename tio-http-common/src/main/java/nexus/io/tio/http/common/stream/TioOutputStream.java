@@ -3,21 +3,43 @@ package nexus.io.tio.http.common.stream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import nexus.io.aio.BytePacket;
+import nexus.io.aio.Packet;
 import nexus.io.http.common.sse.ChunkedPacket;
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.http.common.encoder.ChunkEncoder;
+import nexus.io.tio.http.common.utils.StreamingGzip;
 
 public class TioOutputStream extends OutputStream {
   private final ChannelContext ctx;
   private final boolean chunked;
   private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+  /**
+   * 不为null时每次flush的数据压缩后再发
+   */
+  private final StreamingGzip gzip;
+  /**
+   * 不为null时是这个请求的响应体，pipelining时按请求的顺序发送(PipelineQueue.startStream)
+   */
+  private final Long respId;
 
   public TioOutputStream(ChannelContext ctx, boolean chunked) {
+    this(ctx, chunked, null);
+  }
+
+  public TioOutputStream(ChannelContext ctx, boolean chunked, StreamingGzip gzip) {
+    this(ctx, chunked, gzip, null);
+  }
+
+  public TioOutputStream(ChannelContext ctx, boolean chunked, StreamingGzip gzip, Long respId) {
     this.ctx = ctx;
     this.chunked = chunked;
+    this.gzip = gzip;
+    this.respId = respId;
   }
 
   @Override
@@ -34,25 +56,48 @@ public class TioOutputStream extends OutputStream {
   public void flush() throws IOException {
     byte[] data = baos.toByteArray();
     if (data.length > 0) {
-      if (chunked) {
-        byte[] chunk = ChunkEncoder.encodeChunk(data);
-        Tio.bSend(ctx, new ChunkedPacket(chunk));
+      if (gzip != null) {
+        gzip.compress(data, 0, data.length);
+        send(gzip.output(), gzip.length());
       } else {
-        Tio.bSend(ctx, new BytePacket(data));
+        send(data, data.length);
       }
       baos.reset();  // **clear after sending**
     }
   }
 
+  private void send(byte[] data, int length) {
+    Packet packet;
+    if (chunked) {
+      packet = new ChunkedPacket(ChunkEncoder.encodeChunk(data, length));
+    } else {
+      packet = new BytePacket(length == data.length ? data : Arrays.copyOf(data, length));
+    }
+    packet.setRespId(respId);
+    Tio.bSend(ctx, packet);
+  }
+
   @Override
   public void close() throws IOException {
     // 1. Flush any remaining data
-    flush();
+    if (gzip != null) {
+      byte[] data = baos.toByteArray();
+      gzip.finish(data, 0, data.length);
+      send(gzip.output(), gzip.length());
+      baos.reset();
+    } else {
+      flush();
+    }
 
     if (chunked) {
       // 2. Send the zero-length chunk to terminate the stream
       byte[] endChunk = ChunkEncoder.encodeChunk(new byte[0]);
-      Tio.bSend(ctx, new ChunkedPacket(endChunk));
+      ChunkedPacket endPacket = new ChunkedPacket(endChunk);
+      endPacket.setRespId(respId);
+      Tio.bSend(ctx, endPacket);
+    }
+    if (respId != null) {
+      PipelineQueue.endStream(ctx, respId);
     }
 
     // 3. Close the connection
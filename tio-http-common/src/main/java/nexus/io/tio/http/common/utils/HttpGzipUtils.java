@@ -1,15 +1,21 @@
 package nexus.io.tio.http.common.utils;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nexus.io.tio.core.pool.BufferPoolUtils;
+import nexus.io.tio.core.pool.ByteBufferOutputStream;
 import nexus.io.tio.http.common.HeaderName;
 import nexus.io.tio.http.common.HeaderValue;
 import nexus.io.tio.http.common.HttpRequest;
 import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.RequestHeaderKey;
+import nexus.io.tio.utils.environment.EnvUtils;
 import nexus.io.tio.utils.hutool.ZipUtil;
 
 /**
@@ -18,7 +24,12 @@ import nexus.io.tio.utils.hutool.ZipUtil;
  */
 public class HttpGzipUtils {
   private static final Logger log = LoggerFactory.getLogger(HttpGzipUtils.class);
-  
+
+  /**
+   * chunked、SSE等流式响应是否用StreamingGzip压缩
+   */
+  private static final boolean STREAM_GZIP = EnvUtils.getBoolean("http.gzip.stream", true);
+
   /**
    * gzip
    * @param request
@@ -78,6 +89,11 @@ public class HttpGzipUtils {
   }
 
   public static void justGzip(HttpResponse response) {
+    ByteBuffer bodyBuffer = response.getBodyBuffer();
+    if (bodyBuffer != null) {
+      gzipBodyBuffer(response, bodyBuffer);
+      return;
+    }
     byte[] bs = response.getBody();
     if (bs != null && bs.length >= 300) {
       byte[] bs2 = ZipUtil.gzip(bs);
@@ -88,4 +104,109 @@ public class HttpGzipUtils {
       }
     }
   }
+
+  /**
+   * 池化的响应体压缩到另一个池化的buffer中，保留同样的headroom，压缩后更小才替换
+   */
+  private static void gzipBodyBuffer(HttpResponse response, ByteBuffer bodyBuffer) {
+    int length = bodyBuffer.remaining();
+    if (length < 300) {
+      return;
+    }
+    ByteBufferOutputStream out = new ByteBufferOutputStream(bodyBuffer.position(), length >>> 2);
+    ByteBuffer gzipped = null;
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+      if (bodyBuffer.hasArray()) {
+        gzip.write(bodyBuffer.array(), bodyBuffer.arrayOffset() + bodyBuffer.position(), length);
+      } else {
+        // 直接内存没有数组，经中转区交给Deflater
+        ByteBuffer src = bodyBuffer.duplicate();
+        byte[] scratch = new byte[Math.min(length, 8192)];
+        while (src.hasRemaining()) {
+          int n = Math.min(scratch.length, src.remaining());
+          src.get(scratch, 0, n);
+          gzip.write(scratch, 0, n);
+        }
+      }
+      gzip.finish();
+      gzipped = out.toByteBuffer();
+    } catch (IOException e) {
+      log.error(e.toString(), e);
+    } finally {
+      if (gzipped == null) {
+        out.release();
+      }
+    }
+    if (gzipped == null) {
+      return;
+    }
+    if (gzipped.remaining() < length) {
+      response.setBodyBuffer(gzipped);
+      response.setSkipGzipped(true);
+      response.addHeader(HeaderName.Content_Encoding, HeaderValue.Content_Encoding.gzip);
+    } else {
+      BufferPoolUtils.clean(gzipped);
+    }
+  }
+
+  /**
+   * 流式响应开始前调用：客户端的Accept-Encoding接受gzip、内容不是图片音视频、也没有压缩过时，加上Content-Encoding: gzip，
+   * 返回用于压缩响应体的StreamingGzip，否则返回null
+   */
+  public static StreamingGzip streamGzip(HttpRequest request, HttpResponse response) {
+    if (!STREAM_GZIP || request == null || response.isSkipGzipped() || !request.getIsSupportGzip()) {
+      return null;
+    }
+    HeaderValue ct = response.getContentType();
+    String mime = ct != null ? ct.getValue().toLowerCase(Locale.ROOT) : "";
+    if (mime.startsWith("image/") || mime.startsWith("video/") || mime.startsWith("audio/")) {
+      return null;
+    }
+    response.addHeader(HeaderName.Vary, HeaderValue.Vary.Accept_Encoding);
+    // 流式响应体压缩后不能再回退成原始内容，所以要求客户端明确接受gzip
+    if (!accepts(request.getHeader(RequestHeaderKey.Accept_Encoding), "gzip")) {
+      return null;
+    }
+    response.addHeader(HeaderName.Content_Encoding, HeaderValue.Content_Encoding.gzip);
+    response.setSkipGzipped(true);
+    return new StreamingGzip();
+  }
+
+  /**
+   * Accept-Encoding中是否接受coding，q=0表示不接受。coding本身的设置优先于*，如"*;q=0, gzip"接受gzip
+   */
+  public static boolean accepts(String acceptEncoding, String coding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Boolean wildcard = null;
+    for (String item : acceptEncoding.split(",")) {
+      int semicolon = item.indexOf(';');
+      String name = (semicolon == -1 ? item : item.substring(0, semicolon)).trim();
+      if (name.equalsIgnoreCase(coding)) {
+        return acceptable(item, semicolon);
+      }
+      if (wildcard == null && "*".equals(name)) {
+        wildcard = acceptable(item, semicolon);
+      }
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * @return q参数大于0，没有q参数时为true
+   */
+  private static boolean acceptable(String item, int semicolon) {
+    if (semicolon != -1) {
+      String param = item.substring(semicolon + 1).trim();
+      if (param.startsWith("q=") || param.startsWith("Q=")) {
+        try {
+          return Double.parseDouble(param.substring(2).trim()) > 0;
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
 }
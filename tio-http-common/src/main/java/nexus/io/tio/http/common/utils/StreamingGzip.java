@@ -0,0 +1,149 @@
+package nexus.io.tio.http.common.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import nexus.io.tio.utils.environment.EnvUtils;
+
+/**
+ * 流式响应用的gzip压缩：一个响应体一个实例，每段数据压缩后用SYNC_FLUSH结束，客户端收到每个chunk后都能马上解压出已发的内容。<br>
+ * Deflater从池中借，finish()或release()后还回去，不用每个流都创建、销毁本地内存。非线程安全
+ */
+public class StreamingGzip {
+  private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+  private static final int LEVEL = EnvUtils.getInt("http.gzip.stream.level", Deflater.DEFAULT_COMPRESSION);
+  /**
+   * 池中最多保留多少个空闲的Deflater
+   */
+  private static final int POOL_SIZE = EnvUtils.getInt("http.gzip.deflater.pool.size", 64);
+  private static final ConcurrentLinkedQueue<Deflater> POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private Deflater deflater = borrow();
+  private final CRC32 crc = new CRC32();
+  private boolean headerWritten;
+  private byte[] out = new byte[1024];
+  private int length;
+
+  /**
+   * 压缩一段数据并SYNC_FLUSH，结果用output()和length()取
+   *
+   * @return 压缩后的长度
+   */
+  public int compress(byte[] bytes, int offset, int len) {
+    return deflate(bytes, offset, len, false);
+  }
+
+  /**
+   * 压缩最后一段数据，加上gzip的结尾，之后把Deflater还回池中
+   *
+   * @return 压缩后的长度
+   */
+  public int finish(byte[] bytes, int offset, int len) {
+    int ret = deflate(bytes, offset, len, true);
+    release();
+    return ret;
+  }
+
+  /**
+   * 流没有正常结束时调用，把Deflater还回池中；多次调用无影响
+   */
+  public void release() {
+    Deflater d = deflater;
+    if (d != null) {
+      deflater = null;
+      giveBack(d);
+    }
+  }
+
+  /**
+   * @return 上一次compress/finish的结果，有效长度是length()
+   */
+  public byte[] output() {
+    return out;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  private int deflate(byte[] bytes, int offset, int len, boolean finish) {
+    if (deflater == null) {
+      throw new IllegalStateException("gzip stream already finished");
+    }
+    length = 0;
+    if (!headerWritten) {
+      headerWritten = true;
+      put(HEADER);
+    }
+    crc.update(bytes, offset, len);
+    ensure(len + (len >>> 12) + 64);
+    deflater.setInput(bytes, offset, len);
+    if (finish) {
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflateOnce(Deflater.NO_FLUSH);
+      }
+      int crcValue = (int) crc.getValue();
+      int totalIn = (int) deflater.getBytesRead();
+      ensure(8);
+      putIntLE(crcValue);
+      putIntLE(totalIn);
+    } else {
+      // 输出填满时可能还有没输出的数据，继续直到有空余
+      do {
+        deflateOnce(Deflater.SYNC_FLUSH);
+      } while (length == out.length);
+    }
+    return length;
+  }
+
+  private void deflateOnce(int flush) {
+    if (length == out.length) {
+      out = Arrays.copyOf(out, out.length << 1);
+    }
+    length += deflater.deflate(out, length, out.length - length, flush);
+  }
+
+  private void ensure(int n) {
+    if (out.length - length < n) {
+      out = Arrays.copyOf(out, Math.max(out.length << 1, length + n));
+    }
+  }
+
+  private void put(byte[] bytes) {
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, out, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void putIntLE(int v) {
+    out[length++] = (byte) v;
+    out[length++] = (byte) (v >>> 8);
+    out[length++] = (byte) (v >>> 16);
+    out[length++] = (byte) (v >>> 24);
+  }
+
+  private static Deflater borrow() {
+    Deflater deflater = POOL.poll();
+    if (deflater != null) {
+      POOLED.decrementAndGet();
+      return deflater;
+    }
+    return new Deflater(LEVEL, true);
+  }
+
+  private static void giveBack(Deflater deflater) {
+    deflater.reset();
+    if (POOLED.incrementAndGet() <= POOL_SIZE) {
+      POOL.offer(deflater);
+    } else {
+      POOLED.decrementAndGet();
+      deflater.end();
+    }
+  }
+}
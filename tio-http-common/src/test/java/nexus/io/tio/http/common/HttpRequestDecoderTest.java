@@ -0,0 +1,166 @@
+package nexus.io.tio.http.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.TioConfig;
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.core.maintain.GlobalIpBlacklist;
+import nexus.io.tio.core.task.DecodeTask;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+import nexus.io.tio.server.intf.ServerAioHandler;
+import nexus.io.tio.utils.cache.mapcache.ConcurrentMapCacheFactory;
+
+/**
+ * 用DecodeTask把数据按不同的方式分段喂给HttpRequestDecoder
+ */
+public class HttpRequestDecoderTest {
+
+  private final List<HttpRequest> requests = new ArrayList<>();
+  private HttpConfig httpConfig;
+  private ServerTioConfig tioConfig;
+
+  @Before
+  public void setUp() {
+    httpConfig = new HttpConfig(80, null, null, null);
+    ServerAioHandler handler = new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength,
+          ChannelContext channelContext) throws TioDecodeException {
+        HttpRequest request = HttpRequestDecoder.decode(buffer, limit, position, readableLength, channelContext,
+            httpConfig);
+        if (request != null) {
+          requests.add(request);
+        }
+        return request;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext channelContext) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext channelContext) {
+      }
+    };
+    tioConfig = new ServerTioConfig("http-decoder-test");
+    tioConfig.setServerAioHandler(handler);
+    tioConfig.setCacheFactory(ConcurrentMapCacheFactory.INSTANCE);
+    tioConfig.checkAttacks = false;
+    tioConfig.statOn = false;
+    tioConfig.ignoreDecodeFail = true;
+    GlobalIpBlacklist.INSTANCE.init(tioConfig);
+  }
+
+  @Test
+  public void testBadChunkClosesConnection() {
+    String data = "POST /a HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n" //
+        + "3\r\nabc\r\nzz\r\n" //
+        + "GET /smuggled HTTP/1.1\r\nHost: x\r\n\r\n";
+    ServerChannelContext channelContext = new ServerChannelContext(tioConfig);
+    feed(channelContext, data, Integer.MAX_VALUE);
+
+    assertEquals(0, requests.size());
+    assertTrue(isClosing(channelContext));
+  }
+
+  @Test
+  public void testBadChunkInLaterSegmentClosesConnection() {
+    String head = "POST /a HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc";
+    String data = head + "XX0\r\n\r\nGET /smuggled HTTP/1.1\r\nHost: x\r\n\r\n";
+    ServerChannelContext channelContext = new ServerChannelContext(tioConfig);
+    feed(channelContext, data, head.length());
+
+    assertEquals(0, requests.size());
+    assertTrue(isClosing(channelContext));
+  }
+
+  @Test
+  public void testContentLengthSplitAtEveryByte() {
+    String data = "POST /a HTTP/1.1\r\nHost: x\r\nContent-Length: 11\r\n\r\nhello world" //
+        + "GET /b HTTP/1.1\r\nHost: x\r\n\r\n";
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    for (int split = 1; split < bytes.length; split++) {
+      requests.clear();
+      ServerChannelContext channelContext = new ServerChannelContext(tioConfig);
+      DecodeTask decodeTask = new DecodeTask();
+      decodeTask.decode(channelContext, ByteBuffer.wrap(bytes, 0, split).slice());
+      decodeTask.decode(channelContext, ByteBuffer.wrap(bytes, split, bytes.length - split).slice());
+
+      String at = "split at " + split;
+      assertFalse(at, isClosing(channelContext));
+      assertEquals(at, 2, requests.size());
+      assertEquals(at, "/a", requests.get(0).getRequestLine().getPath());
+      assertArrayEquals(at, "hello world".getBytes(StandardCharsets.UTF_8), requests.get(0).getBody());
+      assertEquals(at, "/b", requests.get(1).getRequestLine().getPath());
+    }
+  }
+
+  @Test
+  public void testChunkedSplitAtEveryByte() {
+    // 结尾的几个chunk和trailer都比32字节短
+    String data = "POST /a HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n" //
+        + "5\r\nhello\r\n1\r\n \r\na\r\n0123456789\r\n0\r\n\r\n" //
+        + "GET /b HTTP/1.1\r\nHost: x\r\n\r\n";
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    for (int split = 1; split < bytes.length; split++) {
+      requests.clear();
+      ServerChannelContext channelContext = new ServerChannelContext(tioConfig);
+      DecodeTask decodeTask = new DecodeTask();
+      decodeTask.decode(channelContext, ByteBuffer.wrap(bytes, 0, split).slice());
+      decodeTask.decode(channelContext, ByteBuffer.wrap(bytes, split, bytes.length - split).slice());
+
+      String at = "split at " + split;
+      assertFalse(at, isClosing(channelContext));
+      assertEquals(at, 2, requests.size());
+      assertArrayEquals(at, "hello 0123456789".getBytes(StandardCharsets.UTF_8), requests.get(0).getBody());
+      assertEquals(at, "/b", requests.get(1).getRequestLine().getPath());
+    }
+  }
+
+  @Test
+  public void testChunkedInSmallSegments() {
+    String data = "POST /a HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n" //
+        + "3\r\nabc\r\n2\r\nde\r\n0\r\nX-Trailer: 1\r\n\r\n";
+    for (int segment = 1; segment <= 40; segment++) {
+      requests.clear();
+      ServerChannelContext channelContext = new ServerChannelContext(tioConfig);
+      feed(channelContext, data, segment);
+
+      String at = "segment " + segment;
+      assertFalse(at, isClosing(channelContext));
+      assertEquals(at, 1, requests.size());
+      assertArrayEquals(at, "abcde".getBytes(StandardCharsets.UTF_8), requests.get(0).getBody());
+    }
+  }
+
+  private static boolean isClosing(ChannelContext channelContext) {
+    return channelContext.isWaitingClose || channelContext.isRemoved;
+  }
+
+  /**
+   * 按segment字节一段喂给DecodeTask，连接关闭后不再喂
+   */
+  private void feed(ChannelContext channelContext, String data, int segment) {
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    DecodeTask decodeTask = new DecodeTask();
+    for (int offset = 0; offset < bytes.length && !isClosing(channelContext); offset += segment) {
+      int length = Math.min(segment, bytes.length - offset);
+      decodeTask.decode(channelContext, ByteBuffer.wrap(bytes, offset, length).slice());
+    }
+  }
+}
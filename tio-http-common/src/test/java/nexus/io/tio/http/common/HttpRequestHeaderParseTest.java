@@ -0,0 +1,188 @@
+package nexus.io.tio.http.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.core.exception.UnsupportedHttpMethodException;
+
+/**
+ * parseRequestLine、parseHeader直接读ByteBuffer，heap、direct以及packet不在buffer开头时结果要一样
+ */
+public class HttpRequestHeaderParseTest {
+
+  /**
+   * packet前面放一段别的数据，检查解析用的是绝对位置
+   */
+  private static final String PREFIX = "garbage:\r\n\r\n";
+
+  @Test
+  public void testRequestLine() throws Exception {
+    String line = "POST /user/list?name=tio&age=1 HTTP/1.1\r\n";
+    for (ByteBuffer buffer : buffers(line)) {
+      int position = buffer.position();
+      String kind = kind(buffer);
+      RequestLine requestLine = HttpRequestDecoder.parseRequestLine(buffer, null);
+
+      assertEquals(kind, HttpMethod.POST, requestLine.getMethod());
+      assertEquals(kind, "/user/list", requestLine.getPath());
+      assertEquals(kind, "name=tio&age=1", requestLine.getQueryString());
+      assertEquals(kind, "HTTP", requestLine.getProtocol());
+      assertEquals(kind, "1.1", requestLine.getVersion());
+      assertEquals(kind, position + line.length(), buffer.position());
+    }
+  }
+
+  @Test
+  public void testRequestLineWithoutQueryOrCr() throws Exception {
+    for (ByteBuffer buffer : buffers("GET / HTTP/1.0\n")) {
+      String kind = kind(buffer);
+      RequestLine requestLine = HttpRequestDecoder.parseRequestLine(buffer, null);
+
+      assertEquals(kind, HttpMethod.GET, requestLine.getMethod());
+      assertEquals(kind, "/", requestLine.getPath());
+      assertEquals(kind, "", requestLine.getQueryString());
+      assertEquals(kind, "1.0", requestLine.getVersion());
+    }
+  }
+
+  @Test
+  public void testIncompleteRequestLine() throws Exception {
+    for (ByteBuffer buffer : buffers("GET /index.html HTT")) {
+      int position = buffer.position();
+      assertNull(kind(buffer), HttpRequestDecoder.parseRequestLine(buffer, null));
+      assertEquals(kind(buffer), position, buffer.position());
+    }
+  }
+
+  @Test
+  public void testUnknownMethod() throws Exception {
+    for (ByteBuffer buffer : buffers("BREW /pot HTTP/1.1\r\n")) {
+      try {
+        HttpRequestDecoder.parseRequestLine(buffer, null);
+        fail(kind(buffer));
+      } catch (UnsupportedHttpMethodException e) {
+        // 方法名从buffer中读出，放在异常信息里
+        assertTrue(kind(buffer), e.getMessage().contains("BREW"));
+      }
+    }
+  }
+
+  @Test
+  public void testHeaders() throws Exception {
+    String head = "Host:  example.com \r\n" //
+        + "CONTENT-TYPE: text/plain\r\n" //
+        + "X-Trace-Id:abc\r\n" //
+        + "x-empty:\r\n" //
+        + "\r\n";
+    for (ByteBuffer buffer : buffers(head)) {
+      HttpRequestDecodeState state = new HttpRequestDecodeState();
+      String kind = kind(buffer);
+      assertTrue(kind, HttpRequestDecoder.parseHeader(buffer, buffer.position(), buffer.limit(), state));
+
+      assertEquals(kind, 4, state.headerCount);
+      assertEquals(kind, "example.com", state.headers.get(RequestHeaderKey.Host));
+      assertEquals(kind, "text/plain", state.headers.get(RequestHeaderKey.Content_Type));
+      assertEquals(kind, "abc", state.headers.get("x-trace-id"));
+      assertEquals(kind, "", state.headers.get("x-empty"));
+      assertEquals(kind, head.length(), state.parsedLength);
+
+      // 已知的header名不管大小写都取RequestHeaderKey中的常量
+      for (String name : state.headers.keySet()) {
+        if (name.equals("host")) {
+          assertSame(kind, RequestHeaderKey.Host, name);
+        } else if (name.equals("content-type")) {
+          assertSame(kind, RequestHeaderKey.Content_Type, name);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testHeadersResumeAcrossReads() throws Exception {
+    String head = "Host: example.com\r\nAccept: */*\r\nX-Long-Header-Name: value\r\n\r\n";
+    for (boolean direct : new boolean[] { false, true }) {
+      ByteBuffer buffer = allocate(PREFIX.length() + head.length(), direct);
+      buffer.put(PREFIX.getBytes(StandardCharsets.US_ASCII));
+      int position = buffer.position();
+      byte[] bytes = head.getBytes(StandardCharsets.US_ASCII);
+      HttpRequestDecodeState state = new HttpRequestDecodeState();
+
+      // 每次只多到一个字节，数据不够时从上次停下的位置继续
+      boolean completed = false;
+      for (int i = 0; i < bytes.length; i++) {
+        assertFalse(completed);
+        buffer.put(bytes[i]);
+        completed = HttpRequestDecoder.parseHeader(buffer, position, buffer.position(), state);
+      }
+      String kind = direct ? "direct" : "heap";
+      assertTrue(kind, completed);
+      assertEquals(kind, 3, state.headerCount);
+      assertEquals(kind, "*/*", state.headers.get(RequestHeaderKey.Accept));
+      assertEquals(kind, "value", state.headers.get("x-long-header-name"));
+    }
+  }
+
+  @Test
+  public void testHeaderWithoutColon() throws Exception {
+    for (ByteBuffer buffer : buffers("Host example.com\r\n\r\n")) {
+      try {
+        HttpRequestDecoder.parseHeader(buffer, buffer.position(), buffer.limit(), new HttpRequestDecodeState());
+        fail(kind(buffer));
+      } catch (TioDecodeException e) {
+        assertTrue(kind(buffer), e.getMessage().contains("Host example.com"));
+      }
+    }
+  }
+
+  @Test
+  public void testHeaderKeyTableIgnoresCase() {
+    for (ByteBuffer buffer : buffers("cOnTeNt-LeNgTh")) {
+      assertSame(kind(buffer), RequestHeaderKey.Content_Length,
+          RequestHeaderKeyTable.get(buffer, buffer.position(), buffer.remaining()));
+    }
+    for (ByteBuffer buffer : buffers("content-lengthx")) {
+      assertNull(kind(buffer), RequestHeaderKeyTable.get(buffer, buffer.position(), buffer.remaining()));
+    }
+  }
+
+  /**
+   * 同样的数据：heap、direct、前面有PREFIX的heap、前面有PREFIX的direct，position指向数据开头
+   */
+  private static ByteBuffer[] buffers(String data) {
+    byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+    byte[] prefix = PREFIX.getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer[] buffers = new ByteBuffer[4];
+    for (int i = 0; i < buffers.length; i++) {
+      boolean direct = (i & 1) == 1;
+      boolean offset = i >= 2;
+      ByteBuffer buffer = allocate(bytes.length + (offset ? prefix.length : 0), direct);
+      if (offset) {
+        buffer.put(prefix);
+      }
+      int position = buffer.position();
+      buffer.put(bytes);
+      buffer.flip();
+      buffer.position(position);
+      buffers[i] = buffer;
+    }
+    return buffers;
+  }
+
+  private static ByteBuffer allocate(int capacity, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  private static String kind(ByteBuffer buffer) {
+    return (buffer.isDirect() ? "direct" : "heap") + (buffer.position() > 0 ? " at " + buffer.position() : "");
+  }
+}
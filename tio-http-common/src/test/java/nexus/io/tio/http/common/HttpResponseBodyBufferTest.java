@@ -0,0 +1,166 @@
+package nexus.io.tio.http.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import nexus.io.tio.utils.json.Json;
+
+/**
+ * setJsonBody生成的池化响应体：读取、编码、JSONP、gzip、复制
+ */
+public class HttpResponseBodyBufferTest {
+
+  private static final Map<String, Object> BODY = new LinkedHashMap<>();
+  static {
+    BODY.put("id", 1);
+    BODY.put("name", "tio");
+  }
+
+  @Test
+  public void testGetBodyDoesNotTakeBuffer() {
+    HttpResponse response = new HttpResponse();
+    response.setJsonBody(BODY);
+    byte[] expected = Json.getJson().toJson(BODY).getBytes(StandardCharsets.UTF_8);
+
+    assertArrayEquals(expected, response.getBody());
+    assertArrayEquals(expected, response.getBody());
+    assertNotNull(response.getBodyBuffer());
+
+    assertArrayEquals(expected, response.materializeBody());
+    assertNull(response.getBodyBuffer());
+    assertSame(response.getBody(), response.getBody());
+  }
+
+  @Test
+  public void testHeadersWrittenIntoHeadroom() {
+    HttpResponse response = new HttpResponse();
+    response.setJsonBody(BODY);
+    ByteBuffer bodyBuffer = response.getBodyBuffer();
+
+    ByteBuffer encoded = HttpResponseEncoder.encode(response, null, null);
+    // 响应头放得下，直接用响应体的buffer
+    assertSame(bodyBuffer, encoded);
+    assertResponse(encoded, Json.getJson().toJson(BODY));
+  }
+
+  @Test
+  public void testHeadersLargerThanHeadroom() {
+    HttpResponse response = new HttpResponse();
+    response.setJsonBody(BODY);
+    ByteBuffer bodyBuffer = response.getBodyBuffer();
+    char[] big = new char[HttpResponse.BODY_BUFFER_HEADROOM];
+    Arrays.fill(big, 'x');
+    response.addHeader(HeaderName.from("X-Big"), HeaderValue.from(new String(big)));
+
+    ByteBuffer encoded = HttpResponseEncoder.encode(response, null, null);
+    assertNotSame(bodyBuffer, encoded);
+    String text = assertResponse(encoded, Json.getJson().toJson(BODY));
+    assertEquals(new String(big), header(text, "x-big"));
+  }
+
+  @Test
+  public void testJsonpWrapsPooledBody() {
+    HttpRequest request = new HttpRequest();
+    request.setHttpConfig(new HttpConfig(80, null, null, null));
+    request.addParam(request.httpConfig.getJsonpParamName(), "cb");
+    HttpResponse response = new HttpResponse();
+    response.setHttpRequestPacket(request);
+    response.setJsonBody(BODY);
+
+    ByteBuffer encoded = HttpResponseEncoder.encode(response, null, null);
+    assertResponse(encoded, "cb(" + Json.getJson().toJson(BODY) + ")");
+  }
+
+  @Test
+  public void testGzipPooledBody() throws IOException {
+    Map<String, Object> body = new LinkedHashMap<>();
+    for (int i = 0; i < 50; i++) {
+      body.put("key" + i, "value value value " + i);
+    }
+    String json = Json.getJson().toJson(body);
+    HttpRequest request = new HttpRequest();
+    request.setHttpConfig(new HttpConfig(80, null, null, null));
+    HttpResponse response = new HttpResponse();
+    response.setHttpRequestPacket(request);
+    response.setJsonBody(body);
+
+    ByteBuffer encoded = HttpResponseEncoder.encode(response, null, null);
+    byte[] bytes = new byte[encoded.remaining()];
+    encoded.get(bytes);
+    int split = indexOf(bytes, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)) + 4;
+    String head = new String(bytes, 0, split, StandardCharsets.ISO_8859_1);
+    assertEquals("gzip", header(head, "content-encoding"));
+    assertEquals(String.valueOf(bytes.length - split), header(head, "content-length"));
+
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes, split, bytes.length - split))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+      assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testCloneResponseKeepsBody() {
+    HttpResponse response = new HttpResponse();
+    response.setJsonBody(BODY);
+    HttpResponse clone = HttpResponse.cloneResponse(null, response);
+    byte[] expected = Json.getJson().toJson(BODY).getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(expected, clone.getBody());
+    assertArrayEquals(expected, response.getBody());
+  }
+
+  private static String assertResponse(ByteBuffer encoded, String expectedBody) {
+    byte[] bytes = new byte[encoded.remaining()];
+    encoded.get(bytes);
+    String text = new String(bytes, StandardCharsets.UTF_8);
+    assertTrue(text, text.startsWith("HTTP/1.1 200"));
+    int split = text.indexOf("\r\n\r\n");
+    assertTrue(split > 0);
+    assertEquals(expectedBody, text.substring(split + 4));
+    assertEquals(String.valueOf(expectedBody.getBytes(StandardCharsets.UTF_8).length), header(text, "content-length"));
+    return text;
+  }
+
+  private static String header(String head, String name) {
+    for (String line : head.split("\r\n")) {
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+        return line.substring(colon + 1).trim();
+      }
+    }
+    return null;
+  }
+
+  private static int indexOf(byte[] bytes, byte[] target) {
+    outer: for (int i = 0; i <= bytes.length - target.length; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (bytes[i + j] != target[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
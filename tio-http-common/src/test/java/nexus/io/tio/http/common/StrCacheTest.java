@@ -0,0 +1,128 @@
+package nexus.io.tio.http.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * StrCache的表是全局的，这里的key都带上各自的前缀，统计数只比较前后的差值
+ */
+public class StrCacheTest {
+
+  /**
+   * "Aa"和"BB"的hash31相同，由它们拼成的等长字符串hash全部相同
+   */
+  private static List<String> colliding(String prefix, int blocks) {
+    List<String> keys = new ArrayList<>();
+    for (int bits = 0; bits < (1 << blocks); bits++) {
+      StringBuilder sb = new StringBuilder(prefix);
+      for (int i = 0; i < blocks; i++) {
+        sb.append((bits & (1 << i)) == 0 ? "Aa" : "BB");
+      }
+      keys.add(sb.toString());
+    }
+    return keys;
+  }
+
+  private static String get(String key) {
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    return StrCache.get(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void testCollidingKeysKeepTheirOwnValue() {
+    List<String> keys = colliding("/collide/", 2);
+    int hash = keys.get(0).hashCode();
+    for (String key : keys) {
+      assertEquals(hash, key.hashCode());
+    }
+
+    List<String> first = new ArrayList<>();
+    for (String key : keys) {
+      first.add(get(key));
+    }
+    long hits = StrCache.getHits();
+    for (int i = 0; i < keys.size(); i++) {
+      String value = get(keys.get(i));
+      assertEquals(keys.get(i), value);
+      // 没满时同一个key每次拿到的是同一个实例
+      assertSame(first.get(i), value);
+    }
+    assertEquals(keys.size(), StrCache.getHits() - hits);
+  }
+
+  @Test
+  public void testMoreCollisionsThanProbeSlots() {
+    // 32个key挤在同一组槽位上，超过探测范围的被淘汰，但读到的永远是自己的字符串
+    List<String> keys = colliding("/evict/", 5);
+    long evictions = StrCache.getEvictions();
+    for (int round = 0; round < 3; round++) {
+      for (String key : keys) {
+        assertEquals(key, get(key));
+      }
+    }
+    assertTrue(StrCache.getEvictions() > evictions);
+  }
+
+  @Test
+  public void testHeapAndDirectShareEntries() {
+    String key = "/shared/heap-and-direct";
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 4);
+    direct.put(new byte[] { 'x', 'x', 'x', 'x' });
+    direct.put(bytes);
+
+    String fromDirect = StrCache.get(direct, 4, bytes.length);
+    assertEquals(key, fromDirect);
+    assertSame(fromDirect, StrCache.get(bytes, 0, bytes.length));
+
+    // heap的ByteBuffer走数组，arrayOffset要算进去
+    ByteBuffer slice = ByteBuffer.wrap(("yy" + key).getBytes(StandardCharsets.UTF_8), 2, bytes.length).slice();
+    assertSame(fromDirect, StrCache.get(slice, 0, bytes.length));
+    // 不改变buffer的position
+    assertEquals(4 + bytes.length, direct.position());
+  }
+
+  @Test
+  public void testLowercaseWithCollidingKeys() {
+    List<String> keys = colliding("X-Low-", 4);
+    for (int round = 0; round < 2; round++) {
+      for (String key : keys) {
+        assertEquals(key.toLowerCase(), StrCache.getLowercase(key));
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentCollidingLookups() throws Exception {
+    List<String> keys = colliding("/concurrent/", 4);
+    AtomicReference<String> wrong = new AtomicReference<>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      int offset = t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 20000 && wrong.get() == null; i++) {
+          String key = keys.get((i + offset) % keys.size());
+          String value = get(key);
+          if (!key.equals(value)) {
+            wrong.set(key + " -> " + value);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(wrong.get());
+  }
+}
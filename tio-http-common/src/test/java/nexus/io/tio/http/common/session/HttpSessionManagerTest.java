@@ -0,0 +1,90 @@
+package nexus.io.tio.http.common.session;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+
+import org.junit.Test;
+
+import nexus.io.tio.utils.cache.mapcache.ConcurrentMapCache;
+
+public class HttpSessionManagerTest {
+
+  @Test
+  public void testFailedWriteIsRequeued() {
+    FailingStore store = new FailingStore();
+    HttpSessionManager manager = new HttpSessionManager(store);
+    manager.setFlushIntervalMillis(60_000);
+
+    HttpSession httpSession = new HttpSession("s1");
+    httpSession.setDirty(true);
+    manager.save(httpSession);
+
+    store.failures = 1;
+    manager.flush();
+    assertNull(store.get("s1"));
+    // 写失败的还在队列中，读到的仍是它
+    assertSame(httpSession, manager.get("s1"));
+
+    manager.flush();
+    assertNotNull(store.get("s1"));
+  }
+
+  @Test
+  public void testSaveWritesDirtySessionOnce() {
+    FailingStore store = new FailingStore();
+    HttpSessionManager manager = new HttpSessionManager(store);
+
+    HttpSession httpSession = new HttpSession("s2");
+    manager.save(httpSession);
+    assertNull(store.get("s2"));
+
+    httpSession.setDirty(true);
+    manager.save(httpSession);
+    assertNotNull(store.get("s2"));
+  }
+
+  @Test
+  public void testFailedSaveKeepsSessionDirty() {
+    FailingStore store = new FailingStore();
+    HttpSessionManager manager = new HttpSessionManager(store);
+
+    HttpSession httpSession = new HttpSession("s3");
+    httpSession.setDirty(true);
+    store.failures = 1;
+    try {
+      manager.save(httpSession);
+      fail();
+    } catch (IllegalStateException e) {
+      // 写失败，修改还在，下次save再写
+    }
+    assertTrue(httpSession.isDirty());
+    assertNull(store.get("s3"));
+
+    manager.save(httpSession);
+    assertFalse(httpSession.isDirty());
+    assertNotNull(store.get("s3"));
+  }
+
+  private static class FailingStore extends ConcurrentMapCache {
+    private int failures;
+
+    private FailingStore() {
+      super("session-test", null, null, null);
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+      if (failures > 0) {
+        failures--;
+        throw new IllegalStateException("store unavailable");
+      }
+      super.put(key, value);
+    }
+  }
+}
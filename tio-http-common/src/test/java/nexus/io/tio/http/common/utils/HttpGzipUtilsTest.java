@@ -0,0 +1,26 @@
+package nexus.io.tio.http.common.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpGzipUtilsTest {
+
+  @Test
+  public void testAccepts() {
+    assertTrue(HttpGzipUtils.accepts("gzip, deflate, br", "gzip"));
+    assertTrue(HttpGzipUtils.accepts("GZIP;q=0.5", "gzip"));
+    assertFalse(HttpGzipUtils.accepts("gzip;q=0", "gzip"));
+    assertFalse(HttpGzipUtils.accepts("deflate", "gzip"));
+    assertFalse(HttpGzipUtils.accepts(null, "gzip"));
+  }
+
+  @Test
+  public void testExactCodingWinsOverWildcard() {
+    assertTrue(HttpGzipUtils.accepts("*;q=0, gzip", "gzip"));
+    assertFalse(HttpGzipUtils.accepts("*;q=0, gzip", "br"));
+    assertFalse(HttpGzipUtils.accepts("*, gzip;q=0", "gzip"));
+    assertTrue(HttpGzipUtils.accepts("*, gzip;q=0", "br"));
+  }
+}
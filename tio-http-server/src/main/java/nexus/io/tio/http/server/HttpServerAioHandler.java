@@ -3,7 +3,9 @@ package nexus.io.tio.http.server;
 import java.nio.ByteBuffer;
 
 import nexus.io.aio.Packet;
+import nexus.io.http.common.HttpResponsePacket;
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
 import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.TioConfig;
 import nexus.io.tio.core.exception.TioDecodeException;
@@ -45,6 +47,10 @@ public class HttpServerAioHandler implements ServerAioHandler {
 
   @Override
   public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext channelContext) {
+    if (packet instanceof HttpResponsePacket) {
+      // 流式响应的chunk(HttpResponse.newOutputStream、SseEmitter)
+      return ((HttpResponsePacket) packet).toByteBuffer(tioConfig.getByteOrder());
+    }
     HttpResponse httpResponse = (HttpResponse) packet;
     return HttpResponseEncoder.encode(httpResponse, tioConfig, channelContext);
   }
@@ -59,29 +65,40 @@ public class HttpServerAioHandler implements ServerAioHandler {
   @Override
   public void handler(Packet packet, ChannelContext channelContext) throws Exception {
     HttpRequest request = (HttpRequest) packet;
+    try {
+      String ip = request.getClientIp();
 
-    String ip = request.getClientIp();
-
-    if (channelContext.tioConfig.ipBlacklist != null) {
-      if (channelContext.tioConfig.ipBlacklist.isInBlacklist(ip)) {
-        HttpResponse httpResponse = request.httpConfig.getRespForBlackIp();
-        if (httpResponse != null) {
-          if (httpResponse.isBlockSend()) {
-            Tio.bSend(channelContext, httpResponse);
+      if (channelContext.tioConfig.ipBlacklist != null) {
+        if (channelContext.tioConfig.ipBlacklist.isInBlacklist(ip)) {
+          HttpResponse httpResponse = request.httpConfig.getRespForBlackIp();
+          if (httpResponse != null) {
+            if (httpResponse.isBlockSend()) {
+              Tio.bSend(channelContext, httpResponse);
+            } else {
+              Tio.send(channelContext, httpResponse);
+            }
+            return;
           } else {
-            Tio.send(channelContext, httpResponse);
+            Tio.remove(channelContext, ip + "in the blacklist");
+            return;
           }
-          return;
-        } else {
-          Tio.remove(channelContext, ip + "in the blacklist");
-          return;
         }
       }
-    }
 
-    HttpResponse httpResponse = requestHandler.handler(request);
-    if (httpResponse != null && httpResponse.isSend()) {
-      Tio.send(channelContext, httpResponse);
+      HttpResponse httpResponse = requestHandler.handler(request);
+      if (httpResponse != null) {
+        // pipelining时按请求的顺序发送响应
+        httpResponse.setRespId(request.getId());
+        if (httpResponse.isSend()) {
+          Tio.send(channelContext, httpResponse);
+        } else {
+          // 响应之后异步发出，发出前后面请求的响应要等着
+          PipelineQueue.defer(channelContext, request.getId());
+        }
+      }
+    } finally {
+      // 流式接收请求体时产生的临时文件
+      request.releaseBody();
     }
   }
 
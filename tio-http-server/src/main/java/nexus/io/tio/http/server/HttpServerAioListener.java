@@ -32,10 +32,19 @@ public class HttpServerAioListener implements ServerAioListener {
     // if ((channelContext.sslFacadeContext == null || channelContext.sslFacadeContext.isHandshakeCompleted())/** && packet instanceof HttpResponse*/
     // ) {}
 
+    if (!(packet instanceof HttpResponse)) {
+      // 流式响应的后续数据，连接是否保持由packet.keepConnection决定
+      return;
+    }
     HttpResponse httpResponse = (HttpResponse) packet;
     HttpRequest request = httpResponse.getHttpRequest();
     // String connection = request.getConnection();
 
+    if (request != null && httpResponse.isKeepConnection()
+        && HttpConst.HttpVersion.V1_0.equals(request.requestLine.version)) {
+      // HTTP/1.0的响应头发出后还有响应体要发(如转发上游的响应)，由最后一个packet关闭连接
+      return;
+    }
     if (request != null) {
       if (request.httpConfig.compatible1_0) {
         switch (request.requestLine.version) {
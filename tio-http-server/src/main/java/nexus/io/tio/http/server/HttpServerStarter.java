@@ -305,6 +305,10 @@ public class HttpServerStarter {
 
   public void stop() throws IOException {
     tioServer.stop();
+    if (httpConfig.getHttpSessionManager() != null) {
+      // 还没写回的session
+      httpConfig.getHttpSessionManager().flush();
+    }
   }
 
   public TioServer getTioServer() {
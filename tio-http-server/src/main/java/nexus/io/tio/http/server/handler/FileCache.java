@@ -4,6 +4,9 @@ import java.io.Serializable;
 
 import nexus.io.tio.http.common.HeaderValue;
 
+/**
+ * 缓存的静态文件。content是原始内容，压缩后的版本在放入缓存时算好，请求时按Accept-Encoding直接选用
+ */
 public class FileCache implements Serializable {
 
   private static final long serialVersionUID = 6517890350387789902L;
@@ -13,6 +16,15 @@ public class FileCache implements Serializable {
   private HeaderValue contentType;
   private HeaderValue contentEncoding;
   private boolean hasGzipped;
+  private HeaderValue etag;
+  /**
+   * gzip后的内容，优先用同目录下预压缩的.gz文件；不适合压缩或压缩后没有变小时为null
+   */
+  private byte[] gzipContent;
+  /**
+   * 同目录下预压缩的.br文件的内容，没有时为null
+   */
+  private byte[] brContent;
 
   public FileCache() {
   }
@@ -64,4 +76,28 @@ public class FileCache implements Serializable {
   public void setHasGzipped(boolean hasGzipped) {
     this.hasGzipped = hasGzipped;
   }
+
+  public HeaderValue getEtag() {
+    return etag;
+  }
+
+  public void setEtag(HeaderValue etag) {
+    this.etag = etag;
+  }
+
+  public byte[] getGzipContent() {
+    return gzipContent;
+  }
+
+  public void setGzipContent(byte[] gzipContent) {
+    this.gzipContent = gzipContent;
+  }
+
+  public byte[] getBrContent() {
+    return brContent;
+  }
+
+  public void setBrContent(byte[] brContent) {
+    this.brContent = brContent;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,407 @@
+package nexus.io.tio.http.server.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import nexus.io.http.common.sse.ChunkedPacket;
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.PipelineQueue;
+import nexus.io.tio.core.Tio;
+import nexus.io.tio.core.TioConfig;
+import nexus.io.tio.core.pool.BufferPoolUtils;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
+import nexus.io.tio.core.pool.SharedByteBuffer;
+import nexus.io.tio.http.common.HeaderName;
+import nexus.io.tio.http.common.HeaderValue;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
+import nexus.io.tio.http.common.utils.HttpGzipUtils;
+import nexus.io.tio.http.common.utils.StreamingGzip;
+import nexus.io.tio.utils.environment.EnvUtils;
+
+/**
+ * 异步发送chunked响应体，每个流一个实例，可以多个线程同时写。<br>
+ * 数据直接写进从BufferPoolUtils借来的buffer(前面留出chunk头的位置)，coalesceMillis内写入的数据合成一个chunk发出，
+ * 攒满chunkSize时马上发；发送不等待，写完后buffer归还给BufferPoolUtils。<br>
+ * 不再用Tio.bSend阻塞生产方：排队未发的数据超过highWaterBytes时isWritable()返回false，用onWritable()在降到一半时得到通知<br>
+ * 客户端接受gzip时用StreamingGzip压缩：数据先写进本流自己的堆内buffer，发送时每个chunk压缩一次，chunk越大压缩率越高
+ */
+public class ChunkedEmitter {
+  /**
+   * chunk头的位置：最多6位16进制的长度 + CRLF
+   */
+  private static final int HEADER_RESERVED = 8;
+  /**
+   * 16进制长度不超过6位，压缩后可能略大于原始数据，所以留出余量
+   */
+  private static final int MAX_CHUNK_SIZE = 1 << 23;
+  private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+  /**
+   * 尾部留出chunk结尾的CRLF和结束的chunk，complete()时不用再借buffer
+   */
+  private static final int TAIL_RESERVED = 2 + LAST_CHUNK.length;
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+  private static final byte[] DATA = "data:".getBytes();
+  private static final byte[] EVENT = "event:".getBytes();
+  private static final byte[] ID = "id:".getBytes();
+
+  private static final ScheduledExecutorService FLUSHER = new ScheduledThreadPoolExecutor(1, runnable -> {
+    Thread thread = new Thread(runnable, "tio-chunk-flusher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final ChannelContext channelContext;
+  /**
+   * 合并多少毫秒内写入的数据，<=0时每次写入都马上发
+   */
+  private long coalesceMillis = EnvUtils.getLong("http.chunk.coalesce.millis", 5L);
+  /**
+   * 一个chunk最多多少字节
+   */
+  private int chunkSize = EnvUtils.getInt("http.chunk.size", 16 * 1024);
+  /**
+   * 排队未发的字节数达到此值时isWritable()返回false
+   */
+  private long highWaterBytes = EnvUtils.getLong("http.chunk.high.water.bytes", 256 * 1024L);
+
+  /**
+   * 正在攒的chunk，数据从HEADER_RESERVED开始，写到position
+   */
+  private ByteBuffer buffer;
+  private int end;
+  private boolean flushScheduled;
+  private boolean closed;
+  /**
+   * 不为null时，buffer是本流的堆内buffer，发送时压缩到新借的buffer中
+   */
+  private final StreamingGzip gzip;
+  /**
+   * 不为null时是这个请求的响应体，pipelining时按请求的顺序发送(PipelineQueue.startStream)
+   */
+  private Long respId;
+
+  public ChunkedEmitter(ChannelContext channelContext) {
+    this(channelContext, null);
+  }
+
+  /**
+   * @param gzip 压缩响应体，null表示不压缩
+   */
+  public ChunkedEmitter(ChannelContext channelContext, StreamingGzip gzip) {
+    this.channelContext = channelContext;
+    this.gzip = gzip;
+  }
+
+  /**
+   * 发出响应头(Transfer-Encoding: chunked，客户端接受时加上Content-Encoding: gzip)，返回用于发送响应体的ChunkedEmitter；
+   * 调用后httpResponse.isSend()为false，handler返回httpResponse即可
+   */
+  public static ChunkedEmitter open(HttpRequest request, HttpResponse httpResponse) {
+    StreamingGzip gzip = HttpGzipUtils.streamGzip(request, httpResponse);
+    httpResponse.addHeader(HeaderName.Transfer_Encoding, HeaderValue.from("chunked"));
+    httpResponse.setSkipAddContentLength(true);
+    httpResponse.setRespId(request.getId());
+    PipelineQueue.startStream(request.channelContext, request.getId());
+    Tio.send(request.channelContext, httpResponse);
+    httpResponse.setSend(false);
+    ChunkedEmitter emitter = new ChunkedEmitter(request.channelContext, gzip);
+    emitter.respId = request.getId();
+    return emitter;
+  }
+
+  /**
+   * 写一个SSE事件：data:...\n\n，data中的换行拆成多个data行
+   *
+   * @return false: 流已经结束或连接已经关闭，数据被丢弃
+   */
+  public boolean event(String data) {
+    return event(null, null, data);
+  }
+
+  public boolean event(String event, String data) {
+    return event(null, event, data);
+  }
+
+  /**
+   * @param id    可以为null
+   * @param event 可以为null
+   * @param data
+   * @return false: 流已经结束或连接已经关闭，数据被丢弃
+   */
+  public synchronized boolean event(String id, String event, String data) {
+    if (!checkOpen()) {
+      return false;
+    }
+    if (id != null) {
+      putLine(ID, id);
+    }
+    if (event != null) {
+      putLine(EVENT, event);
+    }
+    putLine(DATA, data == null ? "" : data);
+    ensure(1);
+    buffer.put((byte) '\n');
+    afterWrite();
+    return true;
+  }
+
+  /**
+   * 写原始数据
+   *
+   * @return false: 流已经结束或连接已经关闭，数据被丢弃
+   */
+  public boolean write(byte[] bytes) {
+    return write(bytes, 0, bytes.length);
+  }
+
+  public synchronized boolean write(byte[] bytes, int offset, int length) {
+    if (!checkOpen()) {
+      return false;
+    }
+    while (length > 0) {
+      ensure(1);
+      int n = Math.min(length, end - buffer.position());
+      buffer.put(bytes, offset, n);
+      offset += n;
+      length -= n;
+    }
+    afterWrite();
+    return true;
+  }
+
+  /**
+   * 马上发出已经写入的数据
+   */
+  public synchronized void flush() {
+    flushScheduled = false;
+    sendChunk(false);
+  }
+
+  /**
+   * 发出剩下的数据和结束的chunk，发完后关闭连接
+   */
+  public synchronized void complete() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (channelContext.isClosed || channelContext.isRemoved) {
+      release();
+      return;
+    }
+    if (buffer == null) {
+      buffer = allocate();
+    }
+    sendChunk(true);
+    if (respId != null) {
+      PipelineQueue.endStream(channelContext, respId);
+    }
+  }
+
+  /**
+   * @return false: 排队未发的数据超过了highWaterBytes(或连接的发送队列到了高水位)，生产方应暂停，用onWritable()等待
+   */
+  public boolean isWritable() {
+    long pending;
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      pending = buffer == null ? 0 : buffer.position() - HEADER_RESERVED;
+    }
+    return channelContext.sendQueue.bytes() + pending < highWaterBytes && channelContext.isWritable();
+  }
+
+  /**
+   * 排队的数据降到highWaterBytes的一半及以下时执行一次listener，现在就不超过时马上执行；连接关闭时也会执行，listener要用isClosed()判断
+   */
+  public void onWritable(Runnable listener) {
+    channelContext.sendQueue.onDrained(highWaterBytes / 2, listener);
+  }
+
+  public synchronized boolean isClosed() {
+    return closed || channelContext.isClosed || channelContext.isRemoved;
+  }
+
+  private boolean checkOpen() {
+    if (closed) {
+      return false;
+    }
+    if (channelContext.isClosed || channelContext.isRemoved) {
+      closed = true;
+      release();
+      return false;
+    }
+    return true;
+  }
+
+  private void afterWrite() {
+    if (coalesceMillis <= 0) {
+      sendChunk(false);
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      FLUSHER.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 写一行name + value + \n，value中的\r\n、\r、\n都拆成新的一行，编码为UTF-8
+   */
+  private void putLine(byte[] name, String value) {
+    ensure(name.length);
+    buffer.put(name);
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      // 一个字符最多4个字节，换行时最多1 + name.length个
+      ensure(Math.max(4, 1 + name.length));
+      if (c < 0x80) {
+        if (c == '\r' || c == '\n') {
+          if (c == '\r' && i + 1 < length && value.charAt(i + 1) == '\n') {
+            i++;
+          }
+          buffer.put((byte) '\n').put(name);
+        } else {
+          buffer.put((byte) c);
+        }
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, value.charAt(++i));
+        buffer.put((byte) (0xF0 | (cp >> 18))).put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+            .put((byte) (0x80 | ((cp >> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    ensure(1);
+    buffer.put((byte) '\n');
+  }
+
+  /**
+   * 保证当前chunk还能写下n个字节，写不下时先把它发出去
+   */
+  private void ensure(int n) {
+    if (buffer != null && end - buffer.position() >= n) {
+      return;
+    }
+    sendChunk(false);
+    if (buffer == null) {
+      buffer = allocate();
+    }
+  }
+
+  private ByteBuffer allocate() {
+    int size = Math.max(256, Math.min(chunkSize, MAX_CHUNK_SIZE));
+    ByteBuffer buf;
+    if (gzip != null) {
+      // 压缩时要用byte[]，这个buffer不发出去，一直复用
+      buf = ByteBuffer.allocate(HEADER_RESERVED + size + TAIL_RESERVED);
+    } else {
+      buf = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, HEADER_RESERVED + size + TAIL_RESERVED);
+    }
+    // 池中借到的buffer可能比要的大，chunk仍按chunkSize截断
+    end = Math.min(buf.capacity() - TAIL_RESERVED, HEADER_RESERVED + size);
+    buf.position(HEADER_RESERVED);
+    return buf;
+  }
+
+  /**
+   * 把攒的数据作为一个chunk发出去
+   *
+   * @param last true: 后面加上结束的chunk，发完后关闭连接
+   */
+  private void sendChunk(boolean last) {
+    ByteBuffer buf = buffer;
+    if (buf == null) {
+      return;
+    }
+    int length = buf.position() - HEADER_RESERVED;
+    if (length == 0 && !last) {
+      return;
+    }
+    if (gzip != null) {
+      buf = compress(buf, length, last);
+      length = buf.position() - HEADER_RESERVED;
+    } else {
+      buffer = null;
+    }
+    int start = HEADER_RESERVED;
+    if (length > 0) {
+      buf.put((byte) '\r').put((byte) '\n');
+      buf.put(--start, (byte) '\n');
+      buf.put(--start, (byte) '\r');
+      do {
+        buf.put(--start, HEX[length & 0xF]);
+        length >>>= 4;
+      } while (length > 0);
+    }
+    if (last) {
+      buf.put(LAST_CHUNK);
+    }
+    buf.limit(buf.position());
+    buf.position(start);
+
+    SharedByteBuffer sharedByteBuffer = new SharedByteBuffer(buf);
+    ChunkedPacket packet = new ChunkedPacket();
+    packet.setPreEncodedByteBuffer(sharedByteBuffer.retain());
+    packet.setMeta(new SharedBufferPacketMeta(sharedByteBuffer));
+    packet.setKeepConnection(!last);
+    packet.setRespId(respId);
+    sharedByteBuffer.release();
+    Tio.send(channelContext, packet);
+  }
+
+  /**
+   * 压缩raw中的数据，放到新借的buffer中(同样从HEADER_RESERVED开始)，raw清空后继续用
+   */
+  private ByteBuffer compress(ByteBuffer raw, int length, boolean last) {
+    byte[] bytes = raw.array();
+    int offset = raw.arrayOffset() + HEADER_RESERVED;
+    int n = last ? gzip.finish(bytes, offset, length) : gzip.compress(bytes, offset, length);
+    raw.position(HEADER_RESERVED);
+    ByteBuffer buf = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, HEADER_RESERVED + n + TAIL_RESERVED);
+    buf.position(HEADER_RESERVED);
+    buf.put(gzip.output(), 0, n);
+    return buf;
+  }
+
+  private void release() {
+    if (gzip != null) {
+      gzip.release();
+      buffer = null;
+    } else if (buffer != null) {
+      BufferPoolUtils.clean(buffer);
+      buffer = null;
+    }
+  }
+
+  public long getCoalesceMillis() {
+    return coalesceMillis;
+  }
+
+  public void setCoalesceMillis(long coalesceMillis) {
+    this.coalesceMillis = coalesceMillis;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public long getHighWaterBytes() {
+    return highWaterBytes;
+  }
+
+  public void setHighWaterBytes(long highWaterBytes) {
+    this.highWaterBytes = highWaterBytes;
+  }
+}
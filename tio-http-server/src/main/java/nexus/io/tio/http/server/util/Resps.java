@@ -470,6 +470,11 @@ public class Resps {
     } else {
       if (body.getClass() == String.class || ClassUtil.isBasicType(body.getClass())) {
         ret = string(request, body + "", charset, getMimeTypeStr(MimeType.APPLICATION_JSON, charset));
+      } else if (HttpResponse.isUtf8(charset)) {
+        // 直接序列化到池化的ByteBuffer，不经过String和byte[]
+        ret = new HttpResponse(request).setJsonBody(body);
+        ret.addHeader(HeaderName.Content_Type,
+            HeaderValue.Content_Type.from(getMimeTypeStr(MimeType.APPLICATION_JSON, charset)));
       } else {
         ret = string(request, Json.getJson().toJson(body), charset, getMimeTypeStr(MimeType.APPLICATION_JSON, charset));
       }
@@ -483,6 +488,10 @@ public class Resps {
     } else {
       if (body.getClass() == String.class || ClassUtil.isBasicType(body.getClass())) {
         response = string(response, body + "", charset, getMimeTypeStr(MimeType.APPLICATION_JSON, charset));
+      } else if (HttpResponse.isUtf8(charset)) {
+        response.setJsonBody(body);
+        response.addHeader(HeaderName.Content_Type,
+            HeaderValue.Content_Type.from(getMimeTypeStr(MimeType.APPLICATION_JSON, charset)));
       } else {
         response = string(response, Json.getJson().toJson(body), charset,
             getMimeTypeStr(MimeType.APPLICATION_JSON, charset));
@@ -5,12 +5,25 @@ import java.nio.charset.StandardCharsets;
 import nexus.io.http.common.sse.ChunkedPacket;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.core.Tio;
+import nexus.io.tio.http.common.HttpRequest;
+import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.http.common.encoder.ChunkEncoder;
 
+/**
+ * 下面的pushXxx每次都生成新的byte[]并用Tio.bSend等待发送完成；推送频繁时用open()返回的ChunkedEmitter，异步发送并合并小的事件
+ */
 public class SseEmitter {
 
   public static String LFLF = "\n\n";
 
+  /**
+   * 发出SSE的响应头，返回用于推送事件的ChunkedEmitter，结束时调用ChunkedEmitter.complete()
+   */
+  public static ChunkedEmitter open(HttpRequest request, HttpResponse httpResponse) {
+    httpResponse.addServerSentEventsHeader();
+    return ChunkedEmitter.open(request, httpResponse);
+  }
+
   public static boolean pushSSEChunk(ChannelContext channelContext, String string) {
     String text = "data:" + string + LFLF;
     byte[] bytes = text.getBytes();
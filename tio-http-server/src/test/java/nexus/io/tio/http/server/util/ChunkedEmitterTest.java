@@ -0,0 +1,235 @@
+package nexus.io.tio.http.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.http.common.sse.ChunkedPacket;
+import nexus.io.tio.core.pool.SharedBufferPacketMeta;
+import nexus.io.tio.http.common.utils.StreamingGzip;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+
+/**
+ * 用packetConverter截下Tio.send发出的chunk，检查合并、分块和结尾
+ */
+public class ChunkedEmitterTest {
+
+  private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+  private ServerChannelContext channelContext;
+
+  @Before
+  public void setUp() {
+    ServerTioConfig tioConfig = new ServerTioConfig("chunked-emitter-test");
+    tioConfig.packetConverter = (packet, channelContext) -> {
+      chunks.add(new Chunk(packet));
+      return null;
+    };
+    channelContext = new ServerChannelContext(tioConfig, "chunked-emitter-test");
+    channelContext.isVirtual = false;
+    channelContext.isClosed = false;
+  }
+
+  @Test
+  public void testWritesCoalescedUntilFlush() {
+    ChunkedEmitter emitter = emitter(60000L);
+    assertTrue(emitter.event("one"));
+    assertTrue(emitter.event("tick", "two"));
+    assertTrue(emitter.event("3", null, "three"));
+    assertTrue(chunks.isEmpty());
+
+    emitter.flush();
+    assertEquals(1, chunks.size());
+    Chunk chunk = chunks.poll();
+    assertEquals("data:one\n\nevent:tick\ndata:two\n\nid:3\ndata:three\n\n", chunk.text());
+    assertTrue(chunk.keepConnection);
+
+    // 没有新数据时flush不发空chunk
+    emitter.flush();
+    assertTrue(chunks.isEmpty());
+  }
+
+  @Test
+  public void testScheduledFlushSendsOneChunk() throws Exception {
+    ChunkedEmitter emitter = emitter(50L);
+    for (int i = 0; i < 5; i++) {
+      emitter.write(("m" + i + ";").getBytes(StandardCharsets.US_ASCII));
+    }
+    Chunk chunk = chunks.poll(5, TimeUnit.SECONDS);
+    assertNotNull(chunk);
+    assertEquals("m0;m1;m2;m3;m4;", chunk.text());
+    assertNull(chunks.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testNoCoalescing() {
+    ChunkedEmitter emitter = emitter(0L);
+    emitter.event("a");
+    emitter.event("b");
+    assertEquals(2, chunks.size());
+    assertEquals("data:a\n\n", chunks.poll().text());
+    assertEquals("data:b\n\n", chunks.poll().text());
+  }
+
+  @Test
+  public void testFullChunkSentWithoutWaiting() {
+    ChunkedEmitter emitter = emitter(60000L);
+    emitter.setChunkSize(256);
+    byte[] bytes = new byte[600];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ('a' + i % 26);
+    }
+    emitter.write(bytes);
+    // 攒满的两个chunk马上发出，剩下的等flush
+    assertEquals(2, chunks.size());
+    StringBuilder sb = new StringBuilder();
+    sb.append(chunks.poll().text()).append(chunks.poll().text());
+    assertEquals(512, sb.length());
+    emitter.flush();
+    sb.append(chunks.poll().text());
+    assertEquals(new String(bytes, StandardCharsets.US_ASCII), sb.toString());
+  }
+
+  @Test
+  public void testMultiLineAndUtf8Data() {
+    ChunkedEmitter emitter = emitter(60000L);
+    emitter.event("第一行\r\n第二行\nthird\r😀");
+    emitter.flush();
+    assertEquals("data:第一行\ndata:第二行\ndata:third\ndata:😀\n\n", chunks.poll().text());
+  }
+
+  @Test
+  public void testCompleteSendsPendingDataAndLastChunk() {
+    ChunkedEmitter emitter = emitter(60000L);
+    emitter.event("bye");
+    emitter.complete();
+
+    Chunk chunk = chunks.poll();
+    assertEquals("data:bye\n\n", chunk.text());
+    assertTrue(chunk.last);
+    assertFalse(chunk.keepConnection);
+    assertTrue(chunks.isEmpty());
+
+    assertTrue(emitter.isClosed());
+    assertFalse(emitter.event("late"));
+    assertFalse(emitter.isWritable());
+    emitter.complete();
+    assertTrue(chunks.isEmpty());
+  }
+
+  @Test
+  public void testPendingBytesCountTowardsHighWater() {
+    ChunkedEmitter emitter = emitter(60000L);
+    emitter.setHighWaterBytes(100);
+    emitter.write(new byte[60]);
+    assertTrue(emitter.isWritable());
+    emitter.write(new byte[60]);
+    assertFalse(emitter.isWritable());
+    emitter.flush();
+    assertTrue(emitter.isWritable());
+  }
+
+  @Test
+  public void testClosedConnectionDropsData() {
+    ChunkedEmitter emitter = emitter(60000L);
+    emitter.event("a");
+    channelContext.isClosed = true;
+    assertFalse(emitter.event("b"));
+    assertTrue(emitter.isClosed());
+    emitter.complete();
+    assertTrue(chunks.isEmpty());
+  }
+
+  @Test
+  public void testGzipAcrossChunks() throws Exception {
+    ChunkedEmitter emitter = new ChunkedEmitter(channelContext, new StreamingGzip());
+    emitter.setCoalesceMillis(60000L);
+    StringBuilder expected = new StringBuilder();
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 50; i++) {
+        String data = "round " + round + " event " + i;
+        emitter.event(data);
+        expected.append("data:").append(data).append("\n\n");
+      }
+      emitter.flush();
+    }
+    emitter.complete();
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    Chunk chunk;
+    int count = 0;
+    while ((chunk = chunks.poll()) != null) {
+      compressed.write(chunk.payload);
+      count++;
+    }
+    assertEquals(4, count);
+    // 每个chunk SYNC_FLUSH，连起来是一个完整的gzip流
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+    ByteArrayOutputStream plain = new ByteArrayOutputStream();
+    byte[] buf = new byte[1024];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      plain.write(buf, 0, n);
+    }
+    assertEquals(expected.toString(), new String(plain.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private ChunkedEmitter emitter(long coalesceMillis) {
+    ChunkedEmitter emitter = new ChunkedEmitter(channelContext);
+    emitter.setCoalesceMillis(coalesceMillis);
+    return emitter;
+  }
+
+  /**
+   * 按chunked编码拆出一个packet中的数据，拆完后释放借来的buffer
+   */
+  private static class Chunk {
+    private final byte[] payload;
+    private final boolean last;
+    private final boolean keepConnection;
+
+    private Chunk(Packet packet) {
+      ByteBuffer buffer = packet.getPreEncodedByteBuffer().duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      ((SharedBufferPacketMeta) packet.getMeta()).release();
+      keepConnection = ((ChunkedPacket) packet).isKeepConnection();
+
+      String raw = new String(bytes, StandardCharsets.ISO_8859_1);
+      int lineEnd = raw.indexOf("\r\n");
+      int length = Integer.parseInt(raw.substring(0, lineEnd), 16);
+      int start = lineEnd + 2;
+      String rest;
+      if (length == 0) {
+        payload = new byte[0];
+        rest = raw;
+      } else {
+        payload = new byte[length];
+        System.arraycopy(bytes, start, payload, 0, length);
+        assertEquals("\r\n", raw.substring(start + length, start + length + 2));
+        rest = raw.substring(start + length + 2);
+      }
+      last = rest.equals("0\r\n\r\n");
+      assertTrue(last || rest.isEmpty());
+    }
+
+    String text() {
+      return new String(payload, StandardCharsets.UTF_8);
+    }
+  }
+}
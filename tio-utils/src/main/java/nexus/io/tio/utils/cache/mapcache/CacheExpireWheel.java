@@ -0,0 +1,142 @@
+package nexus.io.tio.utils.cache.mapcache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nexus.io.tio.utils.cache.mapcache.ConcurrentMapCache.Node;
+import nexus.io.tio.utils.environment.EnvUtils;
+
+/**
+ * 所有ConcurrentMapCache共用的过期时间轮，只有一个线程。<br>
+ * 条目按过期时间放进对应的槽，TTI续期时只改条目上的过期时间，不动时间轮；到期时再看一次过期时间，没到就按新的时间重新放入。<br>
+ * 读取时会再判断一次是否过期，所以过期的数据最多在map中多留一个tick，但不会被读到
+ */
+class CacheExpireWheel {
+  private static final Logger log = LoggerFactory.getLogger(CacheExpireWheel.class);
+
+  static final CacheExpireWheel INSTANCE = new CacheExpireWheel(EnvUtils.getLong("tio.cache.map.expire.tick", 1000L));
+
+  /**
+   * 每个槽的时间跨度，单位：毫秒
+   */
+  private final long tick;
+  private final ConcurrentLinkedQueue<Node>[] buckets;
+  private final int mask;
+  /**
+   * 已处理到的tick
+   */
+  private volatile long processedTick;
+  private volatile Thread thread;
+
+  @SuppressWarnings("unchecked")
+  private CacheExpireWheel(long tick) {
+    this.tick = Math.max(tick, 1);
+    int size = 512;
+    this.buckets = new ConcurrentLinkedQueue[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.mask = size - 1;
+    this.processedTick = System.currentTimeMillis() / this.tick;
+  }
+
+  /**
+   * 按node.expireAt放入时间轮，已经放在更早的槽中时不用再放
+   */
+  void schedule(Node node) {
+    long expireAt = node.expireAt;
+    if (expireAt == Long.MAX_VALUE) {
+      return;
+    }
+    // 先启动，保证processedTick已按当前时间初始化，下面才能用它计算槽
+    start();
+    long t = (expireAt + tick - 1) / tick;
+    synchronized (node) {
+      if (node.removed || (node.scheduledTick != 0 && node.scheduledTick <= t)) {
+        return;
+      }
+      long processed = processedTick;
+      if (t <= processed) {
+        t = processed + 1;
+      }
+      // 原来所在槽中的那份在处理时因scheduledTick不符被丢弃
+      node.scheduledTick = t;
+      buckets[(int) (t & mask)].add(node);
+    }
+  }
+
+  /**
+   * 第一次schedule时启动线程，processedTick在线程发布前重置，避免从类加载时起逐个补处理空槽
+   */
+  private void start() {
+    if (thread != null) {
+      return;
+    }
+    synchronized (this) {
+      if (thread != null) {
+        return;
+      }
+      processedTick = System.currentTimeMillis() / tick;
+      Thread thread = new Thread(this::run, "tio-cache-expire");
+      thread.setDaemon(true);
+      thread.start();
+      this.thread = thread;
+    }
+  }
+
+  private void run() {
+    while (true) {
+      long nowTick = System.currentTimeMillis() / tick;
+      while (processedTick < nowTick) {
+        long t = processedTick + 1;
+        try {
+          process(t);
+        } catch (Throwable e) {
+          log.error(e.getMessage(), e);
+        }
+        processedTick = t;
+      }
+      long sleep = (processedTick + 1) * tick - System.currentTimeMillis();
+      if (sleep > 0) {
+        LockSupport.parkNanos(sleep * 1000_000L);
+      }
+    }
+  }
+
+  /**
+   * 处理一个槽：到期的过期掉，过期时间被延后的重新放入，后面几圈的留在槽中
+   */
+  private void process(long t) {
+    Iterator<Node> it = buckets[(int) (t & mask)].iterator();
+    long now = System.currentTimeMillis();
+    while (it.hasNext()) {
+      Node node = it.next();
+      boolean due;
+      synchronized (node) {
+        long scheduledTick = node.scheduledTick;
+        if (node.removed || scheduledTick != t) {
+          if (node.removed || scheduledTick < t) {
+            it.remove();
+          }
+          continue;
+        }
+        it.remove();
+        node.scheduledTick = 0;
+        due = node.expireAt <= now;
+      }
+      if (due) {
+        try {
+          node.cache.expire(node);
+        } catch (Throwable e) {
+          log.error(e.getMessage(), e);
+        }
+      } else {
+        schedule(node);
+      }
+    }
+  }
+}
@@ -1,52 +1,111 @@
 package nexus.io.tio.utils.cache.mapcache;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentHashMap.KeySetView;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nexus.io.tio.utils.cache.AbsCache;
 import nexus.io.tio.utils.cache.CacheRemovalListener;
 import nexus.io.tio.utils.cache.RemovalCause;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
+/**
+ * 用ConcurrentHashMap保存数据的本地缓存<br>
+ * 1、过期：所有实例共用一个时间轮(CacheExpireWheel)，put时不再每次创建定时任务；读取时也会判断是否过期<br>
+ * 2、容量：maxSize大于0时有上限(默认DEFAULT_MAX_SIZE)，超过后按CLOCK算法淘汰，最近读过的条目会多留一轮<br>
+ * 3、统计：命中、未命中、淘汰、过期的次数
+ */
 public class ConcurrentMapCache extends AbsCache {
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentMapCache.class);
+  /**
+   * 默认最多保存多少条，与CaffeineCacheFactory、GuavaCacheFactory的maximumSize一致
+   */
+  public static final long DEFAULT_MAX_SIZE = 5000000;
+
   private CacheRemovalListener<String, Serializable> removalListener;
-  private final ConcurrentHashMap<String, Serializable> map = new ConcurrentHashMap<>();
-  private final ConcurrentHashMap<String, Long> expirationTimes = new ConcurrentHashMap<>();
-  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  private final ConcurrentHashMap<String, Node> map = new ConcurrentHashMap<>();
+  private final Map<String, Serializable> mapView = new MapView();
+  /**
+   * 最多保存多少条，小于等于0表示不限制
+   */
+  private final long maxSize;
+
+  /**
+   * CLOCK的指针，只在持有evictLock时使用
+   */
+  private Iterator<Node> hand;
+  private final ReentrantLock evictLock = new ReentrantLock();
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LongAdder expiredCount = new LongAdder();
 
   public ConcurrentMapCache(String cacheName, Long timeToLiveSeconds, Long timeToIdleSeconds,
       CacheRemovalListener<String, Serializable> removalListener) {
+    this(cacheName, timeToLiveSeconds, timeToIdleSeconds, removalListener, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   *
+   * @param cacheName
+   * @param timeToLiveSeconds
+   * @param timeToIdleSeconds
+   * @param removalListener
+   * @param maxSize 最多保存多少条，小于等于0表示不限制
+   */
+  public ConcurrentMapCache(String cacheName, Long timeToLiveSeconds, Long timeToIdleSeconds,
+      CacheRemovalListener<String, Serializable> removalListener, long maxSize) {
     super(cacheName, timeToLiveSeconds, timeToIdleSeconds);
     this.removalListener = removalListener;
+    this.maxSize = maxSize;
   }
 
   @Override
   public void clear() {
+    for (Node node : map.values()) {
+      node.removed = true;
+    }
     map.clear();
-    expirationTimes.clear();
   }
 
   @Override
   public Serializable _get(String key) {
-    Serializable value = map.get(key);
-    if (value != null && getTimeToIdleSeconds() != null) {
-      // 更新 TTI 过期时间
-      long newExpirationTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(getTimeToIdleSeconds());
-      expirationTimes.put(key, newExpirationTime);
+    Node node = map.get(key);
+    if (node == null) {
+      missCount.increment();
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    if (node.expireAt <= now) {
+      expire(node);
+      missCount.increment();
+      return null;
+    }
+    Long timeToIdleSeconds = getTimeToIdleSeconds();
+    if (timeToIdleSeconds != null) {
+      // 更新 TTI 过期时间，时间轮到期时会按新的时间重新放入
+      node.expireAt = Math.min(node.liveUntil, now + TimeUnit.SECONDS.toMillis(timeToIdleSeconds));
     }
-    return value;
+    node.visited = true;
+    hitCount.increment();
+    return node.value;
   }
 
   @Override
   public Iterable<String> keys() {
-    KeySetView<String, Serializable> keySet = map.keySet();
-    return keySet;
+    return map.keySet();
   }
 
   @Override
@@ -56,56 +115,128 @@ public class ConcurrentMapCache extends AbsCache {
 
   @Override
   public void put(String key, Serializable value) {
-    map.put(key, value);
-    scheduleExpiration(key, getTimeToLiveSeconds());
+    put(key, value, getTimeToLiveSeconds());
   }
 
   @Override
   public void remove(String key) {
-    Serializable value = map.remove(key);
-    expirationTimes.remove(key);
-    if (removalListener != null && value != null) {
-      removalListener.onCacheRemoval(key, value, RemovalCause.EXPLICIT);
+    Node node = map.remove(key);
+    if (node != null) {
+      node.removed = true;
+      if (removalListener != null) {
+        removalListener.onCacheRemoval(key, node.value, RemovalCause.EXPLICIT);
+      }
     }
   }
 
   @Override
   public void putTemporary(String key, Serializable value) {
-    map.put(key, value);
-    scheduleExpiration(key, (long) MAX_EXPIRE_IN_LOCAL); // 临时条目的过期时间
+    put(key, value, (long) MAX_EXPIRE_IN_LOCAL); // 临时条目的过期时间
   }
 
   @Override
   public long ttl(String key) {
-    Long expirationTime = expirationTimes.get(key);
-    return expirationTime != null ? expirationTime - System.currentTimeMillis() : -1;
-  }
-
-  private void scheduleExpiration(final String key, Long ttl) {
-    long ttlExpirationTime = ttl != null ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl) : Long.MAX_VALUE;
-    long ttiExpirationTime = getTimeToIdleSeconds() != null
-        ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(getTimeToIdleSeconds())
-        : Long.MAX_VALUE;
-    long expirationTime = Math.min(ttlExpirationTime, ttiExpirationTime);
-    expirationTimes.put(key, expirationTime);
-
-    scheduler.schedule(() -> {
-      Long storedExpirationTime = expirationTimes.get(key);
-      if (storedExpirationTime != null && System.currentTimeMillis() >= storedExpirationTime) {
-        Serializable value = map.remove(key);
-        expirationTimes.remove(key);
-        if (removalListener != null && value != null) {
-          RemovalCause cause = System.currentTimeMillis() >= ttlExpirationTime ? RemovalCause.EXPIRED
-              : RemovalCause.EVICTED;
-          removalListener.onCacheRemoval(key, value, cause);
+    Node node = map.get(key);
+    if (node == null || node.expireAt == Long.MAX_VALUE) {
+      return -1;
+    }
+    return node.expireAt - System.currentTimeMillis();
+  }
+
+  /**
+   * 同一个key再次put时更新原来的条目，不新建条目也不再放一次时间轮(除非过期时间提前了)
+   */
+  private void put(String key, Serializable value, Long ttl) {
+    long now = System.currentTimeMillis();
+    long liveUntil = ttl != null ? now + TimeUnit.SECONDS.toMillis(ttl) : Long.MAX_VALUE;
+    Long timeToIdleSeconds = getTimeToIdleSeconds();
+    long expireAt = timeToIdleSeconds != null ? Math.min(liveUntil, now + TimeUnit.SECONDS.toMillis(timeToIdleSeconds))
+        : liveUntil;
+
+    boolean[] added = new boolean[1];
+    Node node = map.compute(key, (k, old) -> {
+      if (old == null) {
+        added[0] = true;
+        old = new Node(this, k);
+      }
+      old.value = value;
+      old.liveUntil = liveUntil;
+      old.expireAt = expireAt;
+      return old;
+    });
+    CacheExpireWheel.INSTANCE.schedule(node);
+
+    if (added[0] && maxSize > 0 && map.size() > maxSize) {
+      evict();
+    }
+  }
+
+  /**
+   * CLOCK淘汰：指针扫过的条目读过的话清掉标记留到下一轮，没读过的淘汰，直到不超过maxSize
+   */
+  private void evict() {
+    evictLock.lock();
+    try {
+      while (map.size() > maxSize) {
+        if (hand == null || !hand.hasNext()) {
+          hand = map.values().iterator();
+          if (!hand.hasNext()) {
+            return;
+          }
+        }
+        Node node = hand.next();
+        if (node.visited) {
+          node.visited = false;
+          continue;
         }
+        if (map.remove(node.key, node)) {
+          node.removed = true;
+          evictionCount.increment();
+          notifyRemoval(node, RemovalCause.EVICTED);
+        }
+      }
+    } finally {
+      evictLock.unlock();
+    }
+  }
+
+  /**
+   * 条目到期，由时间轮或读取时调用
+   */
+  void expire(Node node) {
+    long now = System.currentTimeMillis();
+    boolean[] expired = new boolean[1];
+    // 与put在同一个key上互斥，刚被put续期的条目不会被删掉
+    map.computeIfPresent(node.key, (k, old) -> {
+      if (old == node && old.expireAt <= now) {
+        expired[0] = true;
+        return null;
       }
-    }, expirationTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+      return old;
+    });
+    if (expired[0]) {
+      node.removed = true;
+      expiredCount.increment();
+      notifyRemoval(node, RemovalCause.EXPIRED);
+    }
   }
 
+  private void notifyRemoval(Node node, RemovalCause cause) {
+    if (removalListener != null) {
+      try {
+        removalListener.onCacheRemoval(node.key, node.value, cause);
+      } catch (Throwable e) {
+        log.error(e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * 返回的是只读视图，跳过已过期的条目
+   */
   @Override
   public Map<String, Serializable> asMap() {
-    return map;
+    return mapView;
   }
 
   @Override
@@ -113,4 +244,126 @@ public class ConcurrentMapCache extends AbsCache {
     return map.size();
   }
 
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return 因超过maxSize被淘汰的条数
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * @return 因TTL、TTI到期被删除的条数
+   */
+  public long getExpiredCount() {
+    return expiredCount.sum();
+  }
+
+  public double getHitRate() {
+    long hit = hitCount.sum();
+    long total = hit + missCount.sum();
+    return total == 0 ? 1.0 : (double) hit / total;
+  }
+
+  /**
+   * 缓存条目
+   */
+  static final class Node {
+    final ConcurrentMapCache cache;
+    final String key;
+    volatile Serializable value;
+    /**
+     * TTL截止时间，没有TTL时为Long.MAX_VALUE
+     */
+    volatile long liveUntil;
+    /**
+     * 过期时间，取TTL截止时间与TTI截止时间中较早的
+     */
+    volatile long expireAt;
+    /**
+     * CLOCK的访问标记
+     */
+    volatile boolean visited;
+    volatile boolean removed;
+    /**
+     * 在时间轮中的tick，0表示不在时间轮中，由CacheExpireWheel在持有node锁时修改
+     */
+    long scheduledTick;
+
+    Node(ConcurrentMapCache cache, String key) {
+      this.cache = cache;
+      this.key = key;
+    }
+  }
+
+  private class MapView extends AbstractMap<String, Serializable> {
+    private final Set<Entry<String, Serializable>> entrySet = new AbstractSet<Entry<String, Serializable>>() {
+      @Override
+      public Iterator<Entry<String, Serializable>> iterator() {
+        Iterator<Node> it = map.values().iterator();
+        return new Iterator<Entry<String, Serializable>>() {
+          private Entry<String, Serializable> next;
+
+          @Override
+          public boolean hasNext() {
+            long now = System.currentTimeMillis();
+            while (next == null && it.hasNext()) {
+              Node node = it.next();
+              if (node.expireAt > now) {
+                next = new SimpleImmutableEntry<>(node.key, node.value);
+              }
+            }
+            return next != null;
+          }
+
+          @Override
+          public Entry<String, Serializable> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Entry<String, Serializable> entry = next;
+            next = null;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return map.size();
+      }
+    };
+
+    @Override
+    public Set<Entry<String, Serializable>> entrySet() {
+      return entrySet;
+    }
+
+    @Override
+    public Serializable get(Object key) {
+      Node node = map.get(key);
+      return node == null || node.expireAt <= System.currentTimeMillis() ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+  }
 }
@@ -9,6 +9,7 @@ import nexus.io.tio.utils.cache.CacheFactory;
 import nexus.io.tio.utils.cache.CacheName;
 import nexus.io.tio.utils.cache.CacheRemovalListener;
 import nexus.io.tio.utils.cache.RemovalListenerWrapper;
+import nexus.io.tio.utils.environment.EnvUtils;
 
 /**
  * 使用Map保存数据
@@ -20,10 +21,15 @@ public enum ConcurrentMapCacheFactory implements CacheFactory {
 
   private Map<String, ConcurrentMapCache> map = new ConcurrentHashMap<>();
 
+  /**
+   * 每个缓存默认最多保存多少条，小于等于0表示不限制；为null时注册时读取配置tio.cache.map.max.size，默认DEFAULT_MAX_SIZE
+   */
+  private Long defaultMaxSize = null;
+
   @Override
   public ConcurrentMapCache register(String cacheName, Long timeToLiveSeconds, Long timeToIdleSeconds) {
     return map.computeIfAbsent(cacheName,
-        k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null));
+        k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null, getDefaultMaxSize()));
   }
 
   @SuppressWarnings("unchecked")
@@ -34,18 +40,34 @@ public enum ConcurrentMapCacheFactory implements CacheFactory {
     if (removalListenerWrapper != null) {
       if (removalListenerWrapper.getListener() instanceof CacheRemovalListener) {
         return map.computeIfAbsent(cacheName, k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds,
-            timeToIdleSeconds, (CacheRemovalListener<String, Serializable>) removalListenerWrapper.getListener()));
+            timeToIdleSeconds, (CacheRemovalListener<String, Serializable>) removalListenerWrapper.getListener(),
+            getDefaultMaxSize()));
       } else {
         return map.computeIfAbsent(cacheName,
-            k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null));
+            k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null, getDefaultMaxSize()));
       }
     } else {
       return map.computeIfAbsent(cacheName,
-          k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null));
+          k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, null, getDefaultMaxSize()));
     }
 
   }
 
+  /**
+   * 注册一个有容量上限的缓存，超过后按CLOCK淘汰
+   * @param cacheName
+   * @param timeToLiveSeconds
+   * @param timeToIdleSeconds
+   * @param maxSize 最多保存多少条，小于等于0表示不限制
+   * @param removalListener 可以为null
+   * @return
+   */
+  public ConcurrentMapCache register(String cacheName, Long timeToLiveSeconds, Long timeToIdleSeconds, long maxSize,
+      CacheRemovalListener<String, Serializable> removalListener) {
+    return map.computeIfAbsent(cacheName,
+        k -> new ConcurrentMapCache(cacheName, timeToLiveSeconds, timeToIdleSeconds, removalListener, maxSize));
+  }
+
   @Override
   public ConcurrentMapCache getCache(String cacheName, boolean skipNull) {
     return map.get(cacheName);
@@ -61,6 +83,22 @@ public enum ConcurrentMapCacheFactory implements CacheFactory {
     return map;
   }
 
+  public long getDefaultMaxSize() {
+    Long defaultMaxSize = this.defaultMaxSize;
+    if (defaultMaxSize == null) {
+      defaultMaxSize = EnvUtils.getLong("tio.cache.map.max.size", ConcurrentMapCache.DEFAULT_MAX_SIZE);
+    }
+    return defaultMaxSize;
+  }
+
+  /**
+   * 只影响之后注册的缓存
+   * @param defaultMaxSize 小于等于0表示不限制
+   */
+  public void setDefaultMaxSize(long defaultMaxSize) {
+    this.defaultMaxSize = defaultMaxSize;
+  }
+
   @Override
   public ConcurrentMapCache register(CacheName cacheName) {
     return this.register(cacheName.getName(), cacheName.getTimeToLiveSeconds(), cacheName.getTimeToIdleSeconds(), null);
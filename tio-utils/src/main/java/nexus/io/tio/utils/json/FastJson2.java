@@ -1,5 +1,6 @@
 package nexus.io.tio.utils.json;
 
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
@@ -62,6 +63,23 @@ public class FastJson2 extends Json {
     }
   }
 
+  @Override
+  public void toJson(Object object, OutputStream out) {
+    if (Json.isLongToString()) {
+      if (writeNulls) {
+        JSON.writeTo(out, object, JSONWriter.Feature.WriteLongAsString, JSONWriter.Feature.WriteNulls);
+      } else {
+        JSON.writeTo(out, object, JSONWriter.Feature.WriteLongAsString);
+      }
+    } else {
+      if (writeNulls) {
+        JSON.writeTo(out, object, JSONWriter.Feature.WriteNulls);
+      } else {
+        JSON.writeTo(out, object);
+      }
+    }
+  }
+
   /**
    * 支持传入更多 SerializerFeature
    * <p>
@@ -1,5 +1,9 @@
 package nexus.io.tio.utils.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -44,6 +48,17 @@ public class GsonJson extends Json {
     return gson.toJson(object).getBytes(StandardCharsets.UTF_8);
   }
 
+  @Override
+  public void toJson(Object object, OutputStream out) {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    gson.toJson(object, writer);
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public <T> T parse(String jsonString, Class<T> type) {
     return gson.fromJson(jsonString, type);
@@ -1,10 +1,12 @@
 package nexus.io.tio.utils.json;
 
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JavaType;
@@ -99,6 +101,15 @@ public class Jackson extends Json {
     }
   }
 
+  @Override
+  public void toJson(Object object, OutputStream out) {
+    try {
+      buildWriter().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, object);
+    } catch (Exception e) {
+      throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+    }
+  }
+
   @Override
   public <T> T parse(String jsonString, Class<T> type) {
     try {
@@ -1,6 +1,9 @@
 package nexus.io.tio.utils.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -102,6 +105,18 @@ public abstract class Json {
 
   public abstract byte[] toJsonBytes(Object object);
 
+  /**
+   * 把对象转成json，按UTF-8编码写入out，内容与toJson(object)等价。<br>
+   * 默认实现先生成String再整体写入，子类可以边序列化边写，省去中间的String和byte[]
+   */
+  public void toJson(Object object, OutputStream out) {
+    try {
+      out.write(toJson(object).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public abstract Object parse(String stringValue);
 
   public abstract <T> T parse(String jsonString, Class<T> type);
@@ -2,6 +2,7 @@ package nexus.io.tio.utils.json;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
@@ -11,7 +12,6 @@ import java.time.LocalTime;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.IntStream;
 
 import nexus.io.tio.utils.date.TioTimeUtils;
 
@@ -31,6 +31,9 @@ public class JsonResult {
   // StringBuilder 内部对 int、long、double、float 数据写入有优化
   StringBuilder sb = new StringBuilder();
 
+  // writeTo 编码 UTF-8 时的中转区
+  byte[] utf8Buffer;
+
   String datePattern;
   String timestampPattern;
   boolean longToString;
@@ -70,15 +73,53 @@ public class JsonResult {
   }
 
   public byte[] toBytes() {
-    IntStream intStream = sb.chars();
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      intStream.forEach(c -> {
-        baos.write(c);
-      });
-      return baos.toByteArray();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(sb.length() + 16);
+    try {
+      writeTo(baos);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    return baos.toByteArray();
+  }
+
+  /**
+   * 按 UTF-8 编码写入 out，不生成中间的 String
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    byte[] buf = utf8Buffer;
+    if (buf == null) {
+      buf = utf8Buffer = new byte[8192];
+    }
+    int p = 0;
+    for (int i = 0, len = sb.length(); i < len; i++) {
+      if (p > buf.length - 4) {
+        out.write(buf, 0, p);
+        p = 0;
+      }
+      char c = sb.charAt(i);
+      if (c < 0x80) {
+        buf[p++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[p++] = (byte) (0xc0 | (c >> 6));
+        buf[p++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(sb.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, sb.charAt(++i));
+        buf[p++] = (byte) (0xf0 | (cp >> 18));
+        buf[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buf[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buf[p++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // 不成对的代理字符，与 String.getBytes(UTF_8) 一样输出 '?'
+        buf[p++] = '?';
+      } else {
+        buf[p++] = (byte) (0xe0 | (c >> 12));
+        buf[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[p++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    if (p > 0) {
+      out.write(buf, 0, p);
+    }
   }
 
   public int length() {
@@ -1,5 +1,6 @@
 package nexus.io.tio.utils.json;
 
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,15 @@ public class MixedJson extends Json {
     }
   }
 
+  @Override
+  public void toJson(Object object, OutputStream out) {
+    if (skipNullValueField) {
+      getSkipNullTioJson().toJson(object, out);
+    } else {
+      getTioJson().toJson(object, out);
+    }
+  }
+
   public <T> T parse(String jsonString, Class<T> type) {
     return getFastJson().parse(jsonString, type);
   }
@@ -1,5 +1,7 @@
 package nexus.io.tio.utils.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
@@ -98,6 +100,36 @@ public class TioJson extends Json {
     }
   }
 
+  @Override
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void toJson(Object object, OutputStream out) {
+    if (object == null) {
+      super.toJson(object, out);
+      return;
+    }
+
+    JsonResult ret = TL.get();
+    try {
+
+      // 重入型转换场景，需要新建对象使用
+      if (ret.isInUse()) {
+        ret = new JsonResult();
+      }
+
+      String dp = datePattern != null ? datePattern : getDefaultDatePattern();
+      ret.init(dp, getTimestampPattern(), Json.isLongToString());
+
+      TioToJson toJson = kit.getToJson(object, skipNullValueField);
+
+      toJson.toJson(object, convertDepth, ret);
+      ret.writeTo(out);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      ret.clear();
+    }
+  }
+
   /**
    * 添加 ToJson 转换接口实现类，自由定制任意类型数据的转换规则
    * 
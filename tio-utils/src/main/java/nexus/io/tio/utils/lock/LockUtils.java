@@ -22,11 +22,12 @@ public class LockUtils {
   private static final Object defaultLockObjForObj = new Object();
   private static final Object defaultLockObjForRw = new Object();
   // LOCAL_LOCKS
+  // 锁对象不能因容量淘汰，否则两个线程会拿到不同的锁
   private static final ConcurrentMapCache LOCAL_LOCKS = ConcurrentMapCacheFactory.INSTANCE
-      .register(LockUtils.class.getName() + LOCK_TYPE_OBJ, null, 3600L);
+      .register(LockUtils.class.getName() + LOCK_TYPE_OBJ, null, 3600L, 0, null);
   // LOCAL_READWRITE_LOCKS
   private static final ConcurrentMapCache LOCAL_READWRITE_LOCKS = ConcurrentMapCacheFactory.INSTANCE
-      .register(LockUtils.class.getName() + LOCK_TYPE_RW, null, 3600L);
+      .register(LockUtils.class.getName() + LOCK_TYPE_RW, null, 3600L, 0, null);
 
   /**
    * 获取锁对象，用于synchronized(lockObj)
@@ -0,0 +1,112 @@
+package nexus.io.tio.utils.cache.mapcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nexus.io.tio.utils.cache.RemovalCause;
+
+public class ConcurrentMapCacheTest {
+
+  @Test
+  public void testDefaultMaxSizeIsBounded() {
+    ConcurrentMapCache cache = new ConcurrentMapCache("default-size", null, null, null);
+    assertEquals(ConcurrentMapCache.DEFAULT_MAX_SIZE, cache.getMaxSize());
+  }
+
+  @Test
+  public void testClockEvictsUnvisitedEntries() {
+    List<String> evicted = new ArrayList<>();
+    ConcurrentMapCache cache = new ConcurrentMapCache("clock", null, null, (key, value, cause) -> {
+      assertEquals(RemovalCause.EVICTED, cause);
+      evicted.add(key);
+    }, 3);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+    // a、c读过，指针扫过时清掉标记留到下一轮，b没读过先被淘汰
+    cache.get("a");
+    cache.get("c");
+
+    cache.put("d", 4);
+    assertEquals(3, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals("[b]", evicted.toString());
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertNotNull(cache.get("d"));
+  }
+
+  @Test
+  public void testPutOfExistingKeyDoesNotEvict() {
+    ConcurrentMapCache cache = new ConcurrentMapCache("clock-update", null, null, null, 2);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("a", 3);
+    assertEquals(2, cache.size());
+    assertEquals(0, cache.getEvictionCount());
+    assertEquals(3, cache.get("a"));
+  }
+
+  @Test
+  public void testSizeStaysAtMaxSize() {
+    ConcurrentMapCache cache = new ConcurrentMapCache("clock-fill", null, null, null, 100);
+    for (int i = 0; i < 1000; i++) {
+      cache.put("k" + i, i);
+      if (i % 3 == 0) {
+        cache.get("k" + i);
+      }
+    }
+    assertEquals(100, cache.size());
+    assertEquals(900, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testWheelExpiresWithoutRead() throws Exception {
+    CountDownLatch expired = new CountDownLatch(1);
+    ConcurrentMapCache cache = new ConcurrentMapCache("wheel", 1L, null, (key, value, cause) -> {
+      if (cause == RemovalCause.EXPIRED) {
+        expired.countDown();
+      }
+    });
+    cache.put("a", 1);
+    assertEquals(1, cache.size());
+
+    // 不读取，只靠时间轮线程删除
+    assertTrue(expired.await(5, TimeUnit.SECONDS));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getExpiredCount());
+    assertEquals(0, cache.getMissCount());
+  }
+
+  @Test
+  public void testTimeToIdleRenewedByRead() throws Exception {
+    ConcurrentMapCache cache = new ConcurrentMapCache("wheel-tti", null, 2L, null);
+    cache.put("a", 1);
+    // 每隔0.5秒读一次，时间轮到期时按续期后的时间重新放入
+    long end = System.currentTimeMillis() + 3000;
+    while (System.currentTimeMillis() < end) {
+      Serializable value = cache.get("a");
+      assertEquals(1, value);
+      Thread.sleep(500);
+    }
+    assertEquals(0, cache.getExpiredCount());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getExpiredCount());
+  }
+}
@@ -2,6 +2,7 @@ package nexus.io.tio.websocket.client;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +40,8 @@ import nexus.io.tio.websocket.client.kit.ObjKit;
 import nexus.io.tio.websocket.client.kit.TioKit;
 import nexus.io.tio.websocket.client.kit.WsPortUtils;
 import nexus.io.tio.websocket.common.Opcode;
+import nexus.io.tio.websocket.common.PerMessageDeflate;
+import nexus.io.tio.websocket.common.PerMessageDeflateConfig;
 import nexus.io.tio.websocket.common.WebSocketPacket;
 import nexus.io.tio.websocket.common.WebSocketRequest;
 import nexus.io.tio.websocket.common.WebSocketSessionContext;
@@ -133,7 +136,8 @@ public class WebSocketImpl implements WebSocket {
 
   @Override
   public String getExtensions() {
-    return null;
+    PerMessageDeflate perMessageDeflate = ctx == null ? null : PerMessageDeflate.from(ctx);
+    return perMessageDeflate == null ? null : perMessageDeflate.getExtension();
   }
 
   @Override
@@ -278,6 +282,10 @@ public class WebSocketImpl implements WebSocket {
     if (readyState == WebSocket.CLOSED)
       return;
     readyState = WebSocket.CLOSED;
+    PerMessageDeflate perMessageDeflate = ctx == null ? null : PerMessageDeflate.from(ctx);
+    if (perMessageDeflate != null) {
+      perMessageDeflate.end();
+    }
     publisher.onComplete();
     onClose(code, reason);
     try {
@@ -318,6 +326,20 @@ public class WebSocketImpl implements WebSocket {
         bodyBuf.put(bs);
       }
     }
+    if (bodyBuf != null && wsBodyLength > 0) {
+      // 整条消息压缩后再分片，只在这里压缩，保证压缩的顺序与发送的顺序一致
+      PerMessageDeflate perMessageDeflate = PerMessageDeflate.from(ctx);
+      Opcode opcode = packet.getWsOpcode();
+      if (perMessageDeflate != null && !packet.isWsCompressed() && (opcode == Opcode.TEXT || opcode == Opcode.BINARY)
+          && perMessageDeflate.shouldCompress(wsBodyLength)) {
+        ByteBuffer compressed = perMessageDeflate.compress(bodyBuf.array(), null);
+        if (compressed != null) {
+          bodyBuf = ByteBuffer.wrap(Arrays.copyOfRange(compressed.array(), compressed.position(), compressed.limit()));
+          wsBodyLength = bodyBuf.remaining();
+          packet.setWsCompressed(true);
+        }
+      }
+    }
     if (bodyBuf == null || wsBodyLength == 0) {
       Tio.send(ctx, packet);
     } else {
@@ -338,9 +360,11 @@ public class WebSocketImpl implements WebSocket {
           } else if (i < parts.length - 1) {
             sentPacket.setWsEof(false);
             sentPacket.setWsOpcode(Opcode.NOT_FIN);
+            sentPacket.setWsCompressed(false);
           } else {
             sentPacket.setWsEof(true);
             sentPacket.setWsOpcode(Opcode.NOT_FIN);
+            sentPacket.setWsCompressed(false);
           }
           TioKit.bSend(ctx, sentPacket, 60, TimeUnit.SECONDS);
         }
@@ -382,6 +406,10 @@ public class WebSocketImpl implements WebSocket {
     headers.put("Connection", "Upgrade");
     headers.put("Sec-WebSocket-Key", getSecWebsocketKey());
     headers.put("Sec-WebSocket-Version", "13");
+    PerMessageDeflateConfig perMessageDeflateConfig = wsClient.config.getPerMessageDeflateConfig();
+    if (perMessageDeflateConfig != null) {
+      headers.put("Sec-WebSocket-Extensions", PerMessageDeflate.offer(perMessageDeflateConfig));
+    }
     httpRequest.setHeaders(headers);
 
     session.setHandshakeRequest(httpRequest);
@@ -408,7 +436,14 @@ public class WebSocketImpl implements WebSocket {
             close(1002, "no Sec_WebSocket_Accept or Sec_WebSocket_Accept invalid");
             return;
           }
-          // TODO: Sec-WebSocket-Extensions, Sec-WebSocket-Protocol
+          HeaderValue extensions = resp.getHeader(HeaderName.Sec_WebSocket_Extensions);
+          try {
+            session.setPerMessageDeflate(PerMessageDeflate.accept(extensions == null ? null : extensions.value, perMessageDeflateConfig));
+          } catch (IllegalArgumentException e) {
+            close(1002, e.getMessage());
+            return;
+          }
+          // TODO: Sec-WebSocket-Protocol
           readyState = WebSocket.OPEN;
           session.setHandshaked(true);
           onOpen();
@@ -491,6 +526,7 @@ public class WebSocketImpl implements WebSocket {
     packet.setWsEof(p.isWsEof());
     packet.setWsOpcode(p.getWsOpcode());
     packet.setWsHasMask(p.isWsHasMask());
+    packet.setWsCompressed(p.isWsCompressed());
     packet.setWsBodyLength(p.getWsBodyLength());
     packet.setWsMask(p.getWsMask());
     packet.setWsBodyText(p.getWsBodyText());
@@ -19,6 +19,7 @@ import nexus.io.tio.http.common.HttpResponse;
 import nexus.io.tio.websocket.client.httpclient.HttpRequestEncoder;
 import nexus.io.tio.websocket.client.httpclient.HttpResponseDecoder;
 import nexus.io.tio.websocket.common.Opcode;
+import nexus.io.tio.websocket.common.PerMessageDeflate;
 import nexus.io.tio.websocket.common.WebSocketClientDecoder;
 import nexus.io.tio.websocket.common.WebSocketClientEncoder;
 import nexus.io.tio.websocket.common.WebSocketPacket;
@@ -63,6 +64,7 @@ public class WebscoketClientAioHander implements ClientAioHandler {
           parts.add(packet);
           WebSocketResponse first = parts.get(0);
           packet.setWsOpcode(first.getWsOpcode());
+          packet.setWsCompressed(first.isWsCompressed());
 
           int allBodyLength = 0;
           for (WebSocketResponse wsRequest : parts) {
@@ -78,6 +80,17 @@ public class WebscoketClientAioHander implements ClientAioHandler {
           packet.setBody(allBody);
         }
 
+        if (packet.isWsCompressed()) {
+          PerMessageDeflate perMessageDeflate = PerMessageDeflate.from(ctx);
+          if (perMessageDeflate == null) {
+            throw new TioDecodeException("RSV1 is set but permessage-deflate is not negotiated");
+          }
+          byte[] body = packet.getBody();
+          ByteBuffer inflated = body == null ? perMessageDeflate.decompress(new byte[0], 0, 0) : perMessageDeflate.decompress(body, 0, body.length);
+          packet.setBodyBuffer(inflated);
+          packet.setWsBodyLength(inflated.remaining());
+        }
+
         HttpRequest handshakeRequest = session.getHandshakeRequest();
         if (packet.getWsOpcode() != Opcode.BINARY) {
           try {
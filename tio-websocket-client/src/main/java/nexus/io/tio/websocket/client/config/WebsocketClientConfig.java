@@ -8,6 +8,7 @@ import nexus.io.tio.websocket.client.event.CloseEvent;
 import nexus.io.tio.websocket.client.event.ErrorEvent;
 import nexus.io.tio.websocket.client.event.MessageEvent;
 import nexus.io.tio.websocket.client.event.OpenEvent;
+import nexus.io.tio.websocket.common.PerMessageDeflateConfig;
 
 public class WebsocketClientConfig {
   private String charset = "UTF-8";
@@ -18,6 +19,10 @@ public class WebsocketClientConfig {
   private Consumer<Throwable> onThrows;
 
   private ProxyInfo proxyInfo;
+  /**
+   * permessage-deflate的配置，为null表示不请求压缩
+   */
+  private PerMessageDeflateConfig perMessageDeflateConfig;
 
   public WebsocketClientConfig() {
   }
@@ -115,4 +120,12 @@ public class WebsocketClientConfig {
   public void setProxyInfo(ProxyInfo proxyInfo) {
     this.proxyInfo = proxyInfo;
   }
+
+  public PerMessageDeflateConfig getPerMessageDeflateConfig() {
+    return perMessageDeflateConfig;
+  }
+
+  public void setPerMessageDeflateConfig(PerMessageDeflateConfig perMessageDeflateConfig) {
+    this.perMessageDeflateConfig = perMessageDeflateConfig;
+  }
 }
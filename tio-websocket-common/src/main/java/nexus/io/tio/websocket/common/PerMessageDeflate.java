@@ -0,0 +1,407 @@
+package nexus.io.tio.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.exception.TioDecodeException;
+import nexus.io.tio.utils.hutool.StrUtil;
+
+/**
+ * 一个连接上协商好的permessage-deflate(RFC 7692)，保存在WebSocketSessionContext中<br>
+ * 每个连接复用自己的Deflater、Inflater，第一次用到时才创建；保留上下文时后一条消息可以引用前面消息的内容，压缩率更高，
+ * 所以同一个连接的消息必须按发送的顺序压缩(发送队列保证了这一点)，群发时也不能与其它连接共用编码结果<br>
+ * 每条消息按SYNC_FLUSH结束并去掉末尾的00 00 FF FF，解压时再补上
+ */
+public class PerMessageDeflate {
+  public static final String EXTENSION_NAME = "permessage-deflate";
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+  private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+  private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+  private static final byte[] TAIL = { 0, 0, (byte) 0xFF, (byte) 0xFF };
+
+  private final PerMessageDeflateConfig config;
+  /**
+   * 本端压缩时每条消息都重置Deflater
+   */
+  private final boolean noContextTakeover;
+  /**
+   * 对端压缩时每条消息都重新开始，解压后重置Inflater
+   */
+  private final boolean peerNoContextTakeover;
+  /**
+   * 协商结果，服务端放进握手响应的Sec-WebSocket-Extensions
+   */
+  private final String extension;
+  private Deflater deflater;
+  private Inflater inflater;
+  private boolean ended = false;
+
+  private PerMessageDeflate(PerMessageDeflateConfig config, boolean noContextTakeover, boolean peerNoContextTakeover, String extension) {
+    this.config = config;
+    this.noContextTakeover = noContextTakeover;
+    this.peerNoContextTakeover = peerNoContextTakeover;
+    this.extension = extension;
+  }
+
+  /**
+   * @return 连接上协商好的permessage-deflate，没有时返回null
+   */
+  public static PerMessageDeflate from(ChannelContext channelContext) {
+    Object session = channelContext.get();
+    if (session instanceof WebSocketSessionContext) {
+      return ((WebSocketSessionContext) session).getPerMessageDeflate();
+    }
+    return null;
+  }
+
+  /**
+   * 服务端：从客户端的Sec-WebSocket-Extensions中选第一个可以接受的permessage-deflate
+   *
+   * @param extensions 请求头Sec-WebSocket-Extensions
+   * @param config     为null表示不启用
+   * @return null: 不启用压缩
+   */
+  public static PerMessageDeflate negotiate(String extensions, PerMessageDeflateConfig config) {
+    if (config == null || StrUtil.isBlank(extensions)) {
+      return null;
+    }
+    for (String offer : extensions.split(",")) {
+      Map<String, String> params = parse(offer);
+      if (params == null) {
+        continue;
+      }
+      boolean serverNoContextTakeover = config.isServerNoContextTakeover();
+      boolean clientNoContextTakeover = config.isClientNoContextTakeover();
+      int clientMaxWindowBits = 0;
+      int serverMaxWindowBits = 0;
+      boolean accepted = true;
+      for (Map.Entry<String, String> param : params.entrySet()) {
+        String value = param.getValue();
+        switch (param.getKey()) {
+        case SERVER_NO_CONTEXT_TAKEOVER:
+          accepted = value == null;
+          serverNoContextTakeover = true;
+          break;
+        case CLIENT_NO_CONTEXT_TAKEOVER:
+          accepted = value == null;
+          clientNoContextTakeover = true;
+          break;
+        case SERVER_MAX_WINDOW_BITS:
+          // Deflater只能使用15位的窗口
+          serverMaxWindowBits = windowBits(value);
+          accepted = serverMaxWindowBits == 15;
+          break;
+        case CLIENT_MAX_WINDOW_BITS:
+          // 没有值表示客户端可以按要求使用更小的窗口
+          clientMaxWindowBits = value == null ? 15 : windowBits(value);
+          accepted = clientMaxWindowBits > 0;
+          break;
+        default:
+          accepted = false;
+          break;
+        }
+        if (!accepted) {
+          break;
+        }
+      }
+      if (!accepted) {
+        continue;
+      }
+
+      StringBuilder response = new StringBuilder(EXTENSION_NAME);
+      if (serverNoContextTakeover) {
+        response.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+      }
+      if (clientNoContextTakeover) {
+        response.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+      }
+      if (serverMaxWindowBits > 0) {
+        // 请求中带了server_max_window_bits，响应中必须带上实际使用的值
+        response.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(serverMaxWindowBits);
+      }
+      if (clientMaxWindowBits > 0 && config.getClientMaxWindowBits() < 15) {
+        response.append("; ").append(CLIENT_MAX_WINDOW_BITS).append('=').append(Math.min(clientMaxWindowBits, config.getClientMaxWindowBits()));
+      }
+      return new PerMessageDeflate(config, serverNoContextTakeover, clientNoContextTakeover, response.toString());
+    }
+    return null;
+  }
+
+  /**
+   * 客户端：握手请求中的Sec-WebSocket-Extensions。不带client_max_window_bits，服务端就不能要求客户端使用更小的窗口
+   *
+   * @param config
+   * @return
+   */
+  public static String offer(PerMessageDeflateConfig config) {
+    StringBuilder offer = new StringBuilder(EXTENSION_NAME);
+    if (config.isClientNoContextTakeover()) {
+      offer.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+    }
+    if (config.isServerNoContextTakeover()) {
+      offer.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+    }
+    if (config.getServerMaxWindowBits() < 15) {
+      offer.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(config.getServerMaxWindowBits());
+    }
+    return offer.toString();
+  }
+
+  /**
+   * 客户端：检查服务端握手响应中的Sec-WebSocket-Extensions
+   *
+   * @param extensions 响应头Sec-WebSocket-Extensions
+   * @param config     为null表示没有请求压缩
+   * @return null: 服务端没有启用压缩
+   * @throws IllegalArgumentException 响应与请求不符，按RFC 7692应关闭连接
+   */
+  public static PerMessageDeflate accept(String extensions, PerMessageDeflateConfig config) {
+    if (StrUtil.isBlank(extensions)) {
+      return null;
+    }
+    if (config == null || extensions.indexOf(',') >= 0) {
+      throw new IllegalArgumentException("unexpected extensions: " + extensions);
+    }
+    Map<String, String> params = parse(extensions);
+    if (params == null) {
+      throw new IllegalArgumentException("unexpected extensions: " + extensions);
+    }
+    boolean noContextTakeover = config.isClientNoContextTakeover();
+    boolean peerNoContextTakeover = false;
+    int serverMaxWindowBits = 0;
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      String value = param.getValue();
+      boolean valid;
+      switch (param.getKey()) {
+      case SERVER_NO_CONTEXT_TAKEOVER:
+        valid = value == null;
+        peerNoContextTakeover = true;
+        break;
+      case CLIENT_NO_CONTEXT_TAKEOVER:
+        valid = value == null;
+        noContextTakeover = true;
+        break;
+      case SERVER_MAX_WINDOW_BITS:
+        // 不能大于请求的值
+        serverMaxWindowBits = windowBits(value);
+        valid = serverMaxWindowBits > 0 && serverMaxWindowBits <= config.getServerMaxWindowBits();
+        break;
+      default:
+        // 没有请求client_max_window_bits，服务端不能带上
+        valid = false;
+        break;
+      }
+      if (!valid) {
+        throw new IllegalArgumentException("unexpected extension parameter: " + extensions);
+      }
+    }
+    if (config.getServerMaxWindowBits() < 15 && serverMaxWindowBits == 0) {
+      // 请求了server_max_window_bits，服务端接受时必须在响应中带上
+      throw new IllegalArgumentException("missing " + SERVER_MAX_WINDOW_BITS + ": " + extensions);
+    }
+    return new PerMessageDeflate(config, noContextTakeover, peerNoContextTakeover, extensions.trim());
+  }
+
+  /**
+   * 解析一个扩展，不是permessage-deflate或参数重复时返回null
+   *
+   * @return 参数名(小写)到参数值，没有值的参数值为null
+   */
+  private static Map<String, String> parse(String extension) {
+    String[] items = extension.split(";");
+    if (!EXTENSION_NAME.equalsIgnoreCase(items[0].trim())) {
+      return null;
+    }
+    Map<String, String> params = new HashMap<>();
+    for (int i = 1; i < items.length; i++) {
+      String item = items[i].trim();
+      if (item.isEmpty()) {
+        continue;
+      }
+      int index = item.indexOf('=');
+      String name = (index < 0 ? item : item.substring(0, index)).trim().toLowerCase();
+      String value = null;
+      if (index >= 0) {
+        value = item.substring(index + 1).trim();
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+          value = value.substring(1, value.length() - 1);
+        }
+      }
+      if (params.containsKey(name)) {
+        return null;
+      }
+      params.put(name, value);
+    }
+    return params;
+  }
+
+  /**
+   * @return 8-15，不合法时返回-1
+   */
+  private static int windowBits(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      int bits = Integer.parseInt(value);
+      return bits >= 8 && bits <= 15 ? bits : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param length 消息的字节数
+   * @return 是否压缩这条消息
+   */
+  public boolean shouldCompress(int length) {
+    return length > 0 && length >= config.getThreshold() && !ended;
+  }
+
+  /**
+   * 压缩一条消息，body和bodys只用其中一个
+   *
+   * @return 压缩后的数据(position到limit)，null: 已经end()，按不压缩发送
+   */
+  public synchronized ByteBuffer compress(byte[] body, byte[][] bodys) {
+    if (ended) {
+      return null;
+    }
+    if (deflater == null) {
+      deflater = new Deflater(config.getCompressionLevel(), true);
+    }
+    byte[][] inputs = body != null ? new byte[][] { body } : bodys;
+    int length = 0;
+    if (inputs != null) {
+      for (byte[] input : inputs) {
+        length += input.length;
+      }
+    }
+
+    byte[] out = new byte[Math.max(length >>> 1, 64)];
+    int pos = 0;
+    if (inputs != null) {
+      for (byte[] input : inputs) {
+        deflater.setInput(input);
+        while (!deflater.needsInput()) {
+          if (pos == out.length) {
+            out = Arrays.copyOf(out, out.length << 1);
+          }
+          pos += deflater.deflate(out, pos, out.length - pos, Deflater.NO_FLUSH);
+        }
+      }
+    }
+    while (true) {
+      pos += deflater.deflate(out, pos, out.length - pos, Deflater.SYNC_FLUSH);
+      if (pos < out.length) {
+        break;
+      }
+      out = Arrays.copyOf(out, out.length << 1);
+    }
+    if (noContextTakeover) {
+      deflater.reset();
+    }
+    // SYNC_FLUSH以空的stored块结束，末尾一定是00 00 FF FF
+    return ByteBuffer.wrap(out, 0, pos - TAIL.length);
+  }
+
+  /**
+   * 解压一条消息
+   *
+   * @return 解压后的数据(position到limit)
+   * @throws TioDecodeException 数据不对或解压后超过PerMessageDeflateConfig.maxInflatedLength
+   */
+  public synchronized ByteBuffer decompress(byte[] array, int offset, int length) throws TioDecodeException {
+    if (ended) {
+      throw new TioDecodeException("permessage-deflate has been closed");
+    }
+    if (inflater == null) {
+      inflater = new Inflater(true);
+    }
+    int maxLength = config.getMaxInflatedLength();
+    // 多留一个字节，用来判断是否超过maxLength
+    int capacity = maxLength == Integer.MAX_VALUE ? maxLength : maxLength + 1;
+    byte[] out = new byte[(int) Math.min(Math.max((long) length << 2, 256), capacity)];
+    int pos = 0;
+    try {
+      for (int i = 0; i < 2 && !inflater.finished(); i++) {
+        if (i == 0) {
+          inflater.setInput(array, offset, length);
+        } else {
+          inflater.setInput(TAIL);
+        }
+        while (true) {
+          if (pos == out.length) {
+            if (out.length >= capacity) {
+              throw new TioDecodeException("inflated length exceeds " + maxLength);
+            }
+            out = Arrays.copyOf(out, (int) Math.min((long) out.length << 1, capacity));
+          }
+          int n = inflater.inflate(out, pos, out.length - pos);
+          pos += n;
+          if (inflater.finished()) {
+            break;
+          }
+          if (inflater.needsDictionary()) {
+            throw new TioDecodeException("permessage-deflate data needs a preset dictionary");
+          }
+          // 输出没有写满才能确定没有剩余的数据
+          if (pos < out.length && (inflater.needsInput() || n == 0)) {
+            break;
+          }
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new TioDecodeException(e);
+    }
+    if (pos > maxLength) {
+      throw new TioDecodeException("inflated length exceeds " + maxLength);
+    }
+    // 对端用BFINAL结束了压缩流时，下一条消息也要从头开始
+    if (peerNoContextTakeover || inflater.finished()) {
+      inflater.reset();
+    }
+    return ByteBuffer.wrap(out, 0, pos).slice();
+  }
+
+  /**
+   * 释放Deflater、Inflater占用的本地内存，连接关闭时调用。之后的消息不再压缩，收到压缩的消息按解码错误处理
+   */
+  public synchronized void end() {
+    ended = true;
+    if (deflater != null) {
+      deflater.end();
+      deflater = null;
+    }
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+  }
+
+  /**
+   * @return 协商结果，如：permessage-deflate; server_no_context_takeover
+   */
+  public String getExtension() {
+    return extension;
+  }
+
+  public PerMessageDeflateConfig getConfig() {
+    return config;
+  }
+
+  public boolean isNoContextTakeover() {
+    return noContextTakeover;
+  }
+
+  public boolean isPeerNoContextTakeover() {
+    return peerNoContextTakeover;
+  }
+}
@@ -0,0 +1,110 @@
+package nexus.io.tio.websocket.common;
+
+import java.util.zip.Deflater;
+
+/**
+ * permessage-deflate(RFC 7692)的配置，服务端和客户端共用<br>
+ * java.util.zip的Deflater只能使用15位的窗口，所以对端要求本端使用更小的窗口时不启用压缩(服务端)或握手失败(客户端)，
+ * 本端可以要求对端使用更小的窗口
+ */
+public class PerMessageDeflateConfig {
+  /**
+   * 小于多少字节的消息不压缩
+   */
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  /**
+   * 小于此值的消息不压缩，直接发送
+   */
+  private int threshold = DEFAULT_THRESHOLD;
+  /**
+   * 压缩级别，0-9，-1表示Deflater的默认级别
+   */
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  /**
+   * 服务端压缩时每条消息都重新开始，不保留上一条消息的上下文。压缩率下降，但不会出现对端与本端上下文不一致的问题
+   */
+  private boolean serverNoContextTakeover = false;
+  /**
+   * 要求客户端压缩时每条消息都重新开始，不保留上一条消息的上下文
+   */
+  private boolean clientNoContextTakeover = false;
+  /**
+   * 服务端要求客户端使用的窗口大小(8-15)，15表示不要求
+   */
+  private int clientMaxWindowBits = 15;
+  /**
+   * 客户端要求服务端使用的窗口大小(8-15)，15表示不要求
+   */
+  private int serverMaxWindowBits = 15;
+  /**
+   * 解压后的消息最多多少字节，超过时按解码错误处理
+   */
+  private int maxInflatedLength = WebSocketPacket.MAX_LENGTH_OF_BODY;
+
+  public PerMessageDeflateConfig() {
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  public void setThreshold(int threshold) {
+    this.threshold = threshold;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  public boolean isServerNoContextTakeover() {
+    return serverNoContextTakeover;
+  }
+
+  public void setServerNoContextTakeover(boolean serverNoContextTakeover) {
+    this.serverNoContextTakeover = serverNoContextTakeover;
+  }
+
+  public boolean isClientNoContextTakeover() {
+    return clientNoContextTakeover;
+  }
+
+  public void setClientNoContextTakeover(boolean clientNoContextTakeover) {
+    this.clientNoContextTakeover = clientNoContextTakeover;
+  }
+
+  public int getClientMaxWindowBits() {
+    return clientMaxWindowBits;
+  }
+
+  public void setClientMaxWindowBits(int clientMaxWindowBits) {
+    this.clientMaxWindowBits = checkWindowBits(clientMaxWindowBits);
+  }
+
+  public int getServerMaxWindowBits() {
+    return serverMaxWindowBits;
+  }
+
+  public void setServerMaxWindowBits(int serverMaxWindowBits) {
+    this.serverMaxWindowBits = checkWindowBits(serverMaxWindowBits);
+  }
+
+  public int getMaxInflatedLength() {
+    return maxInflatedLength;
+  }
+
+  public void setMaxInflatedLength(int maxInflatedLength) {
+    this.maxInflatedLength = maxInflatedLength;
+  }
+
+  private static int checkWindowBits(int windowBits) {
+    if (windowBits < 8 || windowBits > 15) {
+      throw new IllegalArgumentException("window bits must be between 8 and 15: " + windowBits);
+    }
+    return windowBits;
+  }
+}
@@ -22,11 +22,16 @@ public class WebSocketClientDecoder {
     byte first = buf.get();
     boolean fin = (first & 0x80) > 0; // 得到第8位 10000000>0
     //int rsv = (first & 0x70) >>> 4; // 得到5、6、7 为01110000 然后右移四位为00000111
+    boolean compressed = (first & 0x40) != 0; // RSV1: permessage-deflate，由WebscoketClientAioHander重组后解压
 
     byte opCodeByte = (byte) (first & 0x0F); // 后四位为opCode 00001111
     Opcode opcode = Opcode.valueOf(opCodeByte);
     if (opcode == Opcode.CLOSE) {
     }
+    // 只有数据消息的第一个分片可以带RSV1
+    if (compressed && ((opCodeByte & 0x08) != 0 || opcode == Opcode.NOT_FIN)) {
+      throw new TioDecodeException("RSV1 is set on a control or continuation frame");
+    }
 
     byte second = buf.get(); // 向后读取一个字节
     boolean hasMask = (second & 0xFF) >> 7 == 1; // 用于标识PayloadData是否经过掩码处理。如果是1，Masking-key域的数据即是掩码密钥，用于解码PayloadData。客户端发出的数据帧需要进行掩码处理，所以此位是1。
@@ -75,6 +80,7 @@ public class WebSocketClientDecoder {
     websocketPacket.setWsMask(mask);
     websocketPacket.setWsOpcode(opcode);
     websocketPacket.setWsBodyLength(payloadLength);
+    websocketPacket.setWsCompressed(compressed);
 
     if (payloadLength == 0) {
       return websocketPacket;
@@ -46,6 +46,10 @@ public class WebSocketClientEncoder {
     byte opcode = packet.getWsOpcode().getCode();
     byte b0 = (byte) (packet.isWsEof() ? -128 : 0);
     b0 |= opcode;
+    // body已经按permessage-deflate压缩过(WebSocketImpl中压缩)
+    if (packet.isWsCompressed()) {
+      b0 |= 0x40;
+    }
 
     byte maskedByte = (byte) -128;
 
@@ -69,15 +73,10 @@ public class WebSocketClientEncoder {
       ByteBufferUtils.writeUB4WithBigEdian(buf, wsBodyLength);
     }
 
-    ByteBuffer maskkey = ByteBuffer.allocate(4);
-    maskkey.putInt(reuseableRandom.nextInt());
-    buf.put(maskkey.array());
-
-    if (wsBody != null)
-      for (int i = 0; i < wsBody.length; i++) {
-        wsBody[i] = ((byte) (wsBody[i] ^ maskkey.get(i % 4)));
-      }
+    int mask = reuseableRandom.nextInt();
+    buf.putInt(mask);
 
+    int payloadStart = buf.position();
     if (wsBody != null && wsBody.length > 0) {
       buf.put(wsBody);
     } else if (wsBodies != null) {
@@ -86,6 +85,12 @@ public class WebSocketClientEncoder {
       }
     }
 
+    // 在编码结果上加掩码，不改动packet中的body
+    byte[] array = buf.array();
+    for (int i = 0; i < wsBodyLength; i++) {
+      array[payloadStart + i] ^= (byte) (mask >>> (24 - ((i & 3) << 3)));
+    }
+
     return buf;
   }
 }
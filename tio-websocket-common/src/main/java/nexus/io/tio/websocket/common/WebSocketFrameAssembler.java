@@ -0,0 +1,122 @@
+package nexus.io.tio.websocket.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 一个连接上分片消息的重组缓冲区，由WebSocketServerDecoder使用，存放在ChannelContext的属性中。<br>
+ * 每个分片解码后直接写进这里，不再为每个分片生成byte[]；消息结束时把数组直接交给WebSocketRequest，
+ * 下一条消息按上一条消息的大小分配新数组，消息大小稳定时数组正好装满，getBody()不用再复制。<br>
+ * 重组后的消息超过maxLength时，或者分片的顺序不对时，解码器发出close帧并调用abort()，之后收到的数据都丢弃
+ */
+public class WebSocketFrameAssembler {
+  private static final int MIN_CAPACITY = 256;
+
+  private byte[] array;
+  private int length;
+  /**
+   * 第一个分片的opcode，为null表示当前没有未完成的分片消息
+   */
+  private Opcode opcode;
+  /**
+   * 第一个分片带有RSV1，整条消息重组后再解压
+   */
+  private boolean compressed;
+  private int nextCapacity = MIN_CAPACITY;
+  /**
+   * 重组后的消息最多多少字节
+   */
+  private int maxLength = WebSocketPacket.MAX_LENGTH_OF_BODY;
+  /**
+   * 已经发出close帧，等着关闭连接
+   */
+  private boolean aborted;
+
+  /**
+   * @return 是否有未完成的分片消息
+   */
+  public boolean isStarted() {
+    return opcode != null;
+  }
+
+  public void start(Opcode opcode, boolean compressed) {
+    this.opcode = opcode;
+    this.compressed = compressed;
+    this.length = 0;
+  }
+
+  public Opcode getOpcode() {
+    return opcode;
+  }
+
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /**
+   * @return 再加上payloadLength字节后是否还在maxLength以内
+   */
+  public boolean fits(int payloadLength) {
+    return (long) length + payloadLength <= maxLength;
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  public void setMaxLength(int maxLength) {
+    this.maxLength = maxLength;
+  }
+
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * 放弃未完成的消息，之后不再接收数据
+   */
+  public void abort() {
+    aborted = true;
+    array = null;
+    length = 0;
+    opcode = null;
+    compressed = false;
+  }
+
+  /**
+   * 从buf读取一个分片的数据，有掩码时同时解码
+   */
+  public void append(ByteBuffer buf, int payloadLength, boolean hasMask, int mask) {
+    ensureCapacity(length + payloadLength);
+    WebSocketServerDecoder.readPayload(buf, array, length, payloadLength, hasMask, mask);
+    length += payloadLength;
+  }
+
+  /**
+   * 消息结束，交出数据并复位
+   *
+   * @return 整条消息的数据
+   */
+  public ByteBuffer finish() {
+    ByteBuffer body = array == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(array, 0, length).slice();
+    nextCapacity = Math.max(length, MIN_CAPACITY);
+    array = null;
+    length = 0;
+    opcode = null;
+    compressed = false;
+    return body;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (array == null) {
+      array = new byte[Math.max(capacity, nextCapacity)];
+    } else if (capacity > array.length) {
+      byte[] newArray = new byte[Math.max(capacity, array.length << 1)];
+      System.arraycopy(array, 0, newArray, 0, length);
+      array = newArray;
+    }
+  }
+}
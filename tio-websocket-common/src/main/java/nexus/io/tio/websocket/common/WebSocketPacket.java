@@ -1,5 +1,7 @@
 package nexus.io.tio.websocket.common;
 
+import java.nio.ByteBuffer;
+
 import nexus.io.aio.Packet;
 
 /**
@@ -30,9 +32,17 @@ public class WebSocketPacket extends Packet {
    *  服务器发往客户端时，此字段才可能会有值(业务层进行性能优化时才用得着这个字段)
    */
   private byte[][] bodys;
+  /**
+   * 分片消息重组后的消息体，不一定占满整个数组。有值时body在第一次调用getBody()时才生成
+   */
+  private transient ByteBuffer bodyBuffer;
   private boolean wsEof;
   private Opcode wsOpcode = Opcode.BINARY;
   private boolean wsHasMask;
+  /**
+   * RSV1，按permessage-deflate压缩。收到的消息解压后仍保留此标记；发送时为true表示body已经压缩过，不再压缩
+   */
+  private boolean wsCompressed;
   private long wsBodyLength;
   private byte[] wsMask;
   private String wsBodyText; //当为文本时才有此字段
@@ -50,9 +60,33 @@ public class WebSocketPacket extends Packet {
    * @return the body
    */
   public byte[] getBody() {
+    if (body == null && bodyBuffer != null) {
+      ByteBuffer buffer = bodyBuffer;
+      if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+          && buffer.remaining() == buffer.array().length) {
+        body = buffer.array();
+      } else {
+        body = new byte[buffer.remaining()];
+        buffer.duplicate().get(body);
+      }
+    }
     return body;
   }
 
+  /**
+   * 以ByteBuffer的形式获取消息体，不复制数据，每次返回的是新的视图(position、limit互不影响)
+   * @return 没有消息体时为null
+   */
+  public ByteBuffer getBodyBuffer() {
+    if (bodyBuffer != null) {
+      return bodyBuffer.duplicate();
+    }
+    if (body != null) {
+      return ByteBuffer.wrap(body);
+    }
+    return null;
+  }
+
   /**
    * @return the wsBodyLength
    */
@@ -122,6 +156,15 @@ public class WebSocketPacket extends Packet {
    */
   public void setBody(byte[] body) {
     this.body = body;
+    this.bodyBuffer = null;
+  }
+
+  /**
+   * @param bodyBuffer position到limit之间的数据为消息体
+   */
+  public void setBodyBuffer(ByteBuffer bodyBuffer) {
+    this.bodyBuffer = bodyBuffer;
+    this.body = null;
   }
 
   /**
@@ -159,6 +202,20 @@ public class WebSocketPacket extends Packet {
     this.wsHasMask = wsHasMask;
   }
 
+  /**
+   * @return the wsCompressed
+   */
+  public boolean isWsCompressed() {
+    return wsCompressed;
+  }
+
+  /**
+   * @param wsCompressed the wsCompressed to set
+   */
+  public void setWsCompressed(boolean wsCompressed) {
+    this.wsCompressed = wsCompressed;
+  }
+
   /**
    * @param wsMask the wsMask to set
    */
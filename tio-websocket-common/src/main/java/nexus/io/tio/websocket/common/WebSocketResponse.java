@@ -1,6 +1,7 @@
 package nexus.io.tio.websocket.common;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,4 +68,23 @@ public class WebSocketResponse extends WebSocketPacket {
     wsResponse.setWsOpcode(Opcode.BINARY);
     return wsResponse;
   }
+
+  /**
+   * close帧，发出后关闭连接
+   *
+   * @param code   关闭码，如1002(协议错误)、1009(消息太大)
+   * @param reason 可以为null
+   */
+  public static WebSocketResponse fromClose(int code, String reason) {
+    byte[] reasonBytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+    byte[] body = new byte[2 + reasonBytes.length];
+    body[0] = (byte) (code >>> 8);
+    body[1] = (byte) code;
+    System.arraycopy(reasonBytes, 0, body, 2, reasonBytes.length);
+    WebSocketResponse wsResponse = new WebSocketResponse();
+    wsResponse.setBody(body);
+    wsResponse.setWsOpcode(Opcode.CLOSE);
+    wsResponse.setKeepConnection(false);
+    return wsResponse;
+  }
 }
@@ -1,8 +1,10 @@
 package nexus.io.tio.websocket.common;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import nexus.io.tio.core.ChannelContext;
+import nexus.io.tio.core.Tio;
 import nexus.io.tio.core.exception.TioDecodeException;
 import nexus.io.tio.core.utils.ByteBufferUtils;
 
@@ -11,6 +13,11 @@ import nexus.io.tio.core.utils.ByteBufferUtils;
  * @author tanyaowu 2017年7月30日 上午10:10:50
  */
 public class WebSocketServerDecoder {
+  /**
+   * 分片消息重组缓冲区在ChannelContext中的属性名，value: WebSocketFrameAssembler
+   */
+  public static final String FRAME_ASSEMBLER_KEY = "TIO_WS_FRAME_ASSEMBLER";
+
   public static enum Step {
     header, remain_header, data,
   }
@@ -23,6 +30,13 @@ public class WebSocketServerDecoder {
     int initPosition = buf.position();
     int readableLength = buf.limit() - initPosition;
 
+    WebSocketFrameAssembler assembler = (WebSocketFrameAssembler) channelContext.getAttribute(FRAME_ASSEMBLER_KEY);
+    if (assembler != null && assembler.isAborted()) {
+      // 已经发出close帧，close帧发完后关闭连接，这之前收到的数据都丢弃
+      channelContext.consumedLength = readableLength;
+      return null;
+    }
+
     int headLength = WebSocketPacket.MINIMUM_HEADER_LENGTH;
 
     if (readableLength < headLength) {
@@ -32,8 +46,8 @@ public class WebSocketServerDecoder {
     byte first = buf.get();
     // int b = first & 0xFF; //转换成32位
     boolean fin = (first & 0x80) > 0; // 得到第8位 10000000>0
-    @SuppressWarnings("unused")
     int rsv = (first & 0x70) >>> 4; // 得到5、6、7 为01110000 然后右移四位为00000111
+    boolean compressed = (rsv & 0x04) != 0; // RSV1: permessage-deflate
     byte opCodeByte = (byte) (first & 0x0F); // 后四位为opCode 00001111
     Opcode opcode = Opcode.valueOf(opCodeByte);
     if (opcode == Opcode.CLOSE) {
@@ -64,7 +78,7 @@ public class WebSocketServerDecoder {
     }
     int payloadLength = second & 0x7F; // 读取后7位 Payload legth，如果<126则payloadLength
 
-    byte[] mask = null;
+    int mask = 0;
     if (payloadLength == 126) { // 为126读2个字节，后两个字节为payloadLength
       headLength += 2;
       if (readableLength < headLength) {
@@ -85,38 +99,86 @@ public class WebSocketServerDecoder {
       // payloadLength);
     }
 
-    if (payloadLength < 0 || payloadLength > WebSocketPacket.MAX_BODY_LENGTH) {
+    if (payloadLength < 0) {
       throw new TioDecodeException("body length(" + payloadLength + ") is not right");
     }
 
+    boolean isControl = (opCodeByte & 0x08) != 0;
+    if (!isControl) {
+      boolean started = assembler != null && assembler.isStarted();
+      if (started ? opcode != Opcode.NOT_FIN : opcode == Opcode.NOT_FIN) {
+        // 分片消息还没结束时又来了新的数据消息，或者没有开始的分片消息却收到了后续分片
+        return abort(channelContext, assembler, 1002, "unexpected " + opcode + " frame", readableLength);
+      }
+      if (payloadLength > WebSocketPacket.MAX_BODY_LENGTH || (started && !assembler.fits(payloadLength))) {
+        return abort(channelContext, assembler, 1009, "message too big", readableLength);
+      }
+    }
+
     if (readableLength < headLength + payloadLength) {
       return null;
     }
 
     if (hasMask) {
-      mask = ByteBufferUtils.readBytes(buf, 4);
+      // 按buf的字节序读取，readPayload中也按同样的字节序使用
+      mask = buf.getInt();
+    }
+
+    if (compressed) {
+      // 只有数据消息的第一个分片可以带RSV1
+      if (isControl || opcode == Opcode.NOT_FIN) {
+        throw new TioDecodeException("RSV1 is set on a control or continuation frame");
+      }
+      if (PerMessageDeflate.from(channelContext) == null) {
+        throw new TioDecodeException("RSV1 is set but permessage-deflate is not negotiated");
+      }
     }
 
     // 第二阶段解析
     WebSocketRequest websocketPacket = new WebSocketRequest();
     websocketPacket.setWsEof(fin);
     websocketPacket.setWsHasMask(hasMask);
-    websocketPacket.setWsMask(mask);
     websocketPacket.setWsOpcode(opcode);
     websocketPacket.setWsBodyLength(payloadLength);
+    websocketPacket.setWsCompressed(compressed);
 
-    if (payloadLength == 0) {
+    // 分片消息：数据直接写进连接的重组缓冲区，控制帧(close、ping、pong)可以夹在分片之间，不参与重组
+    if (!isControl && (!fin || opcode == Opcode.NOT_FIN)) {
+      if (assembler == null) {
+        assembler = new WebSocketFrameAssembler();
+        channelContext.setAttribute(FRAME_ASSEMBLER_KEY, assembler);
+      }
+      if (!assembler.isStarted()) {
+        assembler.start(opcode, compressed);
+      }
+      assembler.append(buf, payloadLength, hasMask, mask);
+      if (!fin) {
+        return websocketPacket;
+      }
+      websocketPacket.setWsOpcode(assembler.getOpcode());
+      websocketPacket.setWsCompressed(assembler.isCompressed());
+      ByteBuffer body = assembler.finish();
+      if (websocketPacket.isWsCompressed()) {
+        body = PerMessageDeflate.from(channelContext).decompress(body.array(), body.arrayOffset() + body.position(), body.remaining());
+      }
+      websocketPacket.setWsBodyLength(body.remaining());
+      websocketPacket.setBodyBuffer(body);
       return websocketPacket;
     }
 
-    byte[] array = ByteBufferUtils.readBytes(buf, payloadLength);
-    if (hasMask) {
-      for (int i = 0; i < array.length; i++) {
-        array[i] = (byte) (array[i] ^ mask[i % 4]);
-      }
+    if (payloadLength == 0 && !compressed) {
+      return websocketPacket;
     }
 
-    websocketPacket.setBody(array);
+    byte[] array = new byte[payloadLength];
+    readPayload(buf, array, 0, payloadLength, hasMask, mask);
+    if (compressed) {
+      ByteBuffer body = PerMessageDeflate.from(channelContext).decompress(array, 0, payloadLength);
+      websocketPacket.setWsBodyLength(body.remaining());
+      websocketPacket.setBodyBuffer(body);
+    } else {
+      websocketPacket.setBody(array);
+    }
 
     // if (!fin) {
     // //lastParts.add(array);
@@ -171,6 +233,46 @@ public class WebSocketServerDecoder {
     return websocketPacket;
   }
 
+  /**
+   * 发出close帧并丢弃未完成的分片消息，close帧发完后关闭连接
+   */
+  private static WebSocketRequest abort(ChannelContext channelContext, WebSocketFrameAssembler assembler, int code, String reason,
+      int readableLength) {
+    if (assembler == null) {
+      assembler = new WebSocketFrameAssembler();
+      channelContext.setAttribute(FRAME_ASSEMBLER_KEY, assembler);
+    }
+    assembler.abort();
+    channelContext.consumedLength = readableLength;
+    Tio.send(channelContext, WebSocketResponse.fromClose(code, reason));
+    return null;
+  }
+
+  /**
+   * 从buf读取len个字节写到dst的offset处，有掩码时同时解码：每次按long处理8个字节，不足8个的逐字节处理
+   *
+   * @param mask 按buf的字节序读出的4字节掩码
+   */
+  public static void readPayload(ByteBuffer buf, byte[] dst, int offset, int len, boolean hasMask, int mask) {
+    if (!hasMask) {
+      buf.get(dst, offset, len);
+      return;
+    }
+    ByteOrder order = buf.order();
+    ByteBuffer out = ByteBuffer.wrap(dst).order(order);
+    // 4字节掩码重复两次，与按同一字节序读出的long对应
+    long mask64 = ((long) mask << 32) | (mask & 0xFFFFFFFFL);
+    int i = 0;
+    for (int end = len - 7; i < end; i += 8) {
+      out.putLong(offset + i, buf.getLong() ^ mask64);
+    }
+    boolean bigEndian = order == ByteOrder.BIG_ENDIAN;
+    for (; i < len; i++) {
+      int shift = bigEndian ? 24 - ((i & 3) << 3) : (i & 3) << 3;
+      dst[offset + i] = (byte) (buf.get() ^ (mask >>> shift));
+    }
+  }
+
   /** @author tanyaowu 2017年2月22日 下午4:06:42 */
   public WebSocketServerDecoder() {
   }
@@ -42,7 +42,23 @@ public class WebSocketServerEncoder {
       }
     }
 
-    byte header0 = (byte) (0x8f & (wsResponse.getWsOpcode().getCode() | 0xf0));
+    // 协商了permessage-deflate时，达到阈值的数据消息压缩后发送，RSV1置1
+    ByteBuffer compressedBody = null;
+    Opcode opcode = wsResponse.getWsOpcode();
+    if ((opcode == Opcode.TEXT || opcode == Opcode.BINARY) && !wsResponse.isWsCompressed()) {
+      PerMessageDeflate perMessageDeflate = PerMessageDeflate.from(channelContext);
+      if (perMessageDeflate != null && perMessageDeflate.shouldCompress(wsBodyLength)) {
+        compressedBody = perMessageDeflate.compress(wsBody, wsBodies);
+        if (compressedBody != null) {
+          wsBodyLength = compressedBody.remaining();
+        }
+      }
+    }
+
+    byte header0 = (byte) (0x8f & (opcode.getCode() | 0xf0));
+    if (compressedBody != null || wsResponse.isWsCompressed()) {
+      header0 |= 0x40;
+    }
     ByteBuffer buf = null;
     if (wsBodyLength < 126) {
       buf = ByteBuffer.allocate(2 + wsBodyLength);
@@ -64,7 +80,9 @@ public class WebSocketServerEncoder {
       ByteBufferUtils.writeUB4WithBigEdian(buf, wsBodyLength);
     }
 
-    if (wsBody != null && wsBody.length > 0) {
+    if (compressedBody != null) {
+      buf.put(compressedBody);
+    } else if (wsBody != null && wsBody.length > 0) {
       buf.put(wsBody);
     } else if (wsBodies != null) {
       for (int i = 0; i < wsBodies.length; i++) {
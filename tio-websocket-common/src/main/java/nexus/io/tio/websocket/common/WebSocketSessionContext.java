@@ -34,6 +34,11 @@ public class WebSocketSessionContext {
    */
   private Object data = null;
 
+  /**
+   * 协商好的permessage-deflate，为null表示不压缩
+   */
+  private volatile PerMessageDeflate perMessageDeflate = null;
+
   // websocket 协议用到的，有时候数据包是分几个到的，注意那个fin字段，本im暂时不支持
   private List<byte[]> lastParts = null;
 
@@ -117,6 +122,14 @@ public class WebSocketSessionContext {
     this.token = token;
   }
 
+  public PerMessageDeflate getPerMessageDeflate() {
+    return perMessageDeflate;
+  }
+
+  public void setPerMessageDeflate(PerMessageDeflate perMessageDeflate) {
+    this.perMessageDeflate = perMessageDeflate;
+  }
+
   public Object getData() {
     return data;
   }
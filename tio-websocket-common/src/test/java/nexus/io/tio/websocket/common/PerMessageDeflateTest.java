@@ -0,0 +1,51 @@
+package nexus.io.tio.websocket.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PerMessageDeflateTest {
+
+  @Test
+  public void testServerEchoesServerMaxWindowBits() {
+    PerMessageDeflate deflate = PerMessageDeflate.negotiate("permessage-deflate; server_max_window_bits=15",
+        new PerMessageDeflateConfig());
+    assertEquals("permessage-deflate; server_max_window_bits=15", deflate.getExtension());
+    deflate.end();
+  }
+
+  @Test
+  public void testServerDeclinesSmallerServerWindow() {
+    PerMessageDeflateConfig config = new PerMessageDeflateConfig();
+    assertNull(PerMessageDeflate.negotiate("permessage-deflate; server_max_window_bits=10", config));
+
+    PerMessageDeflate deflate = PerMessageDeflate.negotiate(
+        "permessage-deflate; server_max_window_bits=10, permessage-deflate", config);
+    assertEquals("permessage-deflate", deflate.getExtension());
+    deflate.end();
+  }
+
+  @Test
+  public void testClientAcceptsServerMaxWindowBitsWithinOffer() {
+    PerMessageDeflateConfig config = new PerMessageDeflateConfig();
+    config.setServerMaxWindowBits(10);
+    PerMessageDeflate deflate = PerMessageDeflate.accept("permessage-deflate; server_max_window_bits=9", config);
+    assertEquals("permessage-deflate; server_max_window_bits=9", deflate.getExtension());
+    deflate.end();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testClientRejectsMissingServerMaxWindowBits() {
+    PerMessageDeflateConfig config = new PerMessageDeflateConfig();
+    config.setServerMaxWindowBits(10);
+    PerMessageDeflate.accept("permessage-deflate", config);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testClientRejectsLargerServerMaxWindowBits() {
+    PerMessageDeflateConfig config = new PerMessageDeflateConfig();
+    config.setServerMaxWindowBits(10);
+    PerMessageDeflate.accept("permessage-deflate; server_max_window_bits=12", config);
+  }
+}
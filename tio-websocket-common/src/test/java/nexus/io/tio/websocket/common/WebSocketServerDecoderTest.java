@@ -0,0 +1,106 @@
+package nexus.io.tio.websocket.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nexus.io.aio.Packet;
+import nexus.io.tio.server.ServerChannelContext;
+import nexus.io.tio.server.ServerTioConfig;
+import nexus.io.tio.utils.cache.mapcache.ConcurrentMapCacheFactory;
+
+public class WebSocketServerDecoderTest {
+
+  private ServerChannelContext channelContext;
+
+  @Before
+  public void setUp() {
+    ServerTioConfig tioConfig = new ServerTioConfig("ws-decoder-test");
+    tioConfig.setCacheFactory(ConcurrentMapCacheFactory.INSTANCE);
+    channelContext = new ServerChannelContext(tioConfig);
+    // 当作已连接的连接，但不真正发送，close帧留在sendQueue中检查
+    channelContext.isVirtual = false;
+    channelContext.isClosed = false;
+    channelContext.isSending.set(true);
+  }
+
+  @Test
+  public void testFragmentsAreReassembled() throws Exception {
+    assertFalse(decode(frame(false, 0x1, "ab")).isWsEof());
+    WebSocketRequest request = decode(frame(true, 0x0, "cd"));
+    assertEquals(Opcode.TEXT, request.getWsOpcode());
+    assertEquals("abcd", new String(request.getBody(), "UTF-8"));
+  }
+
+  @Test
+  public void testNewMessageInsideFragmentedMessageIsProtocolError() throws Exception {
+    decode(frame(false, 0x1, "ab"));
+    assertNull(decode(frame(true, 0x1, "cd")));
+    assertClosedWith(1002);
+
+    // close帧发出前收到的数据都丢弃
+    assertNull(decode(frame(true, 0x1, "ef")));
+    assertEquals(6 + 2, channelContext.consumedLength);
+    assertNull(channelContext.sendQueue.poll());
+  }
+
+  @Test
+  public void testContinuationWithoutStartIsProtocolError() throws Exception {
+    assertNull(decode(frame(true, 0x0, "ab")));
+    assertClosedWith(1002);
+  }
+
+  @Test
+  public void testControlFrameInsideFragmentedMessage() throws Exception {
+    decode(frame(false, 0x2, "ab"));
+    assertEquals(Opcode.PING, decode(frame(true, 0x9, "p")).getWsOpcode());
+    WebSocketRequest request = decode(frame(true, 0x0, "cd"));
+    assertEquals(Opcode.BINARY, request.getWsOpcode());
+    assertEquals(4, request.getBodyBuffer().remaining());
+  }
+
+  @Test
+  public void testMessageTooBig() throws Exception {
+    WebSocketFrameAssembler assembler = new WebSocketFrameAssembler();
+    assembler.setMaxLength(3);
+    channelContext.setAttribute(WebSocketServerDecoder.FRAME_ASSEMBLER_KEY, assembler);
+    decode(frame(false, 0x1, "ab"));
+    assertNull(decode(frame(true, 0x0, "cd")));
+    assertClosedWith(1009);
+  }
+
+  private void assertClosedWith(int code) {
+    Packet packet = channelContext.sendQueue.poll();
+    assertNotNull(packet);
+    WebSocketResponse close = (WebSocketResponse) packet;
+    assertEquals(Opcode.CLOSE, close.getWsOpcode());
+    assertFalse(close.isKeepConnection());
+    byte[] body = close.getBody();
+    assertEquals(code, ((body[0] & 0xff) << 8) | (body[1] & 0xff));
+  }
+
+  private WebSocketRequest decode(ByteBuffer buffer) throws Exception {
+    channelContext.consumedLength = 0;
+    return WebSocketServerDecoder.decode(buffer, channelContext);
+  }
+
+  /**
+   * 客户端发出的帧，掩码为0
+   */
+  private static ByteBuffer frame(boolean fin, int opcode, String payload) throws Exception {
+    byte[] data = payload.getBytes("UTF-8");
+    ByteBuffer buffer = ByteBuffer.allocate(6 + data.length);
+    buffer.put((byte) ((fin ? 0x80 : 0) | opcode));
+    buffer.put((byte) (0x80 | data.length));
+    buffer.putInt(0);
+    buffer.put(data);
+    buffer.flip();
+    return buffer;
+  }
+}
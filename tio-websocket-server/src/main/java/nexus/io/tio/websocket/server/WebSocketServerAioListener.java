@@ -3,6 +3,7 @@ package nexus.io.tio.websocket.server;
 import nexus.io.aio.Packet;
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.server.intf.ServerAioListener;
+import nexus.io.tio.websocket.common.PerMessageDeflate;
 import nexus.io.tio.websocket.common.WebSocketSessionContext;
 
 /**
@@ -33,6 +34,10 @@ public class WebSocketServerAioListener implements ServerAioListener {
 
   @Override
   public void onBeforeClose(ChannelContext channelContext, Throwable throwable, String remark, boolean isRemove) throws Exception {
+    PerMessageDeflate perMessageDeflate = PerMessageDeflate.from(channelContext);
+    if (perMessageDeflate != null) {
+      perMessageDeflate.end();
+    }
   }
 
   @Override
@@ -2,9 +2,7 @@ package nexus.io.tio.websocket.server;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -28,6 +26,8 @@ import nexus.io.tio.utils.base64.Base64Utils;
 import nexus.io.tio.utils.digest.Sha1Utils;
 import nexus.io.tio.utils.hutool.StrUtil;
 import nexus.io.tio.websocket.common.Opcode;
+import nexus.io.tio.websocket.common.PerMessageDeflate;
+import nexus.io.tio.websocket.common.PerMessageDeflateConfig;
 import nexus.io.tio.websocket.common.WebSocketRequest;
 import nexus.io.tio.websocket.common.WebSocketResponse;
 import nexus.io.tio.websocket.common.WebSocketServerDecoder;
@@ -37,11 +37,6 @@ import nexus.io.tio.websocket.server.handler.IWebSocketHandler;
 
 public class WebsocketServerAioHandler implements ServerAioHandler {
   private static Logger log = LoggerFactory.getLogger(WebsocketServerAioHandler.class);
-  /**
-   * value: List<WsRequest>
-   */
-  private static final String NOT_FINAL_WEBSOCKET_PACKET_PARTS = "TIO_N_F_W_P_P";
-
   /**
    * SEC_WEBSOCKET_KEY后缀
    */
@@ -62,7 +57,6 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
     this.wsMsgHandler = wsMsgHandler;
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public WebSocketRequest decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext channelContext) throws TioDecodeException {
     WebSocketSessionContext wsSessionContext = (WebSocketSessionContext) channelContext.get();
@@ -74,7 +68,7 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
         return null;
       }
 
-      HttpResponse httpResponse = upgradeWebSocketProtocol(request, channelContext);
+      HttpResponse httpResponse = upgradeWebSocketProtocol(request, channelContext, wsServerConfig.getPerMessageDeflateConfig());
       if (httpResponse == null) {
         throw new TioDecodeException("Failed to upgrade the HTTP protocol to the WebSocket protocol.");
       }
@@ -92,47 +86,17 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
 
     WebSocketRequest websocketPacket = WebSocketServerDecoder.decode(buffer, channelContext);
 
-    if (websocketPacket != null) {
-      if (!websocketPacket.isWsEof()) { // 数据包尚未完成
-        List<WebSocketRequest> parts = (List<WebSocketRequest>) channelContext.getAttribute(NOT_FINAL_WEBSOCKET_PACKET_PARTS);
-        if (parts == null) {
-          parts = new ArrayList<>();
-          channelContext.setAttribute(NOT_FINAL_WEBSOCKET_PACKET_PARTS, parts);
-        }
-        parts.add(websocketPacket);
-      } else {
-        List<WebSocketRequest> parts = (List<WebSocketRequest>) channelContext.getAttribute(NOT_FINAL_WEBSOCKET_PACKET_PARTS);
-        if (parts != null) {
-          channelContext.setAttribute(NOT_FINAL_WEBSOCKET_PACKET_PARTS, null);
-
-          parts.add(websocketPacket);
-          WebSocketRequest first = parts.get(0);
-          websocketPacket.setWsOpcode(first.getWsOpcode());
-
-          int allBodyLength = 0;
-          for (WebSocketRequest wsRequest : parts) {
-            allBodyLength += wsRequest.getBody().length;
-          }
-
-          byte[] allBody = new byte[allBodyLength];
-          Integer index = 0;
-          for (WebSocketRequest wsRequest : parts) {
-            System.arraycopy(wsRequest.getBody(), 0, allBody, index, wsRequest.getBody().length);
-            index += wsRequest.getBody().length;
-          }
-          websocketPacket.setBody(allBody);
-        }
-
-        HttpRequest handshakeRequest = wsSessionContext.getHandshakeRequest();
-        if (websocketPacket.getWsOpcode() != Opcode.BINARY) {
-          byte[] bodyBs = websocketPacket.getBody();
-          if (bodyBs != null) {
-            try {
-              String text = new String(bodyBs, handshakeRequest.getCharset());
-              websocketPacket.setWsBodyText(text);
-            } catch (UnsupportedEncodingException e) {
-              log.error(e.toString(), e);
-            }
+    // 分片消息由WebSocketServerDecoder重组，最后一个分片返回的是整条消息
+    if (websocketPacket != null && websocketPacket.isWsEof()) {
+      HttpRequest handshakeRequest = wsSessionContext.getHandshakeRequest();
+      if (websocketPacket.getWsOpcode() != Opcode.BINARY) {
+        ByteBuffer body = websocketPacket.getBodyBuffer();
+        if (body != null) {
+          try {
+            String text = new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), handshakeRequest.getCharset());
+            websocketPacket.setWsBodyText(text);
+          } catch (UnsupportedEncodingException e) {
+            log.error(e.toString(), e);
           }
         }
       }
@@ -175,11 +139,12 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
       wsResponse = processRetObj(retObj, methodName, channelContext);
       return wsResponse;
     } else if (opcode == Opcode.BINARY) {
-      if (bytes == null || bytes.length == 0) {
+      ByteBuffer buffer = websocketPacket.getBodyBuffer();
+      if (buffer == null || !buffer.hasRemaining()) {
         Tio.remove(channelContext, "Incorrect websocket packet, body is empty.");
         return null;
       }
-      Object retObj = wsMsgHandler.onBytes(websocketPacket, bytes, channelContext);
+      Object retObj = wsMsgHandler.onBytes(websocketPacket, buffer, channelContext);
       String methodName = "onBytes";
       wsResponse = processRetObj(retObj, methodName, channelContext);
       return wsResponse;
@@ -215,6 +180,15 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
       }
       wsSessionContext.setHandshakeResponse(r);
 
+      // 业务换掉了握手响应、去掉了扩展头时不压缩
+      if (wsSessionContext.getPerMessageDeflate() != null) {
+        if (r.getHeader(HeaderName.Sec_WebSocket_Extensions) == null) {
+          wsSessionContext.setPerMessageDeflate(null);
+        } else {
+          channelContext.encodePerConnection = true;
+        }
+      }
+
       WebSocketResponse wsResponse = new WebSocketResponse();
       wsResponse.setHandShake(true);
       if (wsResponse.isBlockSend()) {
@@ -233,7 +207,10 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
       return;
     }
 
-    WebSocketResponse wsResponse = h(wsRequest, wsRequest.getBody(), wsRequest.getWsOpcode(), channelContext);
+    // 二进制消息在h()中按ByteBuffer交给业务，不在这里生成byte[]
+    Opcode opcode = wsRequest.getWsOpcode();
+    byte[] bytes = opcode == Opcode.BINARY ? null : wsRequest.getBody();
+    WebSocketResponse wsResponse = h(wsRequest, bytes, opcode, channelContext);
 
     if (wsResponse != null) {
       Tio.send(channelContext, wsResponse);
@@ -258,7 +235,15 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
       } else if (obj instanceof WebSocketResponse) {
         return (WebSocketResponse) obj;
       } else if (obj instanceof ByteBuffer) {
-        byte[] bs = ((ByteBuffer) obj).array();
+        // 可能是onBytes收到的视图，只取position到limit之间的数据
+        ByteBuffer buffer = (ByteBuffer) obj;
+        byte[] bs;
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+          bs = buffer.array();
+        } else {
+          bs = new byte[buffer.remaining()];
+          buffer.duplicate().get(bs);
+        }
         wsResponse = WebSocketResponse.fromBytes(bs);
         return wsResponse;
       } else {
@@ -283,6 +268,19 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
    * @author tanyaowu
    */
   public static HttpResponse upgradeWebSocketProtocol(HttpRequest request, ChannelContext channelContext) {
+    return upgradeWebSocketProtocol(request, channelContext, null);
+  }
+
+  /**
+   * 同upgradeWebSocketProtocol(request, channelContext)，另外按perMessageDeflateConfig协商permessage-deflate，
+   * 协商成功时响应中带上Sec-WebSocket-Extensions，协商结果放在WebSocketSessionContext中
+   *
+   * @param request
+   * @param channelContext
+   * @param perMessageDeflateConfig 为null时不启用permessage-deflate
+   * @return
+   */
+  public static HttpResponse upgradeWebSocketProtocol(HttpRequest request, ChannelContext channelContext, PerMessageDeflateConfig perMessageDeflateConfig) {
     Map<String, String> headers = request.getHeaders();
 
     String Sec_WebSocket_Key = headers.get(RequestHeaderKey.Sec_WebSocket_Key);
@@ -310,6 +308,13 @@ public class WebsocketServerAioHandler implements ServerAioHandler {
       respHeaders.put(HeaderName.Connection, HeaderValue.Connection.Upgrade);
       respHeaders.put(HeaderName.Upgrade, HeaderValue.Upgrade.WebSocket);
       respHeaders.put(HeaderName.Sec_WebSocket_Accept, HeaderValue.from(acceptKey));
+
+      PerMessageDeflate perMessageDeflate = PerMessageDeflate.negotiate(headers.get(RequestHeaderKey.Sec_WebSocket_Extensions), perMessageDeflateConfig);
+      Object session = channelContext.get();
+      if (perMessageDeflate != null && session instanceof WebSocketSessionContext) {
+        respHeaders.put(HeaderName.Sec_WebSocket_Extensions, HeaderValue.from(perMessageDeflate.getExtension()));
+        ((WebSocketSessionContext) session).setPerMessageDeflate(perMessageDeflate);
+      }
       httpResponse.addHeaders(respHeaders);
       return httpResponse;
     }
@@ -1,12 +1,17 @@
 package nexus.io.tio.websocket.server;
 
 import nexus.io.tio.http.common.HttpConfig;
+import nexus.io.tio.websocket.common.PerMessageDeflateConfig;
 
 /**
  * @author tanyaowu
  * 2017年6月28日 下午2:42:59
  */
 public class WebsocketServerConfig extends HttpConfig {
+  /**
+   * permessage-deflate的配置，为null表示不启用
+   */
+  private PerMessageDeflateConfig perMessageDeflateConfig = null;
 
   public WebsocketServerConfig(Integer bindPort, boolean useSession) {
     super(bindPort, useSession);
@@ -16,4 +21,11 @@ public class WebsocketServerConfig extends HttpConfig {
     super(bindPort, true);
   }
 
+  public PerMessageDeflateConfig getPerMessageDeflateConfig() {
+    return perMessageDeflateConfig;
+  }
+
+  public void setPerMessageDeflateConfig(PerMessageDeflateConfig perMessageDeflateConfig) {
+    this.perMessageDeflateConfig = perMessageDeflateConfig;
+  }
 }
@@ -1,5 +1,7 @@
 package nexus.io.tio.websocket.server.handler;
 
+import java.nio.ByteBuffer;
+
 import nexus.io.tio.core.ChannelContext;
 import nexus.io.tio.http.common.HttpRequest;
 import nexus.io.tio.http.common.HttpResponse;
@@ -47,6 +49,19 @@ public interface IWebSocketHandler {
    */
   Object onBytes(WebSocketRequest wsRequest, byte[] bytes, ChannelContext channelContext) throws Exception;
 
+  /**
+   * <li>当收到Opcode.BINARY消息时，框架调用的是这个方法，默认转成byte[]后调用onBytes(WebSocketRequest, byte[], ChannelContext)</li>
+   * <li>需要避免复制数据时覆盖这个方法，buffer是消息体的视图，可以在方法返回后继续使用</li>
+   * @param wsRequest
+   * @param buffer position到limit之间的数据为消息体
+   * @param channelContext
+   * @return 可以是WsResponse、byte[]、ByteBuffer、String或null，如果是null，框架不会回消息
+   * @throws Exception
+   */
+  default Object onBytes(WebSocketRequest wsRequest, ByteBuffer buffer, ChannelContext channelContext) throws Exception {
+    return onBytes(wsRequest, wsRequest.getBody(), channelContext);
+  }
+
   /**
    * 当收到Opcode.CLOSE时，执行该方法，业务层在该方法中一般不需要写什么逻辑，空着就好
    * @param wsRequest